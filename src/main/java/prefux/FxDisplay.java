@@ -59,6 +59,7 @@ import prefux.data.expression.BooleanLiteral;
 import prefux.data.expression.Predicate;
 import prefux.data.util.Point2D;
 import prefux.data.util.Rectangle2D;
+import prefux.render.Renderer;
 import prefux.visual.EdgeItem;
 import prefux.visual.VisualItem;
 import prefux.visual.expression.VisiblePredicate;
@@ -75,6 +76,8 @@ public class FxDisplay extends Group implements Display, EventHandler<Event> {
 
     private int m_itemCount = 0;
 
+    private boolean m_lazy = false;
+
     private Visualization vis;
 
     private List<Control> m_controls = new ArrayList<>();
@@ -87,6 +90,21 @@ public class FxDisplay extends Group implements Display, EventHandler<Event> {
     private DoubleProperty zoomPivotY = new SimpleDoubleProperty(0.0);
 
     public FxDisplay(Visualization vis) {
+        this(vis, false);
+    }
+
+    /**
+     * Creates a new display for the given visualization.
+     * 
+     * @param vis
+     *            the visualization to show
+     * @param lazy
+     *            if true, only the items that are visible at this point get
+     *            a JavaFX node. Further items have to be added with
+     *            {@link #addItem(VisualItem)} when they are shown.
+     */
+    public FxDisplay(Visualization vis, boolean lazy) {
+        m_lazy = lazy;
         setVisualization(vis);
         setPredicate(null);
     }
@@ -163,27 +181,91 @@ public class FxDisplay extends Group implements Display, EventHandler<Event> {
         vis.addDisplay(this);
         this.vis = vis;
         LinkedList<VisualItem> nodes = new LinkedList<>();
-        Iterator<VisualItem> it = vis.items();
+        Iterator<VisualItem> it = m_lazy ? vis.visibleItems() : vis.items();
         // We render nodes after edges for better stacking
         while (it.hasNext()) {
             VisualItem item = it.next();
             if (item instanceof EdgeItem) {
-                item.getRenderer().render(this, item);
-                item.getNode().addEventHandler(Event.ANY, this);
-                m_registeredNodes.put(item.getNode(), item);
-                m_itemCount++;
+                addItem(item);
             } else {
                 nodes.offer(item);
             }
         }
         // Rendering edges after the nodes
         for (VisualItem item : nodes) {
-            item.getRenderer().render(this, item);
-            item.getNode().addEventHandler(Event.ANY, this);
-            m_registeredNodes.put(item.getNode(), item);
-            m_itemCount++;
+            addItem(item);
+        }
+    }
+
+    /**
+     * Renders an item on this display and registers it for event handling.
+     * Items present when the visualization is set are added automatically,
+     * this method is used for items that are created later on, e.g.
+     * aggregates. Must be called on the JavaFX application thread.
+     * 
+     * @param item
+     *            the item to add
+     */
+    public void addItem(VisualItem item) {
+        item.getRenderer().render(this, item);
+        item.getNode().addEventHandler(Event.ANY, this);
+        m_registeredNodes.put(item.getNode(), item);
+        m_itemCount++;
+    }
+
+    /**
+     * Removes the node of an item from this display. Must be called on the
+     * JavaFX application thread.
+     * 
+     * @param item
+     *            the item to remove
+     */
+    public void removeItem(VisualItem item) {
+        Node node = item.getNode();
+        if (node != null && m_registeredNodes.remove(node) != null) {
+            node.removeEventHandler(Event.ANY, this);
+            getChildren().remove(node);
+            m_itemCount--;
         }
     }
+
+    /**
+     * Removes the node of an item from this display, lets the renderer
+     * remove its bindings and listeners, and drops the reference from the
+     * item, so that the node can be garbage collected. The item can be
+     * rendered again with {@link #addItem(VisualItem)}. Must be called on
+     * the JavaFX application thread.
+     * 
+     * @param item
+     *            the item to release
+     * @see Renderer#release(VisualItem)
+     */
+    public void releaseItem(VisualItem item) {
+        item.getRenderer().release(item);
+        removeItem(item);
+        item.setNode(null);
+    }
+
+    /**
+     * Indicates if the item has a node that is registered on this display.
+     * 
+     * @param item
+     *            the item to check
+     * @return true if the item is rendered on this display
+     */
+    public boolean isRendered(VisualItem item) {
+        Node node = item.getNode();
+        return node != null && m_registeredNodes.containsKey(node);
+    }
+
+    /**
+     * Indicates if this display only renders items on demand.
+     * 
+     * @return true if items are rendered lazily
+     */
+    public boolean isLazy() {
+        return m_lazy;
+    }
     
     private void initializeZoom() {
         this.getTransforms().add(zoomScale);
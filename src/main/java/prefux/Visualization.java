@@ -935,6 +935,21 @@ public class Visualization {
         return m_visual.get(group);
     }
     
+    /**
+     * Get the names of all primary visual data groups that are not child
+     * groups of another group. These are the groups that together make up
+     * {@link #ALL_ITEMS}.
+     * @return an iterator over the top-level visual group names
+     */
+    public Iterator<String> getVisualGroupNames() {
+        ArrayList<String> names = new ArrayList<>(m_visual.size());
+        for ( String group : m_visual.keySet() ) {
+            if ( !PrefuseLib.isChildGroup(group) )
+                names.add(group);
+        }
+        return names.iterator();
+    }
+    
     /**
      * Retrieve the focus data group of the given group name. Only secondary,
      * or focus, groups will be considered.
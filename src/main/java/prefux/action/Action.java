@@ -146,14 +146,38 @@ public abstract class Action extends Activity {
      * @see prefux.activity.Activity#run(long)
      */
     protected void run(long elapsedTime) {
+        runPaced(getPace(elapsedTime));
+    }
+    
+    /**
+     * Runs this Action (as an Activity) with nanosecond timing. Called by
+     * the Activity super-class when run by the
+     * {@link prefux.activity.PulseActivityManager}.
+     * @see prefux.activity.Activity#runNanos(long)
+     */
+    protected void runNanos(long elapsedNanos) {
+        runPaced(getPaceNanos(elapsedNanos));
+    }
+    
+    /**
+     * Returns the Visualization processed by this Action, so that the
+     * actions of a Visualization are run one after the other. Actions
+     * without a Visualization use the default ordering key.
+     * @see prefux.activity.Activity#getOrderingKey()
+     */
+    protected Object getOrderingKey() {
+        return m_vis != null ? m_vis : super.getOrderingKey();
+    }
+    
+    private void runPaced(double frac) {
         Visualization vis = getVisualization();
         if ( vis != null ) {
             synchronized (vis) {
-                run(getPace(elapsedTime));
+                run(frac);
             }
         } else {
             s_logger.info("Running unsynchronized Action");
-            run(getPace(elapsedTime));
+            run(frac);
         }
     }
     
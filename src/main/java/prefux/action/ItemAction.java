@@ -30,11 +30,19 @@
  */
 package prefux.action;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import prefux.Visualization;
+import prefux.data.Tuple;
 import prefux.data.expression.Predicate;
+import prefux.data.tuple.CompositeTupleSet;
+import prefux.data.tuple.TupleSet;
 import prefux.visual.VisualItem;
+import prefux.visual.VisualTable;
 import prefux.visual.expression.VisiblePredicate;
 
 /**
@@ -43,13 +51,38 @@ import prefux.visual.expression.VisiblePredicate;
  * {@link #setFilterPredicate(Predicate)} method
  * to change the filtering criteria.
  * 
+ * <p>Stateless item actions can be switched to parallel processing with
+ * {@link #setParallel(boolean)}. The rows of the visual tables backing the
+ * processed group are then split into chunks that are processed on the
+ * common {@link ForkJoinPool}, and the change events of the tables are
+ * deferred until all chunks are done.</p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
 public abstract class ItemAction extends GroupAction {
     
+    /** The minimum number of table rows processed by one parallel task */
+    public static final int PARALLEL_GRAIN = 4096;
+    
+    /** The class declaring the process method of each action class */
+    private static final ClassValue<Class<?>> PROCESS_OWNER =
+        new ClassValue<Class<?>>() {
+            protected Class<?> computeValue(Class<?> type) {
+                try {
+                    return type.getMethod("process",
+                        VisualItem.class, double.class).getDeclaringClass();
+                } catch ( NoSuchMethodException e ) {
+                    return ItemAction.class;
+                }
+            }
+        };
+    
     /** A reference to filtering predicate for this Action */
     protected Predicate m_predicate;
     
+    /** Indicates if items are processed in parallel */
+    protected boolean m_parallel = false;
+    
     /**
      * Create a new ItemAction that processes all groups.
      * @see Visualization#ALL_ITEMS
@@ -123,16 +156,173 @@ public abstract class ItemAction extends GroupAction {
         m_predicate = filter;
     }
     
+    /**
+     * Indicates if this Action processes items in parallel.
+     * @return true if items are processed in parallel, false otherwise
+     */
+    public boolean isParallel() {
+        return m_parallel;
+    }
+    
+    /**
+     * Sets whether this Action processes items in parallel. Only enable
+     * this for stateless actions: {@link #process(VisualItem, double)} must
+     * only change the item it is given, must not depend on the order in
+     * which items are processed and must not synchronize on the
+     * Visualization. Listeners of the processed tables are notified with
+     * one update event per changed column once all items are processed.
+     * Groups that are not backed by visual tables, such as focus groups,
+     * and tables with less than {@link #PARALLEL_GRAIN} rows are still
+     * processed sequentially.
+     * @param parallel true to process items in parallel, false to process
+     *  them one after the other
+     */
+    public void setParallel(boolean parallel) {
+        m_parallel = parallel;
+    }
+    
     /**
      * @see prefux.action.Action#run(double)
      */
     public void run(double frac) {
+        if ( m_parallel && runParallel(frac) )
+            return;
         Iterator<VisualItem> items = getVisualization().items(m_group, m_predicate);
         while ( items.hasNext() ) {
             process(items.next(), frac);
         }
     }
     
+    /**
+     * Indicates if a specialized {@link #run(double)} of the given class
+     * may process the items in bulk, without calling
+     * {@link #process(VisualItem, double)}. This is the case if this
+     * action does not process in parallel and its process method is the
+     * one of the given class, not an override of a subclass.
+     * @param cls the class providing the bulk processing
+     * @return true if bulk processing keeps the behavior of this action
+     */
+    protected boolean canProcessInBulk(Class<? extends ItemAction> cls) {
+        return !m_parallel && PROCESS_OWNER.get(getClass()) == cls;
+    }
+    
+    /**
+     * Processes the items of the group table by table, splitting large
+     * tables into chunks processed in parallel.
+     * @return false if the group is not backed by visual tables, in which
+     *  case nothing was processed
+     */
+    private boolean runParallel(double frac) {
+        List<VisualTable> tables = getVisualTables();
+        if ( tables == null )
+            return false;
+        for ( VisualTable vt : tables ) {
+            runParallel(vt, frac);
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the visual tables backing the processed group.
+     * @return the list of visual tables, or null if the group contains
+     *  sets that are not visual tables, such as focus groups
+     */
+    protected List<VisualTable> getVisualTables() {
+        Visualization vis = getVisualization();
+        List<VisualTable> tables = new ArrayList<>();
+        if ( Visualization.ALL_ITEMS.equals(m_group) ) {
+            Iterator<String> groups = vis.getVisualGroupNames();
+            while ( groups.hasNext() ) {
+                if ( !collectTables(vis.getGroup(groups.next()), tables) )
+                    return null;
+            }
+        } else if ( !collectTables(vis.getGroup(m_group), tables) ) {
+            return null;
+        }
+        return tables;
+    }
+    
+    /**
+     * Collects the visual tables making up a group.
+     * @return false if the group contains a set that is not a visual table
+     */
+    private static boolean collectTables(TupleSet ts, List<VisualTable> tables) {
+        if ( ts instanceof VisualTable ) {
+            tables.add((VisualTable)ts);
+            return true;
+        } else if ( ts instanceof CompositeTupleSet ) {
+            Iterator<TupleSet> sets = ((CompositeTupleSet)ts).sets();
+            while ( sets.hasNext() ) {
+                if ( !collectTables(sets.next(), tables) )
+                    return false;
+            }
+            return true;
+        }
+        return ts == null;
+    }
+    
+    /**
+     * Processes the items of a single visual table.
+     */
+    private void runParallel(VisualTable vt, double frac) {
+        int max = vt.getMaximumRow();
+        if ( max < PARALLEL_GRAIN ) {
+            Iterator<? extends Tuple> items = vt.tuples(m_predicate);
+            while ( items.hasNext() ) {
+                process((VisualItem)items.next(), frac);
+            }
+            return;
+        }
+        // size the item array up front, so that the workers only ever
+        // create items in their own rows
+        if ( vt.isValidRow(max) )
+            vt.getItem(max);
+        
+        vt.deferEvents();
+        try {
+            ForkJoinPool.commonPool().invoke(
+                new ProcessTask(vt, 0, max+1, frac));
+        } finally {
+            vt.resumeEvents();
+        }
+    }
+    
+    /**
+     * Processes a range of table rows, splitting it in halves down to
+     * {@link ItemAction#PARALLEL_GRAIN} rows.
+     */
+    private final class ProcessTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final VisualTable m_table;
+        private final int m_start, m_end;
+        private final double m_frac;
+        
+        ProcessTask(VisualTable table, int start, int end, double frac) {
+            m_table = table;
+            m_start = start;
+            m_end = end;
+            m_frac = frac;
+        }
+        
+        protected void compute() {
+            if ( m_end - m_start > PARALLEL_GRAIN ) {
+                int mid = (m_start + m_end) >>> 1;
+                invokeAll(new ProcessTask(m_table, m_start, mid, m_frac),
+                          new ProcessTask(m_table, mid, m_end, m_frac));
+                return;
+            }
+            Predicate p = m_predicate;
+            for ( int row = m_start; row < m_end; ++row ) {
+                if ( !m_table.isValidRow(row) )
+                    continue;
+                VisualItem item = m_table.getItem(row);
+                if ( p == null || p.getBoolean(item) )
+                    process(item, m_frac);
+            }
+        }
+    } // end of inner class ProcessTask
+    
     /**
      * Processes an individual item.
      * @param item the VisualItem to process
@@ -30,11 +30,15 @@
  */
 package prefux.action.animate;
 
+import java.util.Iterator;
+import java.util.List;
 import java.util.logging.Logger;
 
 import prefux.action.ItemAction;
+import prefux.data.Tuple;
 import prefux.util.PrefuseLib;
 import prefux.visual.VisualItem;
+import prefux.visual.VisualTable;
 
 
 /**
@@ -66,6 +70,32 @@ public class ArrayAnimator extends ItemAction {
         m_end = PrefuseLib.getEndField(field);
     }
     
+    /**
+     * Processes the items table by table, invalidating the items of each
+     * table as one batch reported with a single event per frame. Groups
+     * that are not backed by visual tables and parallel processing use
+     * the default item processing.
+     * @see prefux.action.ItemAction#run(double)
+     */
+    public void run(double frac) {
+        List<VisualTable> tables = isParallel() ? null : getVisualTables();
+        if ( tables == null ) {
+            super.run(frac);
+            return;
+        }
+        for ( VisualTable vt : tables ) {
+            vt.deferEvents();
+            try {
+                Iterator<? extends Tuple> items = vt.tuples(m_predicate);
+                while ( items.hasNext() ) {
+                    process((VisualItem)items.next(), frac);
+                }
+            } finally {
+                vt.resumeEvents();
+            }
+        }
+    }
+    
     /**
      * @see prefux.action.ItemAction#process(prefux.visual.VisualItem, double)
      */
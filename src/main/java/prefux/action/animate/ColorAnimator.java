@@ -30,11 +30,15 @@
  */
 package prefux.action.animate;
 
+import java.util.List;
+
 import prefux.action.ItemAction;
+import prefux.data.expression.Predicate;
 import prefux.util.ColorLib;
 import prefux.util.PrefuseLib;
 import prefux.util.collections.CopyOnWriteArrayList;
 import prefux.visual.VisualItem;
+import prefux.visual.VisualTable;
 
 
 /**
@@ -53,6 +57,7 @@ public class ColorAnimator extends ItemAction {
         VisualItem.TEXTCOLOR };
     
     private CopyOnWriteArrayList m_colorFields;
+    private String[] m_fields;
     
     /**
      * Create a new ColorAnimator that processes all data groups.
@@ -112,6 +117,27 @@ public class ColorAnimator extends ItemAction {
             m_colorFields.add(PrefuseLib.getStartField(fields[i]));
             m_colorFields.add(PrefuseLib.getEndField(fields[i]));
         }
+        m_fields = fields.clone();
+    }
+    
+    /**
+     * Interpolates the colors of whole visual tables at once, see
+     * {@link VisualTable#interpolateColors(String[], double, Predicate)}.
+     * Groups that are not backed by visual tables, parallel processing
+     * and subclasses overriding {@link #process(VisualItem, double)} are
+     * processed item by item.
+     * @see prefux.action.ItemAction#run(double)
+     */
+    public void run(double frac) {
+        List<VisualTable> tables = canProcessInBulk(ColorAnimator.class)
+            ? getVisualTables() : null;
+        if ( tables == null ) {
+            super.run(frac);
+            return;
+        }
+        for ( VisualTable vt : tables ) {
+            vt.interpolateColors(m_fields, frac, m_predicate);
+        }
     }
     
     /**
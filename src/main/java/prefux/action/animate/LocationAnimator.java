@@ -30,8 +30,12 @@
  */
 package prefux.action.animate;
 
+import java.util.List;
+
 import prefux.action.ItemAction;
+import prefux.data.expression.Predicate;
 import prefux.visual.VisualItem;
+import prefux.visual.VisualTable;
 
 
 /**
@@ -42,6 +46,9 @@ import prefux.visual.VisualItem;
  */
 public class LocationAnimator extends ItemAction {
 
+    private static final String[] FIELDS = new String[] {
+        VisualItem.X, VisualItem.Y };
+
     /**
      * Create a new LocationAnimator that processes all data groups.
      */
@@ -57,6 +64,26 @@ public class LocationAnimator extends ItemAction {
         super(group);
     }
 
+    /**
+     * Interpolates the locations of whole visual tables at once, see
+     * {@link VisualTable#interpolate(String[], double, Predicate)}.
+     * Groups that are not backed by visual tables, parallel processing
+     * and subclasses overriding {@link #process(VisualItem, double)} are
+     * processed item by item.
+     * @see prefux.action.ItemAction#run(double)
+     */
+    public void run(double frac) {
+        List<VisualTable> tables = canProcessInBulk(LocationAnimator.class)
+            ? getVisualTables() : null;
+        if ( tables == null ) {
+            super.run(frac);
+            return;
+        }
+        for ( VisualTable vt : tables ) {
+            vt.interpolate(FIELDS, frac, m_predicate);
+        }
+    }
+    
     /**
      * @see prefux.action.ItemAction#process(prefux.visual.VisualItem, double)
      */
@@ -67,7 +67,11 @@ import prefux.visual.VisualItem;
  * {@link Constants#QUANTILE_SCALE} value. For the quantile scale to work, you
  * also need to specify the number of bins to use (see
  * {@link #setBinCount(int)}). This value will determine the number of
- * quantiles that the data should be divided into. 
+ * quantiles that the data should be divided into. The quantile boundaries
+ * are taken from the distribution summary of the data field (see
+ * {@link prefux.util.DataLib#distribution(prefux.data.tuple.TupleSet, String)}),
+ * which tables keep up to date as values change, and are approximate for
+ * large data sets.
  * </p>
  * 
  * </p>
@@ -328,9 +332,7 @@ public class DataColorAction extends ColorAction {
         if ( m_type == Constants.NUMERICAL ) {
             m_omap = null;
             if ( m_scale == Constants.QUANTILE_SCALE && m_bins > 0 ) {
-                double[] values =
-                        DataLib.toDoubleArray(ts.tuples(), m_dataField);
-                return MathLib.quantiles(m_bins, values);
+                return DataLib.quantiles(ts, m_dataField, m_bins);
             } else {
                 double[] dist = new double[2];
                 dist[0] = DataLib.min(ts, m_dataField).getDouble(m_dataField);
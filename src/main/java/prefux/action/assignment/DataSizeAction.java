@@ -61,7 +61,11 @@ import prefux.visual.VisualItem;
  * {@link Constants#QUANTILE_SCALE} value. For the quantile scale to work, you
  * also need to specify the number of bins to use (see
  * {@link #setBinCount(int)}). This value will determine the number of
- * quantiles that the data should be divided into. 
+ * quantiles that the data should be divided into. The quantile boundaries
+ * are taken from the distribution summary of the data field (see
+ * {@link prefux.util.DataLib#distribution(prefux.data.tuple.TupleSet, String)}),
+ * which tables keep up to date as values change, and are approximate for
+ * large data sets.
  * </p>
  * 
  * <p>
@@ -334,9 +338,7 @@ public class DataSizeAction extends SizeAction {
         
         if ( m_inferBounds ) {
             if ( m_scale == Constants.QUANTILE_SCALE && m_bins > 0 ) {
-                double[] values =
-                    DataLib.toDoubleArray(ts.tuples(), m_dataField);
-                m_dist = MathLib.quantiles(m_bins, values);
+                m_dist = DataLib.quantiles(ts, m_dataField, m_bins);
             } else {
                 // check for non-binned quantile scale error
                 if ( m_scale == Constants.QUANTILE_SCALE ) {
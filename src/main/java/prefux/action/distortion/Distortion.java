@@ -30,7 +30,9 @@
  */
 package prefux.action.distortion;
 
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 
 import javafx.geometry.Rectangle2D;
 import prefux.action.layout.Layout;
@@ -40,6 +42,16 @@ import prefux.visual.VisualItem;
 
 /**
  * Abstract base class providing a structure for space-distortion techniques.
+ * 
+ * <p>The undistorted positions and sizes of the items are their end values.
+ * By default the whole layout bounds are distorted. With a positive
+ * {@link #setLensRadius(double) lens radius}, only the space within that
+ * distance of the focus is distorted, which is then passed on to the
+ * distortion functions as bounds. Items outside the lens are left at their
+ * undistorted positions, and a run only visits the items within the lens,
+ * found through a grid over the end coordinates of the group, and those
+ * that have to be restored as they left the lens. Without a focus, all
+ * visible items are reset to their undistorted positions and sizes.</p>
  *
  * @version 1.0
  * @author <a href="http://jheer.org">jeffrey heer</a>
@@ -51,6 +63,12 @@ public abstract class Distortion extends Layout {
     protected boolean m_distortX = true;
     protected boolean m_distortY = true;
     
+    private double m_radius = 0;
+    private final ItemGrid m_grid = new ItemGrid();
+    // the items distorted by the last run, and by the current one
+    private Set<VisualItem> m_distorted = new HashSet<>();
+    private Set<VisualItem> m_current = new HashSet<>();
+    
     // ------------------------------------------------------------------------
     
     /**
@@ -87,6 +105,27 @@ public abstract class Distortion extends Layout {
         return m_distortSize;
     }
     
+    /**
+     * Sets the radius of the lens around the distortion focus. If positive,
+     * only the space within that distance of the focus along either axis is
+     * distorted, and items outside the lens keep their undistorted positions
+     * and sizes.
+     * @param r the lens radius in layout coordinates, or 0 to distort the
+     * whole layout bounds
+     */
+    public void setLensRadius(double r) {
+        m_radius = r;
+    }
+    
+    /**
+     * Returns the radius of the lens around the distortion focus.
+     * @return the lens radius in layout coordinates, 0 if the whole layout
+     * bounds are distorted
+     */
+    public double getLensRadius() {
+        return m_radius;
+    }
+    
     // ------------------------------------------------------------------------
     
     /**
@@ -96,37 +135,96 @@ public abstract class Distortion extends Layout {
         Rectangle2D bounds = getLayoutBounds();
         Point2D anchor = correct(m_anchor, bounds);
         
-        final Iterator<VisualItem> iter = getVisualization().visibleItems(m_group);
+        // compute distortion if we have a distortion focus
+        if ( anchor != null && m_radius > 0 ) {
+            Rectangle2D lens = getLensBounds(anchor, bounds);
+            m_grid.update(getVisualization(), m_group);
+            m_grid.query(lens, item -> {
+                if ( item.isVisible() && !item.isFixed() )
+                    distort(item, anchor, lens);
+            });
+        } else {
+            final Iterator<VisualItem> iter =
+                getVisualization().visibleItems(m_group);
+            while ( iter.hasNext() ) {
+                VisualItem item = iter.next();
+                if ( item.isFixed() )
+                    continue;
+                if ( anchor != null )
+                    distort(item, anchor, bounds);
+                else // no focus, snap back to the undistorted values
+                    set(item, item.getEndX(), item.getEndY(),
+                        item.getEndSize());
+            }
+        }
         
-        while ( iter.hasNext() ) {
-            VisualItem item = iter.next();
-            if ( item.isFixed() ) continue;
-            
-            // reset distorted values
-            // TODO - make this play nice with animation?
-            item.setX(item.getEndX());
-            item.setY(item.getEndY());
-            item.setSize(item.getEndSize());
-            
-            // compute distortion if we have a distortion focus
-            if ( anchor != null ) {
-                Rectangle2D bbox = item.getBounds();
-                double x = item.getX();
-                double y = item.getY();
-                
-                // position distortion
-                if ( m_distortX )
-                    item.setX(x=distortX(x, anchor, bounds));
-                if ( m_distortY )
-                    item.setY(y=distortY(y, anchor, bounds));
-                
-                // size distortion
-                if ( m_distortSize ) {
-                    double sz = distortSize(bbox, x, y, anchor, bounds);
-                    item.setSize(sz*item.getSize());
-                }
+        // reset the items distorted before, but not anymore
+        // TODO - make this play nice with animation?
+        for ( VisualItem item : m_distorted ) {
+            if ( m_current.contains(item) || !item.isValid() ) {
+                continue;
+            } else if ( item.isFixed() ) {
+                m_current.add(item); // reset once released
+            } else {
+                set(item, item.getEndX(), item.getEndY(), item.getEndSize());
             }
         }
+        Set<VisualItem> tmp = m_distorted;
+        m_distorted = m_current;
+        m_current = tmp;
+        m_current.clear();
+    }
+    
+    /**
+     * Distort the position and size of an item, starting from its end
+     * values.
+     */
+    private void distort(VisualItem item, Point2D anchor, Rectangle2D bounds) {
+        Rectangle2D bbox = item.getBounds();
+        double x = item.getEndX();
+        double y = item.getEndY();
+        double size = item.getEndSize();
+        
+        // position distortion
+        if ( m_distortX )
+            x = distortX(x, anchor, bounds);
+        if ( m_distortY )
+            y = distortY(y, anchor, bounds);
+        
+        // size distortion
+        if ( m_distortSize )
+            size = distortSize(bbox, x, y, anchor, bounds)*size;
+        
+        set(item, x, y, size);
+        m_current.add(item);
+    }
+    
+    /**
+     * Set the position and size of an item, skipping unchanged values.
+     */
+    private static void set(VisualItem item, double x, double y, double size)
+    {
+        if ( Double.compare(item.getX(), x) != 0 )
+            item.setX(x);
+        if ( Double.compare(item.getY(), y) != 0 )
+            item.setY(y);
+        if ( Double.compare(item.getSize(), size) != 0 )
+            item.setSize(size);
+    }
+    
+    /**
+     * Returns the bounds of the lens around the given focus, clipped to the
+     * layout bounds.
+     * @param anchor the corrected anchor point
+     * @param bounds the layout bounds
+     * @return the lens bounds
+     */
+    protected Rectangle2D getLensBounds(Point2D anchor, Rectangle2D bounds) {
+        double x1 = Math.max(bounds.getMinX(), anchor.getX()-m_radius);
+        double y1 = Math.max(bounds.getMinY(), anchor.getY()-m_radius);
+        double x2 = Math.min(bounds.getMaxX(), anchor.getX()+m_radius);
+        double y2 = Math.min(bounds.getMaxY(), anchor.getY()+m_radius);
+        return new Rectangle2D(x1, y1, x2-x1, y2-y1);
     }
     
     /**
@@ -0,0 +1,260 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.action.distortion;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+import javafx.geometry.Rectangle2D;
+import prefux.Visualization;
+import prefux.data.Table;
+import prefux.data.event.EventConstants;
+import prefux.data.event.TableListener;
+import prefux.data.tuple.CompositeTupleSet;
+import prefux.data.tuple.TupleSet;
+import prefux.visual.VisualItem;
+
+/**
+ * <p>Uniform grid over the end coordinates of the items of a visual group,
+ * used by {@link Distortion} to find the items within its lens without
+ * visiting the whole group.</p>
+ * 
+ * <p>The grid listens to the tables backing the group and is rebuilt on
+ * the next update once rows were added or removed or end coordinates have
+ * changed. The tables only hold a weak reference to the grid, so that a
+ * discarded distortion is not kept alive by them. Groups that are not
+ * backed by tables are indexed anew on every update. Items without valid
+ * end coordinates are not indexed.</p>
+ */
+final class ItemGrid {
+
+    private final Listener m_listener = new Listener(this);
+    private TupleSet m_source;
+    private final ArrayList<Table> m_tables = new ArrayList<>();
+    private boolean m_tracked; // all changes of the source are seen
+    private boolean m_stale = true;
+    
+    private VisualItem[] m_items = new VisualItem[0];
+    private double[] m_x = new double[0], m_y = new double[0];
+    private int[]    m_cellOf = new int[0];
+    private int      m_count;
+    
+    private int[]  m_start = new int[1];   // first entry of each cell
+    private int[]  m_entries = new int[0]; // item indices, ordered by cell
+    private int    m_cols, m_rows;
+    private double m_minX, m_minY, m_maxX, m_maxY, m_cell;
+    
+    /**
+     * Bring the grid up to date with the given group.
+     * @param vis the visualization
+     * @param group the visual group to index
+     */
+    void update(Visualization vis, String group) {
+        TupleSet ts = vis.getGroup(group);
+        if ( ts != m_source ) {
+            attach(ts);
+            m_stale = true;
+        }
+        if ( m_stale || !m_tracked ) {
+            build(vis.items(group));
+            m_stale = false;
+        }
+    }
+    
+    /**
+     * Visit the indexed items whose end coordinates lie within the given
+     * rectangle.
+     * @param r the query rectangle
+     * @param visitor the visitor to call for every item found
+     */
+    void query(Rectangle2D r, Consumer<VisualItem> visitor) {
+        double x1 = r.getMinX(), y1 = r.getMinY();
+        double x2 = r.getMaxX(), y2 = r.getMaxY();
+        if ( m_count == 0 || x2 < m_minX || x1 > m_maxX ||
+             y2 < m_minY || y1 > m_maxY )
+        {
+            return;
+        }
+        int cx1 = col(x1), cx2 = col(x2);
+        int cy1 = row(y1), cy2 = row(y2);
+        for ( int cy = cy1; cy <= cy2; ++cy ) {
+            for ( int c = cy*m_cols+cx1, e = cy*m_cols+cx2; c <= e; ++c ) {
+                for ( int k = m_start[c]; k < m_start[c+1]; ++k ) {
+                    int i = m_entries[k];
+                    double x = m_x[i], y = m_y[i];
+                    if ( x >= x1 && x <= x2 && y >= y1 && y <= y2 )
+                        visitor.accept(m_items[i]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Note a change of one of the tables backing the group.
+     */
+    private void tableChanged(Table t, int col, int type) {
+        if ( type != EventConstants.UPDATE ||
+             col == EventConstants.ALL_COLUMNS )
+        {
+            m_stale = true;
+        } else {
+            String name = t.getColumnName(col);
+            if ( VisualItem.ENDX.equals(name) || VisualItem.ENDY.equals(name) )
+                m_stale = true;
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    private void attach(TupleSet ts) {
+        for ( Table t : m_tables )
+            t.removeTableListener(m_listener);
+        m_tables.clear();
+        
+        m_source = ts;
+        m_tracked = true;
+        if ( ts instanceof Table ) {
+            m_tables.add((Table)ts);
+        } else if ( ts instanceof CompositeTupleSet ) {
+            Iterator<TupleSet> sets = ((CompositeTupleSet)ts).sets();
+            while ( sets.hasNext() ) {
+                TupleSet set = sets.next();
+                if ( set instanceof Table )
+                    m_tables.add((Table)set);
+                else
+                    m_tracked = false;
+            }
+        } else {
+            m_tracked = false;
+        }
+        for ( Table t : m_tables )
+            t.addTableListener(m_listener);
+    }
+    
+    private void build(Iterator<VisualItem> items) {
+        m_count = 0;
+        m_minX = m_minY = Double.POSITIVE_INFINITY;
+        m_maxX = m_maxY = Double.NEGATIVE_INFINITY;
+        while ( items.hasNext() ) {
+            VisualItem item = items.next();
+            double x = item.getEndX(), y = item.getEndY();
+            if ( Double.isNaN(x) || Double.isInfinite(x) ||
+                 Double.isNaN(y) || Double.isInfinite(y) )
+            {
+                continue;
+            }
+            if ( m_count == m_items.length ) {
+                int cap = Math.max(16, 2*m_count);
+                m_items = Arrays.copyOf(m_items, cap);
+                m_x = Arrays.copyOf(m_x, cap);
+                m_y = Arrays.copyOf(m_y, cap);
+                m_cellOf = new int[cap];
+                m_entries = new int[cap];
+            }
+            m_items[m_count] = item;
+            m_x[m_count] = x;
+            m_y[m_count] = y;
+            ++m_count;
+            m_minX = Math.min(m_minX, x);
+            m_minY = Math.min(m_minY, y);
+            m_maxX = Math.max(m_maxX, x);
+            m_maxY = Math.max(m_maxY, y);
+        }
+        // release items no longer in the group
+        Arrays.fill(m_items, m_count, m_items.length, null);
+        if ( m_count == 0 ) return;
+        
+        // size the cells to hold about two items each
+        int cells = Math.max(1, m_count/2);
+        double w = m_maxX-m_minX, h = m_maxY-m_minY;
+        m_cell = ( w*h > 0 ? Math.sqrt(w*h/cells) : Math.max(w, h)/cells );
+        if ( !(m_cell > 0) ) m_cell = 1;
+        m_cols = (int)Math.min(w/m_cell, cells) + 1;
+        m_rows = (int)Math.min(h/m_cell, cells) + 1;
+        
+        // sort the items into the cells
+        int n = m_cols*m_rows;
+        if ( m_start.length < n+1 )
+            m_start = new int[n+1];
+        else
+            Arrays.fill(m_start, 0, n+1, 0);
+        for ( int i=0; i<m_count; ++i ) {
+            int c = row(m_y[i])*m_cols + col(m_x[i]);
+            m_cellOf[i] = c;
+            m_start[c+1]++;
+        }
+        for ( int c=0; c<n; ++c )
+            m_start[c+1] += m_start[c];
+        for ( int i=0; i<m_count; ++i ) {
+            int c = m_cellOf[i];
+            // the start offset serves as insertion cursor ...
+            m_entries[m_start[c]++] = i;
+        }
+        // ... and is shifted back afterwards
+        for ( int c=n; c>0; --c )
+            m_start[c] = m_start[c-1];
+        m_start[0] = 0;
+    }
+    
+    private int col(double x) {
+        int c = (int)((x-m_minX)/m_cell);
+        return ( c < 0 ? 0 : ( c >= m_cols ? m_cols-1 : c ) );
+    }
+    
+    private int row(double y) {
+        int r = (int)((y-m_minY)/m_cell);
+        return ( r < 0 ? 0 : ( r >= m_rows ? m_rows-1 : r ) );
+    }
+    
+    /**
+     * Forwards table events to a grid as long as the grid is in use, and
+     * removes itself from the table once the grid has been collected.
+     */
+    private static final class Listener implements TableListener {
+        private final WeakReference<ItemGrid> m_grid;
+        
+        Listener(ItemGrid grid) {
+            m_grid = new WeakReference<>(grid);
+        }
+        
+        public void tableChanged(Table t, int start, int end, int col, int type) {
+            ItemGrid grid = m_grid.get();
+            if ( grid == null )
+                t.removeTableListener(this);
+            else
+                grid.tableChanged(t, col, type);
+        }
+    } // end of inner class Listener
+    
+} // end of class ItemGrid
@@ -0,0 +1,408 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.action.filter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import prefux.Display;
+import prefux.FxDisplay;
+import prefux.action.GroupAction;
+import prefux.data.Graph;
+import prefux.data.Table;
+import prefux.data.util.ClusterHierarchy;
+import prefux.render.BindingQueue;
+import prefux.util.ArrayLib;
+import prefux.util.PrefuseLib;
+import prefux.util.collections.IntIterator;
+import prefux.util.collections.IntObjectHashMap;
+import prefux.visual.AggregateItem;
+import prefux.visual.AggregateTable;
+import prefux.visual.VisualItem;
+
+/**
+ * <p>Filter Action that shows a summarized view of a large hierarchy. The
+ * nodes of the processed graph are organized in a {@link ClusterHierarchy}
+ * (the tree itself, or a spanning forest over the out-links of a graph).
+ * Starting at the roots, the largest clusters are expanded until the number
+ * of visible clusters reaches the current budget. Clusters that remain
+ * collapsed are represented by their root node together with an
+ * {@link AggregateItem}, which holds the number of nodes in the cluster in
+ * the {@link #CLUSTER_SIZE} field.</p>
+ * 
+ * <p>The budget is the maximum cluster count scaled by the square of the
+ * zoom factor, so that zooming in expands clusters and zooming out collapses
+ * them again. Update the zoom factor with {@link #setZoom(double)} and run
+ * the action again. Only the items whose visibility changed since the last
+ * run are touched, and aggregate items only exist for the collapsed
+ * clusters currently shown, so the work per run is proportional to the
+ * number of visible clusters.</p>
+ * 
+ * <p>The visual graph still has an item row for every node and edge of the
+ * source graph, only the aggregates and, with a lazy
+ * {@link FxDisplay}, the JavaFX nodes are limited to the visible clusters.
+ * The first run, and the first run after {@link #invalidate()}, computes
+ * the hierarchy and hides the visible items, which takes time proportional
+ * to the size of the graph.</p>
+ * 
+ * <p>Aggregates are placed at the location of their cluster root on every
+ * run. Run this action after the layout to keep them in place.</p>
+ */
+public class ClusterAggregateFilter extends GroupAction {
+
+    /** The data field holding the number of nodes in a collapsed cluster. */
+    public static final String CLUSTER_SIZE = "_clusterSize";
+    /** The data field holding the node row of the cluster root. */
+    public static final String CLUSTER_NODE = "_clusterNode";
+    
+    /** The default maximum number of visible clusters. */
+    public static final int DEFAULT_MAX_CLUSTERS = 500;
+    
+    private String m_aggregates;
+    private int m_maxClusters;
+    private double m_zoom = 1.0;
+    
+    private Graph m_graph;
+    private ClusterHierarchy m_hierarchy;
+    
+    private BitSet m_shown = new BitSet();
+    private int[] m_shownRows = new int[0];
+    private int m_shownCount = 0;
+    private IntObjectHashMap m_clusters = new IntObjectHashMap();
+    
+    /**
+     * Create a new ClusterAggregateFilter.
+     * @param group the data group to process. This should resolve to
+     * a Graph instance, otherwise exceptions will result when this
+     * Action is run.
+     * @param aggregates the group of the aggregate table to use for
+     * collapsed clusters, see
+     * {@link prefux.Visualization#addAggregates(String)}
+     */
+    public ClusterAggregateFilter(String group, String aggregates) {
+        this(group, aggregates, DEFAULT_MAX_CLUSTERS);
+    }
+    
+    /**
+     * Create a new ClusterAggregateFilter.
+     * @param group the data group to process. This should resolve to
+     * a Graph instance, otherwise exceptions will result when this
+     * Action is run.
+     * @param aggregates the group of the aggregate table to use for
+     * collapsed clusters, see
+     * {@link prefux.Visualization#addAggregates(String)}
+     * @param maxClusters the maximum number of visible clusters at a zoom
+     * factor of 1
+     */
+    public ClusterAggregateFilter(String group, String aggregates,
+                                  int maxClusters)
+    {
+        super(group);
+        m_aggregates = aggregates;
+        m_maxClusters = maxClusters;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Get the maximum number of visible clusters at a zoom factor of 1.
+     * @return the maximum number of visible clusters
+     */
+    public int getMaxClusters() {
+        return m_maxClusters;
+    }
+    
+    /**
+     * Set the maximum number of visible clusters at a zoom factor of 1.
+     * @param maxClusters the maximum number of visible clusters
+     */
+    public void setMaxClusters(int maxClusters) {
+        m_maxClusters = maxClusters;
+    }
+    
+    /**
+     * Get the current zoom factor.
+     * @return the zoom factor
+     */
+    public double getZoom() {
+        return m_zoom;
+    }
+    
+    /**
+     * Set the current zoom factor. The number of visible clusters grows with
+     * the square of the zoom factor.
+     * @param zoom the zoom factor
+     */
+    public void setZoom(double zoom) {
+        m_zoom = zoom;
+    }
+    
+    /**
+     * Get the cluster hierarchy computed at the last run.
+     * @return the cluster hierarchy, or null if the action did not run yet
+     */
+    public ClusterHierarchy getHierarchy() {
+        return m_hierarchy;
+    }
+    
+    /**
+     * Discard the cluster hierarchy, so that it is recomputed at the next
+     * run. Call this method after structural changes of the graph.
+     */
+    public void invalidate() {
+        m_hierarchy = null;
+    }
+    
+    /**
+     * Get the number of clusters shown after the last run.
+     * @return the number of visible clusters
+     */
+    public int getVisibleClusterCount() {
+        return m_shownCount;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * @see prefux.action.GroupAction#run(double)
+     */
+    public void run(double frac) {
+        Graph g = (Graph)m_vis.getGroup(m_group);
+        AggregateTable at = (AggregateTable)m_vis.getGroup(m_aggregates);
+        if ( at.getColumnNumber(CLUSTER_SIZE) < 0 )
+            at.addColumn(CLUSTER_SIZE, int.class);
+        if ( at.getColumnNumber(CLUSTER_NODE) < 0 )
+            at.addColumn(CLUSTER_NODE, int.class, -1);
+        
+        List<VisualItem> changed = new ArrayList<>();
+        List<VisualItem> added = new ArrayList<>();
+        List<VisualItem> removed = new ArrayList<>();
+        
+        if ( g != m_graph || m_hierarchy == null ) {
+            reset(g, at, changed, removed);
+        }
+        
+        // expand the largest clusters first, until the budget is reached
+        ClusterHierarchy h = m_hierarchy;
+        int budget = (int)Math.min(Integer.MAX_VALUE,
+                                   m_maxClusters*m_zoom*m_zoom);
+        budget = Math.max(budget, h.getRootCount());
+        
+        BitSet shown = new BitSet();
+        BitSet expanded = new BitSet();
+        int[] rows = new int[Math.min(budget, 1024)];
+        int count = 0;
+        PriorityQueue<Integer> queue = new PriorityQueue<>(11,
+            (a, b) -> h.getClusterSize(b) - h.getClusterSize(a));
+        for ( int i=0; i<h.getRootCount(); ++i ) {
+            int r = h.getRoot(i);
+            rows = append(rows, count++, r);
+            shown.set(r);
+            if ( h.getClusterSize(r) > 1 ) queue.add(r);
+        }
+        while ( !queue.isEmpty() && count < budget ) {
+            int r = queue.poll();
+            int cc = h.getChildCount(r);
+            if ( count + cc > budget ) continue;
+            expanded.set(r);
+            for ( int i=0; i<cc; ++i ) {
+                int c = h.getChildRow(r, i);
+                rows = append(rows, count++, c);
+                shown.set(c);
+                if ( h.getClusterSize(c) > 1 ) queue.add(c);
+            }
+        }
+        
+        // hide the clusters that are no longer shown
+        for ( int i=0; i<m_shownCount; ++i ) {
+            int r = m_shownRows[i];
+            if ( !shown.get(r) )
+                setNodeVisible(g, r, false, shown, changed);
+        }
+        // show the new clusters and update the aggregates
+        for ( int i=0; i<count; ++i ) {
+            int r = rows[i];
+            if ( !m_shown.get(r) )
+                setNodeVisible(g, r, true, shown, changed);
+            VisualItem item = (VisualItem)g.getNode(r);
+            item.setExpanded(expanded.get(r));
+        }
+        updateAggregates(g, at, rows, count, expanded, added, removed);
+        
+        m_shown = shown;
+        m_shownRows = rows;
+        m_shownCount = count;
+        
+        if ( !changed.isEmpty() || !added.isEmpty() || !removed.isEmpty() )
+            BindingQueue.enqueue(() -> syncDisplays(changed, added, removed));
+    }
+    
+    /**
+     * Compute a new hierarchy and hide all items of the graph, except the
+     * ones that are shown later on. The visible flag is read from the
+     * tables, so that no item objects are created for hidden rows.
+     */
+    private void reset(Graph g, AggregateTable at, List<VisualItem> changed,
+                       List<VisualItem> removed)
+    {
+        m_graph = g;
+        m_hierarchy = new ClusterHierarchy(g);
+        Table nodes = g.getNodeTable();
+        for ( IntIterator rows = g.nodeRows(); rows.hasNext(); ) {
+            int r = rows.nextInt();
+            if ( nodes.getBoolean(r, VisualItem.VISIBLE) )
+                hide((VisualItem)g.getNode(r), changed);
+        }
+        Table edges = g.getEdgeTable();
+        for ( IntIterator rows = g.edgeRows(); rows.hasNext(); ) {
+            int r = rows.nextInt();
+            if ( edges.getBoolean(r, VisualItem.VISIBLE) )
+                hide((VisualItem)g.getEdge(r), changed);
+        }
+        
+        int[] keys = new int[m_clusters.size()];
+        m_clusters.keys(keys);
+        for ( int i=0; i<keys.length; ++i )
+            removeAggregate(at, keys[i], removed);
+        m_shown = new BitSet();
+        m_shownCount = 0;
+    }
+    
+    private void hide(VisualItem item, List<VisualItem> changed) {
+        if ( item.isVisible() ) {
+            PrefuseLib.updateVisible(item, false);
+            changed.add(item);
+        }
+    }
+    
+    /**
+     * Update the visibility of a node and of its incident edges. An edge is
+     * visible when both of its nodes are.
+     */
+    private void setNodeVisible(Graph g, int node, boolean visible,
+                                BitSet shown, List<VisualItem> changed)
+    {
+        VisualItem item = (VisualItem)g.getNode(node);
+        if ( item.isVisible() != visible ) {
+            PrefuseLib.updateVisible(item, visible);
+            changed.add(item);
+        }
+        for ( IntIterator edges = g.edgeRows(node); edges.hasNext(); ) {
+            int e = edges.nextInt();
+            boolean v = visible && shown.get(g.getAdjacentNode(e, node));
+            VisualItem edge = (VisualItem)g.getEdge(e);
+            if ( edge.isVisible() != v ) {
+                PrefuseLib.updateVisible(edge, v);
+                changed.add(edge);
+            }
+        }
+    }
+    
+    /**
+     * Create aggregates for the collapsed clusters that need one, remove the
+     * aggregates of clusters that were expanded or hidden, and move all
+     * aggregates to the location of their cluster root.
+     */
+    private void updateAggregates(Graph g, AggregateTable at, int[] rows,
+            int count, BitSet expanded, List<VisualItem> added,
+            List<VisualItem> removed)
+    {
+        ClusterHierarchy h = m_hierarchy;
+        BitSet collapsed = new BitSet();
+        for ( int i=0; i<count; ++i ) {
+            int r = rows[i];
+            if ( expanded.get(r) || h.getClusterSize(r) <= 1 )
+                continue;
+            collapsed.set(r);
+            
+            VisualItem node = (VisualItem)g.getNode(r);
+            AggregateItem aitem = (AggregateItem)m_clusters.get(r);
+            if ( aitem == null ) {
+                aitem = (AggregateItem)at.addItem();
+                aitem.setInt(CLUSTER_NODE, r);
+                aitem.setInt(CLUSTER_SIZE, h.getClusterSize(r));
+                aitem.addItem(node);
+                m_clusters.put(r, aitem);
+                added.add(aitem);
+            }
+            aitem.setX(node.getX());
+            aitem.setY(node.getY());
+        }
+        
+        int[] keys = new int[m_clusters.size()];
+        m_clusters.keys(keys);
+        for ( int i=0; i<keys.length; ++i ) {
+            if ( !collapsed.get(keys[i]) )
+                removeAggregate(at, keys[i], removed);
+        }
+    }
+    
+    private void removeAggregate(AggregateTable at, int node,
+                                 List<VisualItem> removed)
+    {
+        AggregateItem aitem = (AggregateItem)m_clusters.get(node);
+        m_clusters.removeKey(node);
+        removed.add(aitem);
+        at.removeTuple(aitem);
+    }
+    
+    /**
+     * Apply the changes to the JavaFX nodes of all displays. Runs on the
+     * JavaFX application thread.
+     */
+    private void syncDisplays(List<VisualItem> changed,
+            List<VisualItem> added, List<VisualItem> removed)
+    {
+        for ( int i=0; i<m_vis.getDisplayCount(); ++i ) {
+            Display d = m_vis.getDisplay(i);
+            if ( !(d instanceof FxDisplay) ) continue;
+            FxDisplay display = (FxDisplay)d;
+            for ( VisualItem item : removed )
+                display.removeItem(item);
+            for ( VisualItem item : added )
+                display.addItem(item);
+        }
+        for ( VisualItem item : changed ) {
+            if ( item.getNode() != null )
+                item.getNode().setVisible(item.isVisible());
+        }
+    }
+    
+    private static int[] append(int[] a, int idx, int value) {
+        if ( idx >= a.length )
+            a = ArrayLib.resize(a, Math.max(2*a.length, idx+1));
+        a[idx] = value;
+        return a;
+    }
+    
+} // end of class ClusterAggregateFilter
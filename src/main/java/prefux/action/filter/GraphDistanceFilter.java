@@ -30,18 +30,23 @@
  */
 package prefux.action.filter;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 
 import prefux.Constants;
 import prefux.Visualization;
 import prefux.action.GroupAction;
 import prefux.data.Graph;
+import prefux.data.Table;
 import prefux.data.Tuple;
+import prefux.data.event.EventConstants;
+import prefux.data.event.GraphListener;
 import prefux.data.expression.Predicate;
 import prefux.data.tuple.TupleSet;
-import prefux.data.util.BreadthFirstIterator;
 import prefux.data.util.FilterIterator;
 import prefux.util.PrefuseLib;
+import prefux.visual.EdgeItem;
 import prefux.visual.VisualItem;
 import prefux.visual.expression.InGroupPredicate;
 
@@ -49,6 +54,13 @@ import prefux.visual.expression.InGroupPredicate;
  * Filter Action that sets visible all items within a specified graph distance
  * from a set of focus items; all other items will be set to invisible.
  * 
+ * <p>By default the filter runs incrementally. It keeps the distances of
+ * the previous run, and only updates items whose visibility, distance or
+ * expansion changed. Unreached items are hidden if they were reached by
+ * the previous run, or were added or made visible since, so that the
+ * work per run is proportional to the old and new neighborhoods of the
+ * focus rather than to the size of the graph.</p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
 public class GraphDistanceFilter extends GroupAction {
@@ -56,7 +68,27 @@ public class GraphDistanceFilter extends GroupAction {
     protected int m_distance;
     protected String m_sources;
     protected Predicate m_groupP;
-    protected BreadthFirstIterator m_bfs;
+    
+    // breadth first search state, indexed by node and edge rows. Only the
+    // depths of the reached nodes and edges are set, all others are -1.
+    private int[] m_nodeDepth = new int[0];
+    private int[] m_edgeDepth = new int[0];
+    private int[] m_queue = new int[0];  // reached nodes
+    private int[] m_edges = new int[0];  // reached edges
+    private int m_tail, m_edgeCount;
+    
+    // the state of the previous run
+    private int[] m_prevNodeDepth = new int[0];
+    private int[] m_prevEdgeDepth = new int[0];
+    private int[] m_prevQueue = new int[0];
+    private int[] m_prevEdges = new int[0];
+    private int m_prevTail, m_prevEdgeCount;
+    
+    private boolean m_incremental = true;
+    private boolean m_full = true; // the next run has to visit all items
+    private boolean m_running = false;
+    private Graph m_graph;
+    private final Tracker m_tracker = new Tracker();
    
     /**
      * Create a new GraphDistanceFilter that processes the given data group
@@ -104,7 +136,6 @@ public class GraphDistanceFilter extends GroupAction {
         m_distance = distance;
         m_groupP = new InGroupPredicate(
             PrefuseLib.getGroupName(group, Graph.NODES));
-        m_bfs = new BreadthFirstIterator();
     }
     
     /**
@@ -143,48 +174,288 @@ public class GraphDistanceFilter extends GroupAction {
         m_sources = sources;
     }
     
+    /**
+     * Indicates if this filter only updates the items whose state changed
+     * since the previous run.
+     * @return true if the filter runs incrementally, false if every run
+     * updates all items
+     */
+    public boolean isIncremental() {
+        return m_incremental;
+    }
+    
+    /**
+     * Set if this filter only updates the items whose state changed since
+     * the previous run. Incremental runs are enabled by default and give
+     * the same results as complete runs.
+     * @param incremental true to run incrementally, false to update all
+     * items on every run
+     */
+    public void setIncremental(boolean incremental) {
+        m_incremental = incremental;
+        m_full = true;
+    }
+    
     /**
      * @see prefux.action.GroupAction#run(double)
      */
     public void run(double frac) {
-        // mark the items
-        Iterator<VisualItem> items = m_vis.visibleItems(m_group);
-        while ( items.hasNext() ) {
-            VisualItem item = items.next();
-            item.setDOI(Constants.MINIMUM_DOI);
+        Graph g = (Graph)m_vis.getGroup(m_group);
+        if ( g != m_graph ) {
+            if ( m_graph != null )
+                m_graph.removeGraphModelListener(m_tracker);
+            m_graph = g;
+            m_tracker.init(g);
+            g.addGraphModelListener(m_tracker);
+            m_full = true;
         }
+        boolean full = m_full || !m_incremental;
+        m_full = true; // until this run is done
+        m_running = true;
+        try {
+            filter(g, full);
+        } finally {
+            m_running = false;
+        }
+        m_full = false;
+    }
+    
+    private void filter(Graph g, boolean full) {
+        // set up the graph traversal, keeping the previous state
+        ensureCapacity(g.getNodeTable().getMaximumRow()+1,
+                       g.getEdgeTable().getMaximumRow()+1);
+        if ( full ) {
+            // start from a clean state, also after an aborted run
+            Arrays.fill(m_nodeDepth, -1);
+            Arrays.fill(m_edgeDepth, -1);
+            Arrays.fill(m_prevNodeDepth, -1);
+            Arrays.fill(m_prevEdgeDepth, -1);
+            m_tail = m_edgeCount = 0;
+        }
+        swap();
+        final int[] ndepth = m_nodeDepth;
+        final int[] edepth = m_edgeDepth;
+        final int[] queue = m_queue;
+        final int[] edges = m_edges;
         
-        // set up the graph traversal
+        // seed the queue with the source nodes
+        m_tail = m_edgeCount = 0;
         TupleSet src = m_vis.getGroup(m_sources);
         Iterator<Tuple> srcs = new FilterIterator(src.tuples(), m_groupP);
-        m_bfs.init(srcs, m_distance, Constants.NODE_AND_EDGE_TRAVERSAL);
+        while ( srcs.hasNext() ) {
+            int r = srcs.next().getRow();
+            if ( ndepth[r] < 0 ) {
+                ndepth[r] = 0;
+                queue[m_tail++] = r;
+            }
+        }
         
-        // traverse the graph
-        while ( m_bfs.hasNext() ) {
-            VisualItem item = (VisualItem)m_bfs.next();
-            int d = m_bfs.getDepth(item);
-            PrefuseLib.updateVisible(item, true);
-            item.setDOI(-d);
-            item.setExpanded(d < m_distance);
+        // traverse the graph on node and edge rows
+        for ( int head=0; head<m_tail; ++head ) {
+            int n = queue[head];
+            final int d = ndepth[n];
+            
+            if ( d < m_distance ) {
+                g.visitNeighbors(n, Graph.UNDIRECTED, (v, e) -> {
+                    if ( edepth[e] < 0 ) {
+                        edepth[e] = d+1;
+                        edges[m_edgeCount++] = e;
+                    }
+                    if ( ndepth[v] < 0 ) {
+                        ndepth[v] = d+1;
+                        queue[m_tail++] = v;
+                    }
+                });
+            } else {
+                // include edges between nodes at the distance threshold
+                g.visitNeighbors(n, Graph.UNDIRECTED, (v, e) -> {
+                    int dv = ndepth[v];
+                    if ( dv > 0 && edepth[e] < 0 ) {
+                        edepth[e] = Math.min(d, dv);
+                        edges[m_edgeCount++] = e;
+                    }
+                });
+            }
+        }
+        
+        // update the reached items
+        for ( int i=0; i<m_tail; ++i ) {
+            int r = queue[i];
+            reach((VisualItem)g.getNode(r), ndepth[r]);
+        }
+        for ( int i=0; i<m_edgeCount; ++i ) {
+            int r = edges[i];
+            reach((VisualItem)g.getEdge(r), edepth[r]);
         }
         
-        // mark unreached items
-        items = m_vis.visibleItems(m_group);
-        while ( items.hasNext() ) {
-            VisualItem item = items.next();
-            if ( item.getDOI() == Constants.MINIMUM_DOI ) {
-                PrefuseLib.updateVisible(item, false);
-                item.setExpanded(false);
+        // hide unreached items
+        if ( full ) {
+            Iterator<VisualItem> items = m_vis.visibleItems(m_group);
+            while ( items.hasNext() ) {
+                VisualItem item = items.next();
+                int r = item.getRow();
+                int d = ( item instanceof EdgeItem ? edepth[r] : ndepth[r] );
+                if ( d < 0 )
+                    hide(item);
+            }
+        } else {
+            // items reached before, or made visible since
+            Table nodes = g.getNodeTable(), edgeTable = g.getEdgeTable();
+            for ( int i=0; i<m_prevTail; ++i ) {
+                int r = m_prevQueue[i];
+                if ( ndepth[r] < 0 && nodes.isValidRow(r) )
+                    hide((VisualItem)g.getNode(r));
+            }
+            for ( int i=0; i<m_prevEdgeCount; ++i ) {
+                int r = m_prevEdges[i];
+                if ( edepth[r] < 0 && edgeTable.isValidRow(r) )
+                    hide((VisualItem)g.getEdge(r));
             }
+            BitSet touched = m_tracker.m_nodes;
+            for ( int r = touched.nextSetBit(0); r >= 0;
+                  r = touched.nextSetBit(r+1) )
+            {
+                if ( r < ndepth.length && ndepth[r] < 0 &&
+                     nodes.isValidRow(r) )
+                {
+                    hide((VisualItem)g.getNode(r));
+                }
+            }
+            touched = m_tracker.m_edges;
+            for ( int r = touched.nextSetBit(0); r >= 0;
+                  r = touched.nextSetBit(r+1) )
+            {
+                if ( r < edepth.length && edepth[r] < 0 &&
+                     edgeTable.isValidRow(r) )
+                {
+                    hide((VisualItem)g.getEdge(r));
+                }
+            }
+        }
+        m_tracker.m_nodes.clear();
+        m_tracker.m_edges.clear();
+        
+        // clear the previous depths for the next run
+        for ( int i=0; i<m_prevTail; ++i )
+            m_prevNodeDepth[m_prevQueue[i]] = -1;
+        for ( int i=0; i<m_prevEdgeCount; ++i )
+            m_prevEdgeDepth[m_prevEdges[i]] = -1;
+        m_prevTail = m_prevEdgeCount = 0;
+    }
+    
+    /**
+     * Marks an item as reached at the given graph distance, updating only
+     * the values that change.
+     */
+    private void reach(VisualItem item, int d) {
+        if ( !item.isVisible() || !item.isStartVisible() ||
+             !item.isEndVisible() )
+        {
+            PrefuseLib.updateVisible(item, true);
         }
+        if ( item.getDOI() != -d )
+            item.setDOI(-d);
+        boolean expanded = d < m_distance;
+        if ( item.isExpanded() != expanded )
+            item.setExpanded(expanded);
     }
     
     /**
-     * Clears references to graph tuples.  The group and visualization are
-     * retained.
+     * Hides an unreached item, if it is visible.
+     */
+    private void hide(VisualItem item) {
+        if ( !item.isVisible() ) return;
+        item.setDOI(Constants.MINIMUM_DOI);
+        PrefuseLib.updateVisible(item, false);
+        item.setExpanded(false);
+    }
+    
+    /**
+     * Make the state of the previous run the current one. The arrays of
+     * the previous run become the ones for the new traversal, which have
+     * all depths cleared.
+     */
+    private void swap() {
+        int[] t;
+        t = m_prevNodeDepth; m_prevNodeDepth = m_nodeDepth; m_nodeDepth = t;
+        t = m_prevEdgeDepth; m_prevEdgeDepth = m_edgeDepth; m_edgeDepth = t;
+        t = m_prevQueue; m_prevQueue = m_queue; m_queue = t;
+        t = m_prevEdges; m_prevEdges = m_edges; m_edges = t;
+        m_prevTail = m_tail;
+        m_prevEdgeCount = m_edgeCount;
+    }
+    
+    private void ensureCapacity(int nn, int ne) {
+        if ( m_nodeDepth.length < nn ) {
+            m_nodeDepth = grow(m_nodeDepth, nn);
+            m_prevNodeDepth = grow(m_prevNodeDepth, nn);
+            m_queue = Arrays.copyOf(m_queue, nn);
+            m_prevQueue = Arrays.copyOf(m_prevQueue, nn);
+        }
+        if ( m_edgeDepth.length < ne ) {
+            m_edgeDepth = grow(m_edgeDepth, ne);
+            m_prevEdgeDepth = grow(m_prevEdgeDepth, ne);
+            m_edges = Arrays.copyOf(m_edges, ne);
+            m_prevEdges = Arrays.copyOf(m_prevEdges, ne);
+        }
+    }
+    
+    private static int[] grow(int[] a, int n) {
+        int len = a.length;
+        a = Arrays.copyOf(a, n);
+        Arrays.fill(a, len, n, -1);
+        return a;
+    }
+    
+    /**
+     * Clears the traversal state. The group and visualization are
+     * retained, and the next run updates all items.
      */
     public void reset() {
-    	m_bfs = new BreadthFirstIterator();
+        if ( m_graph != null )
+            m_graph.removeGraphModelListener(m_tracker);
+        m_graph = null;
+        m_full = true;
+        m_nodeDepth = new int[0];
+        m_edgeDepth = new int[0];
+        m_queue = new int[0];
+        m_edges = new int[0];
+        m_prevNodeDepth = new int[0];
+        m_prevEdgeDepth = new int[0];
+        m_prevQueue = new int[0];
+        m_prevEdges = new int[0];
+        m_tail = m_edgeCount = m_prevTail = m_prevEdgeCount = 0;
+        m_tracker.m_nodes.clear();
+        m_tracker.m_edges.clear();
     }
+    
+    /**
+     * Records the rows added or made visible by others between two runs.
+     */
+    private class Tracker implements GraphListener {
+        final BitSet m_nodes = new BitSet();
+        final BitSet m_edges = new BitSet();
+        private int m_ncol, m_ecol;
+        
+        void init(Graph g) {
+            m_ncol = g.getNodeTable().getColumnNumber(VisualItem.VISIBLE);
+            m_ecol = g.getEdgeTable().getColumnNumber(VisualItem.VISIBLE);
+            m_nodes.clear();
+            m_edges.clear();
+        }
+        
+        public void graphChanged(Graph g, String table,
+                int start, int end, int col, int type)
+        {
+            if ( m_running || type == EventConstants.DELETE ) return;
+            boolean nodes = Graph.NODES.equals(table);
+            if ( type == EventConstants.INSERT ||
+                 col == EventConstants.ALL_COLUMNS ||
+                 col == ( nodes ? m_ncol : m_ecol ) )
+            {
+                ( nodes ? m_nodes : m_edges ).set(start, end+1);
+            }
+        }
+    } // end of inner class Tracker
 
 } // end of class GraphDistanceFilter
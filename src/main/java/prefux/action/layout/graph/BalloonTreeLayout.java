@@ -48,6 +48,10 @@ import prefux.visual.NodeItem;
  * <p>The algorithm used is that of G. Melan\c{c}on and I. Herman from their
  * research paper Circular Drawings of Rooted Trees, Reports of the Centre for 
  * Mathematics and Computer Sciences, Report Number INS-9817, 1998.</p>
+ * 
+ * <p>When run incrementally, the radii of unchanged subtrees are reused,
+ * and subtrees that are placed at the same center, scale and angle as in
+ * the previous pass are left alone.</p>
  *
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
@@ -89,6 +93,7 @@ public class BalloonTreeLayout extends TreeLayout {
      */
     public void setMinRadius(int minRadius) {
         m_minRadius = minRadius;
+        invalidate();
     }
     
     /**
@@ -100,7 +105,9 @@ public class BalloonTreeLayout extends TreeLayout {
         
         Point2D anchor = getLayoutAnchor();
         NodeItem n = getLayoutRoot();
+        prepareIncremental(n);
         layout(n,anchor.getX(),anchor.getY());
+        finishIncremental();
     }
     
     private void layout(NodeItem n, double x, double y) {
@@ -109,6 +116,7 @@ public class BalloonTreeLayout extends TreeLayout {
     }
     
     private void firstWalk(NodeItem n) {
+        if ( !isChanged(n) ) return; // keep the previous radii
         Params np = getParams(n);
         np.d = 0;
         double s = 0;
@@ -214,10 +222,17 @@ public class BalloonTreeLayout extends TreeLayout {
     private void secondWalk(NodeItem n, NodeItem r,
             double x, double y, double l, double t)
     {
+        Params np = getParams(n);
+        if ( !isChanged(n) && isSettled(n) && 
+             np.x == x && np.y == y && np.l == l && np.t == t )
+        {
+            return; // the subtree is already in place
+        }
+        np.x = x; np.y = y; np.l = l; np.t = t;
+        
         setX(n, r, x);
         setY(n, r, y);
         
-        Params np = getParams(n);
         int numChildren = 0;
         Iterator<? extends Node> childIter = n.children();
         while ( childIter.hasNext() ) {
@@ -283,6 +298,8 @@ public class BalloonTreeLayout extends TreeLayout {
         public double a;
         public double c;
         public double f;
+        // the placement of the previous pass
+        public double x, y, l, t;
     }
 
 } // end of class BalloonTreeLayout
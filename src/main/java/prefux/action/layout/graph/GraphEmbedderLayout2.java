@@ -40,9 +40,7 @@ import org.apache.logging.log4j.Logger;
 
 
 import prefux.action.layout.Layout;
-import prefux.data.Edge;
 import prefux.data.Graph;
-import prefux.data.Node;
 import prefux.util.PrefuseLib;
 import prefux.visual.VisualItem;
 
@@ -175,26 +173,21 @@ public class GraphEmbedderLayout2 extends Layout {
 		
 		System.out.println("Nodes added to nodeList: " + nodeList.size() + ".");
 		
+		// Index the vertices by node row, so that the neighbor rows
+		// delivered by the graph map directly to vertices.
+		Graph graph = (Graph) m_vis.getGroup(m_group);
+		Vertex[] byRow = new Vertex[graph.getNodeTable().getMaximumRow() + 1];
+		for(Vertex v : nodeList) {
+			byRow[v.item.getRow()] = v;
+		}
+		
 		// Make sure the neighbors are added to every node.
 		for(Vertex v : nodeList) {
-			
-			Iterator<? extends Edge> it = ((Node) v.item).edges();
-			while(it.hasNext()) {
-				
-				Edge e = it.next();
-				VisualItem u = (VisualItem) e.getSourceNode();
-				
-				// Make sure u and v are not the same node.
-				if(u == v.item) {
-					u = (VisualItem) e.getTargetNode();
-				}
-				
-				for(Vertex v2 : nodeList) {
-					if(u == v2.item) {
-						v.neighbors.add(v2);
-					}
+			graph.visitNeighbors(v.item.getRow(), Graph.UNDIRECTED, (u, e) -> {
+				if(byRow[u] != null) {
+					v.neighbors.add(byRow[u]);
 				}
-			}
+			});
 		}
 		
 		initialized = true;
@@ -31,6 +31,7 @@
 package prefux.action.layout.graph;
 
 import java.util.Arrays;
+import java.util.BitSet;
 
 import javafx.geometry.Rectangle2D;
 import prefux.Constants;
@@ -57,6 +58,17 @@ import prefux.visual.NodeItem;
  * generalizes Reingold and Tilford's method for tidy drawings of trees to
  * support trees with an arbitrary number of children at any given node.</p>
  * 
+ * <p>Both passes of the algorithm are run without recursion over arrays
+ * indexed by node, so that the layout of trees of any depth takes linear
+ * time and constant stack space.</p>
+ * 
+ * <p>The arrays are kept between passes. Since the algorithm never changes
+ * the relative positions within a subtree once the subtree is done, an
+ * incremental pass only walks the subtrees that changed, and apportions
+ * unchanged subtrees along their contours. The threads the previous pass
+ * added to unchanged subtrees are taken back first. Unchanged subtrees that
+ * end up at the same position are not placed again.</p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
 public class NodeLinkTreeLayout extends TreeLayout {
@@ -72,6 +84,35 @@ public class NodeLinkTreeLayout extends TreeLayout {
     
     private double m_ax, m_ay; // for holding anchor co-ordinates
     
+    private double[] m_prevDepths = new double[0];
+    private int      m_prevMaxDepth = 0;
+    private double   m_prevAx = Double.NaN, m_prevAy;
+    
+    // per-node layout state, indexed by node row and kept between passes
+    private final BitSet m_member = new BitSet(); // nodes of the laid out tree
+    private int[]    m_parent = new int[0];   // parent node, -1 for the root
+    private int[]    m_first = new int[0];    // first child, -1 for leaves
+    private int[]    m_last = new int[0];     // last child, -1 for leaves
+    private int[]    m_prev = new int[0];     // left sibling
+    private int[]    m_next = new int[0];     // right sibling
+    private int[]    m_number = new int[0];   // index among the siblings
+    private int[]    m_level = new int[0];    // depth in the tree
+    private int[]    m_height = new int[0];   // height of the subtree
+    private int[]    m_ancestor = new int[0];
+    private int[]    m_thread = new int[0];
+    private int[]    m_default = new int[0];  // default ancestor
+    private int[]    m_threaded = new int[0]; // node threaded on apportioning
+    private double[] m_size = new double[0];  // breadth of the node
+    private double[] m_extent = new double[0];// depth of the node
+    private double[] m_prelim = new double[0];
+    private double[] m_mod = new double[0];
+    private double[] m_shift = new double[0];
+    private double[] m_change = new double[0];
+    private double[] m_mid = new double[0];   // midpoint of the children
+    private double[] m_oldMod = new double[0];// modifier of the threaded node
+    private double[] m_pos = new double[0];   // placed breadth
+    private int[]    m_kids = new int[16];    // buffer for gathering children
+    
     /**
      * Create a new NodeLinkTreeLayout. A left-to-right orientation is assumed.
      * @param group the data group to layout. Must resolve to a Graph instance.
@@ -122,6 +163,7 @@ public class NodeLinkTreeLayout extends TreeLayout {
                 "Unsupported orientation value: "+orientation);
         }
         m_orientation = orientation;
+        invalidate();
     }
     
     /**
@@ -142,6 +184,7 @@ public class NodeLinkTreeLayout extends TreeLayout {
      */
     public void setDepthSpacing(double d) {
         m_dspace = d;
+        invalidate();
     }
     
     /**
@@ -158,6 +201,7 @@ public class NodeLinkTreeLayout extends TreeLayout {
      */
     public void setBreadthSpacing(double b) {
         m_bspace = b;
+        invalidate();
     }
     
     /**
@@ -174,6 +218,7 @@ public class NodeLinkTreeLayout extends TreeLayout {
      */
     public void setSubtreeSpacing(double s) {
         m_tspace = s;
+        invalidate();
     }
     
     /**
@@ -194,6 +239,7 @@ public class NodeLinkTreeLayout extends TreeLayout {
      */
     public void setRootNodeOffset(double o) {
         m_offset = o;
+        invalidate();
     }
     
     /**
@@ -236,19 +282,11 @@ public class NodeLinkTreeLayout extends TreeLayout {
         return m_tmpa;
     }
     
-    private double spacing(NodeItem l, NodeItem r, boolean siblings) {
-        boolean w = ( m_orientation == Constants.ORIENT_TOP_BOTTOM ||
-                      m_orientation == Constants.ORIENT_BOTTOM_TOP );
-        return (siblings ? m_bspace : m_tspace) + 0.5 *
-            ( w ? l.getBounds().getWidth() + r.getBounds().getWidth()
-                : l.getBounds().getHeight() + r.getBounds().getHeight() );
+    private double spacing(int l, int r, boolean siblings) {
+        return (siblings ? m_bspace : m_tspace) + 0.5 * (m_size[l] + m_size[r]);
     }
     
-    private void updateDepths(int depth, NodeItem item) {
-        boolean v = ( m_orientation == Constants.ORIENT_TOP_BOTTOM ||
-                      m_orientation == Constants.ORIENT_BOTTOM_TOP );
-        double d = ( v ? item.getBounds().getHeight() 
-                       : item.getBounds().getWidth() );
+    private void updateDepths(int depth, double d) {
         if ( m_depths.length <= depth )
             m_depths = ArrayLib.resize(m_depths, 3*depth/2);
         m_depths[depth] = Math.max(m_depths[depth], d);
@@ -267,186 +305,400 @@ public class NodeLinkTreeLayout extends TreeLayout {
      */
     public void run(double frac) {
         Graph g = (Graph)m_vis.getGroup(m_group);
-        initSchema(g.getNodes());
-        
-        Arrays.fill(m_depths, 0);
-        m_maxDepth = 0;
         
         Point2D a = getLayoutAnchor();
         m_ax = a.getX();
         m_ay = a.getY();
         
         NodeItem root = getLayoutRoot();
-        Params rp = getParams(root);
-
-	g.getSpanningTree(root);
+        g.getSpanningTree(root);
+        boolean incremental = prepareIncremental(root);
+        ensureCapacity(g.getNodeTable().getMaximumRow()+1);
+        if ( !incremental )
+            m_member.clear();
         
-        // do first pass - compute breadth information, collect depth info
-        firstWalk(root, 0, 1);
+        // do first pass - compute breadth information
+        int r = root.getRow();
+        m_parent[r] = m_prev[r] = m_next[r] = -1;
+        m_level[r] = m_number[r] = 0;
+        if ( !m_member.get(r) || isChanged(r) )
+            firstWalk(g, r);
         
-        // sum up the depth info
+        // collect and sum up the depth info
+        Arrays.fill(m_depths, 0);
+        m_maxDepth = 0;
+        for ( int i = m_member.nextSetBit(0); i >= 0;
+              i = m_member.nextSetBit(i+1) )
+        {
+            updateDepths(m_level[i]+1, m_extent[i]);
+        }
         determineDepths();
         
         // do second pass - assign layout positions
-        secondWalk(root, null, -rp.prelim, 0);
-    }
-
-    private void firstWalk(NodeItem n, int num, int depth) {
-        Params np = getParams(n);
-        np.number = num;
-        updateDepths(depth, n);
+        int level = 0;
+        if ( incremental && m_ax == m_prevAx && m_ay == m_prevAy )
+            level = firstChangedDepth();
+        secondWalk(g, r, -m_prelim[r], level);
         
-        boolean expanded = n.isExpanded();
-        if ( n.getChildCount() == 0 || !expanded ) // is leaf
-        { 
-            NodeItem l = (NodeItem)n.getPreviousSibling();
-            if ( l == null ) {
-                np.prelim = 0;
-            } else {
-                np.prelim = getParams(l).prelim + spacing(l,n,true);
+        m_prevDepths = Arrays.copyOf(m_depths, m_depths.length);
+        m_prevMaxDepth = m_maxDepth;
+        m_prevAx = m_ax;
+        m_prevAy = m_ay;
+        finishIncremental();
+    }
+    
+    /**
+     * Determine the first tree level whose depth position differs from
+     * the one of the previous pass.
+     */
+    private int firstChangedDepth() {
+        int max = Math.max(m_maxDepth, m_prevMaxDepth);
+        for ( int i=0; i<max; ++i ) {
+            double d = ( i < m_depths.length ? m_depths[i] : 0 );
+            double p = ( i < m_prevDepths.length ? m_prevDepths[i] : 0 );
+            if ( d != p ) return i;
+        }
+        return Integer.MAX_VALUE;
+    }
+    
+    private void ensureCapacity(int n) {
+        if ( m_parent.length >= n ) return;
+        int cap = Math.max(n, 3*m_parent.length/2);
+        m_parent   = Arrays.copyOf(m_parent, cap);
+        m_first    = Arrays.copyOf(m_first, cap);
+        m_last     = Arrays.copyOf(m_last, cap);
+        m_prev     = Arrays.copyOf(m_prev, cap);
+        m_next     = Arrays.copyOf(m_next, cap);
+        m_number   = Arrays.copyOf(m_number, cap);
+        m_level    = Arrays.copyOf(m_level, cap);
+        m_height   = Arrays.copyOf(m_height, cap);
+        m_ancestor = Arrays.copyOf(m_ancestor, cap);
+        m_thread   = Arrays.copyOf(m_thread, cap);
+        m_default  = Arrays.copyOf(m_default, cap);
+        m_threaded = Arrays.copyOf(m_threaded, cap);
+        m_size     = Arrays.copyOf(m_size, cap);
+        m_extent   = Arrays.copyOf(m_extent, cap);
+        m_prelim   = Arrays.copyOf(m_prelim, cap);
+        m_mod      = Arrays.copyOf(m_mod, cap);
+        m_shift    = Arrays.copyOf(m_shift, cap);
+        m_change   = Arrays.copyOf(m_change, cap);
+        m_mid      = Arrays.copyOf(m_mid, cap);
+        m_oldMod   = Arrays.copyOf(m_oldMod, cap);
+        m_pos      = Arrays.copyOf(m_pos, cap);
+    }
+    
+    /**
+     * Compute the preliminary breadth positions in a post-order traversal,
+     * apportioning each subtree against its left siblings once it is done.
+     * Only changed subtrees are descended into, unchanged ones are just
+     * apportioned within their parent.
+     * @param g the layout graph
+     * @param root the root of the tree
+     */
+    private void firstWalk(Graph g, int root) {
+        int n = root;
+        int c = enter(g, n);
+        while ( true ) {
+            if ( c >= 0 ) {
+                if ( m_member.get(c) && !isChanged(c) ) {
+                    // unchanged subtree, keep its layout
+                    reset(c);
+                    m_default[n] = apportion(c, m_default[n]);
+                    c = m_next[c];
+                } else {
+                    // descend into the child
+                    n = c;
+                    c = enter(g, n);
+                }
+                continue;
             }
+            
+            // done with this subtree, apportion it within its parent
+            finish(n);
+            if ( n == root ) break;
+            int p = m_parent[n];
+            m_default[p] = apportion(n, m_default[p]);
+            c = m_next[n];
+            n = p;
         }
-        else if ( expanded )
-        {
-            NodeItem leftMost = (NodeItem)n.getFirstChild();
-            NodeItem rightMost = (NodeItem)n.getLastChild();
-            NodeItem defaultAncestor = leftMost;
-            NodeItem c = leftMost;
-            for ( int i=0; c != null; ++i, c = (NodeItem)c.getNextSibling() )
+    }
+    
+    /**
+     * Initialize the layout state of a node that has to be laid out, and
+     * gather its children.
+     * @return the first child of the node, or -1 if it has none
+     */
+    private int enter(Graph g, int n) {
+        boolean v = ( m_orientation == Constants.ORIENT_TOP_BOTTOM ||
+                      m_orientation == Constants.ORIENT_BOTTOM_TOP );
+        NodeItem item = (NodeItem)g.getNode(n);
+        boolean member = m_member.get(n);
+        
+        // take back the threads the previous pass added to the subtrees
+        int old = ( member ? m_first[n] : -1 );
+        for ( int c = old; c >= 0; c = m_next[c] )
+            unthread(c);
+        
+        Rectangle2D b = item.getBounds();
+        m_size[n] = v ? b.getWidth() : b.getHeight();
+        m_extent[n] = v ? b.getHeight() : b.getWidth();
+        m_prelim[n] = m_mod[n] = m_shift[n] = m_change[n] = 0;
+        m_ancestor[n] = n;
+        m_thread[n] = -1;
+        m_threaded[n] = -1;
+        m_member.set(n);
+        
+        // gather the children, and check whether they are the same as before
+        int k = 0;
+        boolean same = member;
+        if ( item.getChildCount() > 0 && item.isExpanded() ) {
+            for ( NodeItem ci = (NodeItem)item.getFirstChild();
+                  ci != null; ci = (NodeItem)ci.getNextSibling(), ++k )
             {
-                firstWalk(c, i, depth+1);
-                defaultAncestor = apportion(c, defaultAncestor);
+                int c = ci.getRow();
+                if ( k == m_kids.length )
+                    m_kids = Arrays.copyOf(m_kids, 2*k);
+                m_kids[k] = c;
+                if ( old == c )
+                    old = m_next[old];
+                else
+                    same = false;
             }
-            
-            executeShifts(n);
-            
-            double midpoint = 0.5 *
-                (getParams(leftMost).prelim + getParams(rightMost).prelim);
-            
-            NodeItem left = (NodeItem)n.getPreviousSibling();
-            if ( left != null ) {
-                np.prelim = getParams(left).prelim + spacing(left, n, true);
-                np.mod = np.prelim - midpoint;
-            } else {
-                np.prelim = midpoint;
+        }
+        if ( !same || old >= 0 ) {
+            // the previous subtrees are laid out from scratch
+            for ( int c = ( member ? m_first[n] : -1 ); c >= 0; c = m_next[c] )
+                drop(c);
+        }
+        
+        int prev = -1;
+        for ( int i=0; i<k; ++i ) {
+            int c = m_kids[i];
+            m_parent[c] = n;
+            m_level[c] = m_level[n]+1;
+            m_number[c] = i;
+            m_prev[c] = prev;
+            m_next[c] = -1;
+            if ( prev >= 0 ) m_next[prev] = c;
+            prev = c;
+        }
+        m_first[n] = m_default[n] = ( k > 0 ? m_kids[0] : -1 );
+        m_last[n] = prev;
+        return m_first[n];
+    }
+    
+    /**
+     * Remove a subtree of the previous pass from the laid out tree.
+     */
+    private void drop(int top) {
+        int n = top;
+        while ( true ) {
+            m_member.clear(n);
+            if ( m_first[n] >= 0 ) {
+                n = m_first[n];
+                continue;
             }
+            while ( n != top && m_next[n] < 0 )
+                n = m_parent[n];
+            if ( n == top ) return;
+            n = m_next[n];
         }
     }
     
-    private NodeItem apportion(NodeItem v, NodeItem a) {        
-        NodeItem w = (NodeItem)v.getPreviousSibling();
-        if ( w != null ) {
-            NodeItem vip, vim, vop, vom;
-            double   sip, sim, sop, som;
+    /**
+     * Take back the thread added when apportioning the given node.
+     */
+    private void unthread(int n) {
+        int t = m_threaded[n];
+        if ( t >= 0 ) {
+            m_thread[t] = -1;
+            m_mod[t] = m_oldMod[n];
+            m_threaded[n] = -1;
+        }
+    }
+    
+    /**
+     * Reinitialize the state of an unchanged subtree, to apportion it again
+     * within its parent.
+     */
+    private void reset(int n) {
+        m_shift[n] = m_change[n] = 0;
+        m_ancestor[n] = n;
+        m_thread[n] = -1;
+        place(n);
+    }
+    
+    /**
+     * Finish a subtree once all its children are apportioned.
+     */
+    private void finish(int n) {
+        int h = 0;
+        if ( m_first[n] >= 0 ) {
+            executeShifts(n);
+            m_mid[n] = 0.5 * (m_prelim[m_first[n]] + m_prelim[m_last[n]]);
+            for ( int c = m_first[n]; c >= 0; c = m_next[c] )
+                h = Math.max(h, m_height[c]+1);
+        }
+        m_height[n] = h;
+        place(n);
+    }
+    
+    /**
+     * Compute the preliminary position of a subtree next to its left sibling.
+     */
+    private void place(int n) {
+        int l = m_prev[n];
+        if ( m_first[n] < 0 ) // is leaf
+        {
+            m_mod[n] = 0;
+            m_prelim[n] = ( l < 0 ? 0 : m_prelim[l] + spacing(l,n,true) );
+        }
+        else if ( l >= 0 )
+        {
+            m_prelim[n] = m_prelim[l] + spacing(l, n, true);
+            m_mod[n] = m_prelim[n] - m_mid[n];
+        }
+        else
+        {
+            m_prelim[n] = m_mid[n];
+            m_mod[n] = 0;
+        }
+    }
+    
+    private int apportion(int v, int a) {        
+        int w = m_prev[v];
+        if ( w >= 0 ) {
+            int vip, vim, vop, vom;
+            double sip, sim, sop, som;
             
             vip = vop = v;
             vim = w;
-            vom = (NodeItem)vip.getParent().getFirstChild();
+            vom = m_first[m_parent[vip]];
             
-            sip = getParams(vip).mod;
-            sop = getParams(vop).mod;
-            sim = getParams(vim).mod;
-            som = getParams(vom).mod;
+            sip = m_mod[vip];
+            sop = m_mod[vop];
+            sim = m_mod[vim];
+            som = m_mod[vom];
             
-            NodeItem nr = nextRight(vim);
-            NodeItem nl = nextLeft(vip);
-            while ( nr != null && nl != null ) {
+            int nr = nextRight(vim);
+            int nl = nextLeft(vip);
+            while ( nr >= 0 && nl >= 0 ) {
                 vim = nr;
                 vip = nl;
                 vom = nextLeft(vom);
                 vop = nextRight(vop);
-                getParams(vop).ancestor = v;
-                double shift = (getParams(vim).prelim + sim) - 
-                    (getParams(vip).prelim + sip) + spacing(vim,vip,false);
+                m_ancestor[vop] = v;
+                double shift = (m_prelim[vim] + sim) - 
+                    (m_prelim[vip] + sip) + spacing(vim,vip,false);
                 if ( shift > 0 ) {
                     moveSubtree(ancestor(vim,v,a), v, shift);
                     sip += shift;
                     sop += shift;
                 }
-                sim += getParams(vim).mod;
-                sip += getParams(vip).mod;
-                som += getParams(vom).mod;
-                sop += getParams(vop).mod;
+                sim += m_mod[vim];
+                sip += m_mod[vip];
+                som += m_mod[vom];
+                sop += m_mod[vop];
                 
                 nr = nextRight(vim);
                 nl = nextLeft(vip);
             }
-            if ( nr != null && nextRight(vop) == null ) {
-                Params vopp = getParams(vop);
-                vopp.thread = nr;
-                vopp.mod += sim - sop;
+            if ( nr >= 0 && nextRight(vop) < 0 ) {
+                m_threaded[v] = vop;
+                m_oldMod[v] = m_mod[vop];
+                m_thread[vop] = nr;
+                m_mod[vop] += sim - sop;
             }
-            if ( nl != null && nextLeft(vom) == null ) {
-                Params vomp = getParams(vom);
-                vomp.thread = nl;
-                vomp.mod += sip - som;
+            if ( nl >= 0 && nextLeft(vom) < 0 ) {
+                m_threaded[v] = vom;
+                m_oldMod[v] = m_mod[vom];
+                m_thread[vom] = nl;
+                m_mod[vom] += sip - som;
                 a = v;
             }
         }
         return a;
     }
     
-    private NodeItem nextLeft(NodeItem n) {
-        NodeItem c = null;
-        if ( n.isExpanded() ) c = (NodeItem)n.getFirstChild();
-        return ( c != null ? c : getParams(n).thread );
+    private int nextLeft(int n) {
+        return ( m_first[n] >= 0 ? m_first[n] : m_thread[n] );
     }
     
-    private NodeItem nextRight(NodeItem n) {
-        NodeItem c = null;
-        if ( n.isExpanded() ) c = (NodeItem)n.getLastChild();
-        return ( c != null ? c : getParams(n).thread );
+    private int nextRight(int n) {
+        return ( m_last[n] >= 0 ? m_last[n] : m_thread[n] );
     }
     
-    private void moveSubtree(NodeItem wm, NodeItem wp, double shift) {
-        Params wmp = getParams(wm);
-        Params wpp = getParams(wp);
-        double subtrees = wpp.number - wmp.number;
-        wpp.change -= shift/subtrees;
-        wpp.shift += shift;
-        wmp.change += shift/subtrees;
-        wpp.prelim += shift;
-        wpp.mod += shift;
+    private void moveSubtree(int wm, int wp, double shift) {
+        double subtrees = m_number[wp] - m_number[wm];
+        m_change[wp] -= shift/subtrees;
+        m_shift[wp] += shift;
+        m_change[wm] += shift/subtrees;
+        m_prelim[wp] += shift;
+        m_mod[wp] += shift;
     }
     
-    private void executeShifts(NodeItem n) {
+    private void executeShifts(int n) {
         double shift = 0, change = 0;
-        for ( NodeItem c = (NodeItem)n.getLastChild();
-              c != null; c = (NodeItem)c.getPreviousSibling() )
-        {
-            Params cp = getParams(c);
-            cp.prelim += shift;
-            cp.mod += shift;
-            change += cp.change;
-            shift += cp.shift + change;
+        for ( int c = m_last[n]; c >= 0; c = m_prev[c] ) {
+            m_prelim[c] += shift;
+            m_mod[c] += shift;
+            change += m_change[c];
+            shift += m_shift[c] + change;
         }
     }
     
-    private NodeItem ancestor(NodeItem vim, NodeItem v, NodeItem a) {
-        NodeItem p = (NodeItem)v.getParent();
-        Params vimp = getParams(vim);
-        if ( vimp.ancestor.getParent() == p ) {
-            return vimp.ancestor;
+    private int ancestor(int vim, int v, int a) {
+        if ( m_parent[m_ancestor[vim]] == m_parent[v] ) {
+            return m_ancestor[vim];
         } else {
             return a;
         }
     }
     
-    private void secondWalk(NodeItem n, NodeItem p, double m, int depth) {
-        Params np = getParams(n);
-        setBreadth(n, p, np.prelim + m);
-        setDepth(n, p, m_depths[depth]);
-        
-        if ( n.isExpanded() ) {
-            depth += 1;
-            for ( NodeItem c = (NodeItem)n.getFirstChild();
-                  c != null; c = (NodeItem)c.getNextSibling() )
+    /**
+     * Assign the final positions in a pre-order traversal, accumulating
+     * the modifiers of the ancestors of each node. Unchanged subtrees whose
+     * nodes all keep their positions are skipped.
+     * @param g the layout graph
+     * @param root the root of the tree
+     * @param m the modifier of the root
+     * @param level the first level whose depth position changed
+     */
+    private void secondWalk(Graph g, int root, double m, int level) {
+        // the shifts are no longer needed, reuse them for the accumulated
+        // modifiers of the visited nodes
+        double[] sums = m_shift;
+        sums[root] = m;
+        int n = root;
+        while ( true ) {
+            double mn = sums[n];
+            double pos = m_prelim[n] + mn;
+            int c = m_first[n];
+            if ( m_level[n] + m_height[n] >= level || m_pos[n] != pos ||
+                 ( c >= 0 && m_pos[c] != m_prelim[c] + mn + m_mod[n] ) ||
+                 isChanged(n) || !isSettled(n) )
             {
-                secondWalk(c, n, m + np.mod, depth);
+                int p = m_parent[n];
+                NodeItem item = (NodeItem)g.getNode(n);
+                NodeItem parent = ( p < 0 ? null : (NodeItem)g.getNode(p) );
+                m_pos[n] = pos;
+                setBreadth(item, parent, pos);
+                setDepth(item, parent, m_depths[m_level[n]]);
+                
+                if ( c >= 0 ) {
+                    for ( ; c >= 0; c = m_next[c] )
+                        sums[c] = mn + m_mod[n];
+                    n = m_first[n];
+                    continue;
+                }
             }
+            
+            // move on to the next node in pre-order
+            while ( n != root && m_next[n] < 0 )
+                n = m_parent[n];
+            if ( n == root ) break;
+            n = m_next[n];
         }
-        
-        np.clear();
     }
     
     private void setBreadth(NodeItem n, NodeItem p, double b) {
@@ -487,36 +739,36 @@ public class NodeLinkTreeLayout extends TreeLayout {
     // Params Schema
     
     /**
-     * The data field in which the parameters used by this layout are stored.
+     * The data field in which the parameters used by this layout were stored.
+     * @deprecated the layout keeps its parameters in arrays
      */
+    @Deprecated
     public static final String PARAMS = "_reingoldTilfordParams";
     /**
      * The schema for the parameters used by this layout.
+     * @deprecated the layout keeps its parameters in arrays
      */
+    @Deprecated
     public static final Schema PARAMS_SCHEMA = new Schema();
     static {
         PARAMS_SCHEMA.addColumn(PARAMS, Params.class);
     }
     
+    /**
+     * Add the parameter schema to the given tuple set.
+     * @param ts the tuple set
+     * @deprecated the layout keeps its parameters in arrays
+     */
+    @Deprecated
     protected void initSchema(TupleSet ts) {
         ts.addColumns(PARAMS_SCHEMA);
     }
     
-    private Params getParams(NodeItem item) {
-        Params rp = (Params)item.get(PARAMS);
-        if ( rp == null ) {
-            rp = new Params();
-            item.set(PARAMS, rp);
-        }
-        if ( rp.number == -2 ) {
-            rp.init(item);
-        }
-        return rp;
-    }
-    
     /**
      * Wrapper class holding parameters used for each node in this layout.
+     * @deprecated the layout keeps its parameters in arrays
      */
+    @Deprecated
     public static class Params implements Cloneable {
         double prelim;
         double mod;
@@ -57,6 +57,11 @@ import prefux.visual.NodeItem;
  * understandable transitions between layout configurations.
  * </p>
  * 
+ * <p>When run incrementally, the angular widths of unchanged subtrees are
+ * reused, and subtrees that are assigned the same radius and angular
+ * region as in the previous pass are left alone. Such subtrees also keep
+ * the child order of the previous pass.</p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
 public class RadialTreeLayout extends TreeLayout {
@@ -73,6 +78,9 @@ public class RadialTreeLayout extends TreeLayout {
     protected Point2D m_origin;
     protected NodeItem m_prevRoot;
     
+    private boolean m_keep; // leave subtrees placed as before alone
+    private double m_prevX = Double.NaN, m_prevY, m_prevInc;
+    
     /**
      * Creates a new RadialTreeLayout. Automatic scaling of the radius
      * values to fit the layout bounds is enabled by default.
@@ -120,6 +128,7 @@ public class RadialTreeLayout extends TreeLayout {
      */
     public void setRadiusIncrement(double inc) {
         m_radiusInc = inc;
+        invalidate();
     }
 
     /**
@@ -137,6 +146,7 @@ public class RadialTreeLayout extends TreeLayout {
      */
     public void setAutoScale(boolean s) {
         m_autoScale = s;
+        invalidate();
     }
 
     /**
@@ -148,6 +158,7 @@ public class RadialTreeLayout extends TreeLayout {
         m_theta1 = theta;
         m_theta2 = theta+width;
         m_setTheta = true;
+        invalidate();
     }
 
     /**
@@ -162,14 +173,22 @@ public class RadialTreeLayout extends TreeLayout {
         Params np = (Params)n.get(PARAMS);
 
 	g.getSpanningTree(n);
+	boolean incremental = prepareIncremental(n);
         
         // calc relative widths and maximum tree depth
-        // performs one pass over the tree
+        // performs one pass over the changed parts of the tree
         m_maxDepth = 0;
         calcAngularWidth(n, 0);
         
         if ( m_autoScale ) setScale(getLayoutBounds());
         if ( !m_setTheta ) calcAngularBounds(n);
+        
+        // subtrees can only stay in place if all rings stay in place
+        m_keep = incremental && m_radiusInc == m_prevInc &&
+            m_origin.getX() == m_prevX && m_origin.getY() == m_prevY;
+        m_prevInc = m_radiusInc;
+        m_prevX = m_origin.getX();
+        m_prevY = m_origin.getY();
                 
         // perform the layout
         if ( m_maxDepth > 0 )
@@ -179,6 +198,7 @@ public class RadialTreeLayout extends TreeLayout {
         setX(n, null, m_origin.getX());
         setY(n, null, m_origin.getY());
         np.angle = m_theta2-m_theta1;
+        finishIncremental();
     }
     
     /**
@@ -247,7 +267,14 @@ public class RadialTreeLayout extends TreeLayout {
      * to ensure proper ordering of nodes.
      */
     private double calcAngularWidth(NodeItem n, int d) {
-        if ( d > m_maxDepth ) m_maxDepth = d;       
+        Params np = (Params)n.get(PARAMS);
+        if ( !isChanged(n) ) {
+            // reuse the values of the previous pass
+            if ( np.depth > m_maxDepth ) m_maxDepth = np.depth;
+            return np.width;
+        }
+        int maxDepth = m_maxDepth;
+        m_maxDepth = d;
         double aw = 0;
         
         Rectangle2D bounds = n.getBounds();
@@ -264,7 +291,9 @@ public class RadialTreeLayout extends TreeLayout {
         } else {
             aw = diameter;
         }
-        ((Params)n.get(PARAMS)).width = aw;
+        np.width = aw;
+        np.depth = m_maxDepth;
+        m_maxDepth = Math.max(maxDepth, m_maxDepth);
         return aw;
     }
     
@@ -330,9 +359,19 @@ public class RadialTreeLayout extends TreeLayout {
      * @param theta2 the end (in radians) of this subtree's angular region
      */
     protected void layout(NodeItem n, double r, double theta1, double theta2) {
+        Params np = (Params)n.get(PARAMS);
+        if ( m_keep && !isChanged(n) && isSettled(n) && np.radius == r &&
+             np.theta1 == theta1 && np.theta2 == theta2 )
+        {
+            return; // the subtree is already in place
+        }
+        np.radius = r;
+        np.theta1 = theta1;
+        np.theta2 = theta2;
+        
         double dtheta  = (theta2-theta1);
         double dtheta2 = dtheta / 2.0;
-        double width = ((Params)n.get(PARAMS)).width;
+        double width = np.width;
         double cfrac, nfrac = 0.0;
         
         Iterator<? extends Node> childIter = sortedChildren(n);
@@ -388,10 +427,16 @@ public class RadialTreeLayout extends TreeLayout {
     public static class Params implements Cloneable {
         double width;
         double angle;
+        int depth;  // the maximum depth within the subtree
+        double radius, theta1, theta2; // the previous placement
         public Object clone() {
             Params p = new Params();
             p.width = this.width;
             p.angle = this.angle;
+            p.depth = this.depth;
+            p.radius = this.radius;
+            p.theta1 = this.theta1;
+            p.theta2 = this.theta2;
             return p;
         }
     }
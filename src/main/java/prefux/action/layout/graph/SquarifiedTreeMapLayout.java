@@ -31,6 +31,7 @@
 package prefux.action.layout.graph;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -40,7 +41,6 @@ import javafx.geometry.Rectangle2D;
 import prefux.data.Graph;
 import prefux.data.Schema;
 import prefux.data.tuple.TupleSet;
-import prefux.data.util.TreeNodeIterator;
 import prefux.visual.NodeItem;
 import prefux.visual.VisualItem;
 
@@ -65,6 +65,11 @@ import prefux.visual.VisualItem;
  * <a href="http://www.cs.umd.edu/hcil/treemap-history/">
  * http://www.cs.umd.edu/hcil/treemap-history/</a>.
  * </p>
+ * <p>
+ * When run incrementally, the sizes of unchanged subtrees are reused, and
+ * subtrees that are assigned the same rectangle and scale as in the
+ * previous pass are left alone.
+ * </p>
  *
  * @version 1.0
  * @author <a href="http://jheer.org">jeffrey heer</a>
@@ -91,6 +96,12 @@ public class SquarifiedTreeMapLayout extends TreeLayout {
     
     private double m_frame; // space between parents border and children
     
+    private double   m_scale;                     // display area factor
+    private double   m_prevScale = Double.NaN;
+    private double[] m_size = new double[0];      // unscaled subtree sizes
+    private double[] m_area = new double[0];      // previous scaled areas
+    private Rectangle2D[] m_rect = new Rectangle2D[0]; // children's rectangle
+    
     /**
      * Creates a new SquarifiedTreeMapLayout with no spacing between
      * parent areas and their enclosed children.
@@ -125,6 +136,7 @@ public class SquarifiedTreeMapLayout extends TreeLayout {
             throw new IllegalArgumentException(
                     "Frame value must be greater than or equal to 0.");
         m_frame = frame;
+        invalidate();
     }
 
     /**
@@ -144,9 +156,13 @@ public class SquarifiedTreeMapLayout extends TreeLayout {
         NodeItem root = getLayoutRoot();
         Rectangle2D b = getLayoutBounds();
         m_r = new Rectangle2D(b.getMinX(), b.getMinY(), b.getWidth()-1, b.getHeight()-1);
+        boolean incremental = prepareIncremental(root);
         
         // process size values
         computeAreas(root);
+        if ( !incremental || m_scale != m_prevScale )
+            Arrays.fill(m_rect, null); // everything has to be placed anew
+        m_prevScale = m_scale;
         
         // layout root node
         setX(root, null, 0);
@@ -154,56 +170,73 @@ public class SquarifiedTreeMapLayout extends TreeLayout {
         root.setBounds(0, 0, m_r.getWidth(), m_r.getHeight());
 
         // layout the tree
-        updateArea(root, m_r);
-        layout(root, m_r);
+        layoutChildren(root);
+        finishIncremental();
     }
     
     /**
      * Compute the pixel areas of nodes based on their size values.
      */
     private void computeAreas(NodeItem root) {
-        int leafCount = 0;
-        
         // ensure area data column exists
         Graph g = (Graph)m_vis.getGroup(m_group);
         TupleSet nodes = g.getNodes();
         nodes.addColumns(AREA_SCHEMA);
         
-        // reset all sizes to zero
-        Iterator iter = new TreeNodeIterator(root);
-        while ( iter.hasNext() ) {
-            NodeItem n = (NodeItem)iter.next();
-            n.setDouble(AREA, 0);
+        int rows = g.getNodeTable().getMaximumRow()+1;
+        if ( m_size.length < rows ) {
+            m_size = Arrays.copyOf(m_size, rows);
+            m_area = Arrays.copyOf(m_area, rows);
+            m_rect = Arrays.copyOf(m_rect, rows);
         }
         
-        // set raw sizes, compute leaf count
-        iter = new TreeNodeIterator(root, false);
-        while ( iter.hasNext() ) {
-            NodeItem n = (NodeItem)iter.next();
-            double area = 0;
-            if ( n.getChildCount() == 0 ) {
-            	area = n.getSize();
-            	++leafCount;
-            } else if ( n.isExpanded() ) {
-            	NodeItem c = (NodeItem)n.getFirstChild();
-            	for (; c!=null; c = (NodeItem)c.getNextSibling()) {
-            		area += c.getDouble(AREA);
-            		++leafCount;
-            	}
-            }
-            n.setDouble(AREA, area);
-            
-        }
+        // compute raw sizes, the scaled areas are assigned on layout
+        double size = computeSize(root);
         
         // scale sizes by display area factor
         Rectangle2D b = getLayoutBounds();
         double area = (b.getWidth()-1)*(b.getHeight()-1);
-        double scale = area/root.getDouble(AREA);
-        iter = new TreeNodeIterator(root);
-        while ( iter.hasNext() ) {
-            NodeItem n = (NodeItem)iter.next();
-            n.setDouble(AREA, n.getDouble(AREA)*scale);
+        m_scale = area/size;
+        root.setDouble(AREA, size*m_scale);
+    }
+    
+    /**
+     * Compute the raw size of a subtree, reusing the sizes of unchanged
+     * subtrees.
+     */
+    private double computeSize(NodeItem n) {
+        int row = n.getRow();
+        if ( !isChanged(row) )
+            return m_size[row];
+        
+        double size = 0;
+        if ( n.getChildCount() == 0 ) {
+            size = n.getSize();
+        } else if ( n.isExpanded() ) {
+            NodeItem c = (NodeItem)n.getFirstChild();
+            for (; c!=null; c = (NodeItem)c.getNextSibling())
+                size += computeSize(c);
         }
+        m_size[row] = size;
+        return size;
+    }
+    
+    /**
+     * Lay out the children of a node within the node's bounds, unless
+     * they are still in place.
+     */
+    private void layoutChildren(NodeItem n) {
+        Rectangle2D r = updateArea(n);
+        int row = n.getRow();
+        double area = n.getDouble(AREA);
+        if ( !isChanged(row) && isSettled(row) && 
+             r.equals(m_rect[row]) && area == m_area[row] )
+        {
+            return; // the subtree is already in place
+        }
+        m_rect[row] = r;
+        m_area[row] = area;
+        layout(n, r);
     }
     
     /**
@@ -225,19 +258,26 @@ public class SquarifiedTreeMapLayout extends TreeLayout {
         childIter = p.children();
         while ( childIter.hasNext() ) {
             NodeItem c = (NodeItem)childIter.next();
-            if ( c.getChildCount() > 0 && c.getDouble(AREA) > 0 ) {
-                updateArea(c,r);
-                layout(c, r);
-            }
+            if ( c.getChildCount() > 0 && c.getDouble(AREA) > 0 )
+                layoutChildren(c);
         }
     }
     
-    private void updateArea(NodeItem n, Rectangle2D r) {
+    /**
+     * Assign the scaled areas of the children of a node, and compute the
+     * rectangle they are laid out in.
+     */
+    private Rectangle2D updateArea(NodeItem n) {
+        Iterator childIter = n.children();
+        while ( childIter.hasNext() ) {
+            NodeItem c = (NodeItem)childIter.next();
+            c.setDouble(AREA, m_size[c.getRow()]*m_scale);
+        }
+        
         Rectangle2D b = n.getBounds();
         if ( m_frame == 0.0 ) {
-            // if no framing, simply update bounding rectangle
-            r= b;
-            return;
+            // if no framing, simply use the bounding rectangle
+            return b;
         }
         
         // compute area loss due to frame
@@ -246,7 +286,7 @@ public class SquarifiedTreeMapLayout extends TreeLayout {
         
         // compute renormalization factor
         double s = 0;
-        Iterator childIter = n.children();
+        childIter = n.children();
         while ( childIter.hasNext() )
             s += ((NodeItem)childIter.next()).getDouble(AREA);
         double t = A/s;
@@ -258,10 +298,10 @@ public class SquarifiedTreeMapLayout extends TreeLayout {
             c.setDouble(AREA, c.getDouble(AREA)*t);
         }
         
-        // set bounding rectangle and return
-        r = new Rectangle2D(b.getMinX()+m_frame,       b.getMinY()+m_frame, 
-                  b.getWidth()-2*m_frame, b.getHeight()-2*m_frame);
-        return;
+        // return the framed rectangle
+        return new Rectangle2D(b.getMinX()+m_frame, b.getMinY()+m_frame, 
+                  Math.max(0, b.getWidth()-2*m_frame),
+                  Math.max(0, b.getHeight()-2*m_frame));
     }
     
     private void squarify(List c, List row, double w, Rectangle2D r) {
@@ -279,7 +319,7 @@ public class SquarifiedTreeMapLayout extends TreeLayout {
             row.add(item);
             
             nworst = worst(row, w);
-            if ( nworst <= worst ) {
+            if ( nworst <= worst || row.size() == 1 ) {
                 c.remove(len-1);
                 worst = nworst;
             } else {
@@ -339,11 +379,12 @@ public class SquarifiedTreeMapLayout extends TreeLayout {
                 d += nw;
             }
         }
-        // update space available in rectangle r
+        // update space available in rectangle r, which may come out
+        // slightly negative due to rounding
         if ( horiz )
-            r = new Rectangle2D(x,y+h,r.getWidth(),r.getHeight()-h);
+            r = new Rectangle2D(x,y+h,r.getWidth(),Math.max(0,r.getHeight()-h));
         else
-            r = new Rectangle2D(x+h,y,r.getWidth()-h,r.getHeight());
+            r = new Rectangle2D(x+h,y,Math.max(0,r.getWidth()-h),r.getHeight());
         return r;
     }
     
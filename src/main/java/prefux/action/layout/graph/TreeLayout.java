@@ -30,14 +30,35 @@
  */
 package prefux.action.layout.graph;
 
+import java.util.Arrays;
+import java.util.BitSet;
+
+import javafx.geometry.Rectangle2D;
 import prefux.action.layout.Layout;
 import prefux.data.Graph;
+import prefux.data.Table;
 import prefux.data.Tree;
+import prefux.data.event.EventConstants;
+import prefux.data.event.GraphListener;
 import prefux.data.tuple.TupleSet;
 import prefux.visual.NodeItem;
+import prefux.visual.VisualItem;
+import prefux.visual.VisualTable;
 
 /**
  * Abstract base class providing convenience methods for tree layout algorithms.
+ * 
+ * <p>Tree layouts can be run incrementally. The layout listens to the
+ * graph it lays out and records the nodes whose visibility, expansion,
+ * size, bounds or position changed since the previous pass. At the start
+ * of a pass, subclasses call {@link #prepareIncremental(NodeItem)} and can
+ * then ask for any node whether its subtree {@link #isChanged(int) changed},
+ * in which case values computed for it have to be recomputed, and whether
+ * its subtree is still {@link #isSettled(int) settled} at the positions
+ * assigned by the previous pass, in which case it does not need to be
+ * placed again if its own placement did not change. Structural changes
+ * to the graph, a different layout root or a call to {@link #invalidate()}
+ * make the next pass a complete one.</p>
  *
  * @version 1.0
  * @author <a href="http://jheer.org">jeffrey heer</a>
@@ -45,6 +66,27 @@ import prefux.visual.NodeItem;
 public abstract class TreeLayout extends Layout {
 
     protected NodeItem m_root;
+    
+    private boolean m_incremental = true;
+    private boolean m_invalid = true;   // the next pass has to be complete
+    private final Tracker m_tracker = new Tracker();
+    private Graph m_graph;              // the observed graph
+    private Tree  m_tree;              // the tree of the previous pass
+    private int   m_rootRow = -1;      // the root of the previous pass
+    
+    private final BitSet m_touched = new BitSet(); // updated since last pass
+    private final BitSet m_pending = new BitSet(); // changed in this pass
+    private final BitSet m_changed = new BitSet(); // subtree has changed
+    private final BitSet m_moved   = new BitSet(); // subtree is not settled
+    private final BitSet m_placed  = new BitSet(); // placed during this pass
+    
+    // the state of each node as of the pass that placed it last
+    private final BitSet m_laid = new BitSet();
+    private final BitSet m_visible = new BitSet();
+    private final BitSet m_expanded = new BitSet();
+    private double[] m_x = new double[0], m_y = new double[0];
+    private double[] m_w = new double[0], m_h = new double[0];
+    private double[] m_size = new double[0];
 
     /**
      * Create a new TreeLayout.
@@ -109,6 +151,272 @@ public abstract class TreeLayout extends Layout {
      */
     public void reset() {
     	m_root = null;
+    	invalidate();
+    }
+    
+    // ------------------------------------------------------------------------
+    // Incremental Layout
+    
+    /**
+     * Indicates if this layout reuses the results of its previous pass for
+     * subtrees that have not changed since.
+     * @return true if the layout runs incrementally, false if every pass
+     * lays out the complete tree
+     */
+    public boolean isIncremental() {
+        return m_incremental;
+    }
+    
+    /**
+     * Set if this layout reuses the results of its previous pass for
+     * subtrees that have not changed since. Incremental passes are enabled
+     * by default.
+     * @param incremental true to run incrementally, false to lay out the
+     * complete tree in every pass
+     */
+    public void setIncremental(boolean incremental) {
+        m_incremental = incremental;
+        invalidate();
+    }
+    
+    /**
+     * Forces the next pass of this layout to lay out the complete tree.
+     * Subclasses call this method when a parameter changes that affects
+     * the layout of every node.
+     */
+    public void invalidate() {
+        m_invalid = true;
+    }
+    
+    /**
+     * Prepare a pass of this layout. This determines which subtrees have
+     * changed or were moved since the previous pass. The spanning tree of
+     * the layout graph has to be rooted as the subclass expects before
+     * this method is called, and a pass started this way has to end with
+     * a call to {@link #finishIncremental()}.
+     * @param root the layout root of this pass
+     * @return true if this is an incremental pass, false if the complete
+     * tree has to be laid out
+     */
+    protected boolean prepareIncremental(NodeItem root) {
+        Graph g = (Graph)m_vis.getGroup(m_group);
+        if ( g != m_graph ) {
+            if ( m_graph != null )
+                m_graph.removeGraphModelListener(m_tracker);
+            m_graph = g;
+            m_tracker.init((VisualTable)g.getNodeTable(), g);
+            g.addGraphModelListener(m_tracker);
+            m_invalid = true;
+        }
+        Tree tree = g.getSpanningTree();
+        boolean full = m_invalid || !m_incremental || tree != m_tree
+            || root.getRow() != m_rootRow || tree.getRootRow() != m_rootRow;
+        m_tree = tree;
+        m_rootRow = root.getRow();
+        m_changed.clear();
+        m_moved.clear();
+        m_placed.clear();
+        // a failed pass leaves the next one complete
+        m_invalid = true;
+        
+        if ( full ) {
+            m_touched.clear();
+            m_pending.clear();
+            m_laid.clear();
+            return false;
+        }
+        
+        VisualTable nodes = (VisualTable)g.getNodeTable();
+        for ( int r = m_touched.nextSetBit(0); r >= 0;
+              r = m_touched.nextSetBit(r+1) )
+        {
+            if ( !nodes.isValidRow(r) ) {
+                continue;
+            } else if ( !m_laid.get(r) || isModified(nodes, r) ) {
+                m_pending.set(r);
+                mark(m_changed, r);
+                mark(m_moved, r);
+            } else if ( isMoved(nodes, r) ) {
+                mark(m_moved, r);
+            }
+        }
+        m_touched.clear();
+        return true;
+    }
+    
+    /**
+     * Finish a pass of this layout, recording the state of all nodes that
+     * were placed during the pass.
+     */
+    protected void finishIncremental() {
+        VisualTable nodes = (VisualTable)m_graph.getNodeTable();
+        ensureCapacity(m_placed.length());
+        for ( int r = m_placed.nextSetBit(0); r >= 0;
+              r = m_placed.nextSetBit(r+1) )
+        {
+            m_laid.set(r);
+            m_visible.set(r, nodes.isVisible(r));
+            m_expanded.set(r, nodes.isExpanded(r));
+            m_x[r] = nodes.getX(r);
+            m_y[r] = nodes.getY(r);
+            Rectangle2D b = nodes.getBounds(r);
+            m_w[r] = ( b == null ? 0 : b.getWidth() );
+            m_h[r] = ( b == null ? 0 : b.getHeight() );
+            m_size[r] = nodes.getSize(r);
+        }
+        // changed nodes that were not placed, e.g. as they are hidden,
+        // have an outdated state and count as not laid out
+        m_pending.andNot(m_placed);
+        for ( int r = m_pending.nextSetBit(0); r >= 0;
+              r = m_pending.nextSetBit(r+1) )
+        {
+            m_laid.clear(r);
+        }
+        m_pending.clear();
+        m_placed.clear();
+        m_invalid = false;
+    }
+    
+    /**
+     * Indicates if the subtree rooted at the given node has changed since
+     * the previous pass, or was not laid out by it. Values the layout has
+     * computed for such a subtree can not be reused.
+     * @param row the node row
+     * @return true if the subtree has to be laid out again
+     */
+    protected boolean isChanged(int row) {
+        return !m_laid.get(row) || m_changed.get(row);
+    }
+    
+    /**
+     * Indicates if the subtree rooted at the given node has changed since
+     * the previous pass, or was not laid out by it.
+     * @param n the node
+     * @return true if the subtree has to be laid out again
+     * @see #isChanged(int)
+     */
+    protected boolean isChanged(NodeItem n) {
+        return isChanged(n.getRow());
+    }
+    
+    /**
+     * Indicates if all nodes of the subtree rooted at the given node are
+     * still at rest at the positions assigned by the previous pass. If the
+     * subtree also has not {@link #isChanged(int) changed} and would be
+     * placed exactly as before, a pass can leave it alone.
+     * @param row the node row
+     * @return true if the subtree is settled
+     */
+    protected boolean isSettled(int row) {
+        return m_laid.get(row) && !m_moved.get(row);
+    }
+    
+    /**
+     * Indicates if all nodes of the subtree rooted at the given node are
+     * still at rest at the positions assigned by the previous pass.
+     * @param n the node
+     * @return true if the subtree is settled
+     * @see #isSettled(int)
+     */
+    protected boolean isSettled(NodeItem n) {
+        return isSettled(n.getRow());
     }
+    
+    /**
+     * @see prefux.action.layout.Layout#setX(prefux.visual.VisualItem, prefux.visual.VisualItem, double)
+     */
+    public void setX(VisualItem item, VisualItem referrer, double x) {
+        super.setX(item, referrer, x);
+        if ( item instanceof NodeItem )
+            m_placed.set(item.getRow());
+    }
+    
+    /**
+     * @see prefux.action.layout.Layout#setY(prefux.visual.VisualItem, prefux.visual.VisualItem, double)
+     */
+    public void setY(VisualItem item, VisualItem referrer, double y) {
+        super.setY(item, referrer, y);
+        if ( item instanceof NodeItem )
+            m_placed.set(item.getRow());
+    }
+    
+    /**
+     * Mark a node and all of its ancestors.
+     */
+    private void mark(BitSet bits, int r) {
+        for ( ; r >= 0 && !bits.get(r); r = m_tree.getParent(r) )
+            bits.set(r);
+    }
+    
+    /**
+     * Check if the layout relevant state of a node has changed.
+     */
+    private boolean isModified(VisualTable nodes, int r) {
+        Rectangle2D b = nodes.getBounds(r);
+        double w = ( b == null ? 0 : b.getWidth() );
+        double h = ( b == null ? 0 : b.getHeight() );
+        return nodes.isVisible(r) != m_visible.get(r)
+            || nodes.isExpanded(r) != m_expanded.get(r)
+            || nodes.getSize(r) != m_size[r] || w != m_w[r] || h != m_h[r];
+    }
+    
+    /**
+     * Check if a node has left, or is moving away from, its position.
+     */
+    private boolean isMoved(VisualTable nodes, int r) {
+        double x = m_x[r], y = m_y[r];
+        return nodes.getX(r) != x || nodes.getStartX(r) != x
+            || nodes.getEndX(r) != x || nodes.getY(r) != y
+            || nodes.getStartY(r) != y || nodes.getEndY(r) != y;
+    }
+    
+    private void ensureCapacity(int n) {
+        if ( m_x.length >= n ) return;
+        int cap = Math.max(n, 3*m_x.length/2);
+        m_x    = Arrays.copyOf(m_x, cap);
+        m_y    = Arrays.copyOf(m_y, cap);
+        m_w    = Arrays.copyOf(m_w, cap);
+        m_h    = Arrays.copyOf(m_h, cap);
+        m_size = Arrays.copyOf(m_size, cap);
+    }
+    
+    /**
+     * Records the nodes updated between two passes, and invalidates the
+     * layout on structural changes.
+     */
+    private class Tracker implements GraphListener {
+        private final BitSet m_cols = new BitSet();
+        private int m_scol, m_tcol;
+        
+        void init(VisualTable nodes, Graph g) {
+            String[] fields = { VisualItem.VISIBLE, VisualItem.EXPANDED,
+                VisualItem.SIZE, VisualItem.BOUNDS, VisualItem.X,
+                VisualItem.Y, VisualItem.STARTX, VisualItem.STARTY,
+                VisualItem.ENDX, VisualItem.ENDY };
+            m_cols.clear();
+            for ( String f : fields ) {
+                int c = nodes.getColumnNumber(f);
+                if ( c >= 0 ) m_cols.set(c);
+            }
+            Table edges = g.getEdgeTable();
+            m_scol = edges.getColumnNumber(g.getEdgeSourceField());
+            m_tcol = edges.getColumnNumber(g.getEdgeTargetField());
+        }
+        
+        public void graphChanged(Graph g, String table,
+                int start, int end, int col, int type)
+        {
+            if ( type != EventConstants.UPDATE ) {
+                m_invalid = true;
+            } else if ( Graph.NODES.equals(table) ) {
+                if ( col == EventConstants.ALL_COLUMNS || m_cols.get(col) )
+                    m_touched.set(start, end+1);
+            } else if ( col == EventConstants.ALL_COLUMNS
+                        || col == m_scol || col == m_tcol )
+            {
+                m_invalid = true;
+            }
+        }
+    } // end of inner class Tracker
 
 } // end of abstract class TreeLayout
@@ -30,6 +30,8 @@
  */
 package prefux.activity;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import prefux.util.collections.CopyOnWriteArrayList;
 
 
@@ -46,17 +48,29 @@ public abstract class Activity {
     public static final long INFINITY = -1L; // specifies infinite duration
     public static final long DEFAULT_STEP_TIME = 15L;
     
+    /**
+     * Ordering key shared by all activities that do not provide their own,
+     * so that they run one after the other.
+     * @see #getOrderingKey()
+     */
+    public static final Object DEFAULT_ORDERING_KEY = new Object();
+    
     private boolean m_enabled = true;
-    private Pacer m_pacer;
+    private volatile Pacer m_pacer;
     
     private long m_startTime = -1L;
     private long m_duration  = -1L;
     private long m_stepTime  = -1L;
     private long m_nextTime  = -1L;
-    private boolean m_isRunning = false;
-    private boolean m_isScheduled = false;
+    private long m_nextNanos = Long.MIN_VALUE;
+    private final AtomicBoolean m_isRunning = new AtomicBoolean(false);
+    private final AtomicBoolean m_isScheduled = new AtomicBoolean(false);
+    
+    // the pending run of this activity in the ActivityManager queue
+    volatile Object m_task;
     
     private CopyOnWriteArrayList m_listeners;
+    private final ActivityStatistics m_stats = new ActivityStatistics();
     
     /**
      * Creates a new Activity.
@@ -157,6 +171,35 @@ public abstract class Activity {
      */
     protected abstract void run(long elapsedTime);
     
+    /**
+     * Run this activity one step with nanosecond resolution. This method is
+     * called by the {@link PulseActivityManager}. The default implementation
+     * truncates the time to milliseconds and calls {@link #run(long)};
+     * subclasses that can make use of the finer resolution, such as pacing
+     * animations, should override it.
+     * @param elapsedNanos the time elapsed since the start of the activity,
+     *  in nanoseconds.
+     */
+    protected void runNanos(long elapsedNanos) {
+        run(elapsedNanos / 1000000L);
+    }
+    
+    /**
+     * Returns the key that orders the steps of this activity relative to
+     * other activities. The ActivityManager runs activities with the same
+     * key one after the other, in the order they became due, while
+     * activities with different keys may run in parallel. The default
+     * implementation returns {@link #DEFAULT_ORDERING_KEY}, so that
+     * activities run one after the other unless they opt in to parallel
+     * execution by overriding this method. Returning null orders the steps
+     * of this activity only among themselves; they still never overlap.
+     * @return the ordering key, or null if this activity may run
+     *  concurrently with any other activity
+     */
+    protected Object getOrderingKey() {
+        return DEFAULT_ORDERING_KEY;
+    }
+    
     /**
      * Run this activity for a single step. This method is called by the
      * ActivityManager -- outside code should have no need to call or
@@ -179,8 +222,8 @@ public abstract class Activity {
                 fireActivityStarted();
             }
             if ( m_enabled ) {               
-                run(elapsedTime);
-                fireActivityStepped();
+                step(elapsedTime*1000000L, 
+                     (currentTime-getStopTime())*1000000L, false);
             }
             setRunning(false);
             
@@ -191,9 +234,11 @@ public abstract class Activity {
         {
             if ( !setRunning(true) )
                 fireActivityStarted();
+            long late = currentTime - m_nextTime;
+            if ( m_stepTime > 0 && late >= m_stepTime )
+                m_stats.skip(late / m_stepTime);
             if ( m_enabled ) {
-                run(elapsedTime);
-                fireActivityStepped();
+                step(elapsedTime*1000000L, Math.max(0, late)*1000000L, false);
             }
             m_nextTime = currentTime + m_stepTime;
         }
@@ -201,6 +246,96 @@ public abstract class Activity {
         return (m_nextTime-currentTime);
     }
     
+    /**
+     * Run this activity for a single frame. This method is called by the
+     * {@link PulseActivityManager} once per frame -- outside code should
+     * have no need to call or override this method. The activity is stepped
+     * if its next step time falls within the given tolerance of the frame
+     * time. If steps were missed because the activity fell behind, they are
+     * skipped and counted in the {@link #getStatistics() statistics} instead
+     * of being run back to back.
+     * @param currentNanos the frame time, based on {@link System#nanoTime()}
+     * @param startNanos the start time of this activity, on the same base
+     * @param tolerance how far ahead of its step time (in nanoseconds) an
+     *  activity is stepped, to avoid beating between step time and frame
+     *  rate. This is half the frame time; activities with shorter step
+     *  times are stepped once per frame.
+     * @return the time (in nanoseconds) when this activity should be
+     *  run again. A return value of -1 indicates this activity is finished.
+     */
+    long runActivityNanos(long currentNanos, long startNanos, long tolerance) {
+        if ( currentNanos < startNanos ) {
+            return startNanos - currentNanos;
+        }
+        
+        long elapsedNanos = currentNanos - startNanos;
+        long durationNanos = m_duration * 1000000L;
+        
+        if ( m_duration == 0 || 
+             (m_duration != INFINITY && elapsedNanos >= durationNanos) )
+        {
+            if ( !setRunning(true) ) {
+                fireActivityStarted();
+            }
+            if ( m_enabled ) {
+                step(elapsedNanos, elapsedNanos-durationNanos, true);
+            }
+            setRunning(false);
+            
+            fireActivityFinished();
+            return -1;
+        }
+        
+        if ( m_nextNanos == Long.MIN_VALUE )
+            m_nextNanos = currentNanos;
+        
+        if ( currentNanos >= m_nextNanos - tolerance )
+        {
+            if ( !setRunning(true) )
+                fireActivityStarted();
+            long late = Math.max(0, currentNanos - m_nextNanos);
+            // at most one step per frame
+            long stepNanos = Math.max(m_stepTime*1000000L, 2*tolerance+1);
+            m_nextNanos += stepNanos;
+            if ( m_nextNanos <= currentNanos ) {
+                // fell behind by whole steps, skip them
+                m_stats.skip((currentNanos-m_nextNanos) / stepNanos + 1);
+                m_nextNanos = currentNanos + stepNanos;
+            }
+            if ( m_enabled ) {
+                step(elapsedNanos, late, true);
+            }
+        }
+        
+        return (m_nextNanos-currentNanos);
+    }
+    
+    /**
+     * Runs a single step of this activity and records its timing.
+     * @param elapsedNanos the time elapsed since the start of the activity
+     * @param lateNanos how late the step is, relative to its scheduled time
+     * @param nanos true to step through {@link #runNanos(long)}, false to
+     *  step through {@link #run(long)}
+     */
+    private void step(long elapsedNanos, long lateNanos, boolean nanos) {
+        long t0 = System.nanoTime();
+        if ( nanos ) {
+            runNanos(elapsedNanos);
+        } else {
+            run(elapsedNanos / 1000000L);
+        }
+        m_stats.record(System.nanoTime()-t0, lateNanos);
+        fireActivityStepped();
+    }
+    
+    /**
+     * Resets the nanosecond step time, so that a newly scheduled activity
+     * steps on the first frame after its start time.
+     */
+    void resetNextNanos() {
+        m_nextNanos = Long.MIN_VALUE;
+    }
+    
     /**
      * Cancels this activity, if scheduled. This will stop a
      * running activity, and will remove the activity from
@@ -230,8 +365,8 @@ public abstract class Activity {
      *  with the ActivityManager
      * @return true if scheduled, false otherwise
      */
-    public synchronized boolean isScheduled() {
-        return m_isScheduled;
+    public boolean isScheduled() {
+        return m_isScheduled.get();
     }
     
     /**
@@ -240,31 +375,42 @@ public abstract class Activity {
      * @param s the scheduling state of this Activity
      */
     void setScheduled(boolean s) {
-        boolean fire;
-        synchronized ( this ) {
-            fire = (s && !m_isScheduled);
-            m_isScheduled = s;
-        }
+        boolean fire = !m_isScheduled.getAndSet(s) && s;
         if ( fire )
             fireActivityScheduled();
     }
     
+    /**
+     * Atomically changes the scheduling state of this Activity if it
+     * currently has the expected state. This method should only be called
+     * by the ActivityManager.
+     * @param expect the expected scheduling state
+     * @param s the new scheduling state
+     * @return true if the state was changed, false if the current state
+     *  was not the expected one
+     */
+    boolean compareAndSetScheduled(boolean expect, boolean s) {
+        if ( !m_isScheduled.compareAndSet(expect, s) )
+            return false;
+        if ( s && !expect )
+            fireActivityScheduled();
+        return true;
+    }
+    
     /**
      * Sets a flag indicating whether or not this activity is currently running
      * @param s the new running state of this activity
      */
-    synchronized boolean setRunning(boolean s) {
-        boolean b = m_isRunning;
-        m_isRunning = s;
-        return b;
+    boolean setRunning(boolean s) {
+        return m_isRunning.getAndSet(s);
     }
     
     /**
      * Indicates if this activity is currently running.
      * @return true if running, false otherwise
      */
-    public synchronized boolean isRunning() {
-        return m_isRunning;
+    public boolean isRunning() {
+        return m_isRunning.get();
     }
     
     // ------------------------------------------------------------------------
@@ -354,13 +500,38 @@ public abstract class Activity {
         return m_pacer!=null ? m_pacer.pace(frac) : frac;
     }
     
+    /**
+     * Returns a value between 0 and 1 inclusive, indicating the current
+     * position in an animation or other similarly parametrized activity.
+     * This is the nanosecond resolution counterpart of
+     * {@link #getPace(long)}, used by {@link #runNanos(long)}.
+     * @param elapsedNanos the time in nanoseconds since the start of this
+     *  activity.
+     * @return a value between 0 and 1 indicating the current pace
+     */
+    public double getPaceNanos(long elapsedNanos) {
+        long duration = getDuration();
+        double frac = (duration == 0L ? 0.0 : elapsedNanos/(duration*1e6));
+        frac = Math.min(1, Math.max(0, frac));
+        return m_pacer!=null ? m_pacer.pace(frac) : frac;
+    }
+    
+    /**
+     * Returns the timing statistics of this activity, recording how many
+     * steps were run or skipped and how long they took.
+     * @return the timing statistics
+     */
+    public ActivityStatistics getStatistics() {
+        return m_stats;
+    }
+    
     /**
      * Returns the pacing function associated with this Activity. Pacing
      * functions are used to control the pace of animations.
      * @return this Activity's pacing function. A value of null indicates a
      *  basic, linear pace is used, moving from 0 to 1 uniformly over time.
      */
-    public synchronized Pacer getPacingFunction() {
+    public Pacer getPacingFunction() {
         return m_pacer;
     }
     
@@ -371,7 +542,7 @@ public abstract class Activity {
      *  indicate a basic, linear pace moving from 0 to 1 uniformly
      *  over time.
      */
-    public synchronized void setPacingFunction(Pacer pfunc) {
+    public void setPacingFunction(Pacer pfunc) {
         m_pacer = pfunc;
     }
     
@@ -30,9 +30,17 @@
  */
 package prefux.activity;
 
-import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import prefux.util.PrefuseConfig;
+import prefux.util.SerialExecutor;
 
 
 /**
@@ -46,6 +54,19 @@ import prefux.util.PrefuseConfig;
  * methods are called by an Activity's run methods, and so are made only
  * package visible here.</p>
  * 
+ * <p>Scheduled activities are kept in a concurrent queue ordered by the time
+ * of their next step. The ActivityManager thread only dispatches the due
+ * steps to a pool of worker threads (<code>activity.workerThreads</code>,
+ * by default one per processor). Activities with the same
+ * {@link Activity#getOrderingKey() ordering key} are run one after the
+ * other in the order they became due. By default all activities share a
+ * single key and so run one at a time; actions are keyed by their
+ * {@link prefux.Visualization}, so that only the actions of different
+ * visualizations run in parallel. The steps of a single activity never
+ * overlap. Scheduling and
+ * cancelling an activity do not take any locks, so they never block the
+ * calling thread, such as the JavaFX application thread.</p>
+ * 
  * <p>Activity instances can be scheduled by using their  
  * {@link prefux.activity.Activity#run()},
  * {@link prefux.activity.Activity#runAt(long)}, and 
@@ -60,29 +81,46 @@ import prefux.util.PrefuseConfig;
  * instance, also provides a useful level of indirection, allowing actions
  * to be changed dynamically without changes to code in other locations.
  * </p>
+ * 
+ * <p>Alternatively, activities can be run frame by frame by the
+ * {@link PulseActivityManager}, which is synchronized with the JavaFX pulses
+ * and steps activities with nanosecond timing. The scheduler is chosen by
+ * the <code>activity.scheduler</code> configuration property or through
+ * {@link #setPulseScheduling(boolean)}; the methods of this class forward
+ * to it when it is active.</p>
  *
  * @author <a href="http://jheer.org">jeffrey heer</a>
  * @see Activity
+ * @see PulseActivityManager
  * @see prefux.action.Action
  */
 public class ActivityManager extends Thread {
     
-    private static ActivityManager s_instance;
+    private static volatile ActivityManager s_instance;
+    private static volatile boolean s_pulse = 
+        "pulse".equalsIgnoreCase(PrefuseConfig.get("activity.scheduler"));
     
-    private ArrayList<Activity> m_activities;
-    private ArrayList<Activity> m_tmp;
-    private long      m_nextTime;
-    private boolean   m_run;
+    private final ConcurrentSkipListMap<Task,Activity> m_queue;
+    private final ThreadPoolExecutor m_workers;
+    private final SerialExecutor m_lanes;
+    private final AtomicLong m_sequence = new AtomicLong();
+    private final AtomicInteger m_count = new AtomicInteger();
+    private volatile boolean m_run;
     
     /**
      * Returns the active ActivityManager instance.
      * @return the ActivityManager
      */
-    private synchronized static ActivityManager getInstance() {
-        if ( s_instance == null || !s_instance.isAlive() ) {
-            s_instance = new ActivityManager();
+    private static ActivityManager getInstance() {
+        ActivityManager am = s_instance;
+        if ( am != null && am.isAlive() )
+            return am;
+        synchronized ( ActivityManager.class ) {
+            if ( s_instance == null || !s_instance.isAlive() ) {
+                s_instance = new ActivityManager();
+            }
+            return s_instance;
         }
-        return s_instance;
     }
     
     /**
@@ -90,16 +128,33 @@ public class ActivityManager extends Thread {
      */
     private ActivityManager() {
         super("prefuse_ActivityManager");
-        m_activities = new ArrayList<>();
-        m_tmp = new ArrayList<>();
-        m_nextTime = Long.MAX_VALUE;
+        m_queue = new ConcurrentSkipListMap<>();
+        m_run = true;
         
         int priority = PrefuseConfig.getInt("activity.threadPriority");
-        if ( priority >= Thread.MIN_PRIORITY && 
-             priority <= Thread.MAX_PRIORITY )
+        if ( priority < Thread.MIN_PRIORITY || 
+             priority > Thread.MAX_PRIORITY )
         {
-            this.setPriority(priority);
+            priority = Thread.NORM_PRIORITY;
         }
+        int workers = PrefuseConfig.getInt("activity.workerThreads");
+        if ( workers <= 0 )
+            workers = Runtime.getRuntime().availableProcessors();
+        
+        final int p = priority;
+        final AtomicInteger id = new AtomicInteger();
+        m_workers = new ThreadPoolExecutor(workers, workers, 
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+                Thread t = new Thread(r, 
+                    "prefuse_ActivityWorker-" + id.incrementAndGet());
+                t.setPriority(p);
+                t.setDaemon(true);
+                return t;
+            });
+        m_workers.allowCoreThreadTimeOut(true);
+        m_lanes = new SerialExecutor(m_workers);
+        
+        this.setPriority(priority);
         this.setDaemon(true);
         this.start();
     }
@@ -109,12 +164,34 @@ public class ActivityManager extends Thread {
      * canceled, and then the thread is then notified to stop running.
      */
     public static void stopThread() {
-        ActivityManager am;
-        synchronized ( ActivityManager.class ) {
-            am = s_instance;
-        }
+        ActivityManager am = s_instance;
         if ( am != null )
             am._stop();
+        PulseActivityManager pm = PulseActivityManager.peekInstance();
+        if ( pm != null )
+            pm.stopManager();
+    }
+    
+    /**
+     * Sets whether activities are run by the frame synchronized
+     * {@link PulseActivityManager} instead of the ActivityManager thread.
+     * Only affects activities scheduled after the call; activities that are
+     * already scheduled keep running with their current scheduler.
+     * @param b true to use the pulse scheduler, false to use the
+     *  ActivityManager thread
+     */
+    public static void setPulseScheduling(boolean b) {
+        s_pulse = b;
+    }
+    
+    /**
+     * Indicates whether activities are run by the frame synchronized
+     * {@link PulseActivityManager}.
+     * @return true if the pulse scheduler is used, false if activities run
+     *  on the ActivityManager thread
+     */
+    public static boolean isPulseScheduling() {
+        return s_pulse;
     }
     
     /**
@@ -122,7 +199,10 @@ public class ActivityManager extends Thread {
      * @param a the Activity to schedule
      */
     static void schedule(Activity a) {
-        getInstance()._schedule(a, a.getStartTime());
+        if ( s_pulse )
+            PulseActivityManager.getInstance().schedule(a, a.getStartTime());
+        else
+            getInstance()._schedule(a, a.getStartTime());
     }
     
     /**
@@ -131,7 +211,12 @@ public class ActivityManager extends Thread {
      * @param a the Activity to schedule
      */
     static void scheduleNow(Activity a) {
-        getInstance()._schedule(a, System.currentTimeMillis());
+        if ( s_pulse ) {
+            PulseActivityManager pm = PulseActivityManager.getInstance();
+            pm.schedule(a, pm.currentTimeMillis());
+        } else {
+            getInstance()._schedule(a, System.currentTimeMillis());
+        }
     }
     
     /**
@@ -141,7 +226,10 @@ public class ActivityManager extends Thread {
      * @param startTime the time at which the activity should run
      */
     static void scheduleAt(Activity a, long startTime) {
-        getInstance()._schedule(a, startTime);
+        if ( s_pulse )
+            PulseActivityManager.getInstance().schedule(a, startTime);
+        else
+            getInstance()._schedule(a, startTime);
     }
     
     /**
@@ -159,7 +247,7 @@ public class ActivityManager extends Thread {
      * @param after the Activity to run immediately after the first
      */
     static void scheduleAfter(Activity before, Activity after) {
-        getInstance()._scheduleAfter(before, after);
+        before.addActivityListener(new ScheduleAfterActivity(after,true));
     }
     
     /**
@@ -178,7 +266,7 @@ public class ActivityManager extends Thread {
      * @param after the Activity to run immediately after the first
      */
     static void alwaysScheduleAfter(Activity before, Activity after) {
-        getInstance()._alwaysScheduleAfter(before, after);
+        before.addActivityListener(new ScheduleAfterActivity(after,false));
     }
     
     /**
@@ -187,7 +275,15 @@ public class ActivityManager extends Thread {
      * @param a The activity to cancel.
      */
     static void cancelActivity(Activity a){
-    	getInstance()._cancelActivity(a);
+        PulseActivityManager pm = PulseActivityManager.peekInstance();
+        if ( pm != null && pm.cancel(a) )
+            return;
+        ActivityManager am = s_instance;
+        if ( am != null ) {
+            am._cancelActivity(a);
+        } else {
+            a.setRunning(false);
+        }
     }
     
     /**
@@ -195,20 +291,23 @@ public class ActivityManager extends Thread {
      * @return the number of scheduled activities
      */
     public static int activityCount() {
-        return getInstance()._activityCount();
+        ActivityManager am = s_instance;
+        return (am == null ? 0 : am.m_count.get())
+            + PulseActivityManager.activityCount();
     }
     
     /**
      * Stops the activity manager thread. All scheduled actvities are
      * canceled, and then the thread is then notified to stop running.
      */
-    private synchronized void _stop() {
-        while ( m_activities.size() > 0 ) {
-            Activity a = (Activity)m_activities.get(m_activities.size()-1);
+    private void _stop() {
+        m_run = false;
+        for ( Activity a : m_queue.values() ) {
             a.cancel();
         }
-        _setRunning(false);
-        notify();
+        m_queue.clear();
+        m_workers.shutdown();
+        LockSupport.unpark(this);
     }
     
     /**
@@ -216,56 +315,26 @@ public class ActivityManager extends Thread {
      * @param a the Activity to schedule
      */
     private void _schedule(Activity a, long startTime) {
-        if ( a.isScheduled() ) {
-        	try { notifyAll(); } catch ( Exception e ) {}
+        if ( a.isScheduled() )
             return; // already scheduled, do nothing
-        }
         a.setStartTime(startTime);
-        synchronized ( this ) {
-            m_activities.add(a);
-            a.setScheduled(true);
-            if ( startTime < m_nextTime ) { 
-               m_nextTime = startTime;
-               notify();
-            }
-        }
-    }
-    
-    /**
-     * Schedules an Activity to start immediately after another Activity.
-     * The second Activity will be scheduled to start immediately after the
-     * first one finishes, overwriting any previously set startTime. If the
-     * first Activity is cancelled, the second one will not run.
-     * 
-     * This functionality is provided by using an ActivityListener to monitor
-     * the first Activity. The listener is removed upon completion or
-     * cancellation of the first Activity.
-     * 
-     * This method does not effect the scheduling of the first Activity.
-     * @param before the first Activity to run
-     * @param after the Activity to run immediately after the first
-     */
-    private void _scheduleAfter(Activity before, Activity after) {
-        before.addActivityListener(new ScheduleAfterActivity(after,true));
+        if ( !a.compareAndSetScheduled(false, true) )
+            return; // scheduled concurrently
+        m_count.incrementAndGet();
+        enqueue(a, startTime);
     }
     
     /**
-     * Schedules an Activity to start immediately after another Activity.
-     * The second Activity will be scheduled to start immediately after the
-     * first one finishes, overwriting any previously set startTime. If the
-     * first Activity is cancelled, the second one will not run.
-     * 
-     * This functionality is provided by using an ActivityListener to monitor
-     * the first Activity. The listener will persist across mulitple runs,
-     * meaning the second Activity will always be evoked upon a successful
-     * finish of the first.
-     * 
-     * This method does not otherwise effect the scheduling of the first Activity.
-     * @param before the first Activity to run
-     * @param after the Activity to run immediately after the first
+     * Adds the next run of a scheduled Activity to the queue, waking the
+     * manager thread if it is the new earliest run.
      */
-    private void _alwaysScheduleAfter(Activity before, Activity after) {
-        before.addActivityListener(new ScheduleAfterActivity(after,false));
+    private void enqueue(Activity a, long time) {
+        Task t = new Task(a, time, m_sequence.getAndIncrement());
+        a.m_task = t;
+        m_queue.put(t, a);
+        Map.Entry<Task,Activity> first = m_queue.firstEntry();
+        if ( first == null || first.getKey() == t )
+            LockSupport.unpark(this);
     }
     
     /**
@@ -274,149 +343,126 @@ public class ActivityManager extends Thread {
      * Activity.cancel() to stop a sheduled or running Activity.
      * @param a The Activity to cancel
      */
-    private void _cancelActivity(Activity a){
-    	/*
-    	 * Prefuse Bug ID #1708926
-         * The fix ("Contribution") has not been tested and/or validated for release as or in products,
-         * combinations with products or other commercial use.
-         * Any use of the Contribution is entirely made at the user's own responsibility and the user can
-         * not rely on any features, functionalities or performances Alcatel-Lucent has attributed to the Contribution.
-         * THE CONTRIBUTION BY ALCATEL-LUCENT (...) IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND,
-         * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
-         * FITNESS FOR A PARTICULAR PURPOSE, COMPLIANCE, NON-INTERFERENCE  AND/OR INTERWORKING WITH THE SOFTWARE
-         * TO WHICH THE CONTRIBUTION HAS BEEN MADE, TITLE AND NON-INFRINGEMENT.
-         * IN NO EVENT SHALL ALCATEL-LUCENT (...) BE LIABLE FOR ANY DAMAGES OR OTHER LIABLITY,
-         * WHETHER IN CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE CONTRIBUTION
-         * OR THE USE OR OTHER DEALINGS IN THE CONTRIBUTION,
-         * WHETHER TOGETHER WITH THE SOFTWARE TO WHICH THE CONTRIBUTION RELATES OR ON A STAND ALONE BASIS.
-    	 */
-        boolean fire = false;
-        //removeActivity synchronizes on this, we need to lock this
-        //before we lock the activity to avoid deadlock
-        synchronized ( this ) {
-        	synchronized(a)
-        	{
-        		if ( a.isScheduled() ) {
-        			// attempt to remove this activity, if the remove fails,
-        			// this activity is not currently scheduled with the manager
-        			_removeActivity(a);
-        			fire = true;
-        		}
-        		a.setRunning(false);
-        	}
-        }
+    private void _cancelActivity(Activity a) {
+        boolean fire = _removeActivity(a);
+        a.setRunning(false);
         if ( fire )
             a.fireActivityCancelled();
     }
     
     /**
-     * Removes an Activity from this manager, called by an
-     * Activity when it finishes or is cancelled. Application 
-     * code should not call this method! Instead, use 
-     * Activity.cancel() to stop a sheduled or running Activity.
-     * @param a
+     * Removes an Activity from this manager, called when it finishes or is
+     * cancelled. A run of the activity that has already been dispatched to
+     * a worker is dropped when the worker sees that the activity is no
+     * longer scheduled.
+     * @param a the Activity to remove
      * @return true if the activity was found and removed, false
      *  if the activity is not scheduled with this manager.
      */
     private boolean _removeActivity(Activity a) {
-        boolean r;
-        synchronized ( this ) {
-            r = m_activities.remove(a);
-            if ( r ) {
-                if ( m_activities.size() == 0 ) {
-                    m_nextTime = Long.MAX_VALUE;
-                }
-            }
-        }
-        if ( r ) {
-            a.setScheduled(false);
+        if ( !a.compareAndSetScheduled(true, false) )
+            return false;
+        m_count.decrementAndGet();
+        Object t = a.m_task;
+        if ( t != null ) {
+            a.m_task = null;
+            m_queue.remove(t);
         }
-        return r;
+        return true;
     }
     
     /**
-     * Returns the number of scheduled activities
-     * @return the number of scheduled activities
+     * Main scheduling thread loop. This is automatically started upon
+     * initialization of the ActivityManager. The loop only waits for the
+     * earliest queued run and hands it to the workers.
      */
-    private synchronized int _activityCount() {
-        return m_activities.size();
+    public void run() {
+        while ( m_run ) {
+            Map.Entry<Task,Activity> e = m_queue.firstEntry();
+            if ( e == null ) {
+                // nothing to do, chill out until an activity is scheduled
+                LockSupport.park(this);
+                continue;
+            }
+            Task t = e.getKey();
+            long delay = t.time - System.currentTimeMillis();
+            if ( delay > 0 ) {
+                LockSupport.parkNanos(this, delay * 1000000L);
+                continue;
+            }
+            if ( m_queue.remove(t) != null )
+                dispatch(t);
+        }
     }
     
     /**
-     * Sets the running flag for the ActivityManager instance.
+     * Hands a due run to the workers, through the lane of its ordering key.
+     * Activities without a key get a lane of their own, so that their
+     * steps do not overlap.
      */
-    private synchronized void _setRunning(boolean b) {
-        m_run = b;
+    private void dispatch(Task t) {
+        Object key = t.activity.getOrderingKey();
+        if ( key == null )
+            key = t.activity;
+        m_lanes.execute(key, () -> runTask(t));
     }
     
     /**
-     * Used by the activity loop to determine if the ActivityManager
-     * thread should keep running or exit.
+     * Runs one step of an activity and queues its next run.
      */
-    private synchronized boolean _keepRunning() {
-        return m_run;
+    private void runTask(Task t) {
+        Activity a = t.activity;
+        if ( a.m_task != t || !a.isScheduled() )
+            return; // cancelled or rescheduled meanwhile
+        
+        long currentTime = System.currentTimeMillis();
+        // remove activities that won't be run again
+        if ( currentTime >= a.getStopTime() && a.m_task == t ) {
+            a.m_task = null;
+            if ( a.compareAndSetScheduled(true, false) )
+                m_count.decrementAndGet();
+        }
+        
+        // run the activity - the activity will check for
+        // itself if it should perform any action or not
+        long s;
+        try {
+            s = a.runActivity(currentTime);
+        } catch ( RuntimeException | Error e ) {
+            // unschedule the failed activity, so that it can be run again
+            if ( _removeActivity(a) ) a.setRunning(false);
+            throw e;
+        }
+        
+        if ( s >= 0 && a.m_task == t && a.isScheduled() ) {
+            if ( m_run ) {
+                enqueue(a, currentTime + s);
+            } else {
+                a.cancel();
+            }
+        }
     }
     
     /**
-     * Main scheduling thread loop. This is automatically started upon
-     * initialization of the ActivityManager.
+     * A queued run of an activity, ordered by run time and then by the
+     * order of scheduling.
      */
-    public void run() {
-        _setRunning(true);
-        while ( _keepRunning() ) {
-            if ( _activityCount() > 0 ) {
-                long currentTime = System.currentTimeMillis();
-                long t = -1;
-                
-                synchronized (this) {
-                    // copy content of activities, as new activities might
-                    // be added while we process the current ones
-                    for ( int i=0; i<m_activities.size(); i++ ) {
-                        Activity a = (Activity)m_activities.get(i);
-                        m_tmp.add(a);
-                        
-                        // remove activities that won't be run again
-                        if ( currentTime >= a.getStopTime() )
-                        {
-                            m_activities.remove(i--);
-                            a.setScheduled(false);
-                        }
-                    }
-                    // if no activities left, reflect that in the next time
-                    if ( m_activities.size() == 0 ) {
-                        m_nextTime = Long.MAX_VALUE;
-                    }
-                }
-                
-                for ( int i=0; i<m_tmp.size(); i++ ) {
-                    // run the activity - the activity will check for
-                    // itself if it should perform any action or not
-                    Activity a = (Activity)m_tmp.get(i);
-                    long s = a.runActivity(currentTime);
-                    // compute minimum time for next activity cycle
-                    t = (s<0 ? t : t<0 ? s : Math.min(t,s));
-                }
-
-                // clear the temporary list
-                m_tmp.clear();
-                
-                if ( t == -1 ) continue;
-                
-                // determine the next time we should run
-                try {
-                    synchronized (this) { wait(t); }
-                } catch (InterruptedException e) { }
-                
-            } else {
-                // nothing to do, chill out until notified
-                try {
-                    synchronized (this) { wait(); }
-                } catch (InterruptedException e) { }
-            }
+    private static final class Task implements Comparable<Task> {
+        final Activity activity;
+        final long time;
+        final long seq;
+        Task(Activity activity, long time, long seq) {
+            this.activity = activity;
+            this.time = time;
+            this.seq = seq;
         }
-    }
+        public int compareTo(Task t) {
+            int c = Long.compare(time, t.time);
+            return c != 0 ? c : Long.compare(seq, t.seq);
+        }
+    } // end of inner class Task
     
-    public class ScheduleAfterActivity extends ActivityAdapter {
+    public static class ScheduleAfterActivity extends ActivityAdapter {
         Activity after;
         boolean remove;
         public ScheduleAfterActivity(Activity after, boolean remove) {
@@ -0,0 +1,164 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.activity;
+
+/**
+ * Timing statistics of an {@link Activity}. Records how many steps an
+ * activity has run and skipped, how long its steps took and how late they
+ * were run relative to their scheduled time. All times are in nanoseconds.
+ * 
+ * <p>The statistics are updated by the scheduler thread running the
+ * activity without synchronization, so values read from other threads may
+ * be slightly out of date.</p>
+ * 
+ * @see Activity#getStatistics()
+ */
+public class ActivityStatistics {
+
+    private long m_steps;
+    private long m_skipped;
+    private long m_total;
+    private long m_max;
+    private long m_last;
+    private long m_totalLate;
+    private long m_maxLate;
+    
+    /**
+     * Records a single step.
+     * @param nanos the time the step took
+     * @param lateNanos how late the step was run
+     */
+    void record(long nanos, long lateNanos) {
+        m_steps++;
+        m_total += nanos;
+        m_last = nanos;
+        if ( nanos > m_max ) m_max = nanos;
+        if ( lateNanos > 0 ) {
+            m_totalLate += lateNanos;
+            if ( lateNanos > m_maxLate ) m_maxLate = lateNanos;
+        }
+    }
+    
+    /**
+     * Records steps that were skipped because the activity fell behind.
+     * @param count the number of skipped steps
+     */
+    void skip(long count) {
+        m_skipped += count;
+    }
+    
+    /**
+     * Returns the number of steps run.
+     * @return the number of steps run
+     */
+    public long getStepCount() {
+        return m_steps;
+    }
+    
+    /**
+     * Returns the number of steps skipped because the activity could not
+     * keep up with its step time.
+     * @return the number of skipped steps
+     */
+    public long getSkippedCount() {
+        return m_skipped;
+    }
+    
+    /**
+     * Returns the total time spent running steps.
+     * @return the total step time in nanoseconds
+     */
+    public long getTotalTime() {
+        return m_total;
+    }
+    
+    /**
+     * Returns the average time a step took.
+     * @return the mean step time in nanoseconds, or 0 if no step was run
+     */
+    public double getMeanTime() {
+        return m_steps == 0 ? 0 : ((double)m_total) / m_steps;
+    }
+    
+    /**
+     * Returns the longest time a step took.
+     * @return the maximum step time in nanoseconds
+     */
+    public long getMaximumTime() {
+        return m_max;
+    }
+    
+    /**
+     * Returns the time the most recent step took.
+     * @return the last step time in nanoseconds
+     */
+    public long getLastTime() {
+        return m_last;
+    }
+    
+    /**
+     * Returns how late, on average, steps were run relative to their
+     * scheduled time.
+     * @return the mean lateness in nanoseconds, or 0 if no step was run
+     */
+    public double getMeanLateness() {
+        return m_steps == 0 ? 0 : ((double)m_totalLate) / m_steps;
+    }
+    
+    /**
+     * Returns the largest delay of a step relative to its scheduled time.
+     * @return the maximum lateness in nanoseconds
+     */
+    public long getMaximumLateness() {
+        return m_maxLate;
+    }
+    
+    /**
+     * Clears all statistics.
+     */
+    public void reset() {
+        m_steps = m_skipped = 0;
+        m_total = m_max = m_last = 0;
+        m_totalLate = m_maxLate = 0;
+    }
+    
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "ActivityStatistics[steps=" + m_steps 
+            + ", skipped=" + m_skipped
+            + ", mean=" + (long)getMeanTime() + "ns"
+            + ", max=" + m_max + "ns"
+            + ", late=" + (long)getMeanLateness() + "ns]";
+    }
+    
+} // end of class ActivityStatistics
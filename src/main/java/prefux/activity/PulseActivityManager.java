@@ -0,0 +1,365 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.activity;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import prefux.util.PrefuseConfig;
+
+/**
+ * <p>Frame synchronized alternative to the thread based scheduling of the
+ * {@link ActivityManager}. Instead of sleeping for the millisecond delay
+ * requested by the next activity, this scheduler runs in frames: while the
+ * JavaFX toolkit is running, each frame is triggered by a JavaFX pulse
+ * (through an {@link AnimationTimer}), otherwise the scheduler keeps its own
+ * cadence of <code>activity.frameRate</code> frames per second based on
+ * {@link System#nanoTime()}.</p>
+ * 
+ * <p>In every frame, each due activity is stepped once with the nanosecond
+ * frame time (see {@link Activity#runNanos(long)}), so the pacing of
+ * animations follows the frames exactly. The activities are still run on
+ * the scheduler's own thread, not on the JavaFX application thread. If the
+ * scheduler falls behind, missed frames and steps are skipped rather than
+ * run back to back; they are counted in {@link #getDroppedFrameCount()} and
+ * in the {@link ActivityStatistics} of each activity.</p>
+ * 
+ * <p>The scheduler is used instead of the ActivityManager thread if the
+ * configuration property <code>activity.scheduler</code> is set to "pulse",
+ * or after calling {@link ActivityManager#setPulseScheduling(boolean)}. As
+ * with the ActivityManager, activities are scheduled through their own run
+ * methods.</p>
+ * 
+ * @see ActivityManager
+ */
+public class PulseActivityManager extends Thread {
+
+    private static PulseActivityManager s_instance;
+    
+    private final ArrayList<Activity> m_activities = new ArrayList<>();
+    private final ArrayList<Activity> m_tmp = new ArrayList<>();
+    
+    private final long m_baseNanos;
+    private final long m_baseMillis;
+    private final long m_frameNanos;
+    private volatile boolean m_run = true;
+    
+    // JavaFX pulse clock, written on the JavaFX application thread
+    private PulseTimer m_timer;
+    private final AtomicBoolean m_timerActive = new AtomicBoolean(false);
+    private volatile boolean m_fxAvailable = true;
+    private volatile long m_pulseTime;
+    private volatile long m_pulseCount;
+    private long m_seenPulses; // only used by the scheduler thread
+    
+    private volatile long m_frames;
+    private volatile long m_dropped;
+    
+    /**
+     * Returns the active PulseActivityManager instance.
+     * @return the PulseActivityManager
+     */
+    static synchronized PulseActivityManager getInstance() {
+        if ( s_instance == null || !s_instance.isAlive() ) {
+            s_instance = new PulseActivityManager();
+        }
+        return s_instance;
+    }
+    
+    /**
+     * Returns the PulseActivityManager instance, without creating it.
+     * @return the PulseActivityManager, or null if it was never started
+     */
+    static synchronized PulseActivityManager peekInstance() {
+        return s_instance;
+    }
+    
+    /**
+     * Create a new PulseActivityManager.
+     */
+    private PulseActivityManager() {
+        super("prefux_PulseActivityManager");
+        m_baseNanos  = System.nanoTime();
+        m_baseMillis = System.currentTimeMillis();
+        
+        int rate = PrefuseConfig.getInt("activity.frameRate");
+        m_frameNanos = 1000000000L / (rate > 0 ? rate : 60);
+        
+        int priority = PrefuseConfig.getInt("activity.threadPriority");
+        if ( priority >= Thread.MIN_PRIORITY && 
+             priority <= Thread.MAX_PRIORITY )
+        {
+            this.setPriority(priority);
+        }
+        this.setDaemon(true);
+        this.start();
+    }
+    
+    // ------------------------------------------------------------------------
+    // Statistics
+    
+    /**
+     * Returns the number of frames in which activities were run.
+     * @return the number of frames
+     */
+    public static long getFrameCount() {
+        PulseActivityManager pm = peekInstance();
+        return pm == null ? 0 : pm.m_frames;
+    }
+    
+    /**
+     * Returns the number of frames that were skipped because running the
+     * activities took longer than a frame.
+     * @return the number of dropped frames
+     */
+    public static long getDroppedFrameCount() {
+        PulseActivityManager pm = peekInstance();
+        return pm == null ? 0 : pm.m_dropped;
+    }
+    
+    /**
+     * Returns the number of activities scheduled with the pulse scheduler.
+     * @return the number of scheduled activities
+     */
+    public static int activityCount() {
+        PulseActivityManager pm = peekInstance();
+        return pm == null ? 0 : pm._activityCount();
+    }
+    
+    // ------------------------------------------------------------------------
+    // Scheduling
+    
+    /**
+     * Returns the current wall clock time of this scheduler. It is derived
+     * from {@link System#nanoTime()}, so it matches the frame times even if
+     * the system clock is adjusted.
+     * @return the current time in milliseconds
+     */
+    long currentTimeMillis() {
+        return m_baseMillis + (System.nanoTime()-m_baseNanos) / 1000000L;
+    }
+    
+    /**
+     * Converts a wall clock time in milliseconds to the nanosecond time
+     * base of the frames.
+     */
+    private long toNanos(long millis) {
+        if ( millis == Long.MAX_VALUE ) return Long.MAX_VALUE;
+        return m_baseNanos + (millis-m_baseMillis) * 1000000L;
+    }
+    
+    /**
+     * Schedules an Activity to start at the given time.
+     * @param a the Activity to schedule
+     * @param startTime the start time in milliseconds
+     */
+    void schedule(Activity a, long startTime) {
+        synchronized ( this ) {
+            if ( a.isScheduled() ) 
+                return; // already scheduled, do nothing
+            a.setStartTime(startTime);
+            a.resetNextNanos();
+            m_activities.add(a);
+            a.setScheduled(true);
+        }
+        startClock();
+        LockSupport.unpark(this);
+    }
+    
+    /**
+     * Cancels an Activity, if it is scheduled with this manager.
+     * @param a the Activity to cancel
+     * @return true if the activity was scheduled with this manager and has
+     *  been cancelled, false otherwise
+     */
+    boolean cancel(Activity a) {
+        boolean removed;
+        synchronized ( this ) {
+            removed = m_activities.remove(a);
+        }
+        if ( removed ) {
+            a.setScheduled(false);
+            a.setRunning(false);
+            a.fireActivityCancelled();
+        }
+        return removed;
+    }
+    
+    /**
+     * Returns the number of scheduled activities.
+     */
+    private synchronized int _activityCount() {
+        return m_activities.size();
+    }
+    
+    /**
+     * Cancels all activities and stops the scheduler thread.
+     */
+    void stopManager() {
+        while ( _activityCount() > 0 ) {
+            Activity a;
+            synchronized ( this ) {
+                a = m_activities.get(m_activities.size()-1);
+            }
+            a.cancel();
+        }
+        m_run = false;
+        LockSupport.unpark(this);
+    }
+    
+    // ------------------------------------------------------------------------
+    // Frame Clock
+    
+    /**
+     * Starts the JavaFX pulse clock, unless it is already running or the
+     * JavaFX toolkit is not available.
+     */
+    private void startClock() {
+        if ( !m_fxAvailable || !m_timerActive.compareAndSet(false, true) )
+            return;
+        try {
+            Platform.runLater(() -> {
+                if ( m_timer == null ) 
+                    m_timer = new PulseTimer();
+                m_timer.start();
+            });
+        } catch ( IllegalStateException e ) {
+            // toolkit not running, keep our own cadence from now on
+            m_fxAvailable = false;
+            m_timerActive.set(false);
+        }
+    }
+    
+    /**
+     * Forwards the JavaFX pulses to the scheduler thread. The timer stops
+     * itself when no activities are left, so that no pulses are requested
+     * while the scheduler is idle.
+     */
+    private class PulseTimer extends AnimationTimer {
+        public void handle(long now) {
+            if ( _activityCount() == 0 ) {
+                stop();
+                m_timerActive.set(false);
+                // an activity may have been scheduled in the meantime
+                if ( _activityCount() == 0 || 
+                     !m_timerActive.compareAndSet(false, true) )
+                    return;
+                start();
+            }
+            m_pulseTime = now;
+            m_pulseCount = m_pulseCount + 1;
+            LockSupport.unpark(PulseActivityManager.this);
+        }
+    } // end of inner class PulseTimer
+    
+    /**
+     * Waits for the next frame. If a JavaFX pulse arrives, its time stamp is
+     * used. Otherwise frames follow a fixed grid of frame times; if the grid
+     * time has already passed by whole frames, these are dropped. A missing
+     * JavaFX pulse is covered by the grid one frame later.
+     * @param frame the time of the previous frame
+     * @return the time of the next frame, or -1 if the scheduler stopped
+     */
+    private long awaitFrame(long frame) {
+        long deadline = frame + m_frameNanos;
+        while ( m_run ) {
+            boolean fx = m_timerActive.get();
+            long count = m_pulseCount;
+            if ( fx && count != m_seenPulses ) {
+                m_dropped += Math.max(0, count-m_seenPulses-1);
+                m_seenPulses = count;
+                return m_pulseTime;
+            }
+            long t = System.nanoTime();
+            long wait = (fx ? deadline+m_frameNanos : deadline) - t;
+            if ( wait <= 0 ) {
+                long behind = (t-deadline) / m_frameNanos;
+                m_dropped += behind;
+                m_seenPulses = count;
+                return deadline + behind*m_frameNanos;
+            }
+            LockSupport.parkNanos(this, wait);
+        }
+        return -1;
+    }
+    
+    /**
+     * Main scheduling loop, running the due activities once per frame.
+     */
+    public void run() {
+        long frame = System.nanoTime();
+        while ( m_run ) {
+            if ( _activityCount() == 0 ) {
+                // nothing to do, wait until an activity is scheduled
+                LockSupport.park(this);
+                frame = System.nanoTime() - m_frameNanos;
+                m_seenPulses = m_pulseCount;
+                continue;
+            }
+            long now = awaitFrame(frame);
+            if ( now < 0 ) break;
+            frame = now;
+            m_frames = m_frames + 1;
+            runFrame(now);
+        }
+    }
+    
+    /**
+     * Runs all scheduled activities for a single frame.
+     * @param now the frame time
+     */
+    private void runFrame(long now) {
+        synchronized ( this ) {
+            // copy content of activities, as new activities might
+            // be added while we process the current ones
+            for ( int i=0; i<m_activities.size(); i++ ) {
+                Activity a = m_activities.get(i);
+                m_tmp.add(a);
+                
+                // remove activities that won't be run again
+                if ( now >= toNanos(a.getStopTime()) ) {
+                    m_activities.remove(i--);
+                    a.setScheduled(false);
+                }
+            }
+        }
+        long tolerance = m_frameNanos / 2;
+        for ( int i=0; i<m_tmp.size(); i++ ) {
+            Activity a = m_tmp.get(i);
+            a.runActivityNanos(now, toNanos(a.getStartTime()), tolerance);
+        }
+        m_tmp.clear();
+    }
+    
+} // end of class PulseActivityManager
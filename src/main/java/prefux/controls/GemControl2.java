@@ -2,7 +2,9 @@ package prefux.controls;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javafx.collections.ObservableList;
 import javafx.event.Event;
@@ -16,8 +18,10 @@ import javafx.scene.paint.Color;
 import javafx.scene.paint.Paint;
 import javafx.scene.shape.Circle;
 import javafx.scene.shape.Line;
+import prefux.FxDisplay;
 import prefux.action.Action;
 import prefux.data.Edge;
+import prefux.data.Graph;
 import prefux.data.Node;
 import prefux.visual.NodeItem;
 import prefux.visual.VisualItem;
@@ -50,6 +54,49 @@ public class GemControl2 extends ControlAdapter {
     // A list of all the currently selected items.
     private List<VisualItem> selectedItems = new ArrayList<>();
     
+    // The display used to create and release nodes in lazy mode, or null.
+    private final FxDisplay display;
+    
+    // Collapsed nodes whose hidden subtrees still hold their JavaFX nodes,
+    // in least recently collapsed order.
+    private final Map<Node, Boolean> collapsedSubtrees;
+    
+    /**
+     * Creates a control that toggles the visibility of nodes that were all
+     * rendered upfront.
+     */
+    public GemControl2() {
+    	this.display = null;
+    	this.collapsedSubtrees = null;
+    }
+    
+    /**
+     * Creates a control that materializes subtrees lazily. The JavaFX nodes
+     * of the children are created on the given display when their parent is
+     * expanded the first time. The nodes of at most
+     * <code>maxCollapsed</code> collapsed subtrees are kept, the subtrees
+     * collapsed longest ago are released first.
+     * 
+     * @param display the display to render the items on, usually created
+     * with lazy rendering enabled
+     * @param maxCollapsed the number of collapsed subtrees to keep
+     */
+    public GemControl2(FxDisplay display, int maxCollapsed) {
+    	this.display = display;
+    	this.collapsedSubtrees = new LinkedHashMap<Node, Boolean>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+    		protected boolean removeEldestEntry(Map.Entry<Node, Boolean> eldest) {
+    			if(size() > maxCollapsed) {
+    				releaseChildren(eldest.getKey());
+    				return true;
+    			}
+    			return false;
+    		}
+    	};
+    }
+    
 	@Override
 	public void itemEvent(VisualItem item, Event e) {
 		
@@ -113,6 +160,9 @@ public class GemControl2 extends ControlAdapter {
 						
 						Node node = (Node) item;
 						hideChildren(node);
+						if(collapsedSubtrees != null) {
+							collapsedSubtrees.put(node, Boolean.TRUE);
+						}
 						
 						// Hide the "outgoing" edges.
 						List<javafx.scene.Node> lines = getOutLines(node);
@@ -134,6 +184,9 @@ public class GemControl2 extends ControlAdapter {
 					else {
 						
 						Node node = (Node) item;
+						if(collapsedSubtrees != null) {
+							collapsedSubtrees.remove(node);
+						}
 			    		showChildren(node);
 			    		
 			    		// Show the "outgoing" edges.
@@ -187,10 +240,10 @@ public class GemControl2 extends ControlAdapter {
      * that is passed to the method.
      */
     private void hideChildren(Node node) {
-    	Iterator<? extends Node> it = node.outNeighbors();
-		while(it.hasNext()) {
+    	Graph graph = node.getGraph();
+    	graph.visitNeighbors(node.getRow(), Graph.OUTEDGES, (childRow, edgeRow) -> {
 			
-			Node child = it.next();
+			Node child = graph.getNode(childRow);
 			
 			// Recursive method-call.
 			hideChildren(child);
@@ -215,41 +268,95 @@ public class GemControl2 extends ControlAdapter {
 			
 			VisualItem item = (VisualItem) child;
 			item.setVisible(false);
-		}
+		});
     }
     
     /**
-     * Recursive method that shows all the children of the node
-     * that is passed to the method.
+     * Recursive method that shows the children of the node that is passed
+     * to the method. Only the children that were expanded before are
+     * expanded again, the others are shown collapsed. In lazy mode,
+     * children shown for the first time are created collapsed, so that
+     * only the direct children of the node get a JavaFX node.
      */
     private void showChildren(Node node) {
-    	Iterator<? extends Node> it = node.outNeighbors();
-		while(it.hasNext()) {
+    	Graph graph = node.getGraph();
+    	graph.visitNeighbors(node.getRow(), Graph.OUTEDGES, (childRow, edgeRow) -> {
 			
-			Node child = it.next();
+			Node child = graph.getNode(childRow);
+			VisualItem item = (VisualItem) child;
 			
-			// Recursive method-call.
-			showChildren(child);
+			// Create the node of the child and its edge if necessary.
+			if(display != null && materialize(item, (VisualItem) graph.getEdge(edgeRow))) {
+				item.setExpanded(child.getOutDegree() == 0);
+			}
+			
+			// Recursive method-call, for the children that were expanded.
+			boolean expanded = item.isExpanded();
+			if(expanded) {
+				showChildren(child);
+			}
 			
 			// Show the circle.
 			Circle circle = getCircle(child);
 			if(circle != null) {
 				circle.setVisible(true);
-				circle.setFill(NORMAL_COLOR);
+				circle.setFill(expanded ? NORMAL_COLOR : COLLAPSED_COLOR);
 			}
 			
-			// Show the lines.
+			// Show the lines of the expanded children.
 			List<javafx.scene.Node> lines = getOutLines(child);
 			for(javafx.scene.Node line : lines) {
-				line.setVisible(true);
+				line.setVisible(expanded);
 			}
 			
-			VisualItem item = (VisualItem) child;
-			
-			// All the items will be expanded.
-			item.setExpanded(true);
 			item.setVisible(true);
+		});
+    }
+    
+    /**
+     * Renders a child and the edge leading to it, unless they already have
+     * a JavaFX node.
+     * 
+     * @return true if the child was rendered now, false if it already was
+     */
+    private boolean materialize(VisualItem child, VisualItem edgeItem) {
+		boolean created = false;
+		if(!display.isRendered(child)) {
+			display.addItem(child);
+			created = true;
+		}
+		
+		if(!display.isRendered(edgeItem)) {
+			display.addItem(edgeItem);
+			edgeItem.setVisible(true);
+			// Keep the edges below the nodes.
+			edgeItem.getNode().toBack();
 		}
+		return created;
+    }
+    
+    /**
+     * Recursive method that releases the JavaFX nodes of all the hidden
+     * descendants of the node that is passed to the method.
+     */
+    private void releaseChildren(Node node) {
+    	Graph graph = node.getGraph();
+    	graph.visitNeighbors(node.getRow(), Graph.OUTEDGES, (childRow, edgeRow) -> {
+    		
+    		VisualItem child = (VisualItem) graph.getNode(childRow);
+    		
+    		// Visible children are still shown through another parent,
+    		// unrendered children have no rendered descendants.
+    		if(child.isVisible() || !display.isRendered(child)) {
+    			return;
+    		}
+    		
+    		// Recursive method-call.
+    		releaseChildren((Node) child);
+    		
+    		display.releaseItem(child);
+    		display.releaseItem((VisualItem) graph.getEdge(edgeRow));
+    	});
     }
     
     /**
@@ -30,6 +30,7 @@
  */
 package prefux.data;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 import prefux.data.column.Column;
@@ -43,7 +44,10 @@ import prefux.data.tuple.TableEdge;
 import prefux.data.tuple.TableNode;
 import prefux.data.tuple.TupleManager;
 import prefux.data.tuple.TupleSet;
+import prefux.data.util.CompactLinkStore;
+import prefux.data.util.CompressedAdjacency;
 import prefux.data.util.Index;
+import prefux.data.util.LinkVisitor;
 import prefux.data.util.NeighborIterator;
 import prefux.util.PrefuseConfig;
 import prefux.util.TypeLib;
@@ -80,7 +84,12 @@ import prefux.util.collections.IntIterator;
  * values completely specify the graph linkage structure, to make
  * graph operations more efficient an additional table is maintained
  * internally by the Graph class, storing node indegree and outdegree
- * counts and adjacency lists for the inlinks and outlinks for all nodes.</p>
+ * counts and adjacency lists for the inlinks and outlinks for all nodes.
+ * Alternatively, a graph can be created with compact links, in which case
+ * the adjacency lists are kept in a {@link CompactLinkStore} instead. This
+ * uses less memory for large graphs and avoids an array lookup through the
+ * link table for every traversal step. The default can be set through the
+ * <code>data.graph.compactLinks</code> configuration property.</p>
  * 
  * <p>Graph nodes and edges can be accessed by application code by either
  * using the row numbers of the node and edge tables, which provide unique ids
@@ -156,6 +165,15 @@ public class Graph extends CompositeTupleSet {
     protected boolean m_longKey = false;
     /** Update listener */
     private Listener m_listener;
+    /** Precomputed links consumed by the next call to initLinkTable */
+    private CompressedAdjacency m_initLinks;
+    /** Indicates if compact link storage should be used */
+    private boolean m_useCompactLinks
+        = PrefuseConfig.getBoolean("data.graph.compactLinks");
+    /** Compact adjacency lists, null if the link table holds them */
+    protected CompactLinkStore m_compactLinks;
+    /** Linked source and target node per edge, built on first use */
+    private int[] m_linkEnds;
     /** Listener list */
     private CopyOnWriteArrayList m_listeners = new CopyOnWriteArrayList();
     
@@ -263,6 +281,57 @@ public class Graph extends CompositeTupleSet {
         init(nodes, edges, directed, nodeKey, sourceKey, targetKey);
     }
     
+    /**
+     * Create a new Graph, choosing how the adjacency lists are stored.
+     * @param nodes the backing table to use for node data.
+     * Node instances of this graph will get their data from this table.
+     * @param edges the backing table to use for edge data.
+     * Edge instances of this graph will get their data from this table.
+     * @param directed true for directed edges, false for undirected
+     * @param nodeKey data field used to uniquely identify a node. If this
+     * field is null, the node table row numbers will be used
+     * @param sourceKey data field used to denote the source node in an edge
+     * table
+     * @param targetKey data field used to denote the target node in an edge
+     * table
+     * @param compactLinks true to keep the adjacency lists in a
+     * {@link CompactLinkStore}, false to keep them in the link table
+     */
+    public Graph(Table nodes, Table edges, boolean directed,
+            String nodeKey, String sourceKey, String targetKey,
+            boolean compactLinks)
+    {
+        m_useCompactLinks = compactLinks;
+        init(nodes, edges, directed, nodeKey, sourceKey, targetKey);
+    }
+    
+    /**
+     * Create a new Graph with a precomputed link structure. The adjacency
+     * lists are taken from the given {@link CompressedAdjacency} instead of
+     * being derived from the edge table, which avoids the incremental
+     * rebuild when restoring large graphs from a snapshot. The caller is
+     * responsible for the link structure matching the edge table.
+     * @param nodes the backing table to use for node data.
+     * Node instances of this graph will get their data from this table.
+     * @param edges the backing table to use for edge data.
+     * Edge instances of this graph will get their data from this table.
+     * @param directed true for directed edges, false for undirected
+     * @param nodeKey data field used to uniquely identify a node. If this
+     * field is null, the node table row numbers will be used
+     * @param sourceKey data field used to denote the source node in an edge
+     * table
+     * @param targetKey data field used to denote the target node in an edge
+     * table
+     * @param links the adjacency lists, indexed by node row
+     */
+    public Graph(Table nodes, Table edges, boolean directed,
+            String nodeKey, String sourceKey, String targetKey,
+            CompressedAdjacency links)
+    {
+        m_initLinks = links;
+        init(nodes, edges, directed, nodeKey, sourceKey, targetKey);
+    }
+    
     // ------------------------------------------------------------------------
     // Initialization
     
@@ -377,6 +446,21 @@ public class Graph extends CompositeTupleSet {
     protected void initLinkTable() {
         // set up cache of node data
         m_links = createLinkTable();
+        m_compactLinks = null;
+        m_linkEnds = null;
+        
+        if ( m_useCompactLinks ) {
+            if ( m_initLinks != null ) {
+                m_compactLinks = new CompactLinkStore(m_initLinks);
+                m_initLinks = null;
+                return;
+            }
+            m_compactLinks = new CompactLinkStore(m_links.getMaximumRow()+1);
+        } else if ( m_initLinks != null ) {
+            initLinkTable(m_initLinks);
+            m_initLinks = null;
+            return;
+        }
                 
         IntIterator edges = getEdgeTable().rows();
         while ( edges.hasNext() ) {
@@ -385,11 +469,124 @@ public class Graph extends CompositeTupleSet {
     }
     
     /**
-     * Instantiate and return the link table.
+     * Rebuild the link table from the current contents of the edge table.
+     */
+    protected void rebuildLinkTable() {
+        initLinkTable();
+        m_spanning = null;
+    }
+    
+    /**
+     * Update the linkage of an edge whose endpoints may have changed
+     * without their previous values being known, as is the case for range
+     * update events. The previously linked endpoints are looked up in a
+     * record of the linked endpoints of each edge, which is built from the
+     * adjacency lists on first use and kept up to date afterwards.
+     * @param e the edge id
+     */
+    protected void relinkEdge(int e) {
+        int[] ends = getLinkEnds();
+        int os = -1, ot = -1;
+        if ( 2*e+1 < ends.length ) {
+            os = ends[2*e];
+            ot = ends[2*e+1];
+        }
+        int s = -1, t = -1;
+        if ( getEdgeTable().isValidRow(e) ) {
+            s = getSourceNode(e);
+            t = getTargetNode(e);
+            if ( s < 0 || t < 0 ) s = t = -1;
+        }
+        if ( s == os && t == ot )
+            return; // endpoints unchanged
+        if ( os > -1 )
+            updateDegrees(e, os, ot, -1);
+        if ( s > -1 )
+            updateDegrees(e, s, t, 1);
+    }
+    
+    /**
+     * Get the linked source and target node of each edge, at indices 2*e
+     * and 2*e+1, building the record from the adjacency lists if needed.
+     */
+    private int[] getLinkEnds() {
+        if ( m_linkEnds != null )
+            return m_linkEnds;
+        int[] ends = new int[2*(getEdgeTable().getMaximumRow()+1)];
+        Arrays.fill(ends, -1);
+        for ( IntIterator nodes = getNodeTable().rows(); nodes.hasNext(); ) {
+            int n = nodes.nextInt();
+            for ( int i=0, d=getOutDegree(n); i<d; ++i )
+                ends[2*getOutLink(n, i)] = n;
+            for ( int i=0, d=getInDegree(n); i<d; ++i )
+                ends[2*getInLink(n, i)+1] = n;
+        }
+        return m_linkEnds = ends;
+    }
+    
+    /**
+     * Keep the record of linked endpoints up to date, if there is one.
+     */
+    private void updateLinkEnds(int e, int s, int t, int incr) {
+        int[] ends = m_linkEnds;
+        if ( ends == null || incr == 0 ) return;
+        if ( incr > 0 ) {
+            if ( 2*e+1 >= ends.length ) {
+                int n = ends.length;
+                ends = m_linkEnds = Arrays.copyOf(ends, Math.max(2*e+2, 2*n));
+                Arrays.fill(ends, n, ends.length, -1);
+            }
+            ends[2*e] = s;
+            ends[2*e+1] = t;
+        } else if ( 2*e+1 < ends.length && ends[2*e] == s
+                    && ends[2*e+1] == t )
+        {
+            ends[2*e] = ends[2*e+1] = -1;
+        }
+    }
+    
+    /**
+     * Indicates if this graph keeps its adjacency lists in a
+     * {@link CompactLinkStore} rather than in the link table.
+     * @return true if compact link storage is used
+     */
+    public boolean hasCompactLinks() {
+        return m_compactLinks != null;
+    }
+    
+    /**
+     * Fill the link table from precomputed adjacency lists.
+     * @param links the adjacency lists, indexed by node row
+     */
+    protected void initLinkTable(CompressedAdjacency links) {
+        int nodes = m_links.getMaximumRow()+1;
+        if ( links.getNodeCount() < nodes ) {
+            throw new IllegalArgumentException(
+                "Link structure does not cover all node rows.");
+        }
+        for ( int n=0; n<nodes; ++n ) {
+            m_links.setInt(n, OUTDEGREE, links.getOutDegree(n));
+            m_links.setInt(n, INDEGREE,  links.getInDegree(n));
+            m_links.set(n, OUTLINKS, links.copyOutLinks(n));
+            m_links.set(n, INLINKS,  links.copyInLinks(n));
+        }
+    }
+    
+    /**
+     * Instantiate and return the link table. With compact links, the
+     * degrees and adjacency lists are kept in the {@link CompactLinkStore},
+     * so the table only has one row per node and no columns, for the
+     * columns subclasses add.
      * @return the created link table
      */
     protected Table createLinkTable() {
-        return LINKS_SCHEMA.instantiate(getNodeTable().getMaximumRow()+1);
+        int rows = getNodeTable().getMaximumRow()+1;
+        if ( m_useCompactLinks ) {
+            Table links = new Table();
+            links.addRows(rows);
+            return links;
+        }
+        return LINKS_SCHEMA.instantiate(rows);
     }
     
     /**
@@ -399,6 +596,8 @@ public class Graph extends CompositeTupleSet {
      * -1 for a removed link
      */
     protected void updateDegrees(int e, int incr) {
+        if ( incr < 0 && m_linkEnds != null && 2*e+1 < m_linkEnds.length )
+            m_linkEnds[2*e] = m_linkEnds[2*e+1] = -1;
         if ( !getEdgeTable().isValidRow(e) ) return;
         int s = getSourceNode(e);
         int t = getTargetNode(e);
@@ -418,6 +617,16 @@ public class Graph extends CompositeTupleSet {
      * -1 for a removed link
      */
     protected void updateDegrees(int e, int s, int t, int incr) {
+        updateLinkEnds(e, s, t, incr);
+        if ( m_compactLinks != null ) {
+            if ( incr > 0 ) {
+                m_compactLinks.addLink(s, t, e);
+            } else if ( incr < 0 ) {
+                m_compactLinks.removeLink(s, t, e);
+            }
+            m_spanning = null;
+            return;
+        }
         int od = m_links.getInt(s, OUTDEGREE);
         int id = m_links.getInt(t, INDEGREE);
         // update adjacency lists
@@ -478,6 +687,49 @@ public class Graph extends CompositeTupleSet {
         return false;
     }
     
+    /**
+     * Get the adjacency list of a node as an array. With the link table,
+     * the stored array itself is returned, which may be longer than the
+     * degree of the node. With compact links, a copy is returned. In both
+     * cases the array must not be modified.
+     * @param node the node id (node table row number)
+     * @param direction {@link #INEDGES} or {@link #OUTEDGES}
+     * @return the array holding the edge ids of the adjacency list, or
+     * null if the node has no such links
+     */
+    protected int[] getLinkArray(int node, int direction) {
+        if ( m_compactLinks != null ) {
+            return direction==OUTEDGES ? m_compactLinks.copyOutLinks(node)
+                                       : m_compactLinks.copyInLinks(node);
+        }
+        return (int[])m_links.get(node, direction==OUTEDGES ? OUTLINKS
+                                                            : INLINKS);
+    }
+    
+    /**
+     * Get an edge id from the out-link list of a node.
+     * @param node the node id (node table row number)
+     * @param idx the position in the out-link list
+     * @return the edge id (edge table row number)
+     */
+    protected int getOutLink(int node, int idx) {
+        if ( m_compactLinks != null )
+            return m_compactLinks.getOutLink(node, idx);
+        return ((int[])m_links.get(node, OUTLINKS))[idx];
+    }
+    
+    /**
+     * Get an edge id from the in-link list of a node.
+     * @param node the node id (node table row number)
+     * @param idx the position in the in-link list
+     * @return the edge id (edge table row number)
+     */
+    protected int getInLink(int node, int idx) {
+        if ( m_compactLinks != null )
+            return m_compactLinks.getInLink(node, idx);
+        return ((int[])m_links.get(node, INLINKS))[idx];
+    }
+    
     /**
      * Update the link table to accomodate an inserted or deleted node
      * @param r the node id, also the row number into the link table
@@ -486,9 +738,13 @@ public class Graph extends CompositeTupleSet {
     protected void updateNodeData(int r, boolean added) {
         if ( added ) {
             m_links.addRow();
+            if ( m_compactLinks != null )
+                m_compactLinks.ensureCapacity(r+1);
         } else {
             m_nodeTuples.invalidate(r);
             m_links.removeRow(r);
+            if ( m_compactLinks != null )
+                m_compactLinks.clearNode(r);
         }
     }
     
@@ -613,13 +869,13 @@ public class Graph extends CompositeTupleSet {
         if ( nodeTable.isValidRow(node) ) {
             int id = getInDegree(node);
             if ( id > 0 ) {
-                int[] links = (int[])m_links.get(node, INLINKS);
+                int[] links = getLinkArray(node, INEDGES);
                 for ( int i=id; --i>=0; )
                     removeEdge(links[i]);
             }
             int od = getOutDegree(node);
             if ( od > 0 ) {
-                int[] links = (int[])m_links.get(node, OUTLINKS);
+                int[] links = getLinkArray(node, OUTEDGES);
                 for ( int i=od; --i>=0; )
                     removeEdge(links[i]);
             }
@@ -749,6 +1005,8 @@ public class Graph extends CompositeTupleSet {
      * @return the in-degree of the node
      */
     public int getInDegree(int node) {
+        if ( m_compactLinks != null )
+            return m_compactLinks.getInDegree(node);
         return m_links.getInt(node, INDEGREE);
     }
     
@@ -770,6 +1028,8 @@ public class Graph extends CompositeTupleSet {
      * @return the out-degree of the node
      */
     public int getOutDegree(int node) {
+        if ( m_compactLinks != null )
+            return m_compactLinks.getOutDegree(node);
         return m_links.getInt(node, OUTDEGREE);
     }
     
@@ -882,7 +1142,13 @@ public class Graph extends CompositeTupleSet {
      */
     public int getEdge(int source, int target) {
         int outd = getOutDegree(source); 
-        if ( outd > 0 ) {
+        if ( outd > 0 && m_compactLinks != null ) {
+            for ( int i=0; i<outd; ++i ) {
+                int e = m_compactLinks.getOutLink(source, i);
+                if ( getTargetNode(e) == target )
+                    return e;
+            }
+        } else if ( outd > 0 ) {
             int[] edges = (int[])m_links.get(source, OUTLINKS);
             for ( int i=0; i<outd; ++i ) {
                 if ( getTargetNode(edges[i]) == target )
@@ -983,6 +1249,161 @@ public class Graph extends CompositeTupleSet {
         return getNode(getAdjacentNode(e.getRow(), n.getRow()));
     }
 
+    // ------------------------------------------------------------------------
+    // Row-level Traversal
+    
+    /**
+     * Visit all links of a node, passing the adjacent node id and the edge
+     * id of every link to the given visitor. No Node or Edge tuples and no
+     * per-link objects are created, which makes this the preferred way to
+     * traverse large graphs. For {@link #UNDIRECTED} traversal the out-links
+     * are visited before the in-links, the same order as used by
+     * {@link #edgeRows(int, int)}. The graph must not be modified while
+     * the links are visited.
+     * @param node a node id (node table row number)
+     * @param direction the directionality of the links to visit. One of
+     * {@link #INEDGES}, {@link #OUTEDGES}, or {@link #UNDIRECTED}.
+     * @param visitor the visitor to call for every link
+     */
+    public void visitNeighbors(int node, int direction, LinkVisitor visitor) {
+        if ( direction < INEDGES || direction > UNDIRECTED ) {
+            throw new IllegalArgumentException("Unrecognized edge type: " 
+                + direction + ". Type should be one of Graph.OUTEDGES, "
+                + "Graph.INEDGES, or Graph.UNDIRECTED");
+        }
+        Table edges = getEdgeTable();
+        if ( direction==OUTEDGES || direction==UNDIRECTED ) {
+            Column tcol = edges.getColumn(m_tkey);
+            int od = getOutDegree(node);
+            if ( m_compactLinks != null ) {
+                for ( int i=0; i<od; ++i ) {
+                    int e = m_compactLinks.getOutLink(node, i);
+                    visitor.visit(getNodeIndex(tcol.getLong(e)), e);
+                }
+            } else if ( od > 0 ) {
+                int[] links = (int[])m_links.get(node, OUTLINKS);
+                for ( int i=0; i<od; ++i ) {
+                    int e = links[i];
+                    visitor.visit(getNodeIndex(tcol.getLong(e)), e);
+                }
+            }
+        }
+        if ( direction==INEDGES || direction==UNDIRECTED ) {
+            Column scol = edges.getColumn(m_skey);
+            int id = getInDegree(node);
+            if ( m_compactLinks != null ) {
+                for ( int i=0; i<id; ++i ) {
+                    int e = m_compactLinks.getInLink(node, i);
+                    visitor.visit(getNodeIndex(scol.getLong(e)), e);
+                }
+            } else if ( id > 0 ) {
+                int[] links = (int[])m_links.get(node, INLINKS);
+                for ( int i=0; i<id; ++i ) {
+                    int e = links[i];
+                    visitor.visit(getNodeIndex(scol.getLong(e)), e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Get an iterator over the node ids of the nodes adjacent to the given
+     * node. Only the iterator itself is allocated, no tuples are created.
+     * @param node a node id (node table row number)
+     * @param direction the directionality of the links to follow. One of
+     * {@link #INEDGES}, {@link #OUTEDGES}, or {@link #UNDIRECTED}.
+     * @return an iterator over adjacent node ids, one per link
+     */
+    public IntIterator neighborRows(int node, int direction) {
+        return new NeighborRowIterator(node, edgeRows(node, direction));
+    }
+    
+    /**
+     * Copy the node ids of the nodes adjacent to the given node into an
+     * array.
+     * @param node a node id (node table row number)
+     * @param direction the directionality of the links to follow. One of
+     * {@link #INEDGES}, {@link #OUTEDGES}, or {@link #UNDIRECTED}.
+     * @param buf an array to fill, or null. If the array is too small, a
+     * new array is allocated.
+     * @return the array holding the adjacent node ids in its first
+     * entries. The number of valid entries equals the out-degree, in-degree
+     * or degree of the node, depending on the direction.
+     */
+    public int[] getNeighborRows(int node, int direction, int[] buf) {
+        int len = direction==OUTEDGES ? getOutDegree(node)
+                : direction==INEDGES  ? getInDegree(node)
+                : getDegree(node);
+        final int[] a = ( buf != null && buf.length >= len ? buf 
+                                                            : new int[len] );
+        visitNeighbors(node, direction, new LinkVisitor() {
+            int i = 0;
+            public void visit(int neighbor, int edge) {
+                a[i++] = neighbor;
+            }
+        });
+        return a;
+    }
+    
+    /**
+     * Export the adjacency lists of the whole graph as edge ids in
+     * compressed sparse row form, indexed by node id.
+     * @return the adjacency lists of this graph
+     */
+    public CompressedAdjacency getAdjacency() {
+        if ( m_compactLinks != null ) {
+            return m_compactLinks.toCompressedAdjacency(
+                getNodeTable().getMaximumRow()+1);
+        }
+        return CompressedAdjacency.fromGraph(this);
+    }
+    
+    /**
+     * Export the adjacency lists of the whole graph as adjacent node ids
+     * in compressed sparse row form, indexed by node id. The offsets are
+     * the same as for {@link #getAdjacency()}, but every entry holds the
+     * node at the other end of the link instead of the edge id.
+     * @return the neighbor lists of this graph
+     */
+    public CompressedAdjacency getNeighborAdjacency() {
+        CompressedAdjacency adj = getAdjacency();
+        Table edges = getEdgeTable();
+        Column scol = edges.getColumn(m_skey);
+        Column tcol = edges.getColumn(m_tkey);
+        int[] out = adj.getOutEdges().clone();
+        int[] in  = adj.getInEdges().clone();
+        for ( int i=0; i<out.length; ++i )
+            out[i] = getNodeIndex(tcol.getLong(out[i]));
+        for ( int i=0; i<in.length; ++i )
+            in[i] = getNodeIndex(scol.getLong(in[i]));
+        return new CompressedAdjacency(adj.getOutOffsets(), out,
+                                       adj.getInOffsets(), in);
+    }
+    
+    /**
+     * IntIterator over the adjacent node ids for a sequence of edge ids.
+     */
+    private class NeighborRowIterator extends IntIterator {
+        private final int m_node;
+        private final IntIterator m_edges;
+        
+        NeighborRowIterator(int node, IntIterator edges) {
+            m_node = node;
+            m_edges = edges;
+        }
+        public boolean hasNext() {
+            return m_edges.hasNext();
+        }
+        public int nextInt() {
+            int e = m_edges.nextInt();
+            int s = getSourceNode(e);
+            return s == m_node ? getTargetNode(e) : s;
+        }
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
     // ------------------------------------------------------------------------
     // Iterators
     
@@ -1025,7 +1446,11 @@ public class Graph extends CompositeTupleSet {
      * node
      */
     public IntIterator edgeRows(int node, int direction) {
-        if ( direction==OUTEDGES ) {
+        if ( m_compactLinks != null && direction==OUTEDGES ) {
+            return m_compactLinks.outLinks(node);
+        } else if ( m_compactLinks != null && direction==INEDGES ) {
+            return m_compactLinks.inLinks(node);
+        } else if ( direction==OUTEDGES ) {
             int[] outedges = (int[])m_links.get(node, OUTLINKS);
             return new IntArrayIterator(outedges, 0, getOutDegree(node));
         } else if ( direction==INEDGES ) {
@@ -1149,6 +1574,8 @@ public class Graph extends CompositeTupleSet {
         m_edgeTuples.invalidateAll();
         super.clear();
         m_links.clear();
+        if ( m_compactLinks != null )
+            m_compactLinks.clear();
     }
     
     /**
@@ -1365,7 +1792,7 @@ public class Graph extends CompositeTupleSet {
                     if ( col == EventConstants.ALL_COLUMNS ) {
                         boolean added = type==EventConstants.INSERT;
                         for ( int r=start; r<=end; ++r )
-                            updateDegrees(start, added?1:-1);
+                            updateDegrees(r, added?1:-1);
                     }
                 }
                 // clear the spanning tree reference
@@ -1397,8 +1824,18 @@ public class Graph extends CompositeTupleSet {
         }
         
         public void columnChanged(Column src, int type, int start, int end) {
-            // should never be called
-            throw new IllegalStateException();
+            if ( src==m_scol || src==m_tcol ) {
+                // range updates (e.g., deferred batches) carry no previous
+                // values, relink the edges against their recorded endpoints
+                int col = ( src==m_scol ? m_sidx : m_tidx );
+                for ( int idx=start; idx<=end; ++idx ) {
+                    int e = m_edges.getTableRow(idx, col);
+                    if ( e > -1 )
+                        relinkEdge(e);
+                }
+            } else {
+                throw new IllegalStateException();
+            }
         }
         public void columnChanged(Column src, int idx, float prev) {
             // should never be called
@@ -31,12 +31,14 @@
 package prefux.data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 
 import javax.swing.event.TableModelEvent;
 
+import prefux.data.column.AbstractColumn;
 import prefux.data.column.Column;
 import prefux.data.column.ColumnFactory;
 import prefux.data.column.ColumnMetadata;
@@ -145,6 +147,12 @@ public class Table extends AbstractTupleSet implements ColumnListener {
     /** A cached schema instance, loaded lazily */
     protected Schema m_schema;
     
+    // nesting depth of deferEvents() calls
+    private int m_deferDepth = 0;
+    // rows added while events are deferred, reported on resumeEvents()
+    private int[] m_addedRows;
+    private int m_addedCount = 0;
+    
     // ------------------------------------------------------------------------
     // Constructors
     
@@ -357,6 +365,15 @@ public class Table extends AbstractTupleSet implements ColumnListener {
         int r = m_rows.addRow();
         updateRowCount();
         
+        if ( m_deferDepth > 0 ) {
+            if ( m_addedRows == null ) {
+                m_addedRows = new int[16];
+            } else if ( m_addedCount == m_addedRows.length ) {
+                m_addedRows = Arrays.copyOf(m_addedRows, 2*m_addedCount);
+            }
+            m_addedRows[m_addedCount++] = r;
+            return r;
+        }
         fireTableEvent(r, r, TableModelEvent.ALL_COLUMNS,
                        TableModelEvent.INSERT);        
         return r;
@@ -396,6 +413,8 @@ public class Table extends AbstractTupleSet implements ColumnListener {
      */
     public boolean removeRow(int row) {
         if ( m_rows.isValidRow(row) ) {
+            // listeners must learn about pending additions first
+            fireAddedRows();
             // the order of operations here is extremely important
             // otherwise listeners may end up with corrupted state.
             // fire update *BEFORE* clearing values
@@ -1864,6 +1883,61 @@ public class Table extends AbstractTupleSet implements ColumnListener {
         }
     }
     
+    // -- Deferred Events -----------------------------------------------------
+    
+    /**
+     * Defers the update events of all columns of this table, see
+     * {@link AbstractColumn#deferEvents()}. Until {@link #resumeEvents()} is
+     * called, value changes are collected per column and then reported as
+     * one update event per changed column. This allows the values of
+     * different rows to be set concurrently. Rows added in the meantime
+     * are reported together as well, with one insert event per contiguous
+     * range of rows, before the update events. Listeners thus see the
+     * values written to the new rows within the batch.
+     */
+    public void deferEvents() {
+        ++m_deferDepth;
+        for ( int i=0; i<getColumnCount(); ++i ) {
+            Column c = getColumn(i);
+            if ( c instanceof AbstractColumn )
+                ((AbstractColumn)c).deferEvents();
+        }
+    }
+    
+    /**
+     * Ends a batch started by {@link #deferEvents()}, firing the insert
+     * events of the rows added and a single update event for each column
+     * changed during the batch.
+     */
+    public void resumeEvents() {
+        if ( m_deferDepth > 0 && --m_deferDepth == 0 )
+            fireAddedRows();
+        for ( int i=0; i<getColumnCount(); ++i ) {
+            Column c = getColumn(i);
+            if ( c instanceof AbstractColumn && 
+                 ((AbstractColumn)c).isDeferringEvents() )
+                ((AbstractColumn)c).resumeEvents();
+        }
+    }
+    
+    /**
+     * Fires the insert events of rows added while events were deferred,
+     * one event per contiguous range of rows.
+     */
+    private void fireAddedRows() {
+        int n = m_addedCount;
+        if ( n == 0 ) return;
+        int[] rows = m_addedRows;
+        m_addedRows = null;
+        m_addedCount = 0;
+        Arrays.sort(rows, 0, n);
+        for ( int i=0, j; i<n; i=j ) {
+            for ( j=i+1; j<n && rows[j]==rows[j-1]+1; ++j );
+            fireTableEvent(rows[i], rows[j-1], TableModelEvent.ALL_COLUMNS,
+                           TableModelEvent.INSERT);
+        }
+    }
+    
     // -- TableListeners ------------------------------------------------------
     
     /**
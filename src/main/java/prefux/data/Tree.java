@@ -33,6 +33,7 @@ package prefux.data;
 import java.util.Iterator;
 import java.util.logging.Logger;
 
+import prefux.data.util.TreeStructureIndex;
 import prefux.util.PrefuseConfig;
 import prefux.util.collections.IntIterator;
 
@@ -82,6 +83,11 @@ public class Tree extends Graph {
     /** The node table row number for the root node of the tree. */
     protected int m_root = -1;
     
+    /** Structural index for depth and ancestor queries, if enabled. */
+    protected TreeStructureIndex m_index =
+        PrefuseConfig.getBoolean("data.tree.structureIndex")
+            ? new TreeStructureIndex(this) : null;
+    
     // ------------------------------------------------------------------------
     // Constructors
     
@@ -135,8 +141,38 @@ public class Tree extends Graph {
             String sourceKey, String targetKey)
     {
         super(nodes, edges, false, nodeKey, sourceKey, targetKey);
-        
-        for ( IntIterator rows = nodes.rows(); rows.hasNext(); ) {
+        initRoot();
+    }
+    
+    /**
+     * Create a new Tree, choosing how the adjacency lists are stored.
+     * @param nodes the backing table to use for node data.
+     * Node instances of this graph will get their data from this table.
+     * @param edges the backing table to use for edge data.
+     * Edge instances of this graph will get their data from this table.
+     * @param nodeKey data field used to uniquely identify a node. If this
+     * field is null, the node table row numbers will be used
+     * @param sourceKey data field used to denote the source node in an edge
+     * table
+     * @param targetKey data field used to denote the target node in an edge
+     * table
+     * @param compactLinks true to keep the adjacency lists in a
+     * {@link prefux.data.util.CompactLinkStore}, false to keep them in the
+     * link table
+     */
+    public Tree(Table nodes, Table edges, String nodeKey,
+            String sourceKey, String targetKey, boolean compactLinks)
+    {
+        super(nodes, edges, false, nodeKey, sourceKey, targetKey,
+              compactLinks);
+        initRoot();
+    }
+    
+    /**
+     * Determine the root node, the first node without a parent.
+     */
+    private void initRoot() {
+        for ( IntIterator rows = getNodeTable().rows(); rows.hasNext(); ) {
             int n = rows.nextInt();
             if ( getParent(n) < 0 ) {
                 m_root = n;
@@ -151,6 +187,8 @@ public class Tree extends Graph {
      */
     void setRoot(Node root) {
         m_root = root.getRow();
+        if ( m_index != null )
+            m_index.invalidate();
     }
         
     /**
@@ -162,6 +200,15 @@ public class Tree extends Graph {
         return links;
     }
     
+    /**
+     * @see prefux.data.Graph#rebuildLinkTable()
+     */
+    protected void rebuildLinkTable() {
+        if ( m_index != null )
+            m_index.invalidate();
+        super.rebuildLinkTable();
+    }
+    
     /**
      * @see prefux.data.Graph#updateDegrees(int, int, int, int)
      */
@@ -173,13 +220,28 @@ public class Tree extends Graph {
             m_links.setInt(t, CHILDINDEX, od-1);
         } else if ( incr < 0 ) {
             // if removed, we renumber each child in the array
-            int[] links = (int[])m_links.get(s, OUTLINKS);
-            for ( int i=0; i<od; ++i ) {
-                int n = getTargetNode(links[i]);
+            IntIterator links = outEdgeRows(s);
+            for ( int i=0; links.hasNext(); ++i ) {
+                int n = getTargetNode(links.nextInt());
                 m_links.setInt(n, CHILDINDEX, i);
             }
             m_links.setInt(t, CHILDINDEX, -1);
         }
+        if ( m_index != null ) {
+            if ( incr > 0 )
+                m_index.childAdded(s, t);
+            else if ( incr < 0 )
+                m_index.childRemoved(s, t);
+        }
+    }
+    
+    /**
+     * @see prefux.data.Graph#clear()
+     */
+    public void clear() {
+        super.clear();
+        if ( m_index != null )
+            m_index.invalidate();
     }
     
     // ------------------------------------------------------------------------
@@ -325,8 +387,7 @@ public class Tree extends Graph {
     public int getChildRow(int node, int idx) {
         int cc = getChildCount(node);
         if ( idx < 0 || idx >= cc ) return -1;
-        int[] links = (int[])m_links.get(node, OUTLINKS);
-        return getTargetNode(links[idx]);
+        return getTargetNode(getOutLink(node, idx));
     }
     
     /**
@@ -414,9 +475,8 @@ public class Tree extends Graph {
         int p = getParent(node);
         if ( p < 0 )
             return -1;
-        int[] links = (int[])m_links.get(p, OUTLINKS);
         int idx = m_links.getInt(node, CHILDINDEX);
-        return ( idx<=0 ? -1 : getTargetNode(links[idx-1]));
+        return ( idx<=0 ? -1 : getTargetNode(getOutLink(p, idx-1)));
     }
     
     /**
@@ -439,10 +499,9 @@ public class Tree extends Graph {
         int p = getParent(node);
         if ( p < 0 )
             return -1;
-        int[] links = (int[])m_links.get(p, OUTLINKS);
         int idx = m_links.getInt(node, CHILDINDEX);
         int max = getChildCount(p)-1;
-        return ( idx<0 || idx>=max ? -1 : getTargetNode(links[idx+1]));
+        return ( idx<0 || idx>=max ? -1 : getTargetNode(getOutLink(p, idx+1)));
     }
     
     /**
@@ -467,12 +526,80 @@ public class Tree extends Graph {
         if ( !getNodeTable().isValidRow(node) )
             return -1;
         
+        if ( m_index != null ) {
+            int depth = m_index.getDepth(node);
+            if ( depth >= 0 ) return depth;
+        }
+        
         int depth = 0;
         if ( node!=m_root && getParent(node) < 0 ) return -1;
         for ( int i=node; i!=m_root && i>=0; ++depth, i=getParent(i) );
         return depth;
     }
     
+    /**
+     * Indicates if a node is an ancestor of another node. A node counts
+     * as its own ancestor.
+     * @param ancestor the candidate ancestor node id (node table row
+     * number)
+     * @param node the node id (node table row number) to test
+     * @return true if the candidate lies on the path from the root to
+     * the given node
+     */
+    public boolean isAncestor(int ancestor, int node) {
+        if ( m_index != null && m_index.getDepth(ancestor) >= 0
+             && m_index.getDepth(node) >= 0 )
+        {
+            return m_index.isAncestor(ancestor, node);
+        }
+        
+        if ( !getNodeTable().isValidRow(ancestor) ) return false;
+        for ( int i=node; i>=0; i=getParent(i) ) {
+            if ( i == ancestor ) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Get the lowest common ancestor of two nodes, the deepest node that
+     * is an ancestor of both.
+     * @param a the first node id (node table row number)
+     * @param b the second node id (node table row number)
+     * @return the node id of the lowest common ancestor, or -1 if the
+     * nodes have no common ancestor
+     */
+    public int getLowestCommonAncestorRow(int a, int b) {
+        if ( m_index != null ) {
+            int lca = m_index.getLowestCommonAncestor(a, b);
+            if ( lca >= 0 ) return lca;
+        }
+        
+        int da = getDepth(a), db = getDepth(b);
+        if ( da < 0 || db < 0 ) return -1;
+        for ( ; da > db; --da ) a = getParent(a);
+        for ( ; db > da; --db ) b = getParent(b);
+        while ( a != b ) {
+            a = getParent(a);
+            b = getParent(b);
+        }
+        return a;
+    }
+    
+    /**
+     * Get the lowest common ancestor of two nodes, the deepest node that
+     * is an ancestor of both.
+     * @param a the first node
+     * @param b the second node
+     * @return the lowest common ancestor, or null if the nodes have no
+     * common ancestor
+     */
+    public Node getLowestCommonAncestor(Node a, Node b) {
+        nodeCheck(a, true);
+        nodeCheck(b, true);
+        int lca = getLowestCommonAncestorRow(a.getRow(), b.getRow());
+        return ( lca < 0 ? null : getNode(lca) );
+    }
+    
     /**
      * Get the number of children of the given node id.
      * @param node a node id (node table row number)
@@ -489,8 +616,7 @@ public class Tree extends Graph {
      */
     public int getParentEdge(int node) {
         if ( getInDegree(node) > 0 ) {
-            int[] inlinks = (int[])m_links.get(node, INLINKS);
-            return inlinks[0];
+            return getInLink(node, 0);
         } else {
             return -1;
         }
@@ -527,6 +653,43 @@ public class Tree extends Graph {
         return ( p < 0 ? null : getNode(p) );
     }
     
+    // ------------------------------------------------------------------------
+    // Structure Index
+    
+    /**
+     * Enable or disable the structure index of this tree. While enabled,
+     * the tree keeps node depths, pre/post-order numbers and an ancestor
+     * table up to date as children are added and removed, so that
+     * {@link #getDepth(int)}, {@link #isAncestor(int, int)} and
+     * {@link #getLowestCommonAncestorRow(int, int)} no longer walk the
+     * parent chain. The default is taken from the
+     * <code>data.tree.structureIndex</code> configuration setting.
+     * @param enabled true to maintain the structure index
+     */
+    public void setStructureIndexEnabled(boolean enabled) {
+        if ( enabled && m_index == null ) {
+            m_index = new TreeStructureIndex(this);
+        } else if ( !enabled ) {
+            m_index = null;
+        }
+    }
+    
+    /**
+     * Indicates if this tree maintains a structure index.
+     * @return true if the structure index is enabled
+     */
+    public boolean isStructureIndexEnabled() {
+        return m_index != null;
+    }
+    
+    /**
+     * Get the structure index of this tree.
+     * @return the structure index, or null if it is not enabled
+     */
+    public TreeStructureIndex getStructureIndex() {
+        return m_index;
+    }
+    
     // ------------------------------------------------------------------------
     // Iterators
     
@@ -31,9 +31,11 @@
 package prefux.data.column;
 
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import prefux.data.DataTypeException;
 import prefux.data.event.ColumnListener;
+import prefux.data.event.EventConstants;
 import prefux.data.parser.DataParseException;
 import prefux.data.parser.DataParser;
 import prefux.data.parser.ObjectParser;
@@ -56,6 +58,9 @@ public abstract class AbstractColumn implements Column {
     
     protected CopyOnWriteArrayList m_listeners;
     
+    // collects the changed rows while events are deferred
+    private volatile DeferredEvents m_deferred;
+    
     /**
      * Create a new AbstractColumn of type Object.
      */
@@ -166,6 +171,11 @@ public abstract class AbstractColumn implements Column {
      * Notifies all registered listeners of a column UPDATE event
      */
     protected final void fireColumnEvent(int type, int start, int end) {
+        DeferredEvents d = m_deferred;
+        if ( d != null && type == EventConstants.UPDATE ) {
+            d.mark(start, end);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, type, start, end);
@@ -177,6 +187,11 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, int prev) {
+        DeferredEvents d = m_deferred;
+        if ( d != null ) {
+            d.mark(idx, idx);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -188,6 +203,11 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, long prev) {
+        DeferredEvents d = m_deferred;
+        if ( d != null ) {
+            d.mark(idx, idx);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -199,6 +219,11 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, float prev) {
+        DeferredEvents d = m_deferred;
+        if ( d != null ) {
+            d.mark(idx, idx);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -210,6 +235,11 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, double prev) {
+        DeferredEvents d = m_deferred;
+        if ( d != null ) {
+            d.mark(idx, idx);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -221,6 +251,11 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, boolean prev) {
+        DeferredEvents d = m_deferred;
+        if ( d != null ) {
+            d.mark(idx, idx);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
@@ -232,11 +267,79 @@ public abstract class AbstractColumn implements Column {
      * @param prev the previous value at the given index
      */
     protected final void fireColumnEvent(int idx, Object prev) {
+        DeferredEvents d = m_deferred;
+        if ( d != null ) {
+            d.mark(idx, idx);
+            return;
+        }
         Object[] lstnrs = m_listeners.getArray();
         for ( int i=0; i<lstnrs.length; ++i )
             ((ColumnListener)lstnrs[i]).columnChanged(this, idx, prev);
     }
     
+    // ------------------------------------------------------------------------
+    // Deferred Events
+    
+    /**
+     * Defers the update events of this column. Until a matching call to
+     * {@link #resumeEvents()}, changes of values are not reported to the
+     * listeners one at a time; instead the range of changed rows is
+     * collected and reported as a single update event when events are
+     * resumed. Calls can be nested. While events are deferred, values in
+     * different rows may be set concurrently from multiple threads.
+     * This method and {@link #resumeEvents()} must be called from a single
+     * controlling thread.
+     */
+    public void deferEvents() {
+        DeferredEvents d = m_deferred;
+        if ( d == null ) {
+            m_deferred = new DeferredEvents();
+        } else {
+            d.depth++;
+        }
+    }
+    
+    /**
+     * Ends a batch started by {@link #deferEvents()}. When the outermost
+     * batch ends, a single update event covering all rows changed during
+     * the batch is fired.
+     */
+    public void resumeEvents() {
+        DeferredEvents d = m_deferred;
+        if ( d == null ) {
+            throw new IllegalStateException("Events are not deferred");
+        } else if ( --d.depth > 0 ) {
+            return;
+        }
+        m_deferred = null;
+        int lo = d.low.get(), hi = d.high.get();
+        if ( lo <= hi )
+            fireColumnEvent(EventConstants.UPDATE, lo, hi);
+    }
+    
+    /**
+     * Indicates if the update events of this column are currently deferred.
+     * @return true if events are deferred, false otherwise
+     */
+    public boolean isDeferringEvents() {
+        return m_deferred != null;
+    }
+    
+    /**
+     * Range of rows changed while events are deferred.
+     */
+    private static final class DeferredEvents {
+        final AtomicInteger low  = new AtomicInteger(Integer.MAX_VALUE);
+        final AtomicInteger high = new AtomicInteger(-1);
+        int depth = 1;
+        
+        void mark(int start, int end) {
+            int v;
+            while ( start < (v=low.get()) && !low.compareAndSet(v, start) );
+            while ( end > (v=high.get()) && !high.compareAndSet(v, end) );
+        }
+    } // end of inner class DeferredEvents
+    
     // ------------------------------------------------------------------------
     // Data Access Methods
     
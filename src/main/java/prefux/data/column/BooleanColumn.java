@@ -159,12 +159,28 @@ public class BooleanColumn extends AbstractColumn {
         }
 
         // set the new value
-        m_bits.set(row, val);
+        setBit(row, val);
 
         // fire a change event
         fireColumnEvent(row, prev);
     }
 
+    /**
+     * Writes a bit. BitSet is not safe for concurrent writes, not even to
+     * different bits, so writes are serialized while events are deferred
+     * and rows may be set from multiple threads. Reads need no lock, as
+     * the bits of rows that are not written stay visible.
+     */
+    private void setBit(int row, boolean val) {
+        if (isDeferringEvents()) {
+            synchronized (m_bits) {
+                m_bits.set(row, val);
+            }
+        } else {
+            m_bits.set(row, val);
+        }
+    }
+
     @Override
     public void setInt(int val, int row) throws DataTypeException {
         if (m_readOnly) {
@@ -183,7 +199,7 @@ public class BooleanColumn extends AbstractColumn {
         }
 
         // set the new value
-        m_bits.set(row, boolVal);
+        setBit(row, boolVal);
 
         // fire a change event
         fireColumnEvent(row, prev);
@@ -30,27 +30,54 @@
  */
 package prefux.data.column;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import prefux.data.Table;
 import prefux.data.event.ColumnListener;
+import prefux.data.event.EventConstants;
+import prefux.data.event.TableListener;
 import prefux.data.util.Index;
 import prefux.util.DataLib;
+import prefux.util.DistributionSummary;
+import prefux.util.QuantileSketch;
+import prefux.util.TimeLib;
 import prefux.util.TypeLib;
 import prefux.util.collections.DefaultLiteralComparator;
+import prefux.util.collections.IntIterator;
 
 /**
- * ColumnMetadata stores computed metadata and statistics for a singe column
+ * <p>ColumnMetadata stores computed metadata and statistics for a singe column
  * instance. They are created automatically by Table instances and are
- * retrieved using the {@link prefux.data.Table#getMetadata(String)} method.
+ * retrieved using the {@link prefux.data.Table#getMetadata(String)} method.</p>
+ * 
+ * <p>In dynamic mode the statistics are computed on first access and then
+ * kept up to date as values change, instead of being recomputed from
+ * scratch: single value updates and added or removed rows adjust a running
+ * mean and variance (Welford's method), the sum, the minimum and maximum
+ * rows, a multiset of the distinct values and a
+ * {@link DistributionSummary} for quantile queries, by default a
+ * {@link QuantileSketch}. A minimum or maximum that is overwritten by a
+ * larger or smaller value is repaired lazily by a rescan on the next
+ * request, and a distribution summary that cannot forget values is rebuilt
+ * once the share of removed values in it exceeds one percent. Range updates
+ * carry no previous values: the minimum and maximum are still extended by
+ * the new values, while the moments, the distinct values and the
+ * distribution are marked dirty and recomputed on their next request.</p>
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
 public class ColumnMetadata implements ColumnListener {
 
 	// TODO consider refactor. is non-dynamic mode needed? pass Column reference in?
 	
+    /** Share of removed values at which the distribution is rebuilt */
+    private static final double STALE_FRACTION = 0.01;
+    
     private Table   m_table;
     private String  m_field;
     private boolean m_dynamic;
@@ -59,15 +86,38 @@ public class ColumnMetadata implements ColumnListener {
     private Comparator m_cmp;
     
     private Object m_default;
-    private int m_min;
-    private int m_max;
     private int m_median;
     private int m_unique;
-    private Double m_mean;
-    private Double m_stdev;
-    private Double m_sum;
     private Object[] m_ordinalA;
-    private Map m_ordinalM;
+    private Map<Object,Integer> m_ordinalM;
+    
+    // rows covered by the running statistics
+    private boolean m_stats;
+    private BitSet m_tracked;
+    private int m_rows;
+    
+    // running moments
+    private boolean m_moments;
+    private int m_nan;
+    private double m_mean;
+    private double m_m2;
+    private double m_sum;
+    
+    // extremes, repaired lazily
+    private boolean m_extremes;
+    private int m_min;
+    private int m_max;
+    private Object m_minValue;
+    private Object m_maxValue;
+    
+    // multiset of values, and the distribution summary
+    private Map<Object,int[]> m_counts;
+    private DistributionSummary m_summary;
+    private Supplier<? extends DistributionSummary> m_summaryFactory
+        = QuantileSketch::new;
+    private int m_stale;
+    
+    private final TableListener m_rowListener = this::rowsChanged;
     
     // ------------------------------------------------------------------------
     
@@ -88,8 +138,8 @@ public class ColumnMetadata implements ColumnListener {
      * values in the column
      * @param dynamic indicates if this ColumnMetadata should react to
      * changes in the underlying table values. If true, computed values
-     * stored in this metadata object will be invalidated when updates to
-     * the column data occur.
+     * stored in this metadata object will be updated or invalidated when
+     * updates to the column data occur.
      */
     public ColumnMetadata(Table table, String column, 
             Comparator cmp, boolean dynamic)
@@ -98,6 +148,7 @@ public class ColumnMetadata implements ColumnListener {
         m_field = column;
         m_cmp = cmp;
         m_dynamic = dynamic;
+        clearCachedValues();
     }
     
     /**
@@ -106,20 +157,41 @@ public class ColumnMetadata implements ColumnListener {
      */
     public void dispose() {
         m_table.getColumn(m_field).removeColumnListener(this);
+        m_table.removeTableListener(m_rowListener);
     }
 
     // ------------------------------------------------------------------------
     
     private void clearCachedValues() {
-        m_min    = -1;
-        m_max    = -1;
         m_median = -1;
         m_unique = -1;
-        m_mean   = null;
-        m_stdev  = null;
-        m_sum    = null;
         m_ordinalA = null;
         m_ordinalM = null;
+        
+        m_stats    = false;
+        m_tracked  = null;
+        m_rows     = 0;
+        m_moments  = false;
+        m_extremes = false;
+        m_min      = -1;
+        m_max      = -1;
+        m_minValue = null;
+        m_maxValue = null;
+        m_counts   = null;
+        m_summary  = null;
+        m_stale    = 0;
+    }
+    
+    /**
+     * Clear the values that are always recomputed after a change.
+     */
+    private void clearDerivedValues() {
+        m_median = -1;
+        m_unique = -1;
+        if ( m_counts == null ) {
+            m_ordinalA = null;
+            m_ordinalM = null;
+        }
     }
     
     /**
@@ -145,17 +217,277 @@ public class ColumnMetadata implements ColumnListener {
     }
     
     private void accessCheck() {
-        if ( m_init ) return;
+        if ( m_init ) {
+            // rows added or removed behind our back invalidate everything
+            if ( m_dynamic && m_stats && m_rows != m_table.getRowCount() )
+                clearCachedValues();
+            return;
+        }
         
         if ( m_dynamic ) {
           clearCachedValues();
           m_table.getColumn(m_field).addColumnListener(this);
+          m_table.addTableListener(m_rowListener);
         } else {
           calculateValues();
         }
         m_init = true;
     }
     
+    // ------------------------------------------------------------------------
+    // Running Statistics
+    
+    /**
+     * Compute the running statistics with a scan over all rows.
+     */
+    private void ensureStats() {
+        if ( m_stats ) return;
+        m_tracked = new BitSet(m_table.getMaximumRow()+1);
+        m_rows = 0;
+        m_moments = true;
+        m_nan = 0;
+        m_mean = m_m2 = m_sum = 0;
+        m_extremes = true;
+        m_min = m_max = -1;
+        m_minValue = m_maxValue = null;
+        m_stats = true;
+        materialize();
+        for ( IntIterator rows = m_table.rows(); rows.hasNext(); ) {
+            int row = rows.nextInt();
+            add(row, m_table.get(row, m_field));
+        }
+    }
+    
+    /**
+     * Recompute the moments after a range update.
+     */
+    private void ensureMoments() {
+        ensureStats();
+        if ( m_moments ) return;
+        m_nan = 0;
+        m_mean = m_m2 = m_sum = 0;
+        int n = 0;
+        materialize();
+        for ( IntIterator rows = m_table.rows(); rows.hasNext(); ) {
+            double x = toDouble(m_table.get(rows.nextInt(), m_field));
+            if ( Double.isNaN(x) ) {
+                ++m_nan;
+            } else {
+                double delta = x - m_mean;
+                m_mean += delta / ++n;
+                m_m2 += delta * (x - m_mean);
+                m_sum += x;
+            }
+        }
+        m_moments = true;
+    }
+    
+    /**
+     * Recompute the minimum and maximum rows after one of them was lost.
+     */
+    private void ensureExtremes() {
+        ensureStats();
+        if ( m_extremes ) return;
+        m_min = m_max = -1;
+        m_minValue = m_maxValue = null;
+        materialize();
+        for ( IntIterator rows = m_table.rows(); rows.hasNext(); ) {
+            int row = rows.nextInt();
+            extend(row, m_table.get(row, m_field));
+        }
+        m_extremes = true;
+    }
+    
+    /**
+     * Build the multiset of distinct values.
+     */
+    private Map<Object,int[]> ensureCounts() {
+        ensureStats();
+        if ( m_counts == null ) {
+            m_counts = new HashMap<Object,int[]>();
+            materialize();
+            for ( IntIterator rows = m_table.rows(); rows.hasNext(); ) {
+                increment(m_table.get(rows.nextInt(), m_field));
+            }
+            m_ordinalA = null;
+            m_ordinalM = null;
+        }
+        return m_counts;
+    }
+    
+    /**
+     * Build the distribution summary.
+     */
+    private DistributionSummary ensureSummary() {
+        ensureStats();
+        if ( m_summary == null ) {
+            DistributionSummary ds = m_summaryFactory.get();
+            materialize();
+            for ( IntIterator rows = m_table.rows(); rows.hasNext(); ) {
+                ds.update(toDouble(m_table.get(rows.nextInt(), m_field)));
+            }
+            m_summary = ds;
+            m_stale = 0;
+        }
+        return m_summary;
+    }
+    
+    /**
+     * Fill the cache of an expression column ahead of a full scan, which
+     * is cheaper than evaluating the expression row by row during the scan.
+     */
+    private void materialize() {
+        Column c = m_table.getColumn(m_field);
+        if ( c instanceof ExpressionColumn )
+            ((ExpressionColumn)c).materialize();
+    }
+    
+    /**
+     * Account for a row entering the statistics with the given value.
+     */
+    private void add(int row, Object value) {
+        m_tracked.set(row);
+        ++m_rows;
+        
+        double x = toDouble(value);
+        if ( !m_moments ) {
+            // recomputed on the next request
+        } else if ( Double.isNaN(x) ) {
+            ++m_nan;
+        } else {
+            int n = m_rows - m_nan;
+            double delta = x - m_mean;
+            m_mean += delta / n;
+            m_m2 += delta * (x - m_mean);
+            m_sum += x;
+        }
+        if ( m_extremes )
+            extend(row, value);
+        if ( m_counts != null && increment(value) ) {
+            m_ordinalA = null;
+            m_ordinalM = null;
+        }
+        if ( m_summary != null )
+            m_summary.update(x);
+    }
+    
+    /**
+     * Account for a row leaving the statistics with the given value.
+     */
+    private void remove(int row, Object value) {
+        m_tracked.clear(row);
+        --m_rows;
+        
+        double x = toDouble(value);
+        if ( !m_moments ) {
+            // recomputed on the next request
+        } else if ( Double.isNaN(x) ) {
+            --m_nan;
+        } else {
+            int n = m_rows - m_nan;
+            if ( n == 0 ) {
+                m_mean = m_m2 = m_sum = 0;
+            } else {
+                double delta = x - m_mean;
+                m_mean -= delta / n;
+                m_m2 -= delta * (x - m_mean);
+                m_sum -= x;
+            }
+        }
+        if ( m_rows == 0 ) {
+            m_extremes = true;
+            m_min = m_max = -1;
+            m_minValue = m_maxValue = null;
+        } else if ( row == m_min || row == m_max ) {
+            m_extremes = false;
+        }
+        if ( m_counts != null && decrement(value) ) {
+            m_ordinalA = null;
+            m_ordinalM = null;
+        }
+        if ( m_summary != null && !Double.isNaN(x) && !m_summary.remove(x)
+             && ++m_stale > STALE_FRACTION*m_rows )
+            m_summary = null;
+    }
+    
+    /**
+     * Account for a changed value of a tracked row.
+     */
+    private void update(int row, Object prev, Object value) {
+        // an extreme row whose value only moved further out stays extreme
+        boolean keep = m_extremes
+            && ( row != m_min || compare(value, m_minValue) <= 0 )
+            && ( row != m_max || compare(value, m_maxValue) >= 0 );
+        remove(row, prev);
+        if ( keep && !m_extremes ) {
+            m_extremes = true;
+            if ( row == m_min ) m_minValue = value;
+            if ( row == m_max ) m_maxValue = value;
+        }
+        add(row, value);
+    }
+    
+    /**
+     * Let the given value extend the minimum and maximum.
+     */
+    private void extend(int row, Object value) {
+        if ( m_min < 0 || compare(value, m_minValue) < 0 ) {
+            m_min = row;
+            m_minValue = value;
+        }
+        if ( m_max < 0 || compare(value, m_maxValue) > 0 ) {
+            m_max = row;
+            m_maxValue = value;
+        }
+    }
+    
+    /**
+     * Add a value to the multiset.
+     * @return true if the value is new to the multiset
+     */
+    private boolean increment(Object value) {
+        int[] c = m_counts.get(value);
+        if ( c == null ) {
+            m_counts.put(value, new int[] {1});
+            return true;
+        }
+        ++c[0];
+        return false;
+    }
+    
+    /**
+     * Remove a value from the multiset.
+     * @return true if the last occurrence of the value was removed
+     */
+    private boolean decrement(Object value) {
+        int[] c = m_counts.get(value);
+        if ( c == null ) {
+            // should not happen, start over on next access
+            m_counts = null;
+            return true;
+        }
+        if ( --c[0] == 0 ) {
+            m_counts.remove(value);
+            return true;
+        }
+        return false;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private int compare(Object a, Object b) {
+        return m_cmp.compare(a, b);
+    }
+    
+    private static double toDouble(Object value) {
+        if ( value instanceof Number ) {
+            return ((Number)value).doubleValue();
+        } else if ( value instanceof Date ) {
+            return ((Date)value).getTime();
+        } else {
+            return Double.NaN;
+        }
+    }
+    
     // ------------------------------------------------------------------------
     
     /**
@@ -190,13 +522,12 @@ public class ColumnMetadata implements ColumnListener {
      */
     public int getMinimumRow() {
         accessCheck();
-        if ( m_min == -1 && m_dynamic ) {
+        if ( m_dynamic ) {
             Index idx = m_table.getIndex(m_field);
             if ( idx != null ) {
-                m_min = idx.minimum();
-            } else {
-                m_min = DataLib.min(m_table.tuples(), m_field, m_cmp).getRow();
+                return idx.minimum();
             }
+            ensureExtremes();
         }
         return m_min;
     }
@@ -208,13 +539,12 @@ public class ColumnMetadata implements ColumnListener {
      */
     public int getMaximumRow() {
         accessCheck();
-        if ( m_max == -1 && m_dynamic ) {
+        if ( m_dynamic ) {
             Index idx = m_table.getIndex(m_field);
             if ( idx != null ) {
-                m_max = idx.maximum();
-            } else {
-                m_max = DataLib.max(m_table.tuples(), m_field, m_cmp).getRow();
+                return idx.maximum();
             }
+            ensureExtremes();
         }
         return m_max;
     }
@@ -243,12 +573,12 @@ public class ColumnMetadata implements ColumnListener {
      */
     public int getUniqueCount() {
         accessCheck();
-        if ( m_unique == -1 && m_dynamic ) {
+        if ( m_dynamic ) {
             Index idx = m_table.getIndex(m_field);
-            if ( idx != null ) {
+            if ( idx == null ) {
+                return ensureCounts().size();
+            } else if ( m_unique == -1 ) {
                 m_unique = idx.uniqueCount();
-            } else {
-                m_unique = DataLib.uniqueCount(m_table.tuples(), m_field);
             }
         }
         return m_unique;
@@ -256,45 +586,86 @@ public class ColumnMetadata implements ColumnListener {
     
     /**
      * Get the mean value of numeric values in the column. If this column
-     * does not contain numeric values, this method will result in an
-     * exception being thrown.
+     * does not contain numeric values, NaN is returned.
      * @return the mean of numeric values in the column
      */
     public double getMean() {
         accessCheck();
-        if ( m_mean == null && m_dynamic ) {
-            m_mean = new Double(DataLib.mean(m_table.tuples(), m_field));
-        }
-        return m_mean.doubleValue();
+        if ( m_dynamic ) ensureMoments();
+        return ( m_nan > 0 || m_rows == 0 ? Double.NaN : m_mean );
     }
     
     /**
-     * Get the standard deviation of numeric values in the column. If this column
-     * does not contain numeric values, this method will result in an
-     * exception being thrown.
+     * Get the standard deviation of numeric values in the column. If this
+     * column does not contain numeric values, NaN is returned.
      * @return the standard deviation of numeric values in the column
      */
     public double getDeviation() {
         accessCheck();
-        if ( m_stdev == null && m_dynamic ) {
-            m_stdev = new Double(
-                    DataLib.deviation(m_table.tuples(), m_field, getMean()));
-        }
-        return m_stdev.doubleValue();
+        if ( m_dynamic ) ensureMoments();
+        return ( m_nan > 0 || m_rows == 0 ? Double.NaN
+                 : Math.sqrt(Math.max(0, m_m2) / m_rows) );
     }
     
     /**
      * Get the sum of numeric values in the column. If this column
-     * does not contain numeric values, this method will result in an
-     * exception being thrown.
+     * does not contain numeric values, NaN is returned.
      * @return the sum of numeric values in the column
      */
     public double getSum() {
         accessCheck();
-        if ( m_sum == null && m_dynamic ) {
-            m_sum = new Double(DataLib.sum(m_table.tuples(), m_field));
-        }
-        return m_sum.doubleValue();
+        if ( m_dynamic ) ensureMoments();
+        return ( m_nan > 0 ? Double.NaN : m_sum );
+    }
+    
+    /**
+     * Set the type of {@link DistributionSummary} used for quantile
+     * queries on this column. The default is a {@link QuantileSketch}.
+     * @param factory creates a new, empty summary
+     */
+    public void setDistributionFactory(
+            Supplier<? extends DistributionSummary> factory)
+    {
+        m_summaryFactory = factory;
+        m_summary = null;
+    }
+    
+    /**
+     * Get the distribution summary of the numeric values in the column.
+     * The summary is maintained along with the column and must not be
+     * modified; use {@link DistributionSummary#copy()} to merge it with
+     * the summaries of other tables.
+     * @return the distribution summary of the column
+     */
+    public DistributionSummary getDistribution() {
+        accessCheck();
+        if ( m_dynamic ) ensureSummary();
+        return m_summary;
+    }
+    
+    /**
+     * Get an approximate quantile of the numeric values in the column.
+     * @param p the quantile, between 0 and 1 (0.5 is the median)
+     * @return the approximate quantile value
+     * @see #getDistribution()
+     */
+    public double getQuantile(double p) {
+        DistributionSummary ds = getDistribution();
+        return ( ds == null ? Double.NaN : ds.getQuantile(p) );
+    }
+    
+    /**
+     * Get approximate n-quantile boundaries of the numeric values in the
+     * column, in the format of
+     * {@link prefux.util.MathLib#quantiles(int, double[])}. With the
+     * default summary the result is exact for small columns.
+     * @param n the number of quantiles
+     * @return an n+1 array holding the minimum value followed by the
+     * quantile boundaries
+     */
+    public double[] getQuantiles(int n) {
+        DistributionSummary ds = getDistribution();
+        return ( ds == null ? new double[n+1] : ds.getQuantiles(n) );
     }
     
     /**
@@ -303,8 +674,13 @@ public class ColumnMetadata implements ColumnListener {
      */
     public Object[] getOrdinalArray() {
         accessCheck();
-        if ( m_ordinalA == null && m_dynamic ) {
-            m_ordinalA = DataLib.ordinalArray(m_table.tuples(),m_field,m_cmp);
+        if ( m_dynamic ) {
+            Map<Object,int[]> counts = ensureCounts();
+            if ( m_ordinalA == null ) {
+                Object[] a = counts.keySet().toArray();
+                Arrays.sort(a, this::compare);
+                m_ordinalA = a;
+            }
         }
         return m_ordinalA;
     }
@@ -318,11 +694,13 @@ public class ColumnMetadata implements ColumnListener {
      */
     public Map getOrdinalMap() {
         accessCheck();
-        if ( m_ordinalM == null && m_dynamic ) {
+        if ( m_dynamic ) {
             Object[] a = getOrdinalArray();
-            m_ordinalM = new HashMap();
-            for ( int i=0; i<a.length; ++i )
-                m_ordinalM.put(a[i], new Integer(i));
+            if ( m_ordinalM == null ) {
+                m_ordinalM = new HashMap<Object,Integer>();
+                for ( int i=0; i<a.length; ++i )
+                    m_ordinalM.put(a[i], Integer.valueOf(i));
+            }
             //m_ordinalM = DataLib.ordinalMap(m_table.tuples(), m_field, m_cmp);
         }
         return m_ordinalM;
@@ -330,53 +708,128 @@ public class ColumnMetadata implements ColumnListener {
     
     // ------------------------------------------------------------------------
     
+    /**
+     * Table listener callback, tracks rows entering or leaving the table.
+     * Deletions are announced before the row is released, so the removed
+     * value can still be read.
+     */
+    private void rowsChanged(Table t, int start, int end, int col, int type) {
+        if ( col != EventConstants.ALL_COLUMNS
+             || type == EventConstants.UPDATE )
+            return;
+        clearDerivedValues();
+        if ( !m_stats ) return;
+        
+        boolean insert = ( type == EventConstants.INSERT );
+        for ( int r=start; r<=end; ++r ) {
+            if ( insert ) {
+                if ( !m_tracked.get(r) && m_table.isValidRow(r) )
+                    add(r, m_table.get(r, m_field));
+            } else if ( m_tracked.get(r) ) {
+                remove(r, m_table.get(r, m_field));
+            }
+        }
+    }
+    
+    /**
+     * Single value update of a column row, with the previous value boxed
+     * the way the column would box it.
+     */
+    private void valueChanged(int idx, Object prev) {
+        clearDerivedValues();
+        if ( !m_stats ) return;
+        
+        int row = m_table.getTableRow(idx, m_table.getColumnNumber(m_field));
+        // ignore rows not (or no longer) part of the statistics
+        if ( row < 0 || !m_tracked.get(row) ) return;
+        update(row, prev, m_table.get(row, m_field));
+    }
+    
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int, int)
      */
     public void columnChanged(Column src, int type, int start, int end) {
-        clearCachedValues();
+        clearDerivedValues();
+        // rows entering or leaving the table are tracked by rowsChanged
+        if ( !m_stats || type != EventConstants.UPDATE ) return;
+        
+        // the previous values are unknown, so only the extremes can follow
+        // the new values; everything else is recomputed on request
+        m_moments = false;
+        m_summary = null;
+        if ( m_counts != null ) {
+            m_counts = null;
+            m_ordinalA = null;
+            m_ordinalM = null;
+        }
+        if ( !m_extremes ) return;
+        int col = m_table.getColumnNumber(m_field);
+        for ( int idx=start; idx<=end; ++idx ) {
+            int row = m_table.getTableRow(idx, col);
+            if ( row < 0 || !m_tracked.get(row) ) {
+                continue;
+            } else if ( row == m_min || row == m_max ) {
+                m_extremes = false;
+                return;
+            }
+            extend(row, m_table.get(row, m_field));
+        }
     }
     
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, boolean)
      */
     public void columnChanged(Column src, int idx, boolean prev) {
-        columnChanged(src, 0, idx, idx);
+        valueChanged(idx, Boolean.valueOf(prev));
     }
 
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, double)
      */
     public void columnChanged(Column src, int idx, double prev) {
-        columnChanged(src, 0, idx, idx);
+        valueChanged(idx, Double.valueOf(prev));
     }
 
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, float)
      */
     public void columnChanged(Column src, int idx, float prev) {
-        columnChanged(src, 0, idx, idx);
+        valueChanged(idx, Float.valueOf(prev));
     }
     
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int)
      */
     public void columnChanged(Column src, int idx, int prev) {
-        columnChanged(src, 0, idx, idx);
+        Class<?> type = src.getColumnType();
+        if ( type == byte.class ) {
+            valueChanged(idx, Byte.valueOf((byte)prev));
+        } else if ( type == int.class ) {
+            valueChanged(idx, Integer.valueOf(prev));
+        } else {
+            columnChanged(src, EventConstants.UPDATE, idx, idx);
+        }
     }
 
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, long)
      */
     public void columnChanged(Column src, int idx, long prev) {
-        columnChanged(src, 0, idx, idx);
+        Class<?> type = src.getColumnType();
+        if ( type == long.class ) {
+            valueChanged(idx, Long.valueOf(prev));
+        } else if ( Date.class.isAssignableFrom(type) ) {
+            valueChanged(idx, TimeLib.getDate(type, prev));
+        } else {
+            columnChanged(src, EventConstants.UPDATE, idx, idx);
+        }
     }
 
     /**
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, java.lang.Object)
      */
     public void columnChanged(Column src, int idx, Object prev) {
-        columnChanged(src, 0, idx, idx);
+        valueChanged(idx, prev);
     }
     
 } // end of class ColumnMetadata
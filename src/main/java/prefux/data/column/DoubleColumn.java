@@ -34,6 +34,7 @@ import java.util.Arrays;
 
 import prefux.data.DataReadOnlyException;
 import prefux.data.DataTypeException;
+import prefux.data.event.EventConstants;
 
 /**
  * Column implementation for storing double values.
@@ -165,6 +166,57 @@ public class DoubleColumn extends AbstractColumn {
         // fire a change event
         fireColumnEvent(row, prev);
     }
+
+    /**
+     * Copy a block of values into this column, firing a single update
+     * event for the whole row range rather than one event per value.
+     * @param values the array of values to copy
+     * @param offset the index of the first value in the array
+     * @param row the first row to set
+     * @param len the number of values to copy
+     */
+    public void setDoubles(double[] values, int offset, int row, int len) {
+        if ( m_readOnly ) {
+            throw new DataReadOnlyException();
+        } else if ( row < 0 || row+len > m_size ) {
+            throw new IllegalArgumentException("Row range out of bounds: "
+                + row + "-" + (row+len-1));
+        }
+        if ( len <= 0 ) return;
+        System.arraycopy(values, offset, m_values, row, len);
+        fireColumnEvent(EventConstants.UPDATE, row, row+len-1);
+    }
+    
+    /**
+     * Set the given rows to the linear interpolation between the values of
+     * a start and an end column, firing a single update event for the range
+     * of changed rows rather than one event per value.
+     * @param start the column holding the starting values
+     * @param end the column holding the ending values
+     * @param frac the interpolation fraction
+     * @param rows the rows to set, in ascending order
+     * @param len the number of rows in the array to set
+     */
+    public void interpolate(DoubleColumn start, DoubleColumn end, double frac,
+                            int[] rows, int len)
+    {
+        if ( m_readOnly ) {
+            throw new DataReadOnlyException();
+        }
+        double[] v = m_values, s = start.m_values, e = end.m_values;
+        int lo = -1, hi = -1;
+        for ( int i=0; i<len; ++i ) {
+            int row = rows[i];
+            double val = s[row] + frac*(e[row]-s[row]);
+            if ( v[row] != val ) {
+                v[row] = val;
+                if ( lo < 0 ) lo = row;
+                hi = row;
+            }
+        }
+        if ( lo >= 0 )
+            fireColumnEvent(EventConstants.UPDATE, lo, hi);
+    }
     
 //    /**
 //     * @see prefux.data.column.AbstractColumn#getString(int)
@@ -30,17 +30,22 @@
  */
 package prefux.data.column;
 
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import prefux.data.DataTypeException;
 import prefux.data.Table;
+import prefux.data.Tuple;
 import prefux.data.event.ColumnListener;
 import prefux.data.event.EventConstants;
 import prefux.data.event.ExpressionListener;
 import prefux.data.expression.Expression;
 import prefux.data.expression.ExpressionAnalyzer;
+import prefux.util.PrefuseConfig;
 
 /**
  * <p>Column instance that stores values provided by an Expression
@@ -50,6 +55,13 @@ import prefux.data.expression.ExpressionAnalyzer;
  * columns discovered in the expression and for the expression itself,
  * invalidating all cached entries when an update to either occurs.</p>
  * 
+ * <p>Consumers that read the whole column, such as indices and column
+ * metadata, fill the cache in one sweep through {@link #materialize()}.
+ * Numeric columns may evaluate large row ranges in parallel, see
+ * {@link #setParallel(boolean)}. As rows without a cached value have not
+ * been read since they were last reported as changed, invalidations that
+ * only affect such rows are not reported again.</p>
+ * 
  * <p>
  * WARNING: Infinite recursion, eventually resulting in a StackOverflowError,
  * could occur if an expression refers to its own column, or if two
@@ -64,6 +76,9 @@ import prefux.data.expression.ExpressionAnalyzer;
  */
 public class ExpressionColumn extends AbstractColumn {
     
+    /** The minimum number of rows evaluated by one parallel task */
+    public static final int PARALLEL_GRAIN = 2048;
+    
     private Expression m_expr;
     private Table m_table;
     private Set m_columns;
@@ -71,6 +86,10 @@ public class ExpressionColumn extends AbstractColumn {
     private BitSet m_valid;
     private Column m_cache;
     private Listener m_lstnr;
+    // true once a value could not be cached
+    private boolean m_uncached = false;
+    private boolean m_parallel = 
+        PrefuseConfig.getBoolean("data.expression.parallel");
     
     /**
      * Create a new ExpressionColumn.
@@ -163,6 +182,149 @@ public class ExpressionColumn extends AbstractColumn {
         m_valid.clear(start, end+1);
     }
     
+    /**
+     * Indicates if large row ranges are evaluated in parallel by
+     * {@link #materialize(int, int)}.
+     * @return true if parallel evaluation is enabled
+     */
+    public boolean isParallel() {
+        return m_parallel;
+    }
+    
+    /**
+     * Set if large row ranges are evaluated in parallel by
+     * {@link #materialize(int, int)}. This only applies to numeric columns
+     * and requires the expression to be safe to evaluate concurrently, as
+     * is the case for expressions built from column references, literals
+     * and arithmetic. The default is taken from the
+     * <code>data.expression.parallel</code> configuration setting.
+     * @param parallel true to enable parallel evaluation
+     */
+    public void setParallel(boolean parallel) {
+        m_parallel = parallel;
+    }
+    
+    /**
+     * Evaluate and cache the values of all rows not cached yet.
+     */
+    public void materialize() {
+        materialize(0, getRowCount()-1);
+    }
+    
+    /**
+     * Evaluate and cache the values of all rows in the given range not
+     * cached yet. Referenced expression columns are materialized first.
+     * @param start the first row of the range
+     * @param end the last row of the range, inclusive
+     */
+    public void materialize(int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, getRowCount()-1);
+        
+        // collect the rows to evaluate
+        int[] rows = new int[Math.max(0, Math.min(end-start+1, 64))];
+        int n = 0;
+        for ( int r = m_valid.nextClearBit(start); r <= end;
+              r = m_valid.nextClearBit(r+1) )
+        {
+            if ( !m_table.isValidRow(r) ) continue;
+            if ( n == rows.length )
+                rows = Arrays.copyOf(rows, 2*n);
+            rows[n++] = r;
+        }
+        if ( n == 0 ) return;
+        
+        // referenced columns must not fill their caches concurrently
+        Iterator iter = m_columns.iterator();
+        while ( iter.hasNext() ) {
+            Column c = m_table.getColumn((String)iter.next());
+            if ( c instanceof ExpressionColumn )
+                ((ExpressionColumn)c).materialize(start, end);
+        }
+        
+        Tuple[] tuples = new Tuple[n];
+        for ( int i=0; i<n; ++i ) {
+            tuples[i] = m_table.getTuple(rows[i]);
+        }
+        
+        if ( !isNumeric() ) {
+            // boolean and object caches are not safe for concurrent use
+            for ( int i=0; i<n; ++i ) {
+                if ( m_columnType == boolean.class ) {
+                    getBoolean(rows[i]);
+                } else {
+                    get(rows[i]);
+                }
+            }
+            return;
+        }
+        
+        if ( m_parallel && n >= 2*PARALLEL_GRAIN ) {
+            ForkJoinPool.commonPool().invoke(
+                new EvaluateTask(rows, tuples, 0, n));
+        } else {
+            evaluate(rows, tuples, 0, n);
+        }
+        for ( int i=0; i<n; ++i ) {
+            m_valid.set(rows[i]);
+        }
+    }
+    
+    /**
+     * Indicates if the values of this column are numbers.
+     */
+    private boolean isNumeric() {
+        return m_columnType == int.class || m_columnType == byte.class ||
+               m_columnType == long.class || m_columnType == float.class ||
+               m_columnType == double.class;
+    }
+    
+    /**
+     * Evaluate a numeric expression for a part of the given rows, storing
+     * the results in the cache without marking them as valid.
+     */
+    private void evaluate(int[] rows, Tuple[] tuples, int lo, int hi) {
+        if ( m_columnType == int.class || m_columnType == byte.class ) {
+            for ( int i=lo; i<hi; ++i )
+                m_cache.setInt(m_expr.getInt(tuples[i]), rows[i]);
+        } else if ( m_columnType == long.class ) {
+            for ( int i=lo; i<hi; ++i )
+                m_cache.setLong(m_expr.getLong(tuples[i]), rows[i]);
+        } else if ( m_columnType == float.class ) {
+            for ( int i=lo; i<hi; ++i )
+                m_cache.setFloat(m_expr.getFloat(tuples[i]), rows[i]);
+        } else {
+            for ( int i=lo; i<hi; ++i )
+                m_cache.setDouble(m_expr.getDouble(tuples[i]), rows[i]);
+        }
+    }
+    
+    /**
+     * Evaluates a part of the rows to materialize, splitting it among
+     * parallel tasks while it is large enough.
+     */
+    private final class EvaluateTask extends RecursiveAction {
+        private static final long serialVersionUID = -3728461920577158632L;
+        private final int[] rows;
+        private final Tuple[] tuples;
+        private final int lo, hi;
+        EvaluateTask(int[] rows, Tuple[] tuples, int lo, int hi) {
+            this.rows = rows;
+            this.tuples = tuples;
+            this.lo = lo;
+            this.hi = hi;
+        }
+        protected void compute() {
+            if ( hi-lo < 2*PARALLEL_GRAIN ) {
+                evaluate(rows, tuples, lo, hi);
+                return;
+            }
+            int mid = (lo+hi) >>> 1;
+            invokeAll(new EvaluateTask(rows, tuples, lo, mid),
+                      new EvaluateTask(rows, tuples, mid, hi));
+        }
+    } // end of inner class EvaluateTask
+    
     // ------------------------------------------------------------------------
     // Data Access Methods    
 
@@ -194,6 +356,8 @@ public class ExpressionColumn extends AbstractColumn {
         if ( m_cache.canSet(type) ) {
             m_cache.set(val, row);
             m_valid.set(row);
+        } else {
+            m_uncached = true;
         }
         return val;
     }
@@ -326,6 +490,10 @@ public class ExpressionColumn extends AbstractColumn {
                 
             // otherwise send a generic update
             } else {
+                // rows without cached values have not been read since
+                // they were last reported, skip ranges holding only those
+                int v = m_valid.nextSetBit(start);
+                if ( !m_uncached && (v < 0 || v > end) ) return;
                 // invalidate cache indices
                 invalidateCache(start, end);
                 // fire change event
@@ -34,6 +34,7 @@ import java.util.Arrays;
 
 import prefux.data.DataReadOnlyException;
 import prefux.data.DataTypeException;
+import prefux.data.event.EventConstants;
 
 /**
  * Column instance for sotring flaot values.
@@ -165,6 +166,26 @@ public class FloatColumn extends AbstractColumn {
         // fire a change event
         fireColumnEvent(row, prev);
     }
+
+    /**
+     * Copy a block of values into this column, firing a single update
+     * event for the whole row range rather than one event per value.
+     * @param values the array of values to copy
+     * @param offset the index of the first value in the array
+     * @param row the first row to set
+     * @param len the number of values to copy
+     */
+    public void setFloats(float[] values, int offset, int row, int len) {
+        if ( m_readOnly ) {
+            throw new DataReadOnlyException();
+        } else if ( row < 0 || row+len > m_size ) {
+            throw new IllegalArgumentException("Row range out of bounds: "
+                + row + "-" + (row+len-1));
+        }
+        if ( len <= 0 ) return;
+        System.arraycopy(values, offset, m_values, row, len);
+        fireColumnEvent(EventConstants.UPDATE, row, row+len-1);
+    }
     
 //    /**
 //     * @see prefux.data.column.AbstractColumn#getString(int)
@@ -0,0 +1,456 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+
+import prefux.data.Table;
+import prefux.data.column.Column;
+import prefux.data.column.DateColumn;
+import prefux.data.column.DoubleColumn;
+import prefux.data.column.ExpressionColumn;
+import prefux.data.column.FloatColumn;
+import prefux.data.column.IntColumn;
+import prefux.data.column.LongColumn;
+
+/**
+ * <p>Encoding and decoding routines for the binary columnar snapshot format
+ * shared by {@link ColumnarTableReader}, {@link ColumnarTableWriter},
+ * {@link ColumnarGraphReader} and {@link ColumnarGraphWriter}.</p>
+ * 
+ * <p>A snapshot starts with a magic number, a format version and a kind
+ * byte. A table is stored as its row count, a validity block for tables
+ * with deleted rows, and then one contiguous block per column. Primitive
+ * and date columns are stored as plain value arrays, string columns as a
+ * dictionary of distinct values followed by an int code per row. Derived
+ * columns and columns of other types are not stored. All values are
+ * written in big endian byte order. Snapshots are read as streams, not
+ * memory mapped: the value blocks are copied into the columns of the new
+ * table through a small transfer buffer with bulk buffer transfers, so a
+ * snapshot is never held in memory as a whole.</p>
+ */
+final class ColumnarFormat {
+
+    /** Magic number at the start of every snapshot, "PFXC" */
+    static final int MAGIC   = 0x50465843;
+    /** Current format version */
+    static final int VERSION = 1;
+    
+    /** Kind marker for table snapshots */
+    static final byte KIND_TABLE = 1;
+    /** Kind marker for graph snapshots */
+    static final byte KIND_GRAPH = 2;
+    
+    private static final byte TYPE_INT     = 1;
+    private static final byte TYPE_LONG    = 2;
+    private static final byte TYPE_FLOAT   = 3;
+    private static final byte TYPE_DOUBLE  = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+    private static final byte TYPE_DATE    = 6;
+    private static final byte TYPE_STRING  = 7;
+    
+    /** Size of the transfer buffer used for reading value blocks */
+    private static final int BLOCK_SIZE = 1<<16;
+    
+    private ColumnarFormat() {
+        // prevent instantiation
+    }
+    
+    // ------------------------------------------------------------------------
+    // Writing
+    
+    /**
+     * Write the snapshot header.
+     * @param out the output stream
+     * @param kind the snapshot kind
+     */
+    static void writeHeader(DataOutputStream out, byte kind)
+        throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte(kind);
+    }
+    
+    /**
+     * Write a table. All rows up to the maximum row are written, rows that
+     * are not in use are marked in a validity block, so row numbers are
+     * preserved when the table is read back.
+     * @param out the output stream
+     * @param t the table to write
+     */
+    static void writeTable(DataOutputStream out, Table t) throws IOException {
+        int rows = t.getMaximumRow()+1;
+        out.writeInt(rows);
+        
+        // validity block, only present if the table has holes
+        if ( t.getRowCount() == rows ) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            for ( int r=0; r<rows; ++r )
+                out.writeBoolean(t.isValidRow(r));
+        }
+        
+        // determine the columns to write
+        ArrayList<Integer> cols = new ArrayList<>();
+        for ( int c=0; c<t.getColumnCount(); ++c ) {
+            Column col = t.getColumn(c);
+            if ( !(col instanceof ExpressionColumn) 
+                    && getTypeCode(col.getColumnType()) != 0 )
+                cols.add(c);
+        }
+        out.writeInt(cols.size());
+        
+        for ( int c : cols ) {
+            Column col = t.getColumn(c);
+            Class<?> type = col.getColumnType();
+            byte code = getTypeCode(type);
+            writeString(out, t.getColumnName(c));
+            out.writeByte(code);
+            Object dflt = col.getDefaultValue();
+            switch ( code ) {
+            case TYPE_INT:
+                out.writeInt(((Number)dflt).intValue());
+                for ( int r=0; r<rows; ++r )
+                    out.writeInt(col.getInt(r));
+                break;
+            case TYPE_LONG:
+                out.writeLong(((Number)dflt).longValue());
+                for ( int r=0; r<rows; ++r )
+                    out.writeLong(col.getLong(r));
+                break;
+            case TYPE_FLOAT:
+                out.writeFloat(((Number)dflt).floatValue());
+                for ( int r=0; r<rows; ++r )
+                    out.writeFloat(col.getFloat(r));
+                break;
+            case TYPE_DOUBLE:
+                out.writeDouble(((Number)dflt).doubleValue());
+                for ( int r=0; r<rows; ++r )
+                    out.writeDouble(col.getDouble(r));
+                break;
+            case TYPE_BOOLEAN:
+                out.writeBoolean(((Boolean)dflt).booleanValue());
+                for ( int r=0; r<rows; ++r )
+                    out.writeBoolean(col.getBoolean(r));
+                break;
+            case TYPE_DATE:
+                writeString(out, type.getName());
+                out.writeLong(dflt==null ? 0L : ((Date)dflt).getTime());
+                for ( int r=0; r<rows; ++r )
+                    out.writeLong(col.getLong(r));
+                break;
+            case TYPE_STRING:
+                writeStringColumn(out, col, rows);
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Write a string column as a dictionary of distinct values followed by
+     * one dictionary code per row, -1 denoting null.
+     */
+    private static void writeStringColumn(DataOutputStream out,
+                                          Column col, int rows)
+        throws IOException
+    {
+        HashMap<String,Integer> dict = new HashMap<>();
+        ArrayList<String> values = new ArrayList<>();
+        int[] codes = new int[rows];
+        for ( int r=0; r<rows; ++r ) {
+            String s = (String)col.get(r);
+            if ( s == null ) {
+                codes[r] = -1;
+                continue;
+            }
+            Integer code = dict.get(s);
+            if ( code == null ) {
+                code = values.size();
+                dict.put(s, code);
+                values.add(s);
+            }
+            codes[r] = code;
+        }
+        writeString(out, (String)col.getDefaultValue());
+        out.writeInt(values.size());
+        for ( String s : values )
+            writeString(out, s);
+        for ( int r=0; r<rows; ++r )
+            out.writeInt(codes[r]);
+    }
+    
+    /**
+     * Write a length prefixed int array.
+     * @param out the output stream
+     * @param a the array to write
+     */
+    static void writeIntArray(DataOutputStream out, int[] a)
+        throws IOException
+    {
+        out.writeInt(a.length);
+        for ( int i=0; i<a.length; ++i )
+            out.writeInt(a[i]);
+    }
+    
+    /**
+     * Write a string as its UTF-8 byte length followed by the bytes. Null
+     * strings are written as length -1.
+     * @param out the output stream
+     * @param s the string to write, may be null
+     */
+    static void writeString(DataOutputStream out, String s)
+        throws IOException
+    {
+        if ( s == null ) {
+            out.writeInt(-1);
+        } else {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+    }
+    
+    private static byte getTypeCode(Class<?> type) {
+        if ( type == int.class )     return TYPE_INT;
+        if ( type == long.class )    return TYPE_LONG;
+        if ( type == float.class )   return TYPE_FLOAT;
+        if ( type == double.class )  return TYPE_DOUBLE;
+        if ( type == boolean.class ) return TYPE_BOOLEAN;
+        if ( type == String.class )  return TYPE_STRING;
+        if ( Date.class.isAssignableFrom(type) ) return TYPE_DATE;
+        return 0;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Reading
+    
+    /**
+     * Wrap a snapshot stream for reading.
+     * @param is the input stream
+     * @return a data input stream over the snapshot
+     */
+    static DataInputStream input(InputStream is) {
+        return new DataInputStream(new BufferedInputStream(is, BLOCK_SIZE));
+    }
+    
+    /**
+     * Read and check the snapshot header.
+     * @param in the snapshot stream
+     * @param kind the expected snapshot kind
+     */
+    static void readHeader(DataInputStream in, byte kind)
+        throws IOException, DataIOException
+    {
+        if ( in.readInt() != MAGIC )
+            throw new DataIOException("Not a columnar snapshot.");
+        int version = in.readInt();
+        if ( version != VERSION )
+            throw new DataIOException(
+                "Unsupported snapshot version: " + version);
+        if ( in.readByte() != kind )
+            throw new DataIOException("Unexpected snapshot kind.");
+    }
+    
+    /**
+     * Read a table written by {@link #writeTable(DataOutputStream, Table)}.
+     * @param in the snapshot stream, positioned at the table block
+     * @return the table
+     */
+    static Table readTable(DataInputStream in)
+        throws IOException, DataIOException
+    {
+        int rows = in.readInt();
+        boolean[] valid = null;
+        if ( in.readBoolean() ) {
+            valid = new boolean[rows];
+            for ( int r=0; r<rows; ++r )
+                valid[r] = in.readBoolean();
+        }
+        
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        int ncols = in.readInt();
+        Table t = new Table(rows, ncols);
+        for ( int c=0; c<ncols; ++c ) {
+            String name = readString(in);
+            byte code = in.readByte();
+            switch ( code ) {
+            case TYPE_INT: {
+                t.addColumn(name, int.class, in.readInt());
+                int[] v = new int[rows];
+                for ( int i=0, n; i<rows; i+=n ) {
+                    n = Math.min(rows-i, BLOCK_SIZE/4);
+                    readBlock(in, block, 4*n).asIntBuffer().get(v, i, n);
+                }
+                ((IntColumn)t.getColumn(name)).setInts(v, 0, 0, rows);
+                break;
+            }
+            case TYPE_LONG: {
+                t.addColumn(name, long.class, in.readLong());
+                long[] v = readLongs(in, block, rows);
+                ((LongColumn)t.getColumn(name)).setLongs(v, 0, 0, rows);
+                break;
+            }
+            case TYPE_FLOAT: {
+                t.addColumn(name, float.class, in.readFloat());
+                float[] v = new float[rows];
+                for ( int i=0, n; i<rows; i+=n ) {
+                    n = Math.min(rows-i, BLOCK_SIZE/4);
+                    readBlock(in, block, 4*n).asFloatBuffer().get(v, i, n);
+                }
+                ((FloatColumn)t.getColumn(name)).setFloats(v, 0, 0, rows);
+                break;
+            }
+            case TYPE_DOUBLE: {
+                t.addColumn(name, double.class, in.readDouble());
+                double[] v = new double[rows];
+                for ( int i=0, n; i<rows; i+=n ) {
+                    n = Math.min(rows-i, BLOCK_SIZE/8);
+                    readBlock(in, block, 8*n).asDoubleBuffer().get(v, i, n);
+                }
+                ((DoubleColumn)t.getColumn(name)).setDoubles(v, 0, 0, rows);
+                break;
+            }
+            case TYPE_BOOLEAN: {
+                t.addColumn(name, boolean.class, in.readBoolean());
+                Column col = t.getColumn(name);
+                for ( int r=0; r<rows; ++r )
+                    col.setBoolean(in.readBoolean(), r);
+                break;
+            }
+            case TYPE_DATE: {
+                Class<?> type = getDateType(readString(in));
+                long dflt = in.readLong();
+                t.addColumn(name, type, new Date(dflt));
+                long[] v = readLongs(in, block, rows);
+                ((DateColumn)t.getColumn(name)).setLongs(v, 0, 0, rows);
+                break;
+            }
+            case TYPE_STRING: {
+                t.addColumn(name, String.class, readString(in));
+                String[] dict = new String[in.readInt()];
+                for ( int i=0; i<dict.length; ++i )
+                    dict[i] = readString(in);
+                Column col = t.getColumn(name);
+                for ( int r=0; r<rows; ++r ) {
+                    int idx = in.readInt();
+                    if ( idx >= 0 ) col.set(dict[idx], r);
+                }
+                break;
+            }
+            default:
+                throw new DataIOException(
+                    "Unknown column type code: " + code);
+            }
+        }
+        
+        // remove rows that were not in use
+        if ( valid != null ) {
+            for ( int r=rows; --r>=0; )
+                if ( !valid[r] ) t.removeRow(r);
+        }
+        return t;
+    }
+    
+    /**
+     * Read a length prefixed int array.
+     * @param in the snapshot stream
+     * @return the array
+     */
+    static int[] readIntArray(DataInputStream in) throws IOException {
+        int[] a = new int[in.readInt()];
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        for ( int i=0, n; i<a.length; i+=n ) {
+            n = Math.min(a.length-i, BLOCK_SIZE/4);
+            readBlock(in, block, 4*n).asIntBuffer().get(a, i, n);
+        }
+        return a;
+    }
+    
+    /**
+     * Read a string written by
+     * {@link #writeString(DataOutputStream, String)}.
+     * @param in the snapshot stream
+     * @return the string, possibly null
+     */
+    static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if ( len < 0 ) return null;
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+    
+    private static long[] readLongs(DataInputStream in, ByteBuffer block,
+                                    int rows) throws IOException
+    {
+        long[] v = new long[rows];
+        for ( int i=0, n; i<rows; i+=n ) {
+            n = Math.min(rows-i, BLOCK_SIZE/8);
+            readBlock(in, block, 8*n).asLongBuffer().get(v, i, n);
+        }
+        return v;
+    }
+    
+    /**
+     * Read the given number of bytes into the transfer buffer.
+     */
+    private static ByteBuffer readBlock(DataInputStream in, ByteBuffer block,
+                                        int bytes) throws IOException
+    {
+        in.readFully(block.array(), 0, bytes);
+        block.clear();
+        block.limit(bytes);
+        return block;
+    }
+    
+    private static Class<?> getDateType(String name) throws DataIOException {
+        try {
+            Class<?> type = Class.forName(name);
+            if ( Date.class.isAssignableFrom(type) )
+                return type;
+        } catch ( ClassNotFoundException e ) {
+            // fall through
+        }
+        throw new DataIOException("Unsupported date type: " + name);
+    }
+    
+} // end of class ColumnarFormat
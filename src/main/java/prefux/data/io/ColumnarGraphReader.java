@@ -0,0 +1,81 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import prefux.data.Graph;
+import prefux.data.Table;
+import prefux.data.util.CompressedAdjacency;
+
+/**
+ * GraphReader for binary columnar snapshots written by a
+ * {@link ColumnarGraphWriter}. The node and edge columns are read as a
+ * stream with bulk transfers, and the adjacency lists are taken from the
+ * stored compressed sparse row arrays instead of being rebuilt from the edge
+ * table. Snapshots of trees are read
+ * back as plain directed graphs. The input stream is closed after reading.
+ */
+public class ColumnarGraphReader extends AbstractGraphReader {
+
+    /**
+     * @see prefux.data.io.GraphReader#readGraph(java.io.InputStream)
+     */
+    public Graph readGraph(InputStream is) throws DataIOException {
+        try ( DataInputStream in = ColumnarFormat.input(is) ) {
+            ColumnarFormat.readHeader(in, ColumnarFormat.KIND_GRAPH);
+            boolean directed = in.readBoolean();
+            String nodeKey   = ColumnarFormat.readString(in);
+            String sourceKey = ColumnarFormat.readString(in);
+            String targetKey = ColumnarFormat.readString(in);
+            Table nodes = ColumnarFormat.readTable(in);
+            Table edges = ColumnarFormat.readTable(in);
+            
+            int[] outOffsets = ColumnarFormat.readIntArray(in);
+            int[] outEdges   = ColumnarFormat.readIntArray(in);
+            int[] inOffsets  = ColumnarFormat.readIntArray(in);
+            int[] inEdges    = ColumnarFormat.readIntArray(in);
+            CompressedAdjacency links = new CompressedAdjacency(
+                outOffsets, outEdges, inOffsets, inEdges);
+            
+            return new Graph(nodes, edges, directed,
+                             nodeKey, sourceKey, targetKey, links);
+        } catch ( EOFException e ) {
+            throw new DataIOException("Truncated snapshot.");
+        } catch ( IOException | IllegalArgumentException e ) {
+            throw new DataIOException(e);
+        }
+    }
+
+} // end of class ColumnarGraphReader
@@ -0,0 +1,78 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import prefux.data.Graph;
+import prefux.data.util.CompressedAdjacency;
+
+/**
+ * GraphWriter that writes a graph as a binary columnar snapshot. The node
+ * and edge tables are written as with a {@link ColumnarTableWriter}, the
+ * adjacency lists are written in compressed sparse row form, so that a
+ * {@link ColumnarGraphReader} can restore them without rebuilding them from
+ * the edge table.
+ */
+public class ColumnarGraphWriter extends AbstractGraphWriter {
+
+    /**
+     * @see prefux.data.io.GraphWriter#writeGraph(prefux.data.Graph, java.io.OutputStream)
+     */
+    public void writeGraph(Graph graph, OutputStream os)
+        throws DataIOException
+    {
+        try {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(os));
+            ColumnarFormat.writeHeader(out, ColumnarFormat.KIND_GRAPH);
+            out.writeBoolean(graph.isDirected());
+            ColumnarFormat.writeString(out, graph.getNodeKeyField());
+            ColumnarFormat.writeString(out, graph.getEdgeSourceField());
+            ColumnarFormat.writeString(out, graph.getEdgeTargetField());
+            ColumnarFormat.writeTable(out, graph.getNodeTable());
+            ColumnarFormat.writeTable(out, graph.getEdgeTable());
+            
+            CompressedAdjacency links = CompressedAdjacency.fromGraph(graph);
+            ColumnarFormat.writeIntArray(out, links.getOutOffsets());
+            ColumnarFormat.writeIntArray(out, links.getOutEdges());
+            ColumnarFormat.writeIntArray(out, links.getInOffsets());
+            ColumnarFormat.writeIntArray(out, links.getInEdges());
+            out.flush();
+        } catch ( IOException e ) {
+            throw new DataIOException(e);
+        }
+    }
+
+} // end of class ColumnarGraphWriter
@@ -0,0 +1,66 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import prefux.data.Table;
+
+/**
+ * TableWriter that writes a table as a binary columnar snapshot. Each column
+ * is stored as one contiguous block of values, string columns are dictionary
+ * encoded. Derived columns and columns of types other than the primitive
+ * types, String and Date are skipped. Snapshots are read back with a
+ * {@link ColumnarTableReader}.
+ */
+public class ColumnarTableWriter extends AbstractTableWriter {
+
+    /**
+     * @see prefux.data.io.TableWriter#writeTable(prefux.data.Table, java.io.OutputStream)
+     */
+    public void writeTable(Table table, OutputStream os)
+        throws DataIOException
+    {
+        try {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(os));
+            ColumnarFormat.writeHeader(out, ColumnarFormat.KIND_TABLE);
+            ColumnarFormat.writeTable(out, table);
+            out.flush();
+        } catch ( IOException e ) {
+            throw new DataIOException(e);
+        }
+    }
+
+} // end of class ColumnarTableWriter
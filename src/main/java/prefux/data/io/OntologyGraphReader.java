@@ -0,0 +1,461 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+import prefux.data.Graph;
+import prefux.data.Table;
+import prefux.data.column.Column;
+import prefux.util.ArrayLib;
+
+/**
+ * <p>GraphReader instance that reads the class hierarchy of an ontology into
+ * a directed graph. Every named class becomes a node, and every asserted
+ * <code>rdfs:subClassOf</code> statement between named classes becomes an
+ * edge from the super class to the sub class. By default, only the links to
+ * direct sub classes are kept, as listed by
+ * <code>OntClass.listSubClasses(true)</code> for a model without inference:
+ * the link from C to A is dropped if A is also asserted to be a sub class
+ * of another sub class B of C, or if C and A are sub classes of each other.
+ * See {@link #setDirectSubClasses(boolean)}.
+ * </p>
+ * 
+ * <p>The data is taken directly from the statements of a Jena
+ * {@link Model}, without inference and without the recursive traversal of
+ * the ontology API. Classes are mapped to node rows through a hash map keyed
+ * by IRI, and the node and edge columns are filled in bulk once all
+ * statements have been read.</p>
+ * 
+ * <p>The node table has a {@link #NAME} field holding the local name of a
+ * class and an {@link #IRI} field holding the full IRI. The edge table uses
+ * the default {@link Graph#DEFAULT_SOURCE_KEY source} and
+ * {@link Graph#DEFAULT_TARGET_KEY target} fields.</p>
+ * 
+ * <p>If a cache file is set, a graph read from a file location is also
+ * written to the cache file, and later reads load the cache instead. The
+ * cache is only used if it was written for the same ontology file, with the
+ * same size and modification time, by a reader with the same settings and
+ * the same cache format version.</p>
+ */
+public class OntologyGraphReader extends AbstractGraphReader
+    implements GraphReader
+{
+    /** The data field holding the local name of a class. */
+    public static final String NAME = "name";
+    /** The data field holding the IRI of a class. */
+    public static final String IRI = "iri";
+    
+    /** The default RDF syntax used for reading input streams. */
+    public static final String DEFAULT_LANG = "RDF/XML";
+    
+    /** Magic number at the start of a cache file, "PFOC" */
+    private static final int CACHE_MAGIC   = 0x50464f43;
+    /** Cache format version, increase when the graph content changes */
+    private static final int CACHE_VERSION = 2;
+    
+    private String m_lang = DEFAULT_LANG;
+    private boolean m_direct = true;
+    private File m_cache = null;
+    
+    /**
+     * Create a new OntologyGraphReader that reads RDF/XML input.
+     */
+    public OntologyGraphReader() {
+    }
+    
+    /**
+     * Create a new OntologyGraphReader.
+     * @param lang the RDF syntax of the input, as understood by
+     * {@link Model#read(InputStream, String, String)}, e.g. "RDF/XML",
+     * "TURTLE" or "N-TRIPLES"
+     */
+    public OntologyGraphReader(String lang) {
+        m_lang = lang;
+    }
+    
+    /**
+     * Get the RDF syntax used for reading input streams.
+     * @return the RDF syntax
+     */
+    public String getLanguage() {
+        return m_lang;
+    }
+    
+    /**
+     * Set the RDF syntax used for reading input streams.
+     * @param lang the RDF syntax, e.g. "RDF/XML", "TURTLE" or "N-TRIPLES"
+     */
+    public void setLanguage(String lang) {
+        m_lang = lang;
+    }
+    
+    /**
+     * Indicates if only the links to direct sub classes are read.
+     * @return true if indirect sub class links are dropped
+     */
+    public boolean isDirectSubClasses() {
+        return m_direct;
+    }
+    
+    /**
+     * Set if only the links to direct sub classes are read. A link from a
+     * class C to a sub class A is indirect, if A is also asserted to be a
+     * sub class of another sub class B of C, or if C and A are sub classes
+     * of each other. This matches
+     * <code>OntClass.listSubClasses(true)</code> for a model without
+     * inference. If false, a link is created for every asserted
+     * <code>rdfs:subClassOf</code> statement.
+     * @param direct true to drop indirect sub class links
+     */
+    public void setDirectSubClasses(boolean direct) {
+        m_direct = direct;
+    }
+    
+    /**
+     * Get the cache file used for graphs read from file locations.
+     * @return the cache file, or null if no cache is used
+     */
+    public File getCacheFile() {
+        return m_cache;
+    }
+    
+    /**
+     * Set the cache file used for graphs read from file locations.
+     * @param cache the cache file, or null to disable caching
+     */
+    public void setCacheFile(File cache) {
+        m_cache = cache;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Reads the graph from the cache file if it was written for the given
+     * file, otherwise reads the file and updates the cache.
+     * @see prefux.data.io.GraphReader#readGraph(java.io.File)
+     */
+    public Graph readGraph(File f) throws DataIOException {
+        if ( m_cache == null ) {
+            return super.readGraph(f);
+        }
+        Graph g = readCache(f);
+        if ( g == null ) {
+            g = super.readGraph(f);
+            writeCache(g, f);
+        }
+        return g;
+    }
+    
+    /**
+     * @see prefux.data.io.GraphReader#readGraph(java.lang.String)
+     */
+    public Graph readGraph(String location) throws DataIOException {
+        File f = new File(location);
+        if ( m_cache != null && f.isFile() ) {
+            return readGraph(f);
+        } else {
+            return super.readGraph(location);
+        }
+    }
+    
+    /**
+     * @see prefux.data.io.GraphReader#readGraph(java.io.InputStream)
+     */
+    public Graph readGraph(InputStream is) throws DataIOException {
+        Model model = ModelFactory.createDefaultModel();
+        try {
+            model.read(is, null, m_lang);
+            return readGraph(model);
+        } catch ( RuntimeException e ) {
+            throw new DataIOException(e);
+        } finally {
+            model.close();
+        }
+    }
+    
+    /**
+     * Read the class hierarchy of the given model into a graph. The model
+     * can be a plain model or an ontology model; no inference is applied
+     * beyond what the model itself provides.
+     * @param model the model to read
+     * @return the class hierarchy as directed graph
+     */
+    public Graph readGraph(Model model) {
+        Builder b = new Builder();
+        
+        // declared classes, in the order of the model
+        for ( ResIterator it = model.listResourcesWithProperty(
+                RDF.type, OWL.Class); it.hasNext(); )
+        {
+            b.node(it.nextResource());
+        }
+        for ( ResIterator it = model.listResourcesWithProperty(
+                RDF.type, RDFS.Class); it.hasNext(); )
+        {
+            b.node(it.nextResource());
+        }
+        
+        // subclass links, the classes are added if not declared
+        for ( StmtIterator it = model.listStatements(
+                null, RDFS.subClassOf, (RDFNode)null); it.hasNext(); )
+        {
+            Statement s = it.nextStatement();
+            if ( !s.getObject().isURIResource() ) continue;
+            int sub = b.node(s.getSubject());
+            int sup = b.node(s.getObject().asResource());
+            if ( sub >= 0 && sup >= 0 && sub != sup )
+                b.edge(sup, sub);
+        }
+        if ( m_direct )
+            b.dropIndirectEdges();
+        return b.build();
+    }
+    
+    // ------------------------------------------------------------------------
+    // Graph Builder
+    
+    /**
+     * Collects nodes and edges in primitive arrays and fills the graph
+     * tables in bulk.
+     */
+    private static class Builder {
+        private HashMap<String,Integer> m_rows = new HashMap<>();
+        private String[] m_names = new String[1024];
+        private String[] m_iris = new String[1024];
+        private int m_nodeCount = 0;
+        private int[] m_src = new int[1024];
+        private int[] m_trg = new int[1024];
+        private int m_edgeCount = 0;
+        
+        /**
+         * Get the row of the given class, adding it if needed. Returns -1
+         * for anonymous classes.
+         */
+        int node(Resource r) {
+            if ( !r.isURIResource() ) return -1;
+            String iri = r.getURI();
+            Integer row = m_rows.get(iri);
+            if ( row != null ) return row.intValue();
+            
+            int n = m_nodeCount++;
+            if ( n == m_names.length ) {
+                m_names = Arrays.copyOf(m_names, 2*n);
+                m_iris = Arrays.copyOf(m_iris, 2*n);
+            }
+            String name = r.getLocalName();
+            m_names[n] = ( name == null || name.isEmpty() ? iri : name );
+            m_iris[n] = iri;
+            m_rows.put(iri, n);
+            return n;
+        }
+        
+        void edge(int s, int t) {
+            int e = m_edgeCount++;
+            if ( e == m_src.length ) {
+                m_src = ArrayLib.resize(m_src, 2*e);
+                m_trg = ArrayLib.resize(m_trg, 2*e);
+            }
+            m_src[e] = s;
+            m_trg[e] = t;
+        }
+        
+        /**
+         * Drop the edge from C to A, if there is an edge from C to B and
+         * from B to A, unless B and A are sub classes of each other. Edges
+         * between classes that are sub classes of each other are dropped
+         * as well.
+         */
+        void dropIndirectEdges() {
+            // links as (sub class, super class) pairs
+            HashSet<Long> links = new HashSet<>();
+            for ( int e=0; e<m_edgeCount; ++e )
+                links.add(link(m_trg[e], m_src[e]));
+            
+            // super classes of each class, in compressed row form
+            int[] offset = new int[m_nodeCount+1];
+            for ( int e=0; e<m_edgeCount; ++e )
+                ++offset[m_trg[e]+1];
+            for ( int i=0; i<m_nodeCount; ++i )
+                offset[i+1] += offset[i];
+            int[] supers = new int[m_edgeCount];
+            int[] fill = Arrays.copyOf(offset, m_nodeCount);
+            for ( int e=0; e<m_edgeCount; ++e )
+                supers[fill[m_trg[e]]++] = m_src[e];
+            
+            int count = 0;
+            for ( int e=0; e<m_edgeCount; ++e ) {
+                int sup = m_src[e], sub = m_trg[e];
+                boolean direct = !links.contains(link(sup, sub));
+                for ( int i=offset[sub]; direct && i<offset[sub+1]; ++i ) {
+                    int mid = supers[i];
+                    direct = mid == sup || !links.contains(link(mid, sup))
+                        || links.contains(link(mid, sub));
+                }
+                if ( direct ) {
+                    m_src[count] = sup;
+                    m_trg[count] = sub;
+                    ++count;
+                }
+            }
+            m_edgeCount = count;
+        }
+        
+        private static long link(int sub, int sup) {
+            return ((long)sub << 32) | (sup & 0xffffffffL);
+        }
+        
+        Graph build() {
+            return createGraph(m_names, m_iris, m_nodeCount,
+                               m_src, m_trg, m_edgeCount);
+        }
+    }
+    
+    /**
+     * Create the graph tables and fill them column by column.
+     */
+    private static Graph createGraph(String[] names, String[] iris, int nn,
+                                     int[] src, int[] trg, int ne)
+    {
+        Table nodes = new Table();
+        nodes.addColumn(NAME, String.class);
+        nodes.addColumn(IRI, String.class);
+        nodes.addRows(nn);
+        Column name = nodes.getColumn(NAME);
+        Column iri = nodes.getColumn(IRI);
+        for ( int i=0; i<nn; ++i ) {
+            name.set(names[i], i);
+            iri.set(iris[i], i);
+        }
+        
+        Table edges = new Table();
+        edges.addColumn(Graph.DEFAULT_SOURCE_KEY, int.class);
+        edges.addColumn(Graph.DEFAULT_TARGET_KEY, int.class);
+        edges.addRows(ne);
+        Column s = edges.getColumn(Graph.DEFAULT_SOURCE_KEY);
+        Column t = edges.getColumn(Graph.DEFAULT_TARGET_KEY);
+        for ( int i=0; i<ne; ++i ) {
+            s.setInt(src[i], i);
+            t.setInt(trg[i], i);
+        }
+        
+        return new Graph(nodes, edges, true);
+    }
+    
+    // ------------------------------------------------------------------------
+    // Cache Handling
+    
+    /**
+     * Write a graph read from the given ontology file to the cache file. The
+     * cache starts with a header identifying the cache format, the ontology
+     * file and the reader settings, followed by a columnar snapshot as
+     * written by {@link ColumnarGraphWriter}.
+     * @param g the graph to write
+     * @param source the ontology file the graph was read from
+     * @throws DataIOException if an I/O error occurs
+     */
+    protected void writeCache(Graph g, File source) throws DataIOException {
+        try ( DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(m_cache))) )
+        {
+            writeCacheHeader(out, source);
+            new ColumnarGraphWriter().writeGraph(g, out);
+        } catch ( IOException e ) {
+            throw new DataIOException(e);
+        }
+    }
+    
+    /**
+     * Read the graph of the given ontology file from the cache file.
+     * @param source the ontology file
+     * @return the cached graph, or null if there is no cache file, or it
+     * was written for another file, another version of the file, with other
+     * reader settings or in another format
+     */
+    protected Graph readCache(File source) {
+        if ( !m_cache.isFile() )
+            return null;
+        try ( DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(m_cache))) )
+        {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            writeCacheHeader(new DataOutputStream(expected), source);
+            byte[] header = new byte[expected.size()];
+            in.readFully(header);
+            if ( !Arrays.equals(header, expected.toByteArray()) )
+                return null;
+            return new ColumnarGraphReader().readGraph(in);
+        } catch ( IOException | DataIOException e ) {
+            return null; // unreadable cache, it is rebuilt
+        }
+    }
+    
+    /**
+     * Write the header identifying the cache format, the ontology file and
+     * the settings that affect the graph.
+     */
+    private void writeCacheHeader(DataOutputStream out, File source)
+        throws IOException
+    {
+        out.writeInt(CACHE_MAGIC);
+        out.writeInt(CACHE_VERSION);
+        out.writeUTF(source.getCanonicalPath());
+        out.writeLong(source.length());
+        out.writeLong(source.lastModified());
+        out.writeUTF(m_lang);
+        out.writeBoolean(m_direct);
+        out.flush();
+    }
+    
+} // end of class OntologyGraphReader
@@ -0,0 +1,135 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io.sql;
+
+import java.util.BitSet;
+
+/**
+ * The changes a refresh of a table from a SQL query made to the table,
+ * see {@link DatabaseResultSetProcessor#refresh(prefux.data.Table,
+ * java.sql.ResultSet, String, Object)}. Lists the rows that were added,
+ * the rows with at least one changed value, the rows that were removed,
+ * and the names of the columns with at least one changed value. This
+ * allows consumers to revisit only the affected rows. Removed rows are no
+ * longer valid at the time the change set is reported.
+ */
+public class ChangeSet {
+
+    private final BitSet m_added;
+    private final BitSet m_updated;
+    private final BitSet m_removed;
+    private final String[] m_columns;
+    
+    /**
+     * Create a new ChangeSet.
+     * @param added the added rows
+     * @param updated the updated rows
+     * @param removed the removed rows
+     * @param columns the names of the changed columns
+     */
+    ChangeSet(BitSet added, BitSet updated, BitSet removed, String[] columns)
+    {
+        m_added = added;
+        m_updated = updated;
+        m_removed = removed;
+        m_columns = columns;
+    }
+    
+    /**
+     * Indicates if the refresh did not change the table at all.
+     * @return true if no row was added, updated or removed
+     */
+    public boolean isEmpty() {
+        return m_added.isEmpty() && m_updated.isEmpty() && m_removed.isEmpty();
+    }
+    
+    /**
+     * Get the total number of added, updated and removed rows.
+     * @return the number of affected rows
+     */
+    public int size() {
+        return m_added.cardinality() + m_updated.cardinality()
+            + m_removed.cardinality();
+    }
+    
+    /**
+     * Get the added rows, in ascending order.
+     * @return the added rows
+     */
+    public int[] getAddedRows() {
+        return m_added.stream().toArray();
+    }
+    
+    /**
+     * Get the rows with at least one changed value, in ascending order.
+     * Added rows are not included.
+     * @return the updated rows
+     */
+    public int[] getUpdatedRows() {
+        return m_updated.stream().toArray();
+    }
+    
+    /**
+     * Get the removed rows, in ascending order.
+     * @return the removed rows
+     */
+    public int[] getRemovedRows() {
+        return m_removed.stream().toArray();
+    }
+    
+    /**
+     * Indicates if the given row was added or updated.
+     * @param row the row to check
+     * @return true if the row was added or had a value changed
+     */
+    public boolean isChanged(int row) {
+        return m_added.get(row) || m_updated.get(row);
+    }
+    
+    /**
+     * Get the names of the columns with at least one changed value in an
+     * updated row.
+     * @return the names of the changed columns
+     */
+    public String[] getChangedColumns() {
+        return m_columns.clone();
+    }
+    
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "ChangeSet[added=" + m_added.cardinality()
+            + ", updated=" + m_updated.cardinality()
+            + ", removed=" + m_removed.cardinality() + "]";
+    }
+    
+} // end of class ChangeSet
@@ -132,6 +132,56 @@ public class ConnectionFactory {
                 getDefaultHandler());
     }
     
+    // ------------------------------------------------------------------------
+    // Pooled Connection Methods
+    
+    /**
+     * Get a new database connection that borrows a connection from the
+     * given provider for each query, so that queries may run concurrently.
+     * @param provider the provider of database connections
+     * @param handler the data handler to use
+     * @return a DatabaseDataSource for interacting with the database
+     */
+    public static DatabaseDataSource getDatabaseConnection(
+            ConnectionProvider provider, SQLDataHandler handler)
+    {
+        return new DatabaseDataSource(provider, handler);
+    }
+    
+    /**
+     * Get a new database connection that borrows a connection from the
+     * given provider for each query, using a default handler.
+     * @param provider the provider of database connections
+     * @return a DatabaseDataSource for interacting with the database
+     */
+    public static DatabaseDataSource getDatabaseConnection(
+            ConnectionProvider provider)
+    {
+        return getDatabaseConnection(provider, getDefaultHandler());
+    }
+    
+    /**
+     * Get a new database connection backed by a {@link ConnectionPool}
+     * of the given size, using a default handler.
+     * @param driver the database driver to use, must resolve to a valid Java
+     * class on the current classpath.
+     * @param url the url for the database, of the form
+     * "jdbc:<database_sub_protocol>://&lt;hostname&gt;/&lt;database_name&gt;
+     * @param user the database username
+     * @param password the database password
+     * @param poolSize the maximum number of concurrent connections
+     * @return a DatabaseDataSource for interacting with the database
+     * @throws ClassNotFoundException
+     */
+    public static DatabaseDataSource getPooledConnection(String driver,
+            String url, String user, String password, int poolSize)
+        throws ClassNotFoundException
+    {
+        Class.forName(driver);
+        return getDatabaseConnection(
+                new ConnectionPool(url, user, password, poolSize));
+    }
+    
     // ------------------------------------------------------------------------
     // Driver Specific Methods
     
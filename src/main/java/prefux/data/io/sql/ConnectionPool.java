@@ -0,0 +1,175 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io.sql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * A simple bounded pool of database connections. Connections are created
+ * on demand, up to the maximum pool size, and kept open for reuse once
+ * released. Requests beyond the maximum pool size wait until a connection
+ * is released. Connections found closed upon release or reuse are
+ * replaced by new ones.
+ * 
+ * <p>New connections are obtained through the {@link DriverManager} by
+ * default. Subclasses may override {@link #createConnection()} to
+ * create connections in another fashion, such as from an existing
+ * {@link javax.sql.DataSource}.</p>
+ */
+public class ConnectionPool implements ConnectionProvider {
+
+    private static final Logger s_logger 
+        = Logger.getLogger(ConnectionPool.class.getName());
+    
+    private final String m_url;
+    private final String m_user;
+    private final String m_password;
+    private final int m_size;
+    
+    private final Semaphore m_permits;
+    private final LinkedBlockingDeque<Connection> m_idle
+        = new LinkedBlockingDeque<>();
+    private volatile boolean m_closed = false;
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Create a new ConnectionPool for the given database.
+     * @param url the url for the database, of the form
+     * "jdbc:<database_sub_protocol>://&lt;hostname&gt;/&lt;database_name&gt;
+     * @param user the database username
+     * @param password the database password
+     * @param size the maximum number of connections
+     */
+    public ConnectionPool(String url, String user, String password, int size)
+    {
+        if ( size < 1 )
+            throw new IllegalArgumentException("Pool size must be positive.");
+        m_url = url;
+        m_user = user;
+        m_password = password;
+        m_size = size;
+        m_permits = new Semaphore(size, true);
+    }
+    
+    /**
+     * Get the maximum number of connections of this pool.
+     * @return the maximum pool size
+     */
+    public int getSize() {
+        return m_size;
+    }
+    
+    /**
+     * Get the number of connections currently kept open for reuse.
+     * @return the number of idle connections
+     */
+    public int getIdleCount() {
+        return m_idle.size();
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Borrow a connection, waiting until one is available if all
+     * connections of the pool are in use.
+     * @see prefux.data.io.sql.ConnectionProvider#getConnection()
+     */
+    public Connection getConnection() throws SQLException {
+        if ( m_closed )
+            throw new SQLException("Connection pool is closed.");
+        try {
+            m_permits.acquire();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(
+                "Interrupted while waiting for a connection.", e);
+        }
+        try {
+            Connection conn;
+            while ( (conn=m_idle.pollFirst()) != null ) {
+                if ( !conn.isClosed() )
+                    return conn;
+            }
+            return createConnection();
+        } catch ( SQLException | RuntimeException e ) {
+            m_permits.release();
+            throw e;
+        }
+    }
+    
+    /**
+     * Hand back a borrowed connection, keeping it open for reuse.
+     * @see prefux.data.io.sql.ConnectionProvider#releaseConnection(java.sql.Connection)
+     */
+    public void releaseConnection(Connection conn) throws SQLException {
+        try {
+            if ( m_closed ) {
+                conn.close();
+            } else if ( !conn.isClosed() ) {
+                m_idle.offerFirst(conn);
+            }
+        } finally {
+            m_permits.release();
+        }
+    }
+    
+    /**
+     * Close this pool and all idle connections. Connections still in use
+     * are closed when they are released.
+     */
+    public void close() {
+        m_closed = true;
+        Connection conn;
+        while ( (conn=m_idle.pollFirst()) != null ) {
+            try {
+                conn.close();
+            } catch ( SQLException e ) {
+                s_logger.warning("Error closing connection: "+e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Create a new database connection.
+     * @return the new connection
+     * @throws SQLException if the connection could not be established
+     */
+    protected Connection createConnection() throws SQLException {
+        return DriverManager.getConnection(m_url, m_user, m_password);
+    }
+    
+} // end of class ConnectionPool
@@ -0,0 +1,63 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.io.sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Source of database connections for a {@link DatabaseDataSource}. Each
+ * query borrows a connection for the time it takes to issue the query and
+ * process its results, and then hands it back. This allows several queries
+ * of the same data source to run at the same time, each on its own
+ * connection.
+ *
+ * @see ConnectionPool
+ * @see ConnectionFactory#getDatabaseConnection(ConnectionProvider)
+ */
+public interface ConnectionProvider {
+
+    /**
+     * Borrow a connection. The connection must be handed back using
+     * {@link #releaseConnection(Connection)} when it is no longer needed.
+     * @return a database connection
+     * @throws SQLException if no connection can be provided
+     */
+    public Connection getConnection() throws SQLException;
+    
+    /**
+     * Hand back a connection obtained from {@link #getConnection()}.
+     * @param conn the connection to release
+     * @throws SQLException if an error occurs releasing the connection
+     */
+    public void releaseConnection(Connection conn) throws SQLException;
+    
+} // end of interface ConnectionProvider
@@ -30,99 +30,117 @@
  */
 package prefux.data.io.sql;
 
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import prefux.data.Table;
 import prefux.data.io.DataIOException;
 import prefux.util.PrefuseConfig;
+import prefux.util.SerialExecutor;
 import prefux.util.StringLib;
-import prefux.util.collections.CopyOnWriteArrayList;
 
 /**
- * Worker thread that asynchronously handles a queue of jobs, with each job
- * responsible for issuing a query and processing the results. Currently
- * involves just a single thread, in the future this may be expanded to
- * thread pool for greater concurrency.
+ * Worker pool that asynchronously handles a queue of jobs, with each job
+ * responsible for issuing a query and processing the results. Jobs storing
+ * their results in the same table are run one after the other, in the
+ * order of submission, while jobs for different tables run concurrently
+ * on a pool of worker threads. The number of workers is taken from the
+ * <code>data.io.worker.threads</code> configuration setting. Note that
+ * queries of a data source with a single connection are still issued one
+ * at a time, use a {@link ConnectionProvider} for concurrent queries.
  *  
  * @author <a href="http://jheer.org">jeffrey heer</a>
  * @see DatabaseDataSource
  */
-public class DataSourceWorker extends Thread {
+public class DataSourceWorker {
 
     private static Logger s_logger
         = Logger.getLogger(DataSourceWorker.class.getName());
     
-    // TODO: in future, may want to expand this to a thread pool
-    private static DataSourceWorker s_instance;
+    private static ThreadPoolExecutor s_workers;
     
-    private static CopyOnWriteArrayList s_queue;
+    // runs the jobs of each target table one after the other
+    private static SerialExecutor s_lanes;
     
     /**
-     * Submit a job to the worker thread.
+     * Submit a job to the worker pool.
      * @param e an {@link DataSourceWorker.Entry} instance that contains
      * the parameters of the job.
      */
-    public synchronized static void submit(Entry e)
+    public static void submit(Entry e)
     {
-        // perform lazily initialization as needed
-        if ( s_queue == null )
-            s_queue = new CopyOnWriteArrayList();
-        if ( s_instance == null )
-            s_instance = new DataSourceWorker();
+        ThreadPoolExecutor workers = getWorkers();
         
-        // queue it up
-        s_queue.add(e);
-        
-        // wake up a sleepy thread
-        synchronized ( s_instance ) {
-            s_instance.notify();
+        // jobs without a target table are independent of each other
+        Object key = e.table != null ? e.table : e.lock;
+        if ( key == null ) {
+            workers.execute(() -> run(e));
+        } else {
+            s_lanes.execute(key, () -> run(e));
         }
     }
     
-    // ------------------------------------------------------------------------
-    
     /**
-     * Create a new DataSourceWorker.
+     * Returns the worker pool, creating it on first use.
      */
-    private DataSourceWorker() {
-        super("prefuse_DatabaseWorker");
+    private static synchronized ThreadPoolExecutor getWorkers() {
+        if ( s_workers != null )
+            return s_workers;
         
         int priority = PrefuseConfig.getInt("data.io.worker.threadPriority");
-        if ( priority >= Thread.MIN_PRIORITY && 
-             priority <= Thread.MAX_PRIORITY )
+        if ( priority < Thread.MIN_PRIORITY || 
+             priority > Thread.MAX_PRIORITY )
         {
-            this.setPriority(priority);
+            priority = Thread.NORM_PRIORITY;
         }
-        this.setDaemon(true);
-        this.start();
+        int threads = PrefuseConfig.getInt("data.io.worker.threads");
+        if ( threads <= 0 )
+            threads = Runtime.getRuntime().availableProcessors();
+        
+        final int p = priority;
+        final AtomicInteger id = new AtomicInteger();
+        s_workers = new ThreadPoolExecutor(threads, threads, 
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+                Thread t = new Thread(r, 
+                    "prefuse_DatabaseWorker-" + id.incrementAndGet());
+                t.setPriority(p);
+                t.setDaemon(true);
+                return t;
+            });
+        s_workers.allowCoreThreadTimeOut(true);
+        s_lanes = new SerialExecutor(s_workers);
+        return s_workers;
     }
     
+    // ------------------------------------------------------------------------
+    
     /**
-     * @see java.lang.Runnable#run()
+     * Not instantiated, jobs are handed to {@link #submit(Entry)}.
      */
-    public void run() {
-        while ( true ) {
-            Entry e = null;
-            synchronized ( s_queue ) {
-                if ( s_queue.size() > 0 )
-                    e = (Entry)s_queue.remove(0);    
-            }
-            
-            if ( e != null ) {
-                try {
-                    if ( e.listener != null ) e.listener.preQuery(e);
-                    e.ds.getData(e.table, e.query, e.keyField, e.lock);
-                    if ( e.listener != null ) e.listener.postQuery(e);
-                } catch ( DataIOException dre ) {
-                    s_logger.warning(dre.getMessage() + "\n" 
-                        + StringLib.getStackTrace(dre));
-                }
+    private DataSourceWorker() {
+        // prevent instantiation
+    }
+    
+    /**
+     * Run a single job.
+     * @param e the job to run
+     */
+    private static void run(Entry e) {
+        try {
+            if ( e.listener != null ) e.listener.preQuery(e);
+            if ( e.refresh ) {
+                e.changes = e.ds.refreshData(
+                        e.table, e.query, e.keyField, e.lock);
             } else {
-                // nothing to do, chill out until notified
-                try {
-                    synchronized (this) { wait(); }
-                } catch (InterruptedException ex) { }
+                e.ds.getData(e.table, e.query, e.keyField, e.lock);
             }
+            if ( e.listener != null ) e.listener.postQuery(e);
+        } catch ( DataIOException | RuntimeException dre ) {
+            s_logger.warning(dre.getMessage() + "\n" 
+                + StringLib.getStackTrace(dre));
         }
     }
     
@@ -169,6 +187,21 @@ public class DataSourceWorker extends Thread {
         /** An optional lock to synchronize on when processing
          * data and adding it to the Table. */
         Object lock;
+        /** Indicates if the Table is refreshed rather than loaded. */
+        boolean refresh;
+        /** The changes of a refresh, once processed. */
+        volatile ChangeSet changes;
+        
+        /**
+         * Get the changes made to the Table by a refresh job, see
+         * {@link DatabaseDataSource#refreshData(Table, String, String,
+         * Object, Listener)}.
+         * @return the changes made to the table, or null if the job is no
+         * refresh or has not been processed yet
+         */
+        public ChangeSet getChanges() {
+            return changes;
+        }
     }
     
     /**
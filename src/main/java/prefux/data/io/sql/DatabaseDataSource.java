@@ -38,6 +38,7 @@ import java.util.logging.Logger;
 
 import prefux.data.Table;
 import prefux.data.io.DataIOException;
+import prefux.util.PrefuseConfig;
 
 /**
  * Sends queries to a relational database and processes the results, storing
@@ -45,6 +46,13 @@ import prefux.data.io.DataIOException;
  * instantiated directly. To access a database, the {@link ConnectionFactory}
  * class should be used to retrieve an appropriate instance of this class.
  * 
+ * <p>A data source either works on a single connection, in which case its
+ * queries are issued one after the other, or borrows a connection from a
+ * {@link ConnectionProvider} for each query, in which case any number of
+ * queries may be issued and processed concurrently, for example by
+ * asynchronous loads of different tables, see
+ * {@link #loadData(Table, String)}.</p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
 public class DatabaseDataSource {
@@ -53,9 +61,13 @@ public class DatabaseDataSource {
     private static final Logger s_logger 
         = Logger.getLogger(DatabaseDataSource.class.getName());
     
-    protected Connection       m_conn;
-    protected Statement        m_stmt;
-    DatabaseResultSetProcessor m_resultSetProcessor;
+    protected Connection         m_conn;
+    protected Statement          m_stmt;
+    protected ConnectionProvider m_provider;
+    DatabaseResultSetProcessor   m_resultSetProcessor;
+    
+    private volatile int m_fetchSize
+        = Math.max(0, PrefuseConfig.getInt("data.io.sql.fetchSize"));
     
     // ------------------------------------------------------------------------
     
@@ -71,6 +83,59 @@ public class DatabaseDataSource {
         m_resultSetProcessor = new DatabaseResultSetProcessor(handler);
     }
     
+    /**
+     * Creates a new DatabaseDataSource for reading data from a SQL relational
+     * database, borrowing a connection from the given provider for each
+     * query. This constructor is only package visible, the
+     * {@link ConnectionFactory} class should be used instead.
+     */
+    DatabaseDataSource(ConnectionProvider provider, SQLDataHandler handler) {
+        m_provider = provider;
+        m_resultSetProcessor = new DatabaseResultSetProcessor(handler);
+    }
+    
+    // ------------------------------------------------------------------------
+    // Tuning
+    
+    /**
+     * Get the number of rows fetched from the database at a time.
+     * @return the fetch size, 0 if left to the JDBC driver
+     */
+    public int getFetchSize() {
+        return m_fetchSize;
+    }
+    
+    /**
+     * Set the number of rows fetched from the database at a time. This is
+     * a hint to the JDBC driver, larger values reduce the number of round
+     * trips for large query results. The default is taken from the
+     * <code>data.io.sql.fetchSize</code> configuration setting.
+     * @param size the fetch size, 0 to leave it to the JDBC driver
+     */
+    public void setFetchSize(int size) {
+        if ( size < 0 )
+            throw new IllegalArgumentException("Negative fetch size.");
+        m_fetchSize = size;
+    }
+    
+    /**
+     * Get the number of rows transferred into a Table at a time.
+     * @return the batch size
+     * @see DatabaseResultSetProcessor#getBatchSize()
+     */
+    public int getBatchSize() {
+        return m_resultSetProcessor.getBatchSize();
+    }
+    
+    /**
+     * Set the number of rows transferred into a Table at a time.
+     * @param size the batch size
+     * @see DatabaseResultSetProcessor#setBatchSize(int)
+     */
+    public void setBatchSize(int size) {
+        m_resultSetProcessor.setBatchSize(size);
+    }
+    
     // ------------------------------------------------------------------------
     // Synchronous Data Retrieval
     
@@ -81,7 +146,7 @@ public class DatabaseDataSource {
      * @throws DataIOException if an error occurs while executing the query 
      * or adding the query results in a prefux Table.
      */
-    public synchronized Table getData(String query) throws DataIOException {
+    public Table getData(String query) throws DataIOException {
         return getData(null, query, null);
     }
 
@@ -94,7 +159,7 @@ public class DatabaseDataSource {
      * @throws DataIOException if an error occurs while executing the query 
      * or adding the query results in a prefux Table.
      */
-    public synchronized Table getData(String query, String keyField)
+    public Table getData(String query, String keyField)
         throws DataIOException
     {
         return getData(null, query, keyField);
@@ -109,7 +174,7 @@ public class DatabaseDataSource {
      * @throws DataIOException if an error occurs while executing the query 
      * or adding the query results in a prefux Table.
      */
-    public synchronized Table getData(Table t, String query) 
+    public Table getData(Table t, String query) 
         throws DataIOException
     {
         return getData(t, query, null);
@@ -125,7 +190,7 @@ public class DatabaseDataSource {
      * @throws DataIOException if an error occurs while executing the query 
      * or adding the query results in a prefux Table.
      */
-    public synchronized Table getData(Table t, String query, String keyField) 
+    public Table getData(Table t, String query, String keyField) 
         throws DataIOException
     {
         return getData(t, query, keyField, null);
@@ -144,17 +209,55 @@ public class DatabaseDataSource {
      * @throws DataIOException if an error occurs while executing the query 
      * or adding the query results in a prefux Table.
      */
-    public synchronized Table getData(Table t, String query, 
-                                      String keyField, Object lock) 
+    public Table getData(Table t, String query, 
+                         String keyField, Object lock) 
         throws DataIOException
     {
-        ResultSet rs;
-        try {
-            rs = executeQuery(query);
-        } catch ( SQLException e ) {
-            throw new DataIOException(e);
-        }
-        return m_resultSetProcessor.process(t, rs, keyField, lock, false);
+        return query(query, rs -> 
+            m_resultSetProcessor.process(t, rs, keyField, lock, false));
+    }
+    
+    /**
+     * Executes a query and refreshes the given table with the results,
+     * updating rows by key, adding new rows and removing rows no longer
+     * part of the results. Only changed values are written to the table,
+     * see {@link DatabaseResultSetProcessor#refresh(Table, ResultSet,
+     * String, Object)}.
+     * @param t the Table to refresh
+     * @param query the text SQL query to execute
+     * @param keyField the primary key field identifying the rows
+     * @return the changes made to the table
+     * @throws DataIOException if an error occurs while executing the query 
+     * or refreshing the prefux Table.
+     */
+    public ChangeSet refreshData(Table t, String query, String keyField)
+        throws DataIOException
+    {
+        return refreshData(t, query, keyField, null);
+    }
+    
+    /**
+     * Executes a query and refreshes the given table with the results,
+     * updating rows by key, adding new rows and removing rows no longer
+     * part of the results. Only changed values are written to the table,
+     * see {@link DatabaseResultSetProcessor#refresh(Table, ResultSet,
+     * String, Object)}.
+     * @param t the Table to refresh
+     * @param query the text SQL query to execute
+     * @param keyField the primary key field identifying the rows
+     * @param lock an optional Object to use as a lock when performing data
+     *  processing. This lock will be synchronized on whenever the Table is
+     *  modified.
+     * @return the changes made to the table
+     * @throws DataIOException if an error occurs while executing the query 
+     * or refreshing the prefux Table.
+     */
+    public ChangeSet refreshData(Table t, String query, String keyField,
+                                 Object lock)
+        throws DataIOException
+    {
+        return query(query, rs -> 
+            m_resultSetProcessor.refresh(t, rs, keyField, lock));
     }
     
     // ------------------------------------------------------------------------
@@ -237,23 +340,88 @@ public class DatabaseDataSource {
         DataSourceWorker.submit(e);
     }
     
+    /**
+     * Asynchronously executes a query and refreshes the given table with
+     * the results, see {@link #refreshData(Table, String, String, Object)}.
+     * All data processing is done in a separate thread of execution. The
+     * changes made to the table are available to the listener through
+     * {@link DataSourceWorker.Entry#getChanges()}.
+     * @param t the Table to refresh
+     * @param query the query to execute
+     * @param keyField the primary key field identifying the rows
+     * @param lock an optional Object to use as a lock when performing data
+     *  processing. A null value will result in locking the table.
+     * @param listener an optional listener that will provide notifications
+     *  before the query has been issued and after the query has been 
+     *  processed.
+     */
+    public void refreshData(Table t, String query, String keyField, 
+                            Object lock, DataSourceWorker.Listener listener) {
+        DataSourceWorker.Entry e = new DataSourceWorker.Entry(
+                this, t, query, keyField, lock, listener);
+        e.refresh = true;
+        DataSourceWorker.submit(e);
+    }
+    
     // ------------------------------------------------------------------------
     
+    /**
+     * Execute a query and process its results, on the connection of this
+     * data source or on a connection borrowed from the provider.
+     * @param query the text SQL query to execute
+     * @param task the processing of the query results
+     * @return the result of the processing
+     * @throws DataIOException if an error occurs while executing the query 
+     * or processing the results
+     */
+    private <T> T query(String query, ResultSetTask<T> task)
+        throws DataIOException
+    {
+        if ( m_provider == null ) {
+            // a single connection, issue one query at a time
+            synchronized ( this ) {
+                ResultSet rs;
+                try {
+                    if ( m_stmt == null )
+                        m_stmt = m_conn.createStatement();
+                    rs = executeQuery(m_stmt, query);
+                } catch ( SQLException e ) {
+                    throw new DataIOException(e);
+                }
+                return task.process(rs);
+            }
+        }
+        
+        Connection conn = null;
+        Statement stmt = null;
+        try {
+            conn = m_provider.getConnection();
+            stmt = conn.createStatement();
+            return task.process(executeQuery(stmt, query));
+        } catch ( SQLException e ) {
+            throw new DataIOException(e);
+        } finally {
+            release(conn, stmt);
+        }
+    }
+    
     /**
      * Execute a query and return the corresponding result set
+     * @param stmt the statement to issue the query with
      * @param query the text SQL query to execute
      * @return the ResultSet of the query
      * @throws SQLException if an error occurs issuing the query
      */
-    private ResultSet executeQuery(String query) throws SQLException {
-        if ( m_stmt == null )
-            m_stmt = m_conn.createStatement();
+    private ResultSet executeQuery(Statement stmt, String query)
+        throws SQLException
+    {
+        stmt.setFetchSize(m_fetchSize);
         
         // clock in
         long timein = System.currentTimeMillis();
         
         s_logger.info("Issuing query: "+query);
-        ResultSet rset = m_stmt.executeQuery(query);
+        ResultSet rset = stmt.executeQuery(query);
         
         // clock out
         long time = System.currentTimeMillis()-timein;
@@ -262,4 +430,29 @@ public class DatabaseDataSource {
         
         return rset;
     }
+    
+    /**
+     * Close a statement and hand its connection back to the provider.
+     * @param conn the borrowed connection, may be null
+     * @param stmt the statement to close, may be null
+     */
+    private void release(Connection conn, Statement stmt) {
+        try {
+            if ( stmt != null ) stmt.close();
+        } catch ( SQLException e ) {
+            s_logger.warning("Error closing statement: "+e.getMessage());
+        }
+        try {
+            if ( conn != null ) m_provider.releaseConnection(conn);
+        } catch ( SQLException e ) {
+            s_logger.warning("Error releasing connection: "+e.getMessage());
+        }
+    }
+    
+    /**
+     * Processing of the results of a query.
+     */
+    private interface ResultSetTask<T> {
+        T process(ResultSet rs) throws DataIOException;
+    }
 } // end of class DatabaseDataSource
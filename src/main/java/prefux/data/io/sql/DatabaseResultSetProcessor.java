@@ -37,16 +37,21 @@ package prefux.data.io.sql;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.HashSet;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
 import java.util.logging.Logger;
 
 import prefux.data.Schema;
 import prefux.data.Table;
-import prefux.data.Tuple;
 import prefux.data.io.DataIOException;
 import prefux.data.util.Index;
-import prefux.data.util.TableIterator;
+import prefux.util.PrefuseConfig;
+import prefux.util.collections.IntIterator;
 
 /**
  * Is responible fpr processing a ResultSet and transfering
@@ -54,12 +59,25 @@ import prefux.data.util.TableIterator;
  * 
  * Is just a refactoring of the <code>DatabaseDataSource</code>.
  * 
+ * <p>Rows are transferred in batches. The values of a batch are first
+ * read into a staging table of the result schema, and then copied column
+ * by column into the target table while its events are deferred, so that
+ * listeners of the target table are notified once per batch rather than
+ * once per value, see {@link Table#deferEvents()}. The lock is only held
+ * while a batch is copied.</p>
+ * 
  * @author Sascha Thielemann
  */
 public class DatabaseResultSetProcessor {
 
     private static final Logger s_logger = Logger.getLogger(DatabaseResultSetProcessor.class.getName());
     protected SQLDataHandler m_handler;
+    
+    private volatile int m_batchSize =
+            PrefuseConfig.getInt("data.io.sql.batchSize");
+
+    // key maps of the tables refreshed by this processor
+    private final Map<Table, RefreshState> m_states = new WeakHashMap<>();
 
     /**
      * Creates a new DatabaseResultSetProcessor for reading data from a SQL relational
@@ -67,6 +85,33 @@ public class DatabaseResultSetProcessor {
      */
     public DatabaseResultSetProcessor(SQLDataHandler handler) {
         m_handler = handler;
+        if (m_batchSize < 1) {
+            m_batchSize = 1024;
+        }
+    }
+    
+    /**
+     * Get the number of rows transferred into a Table at a time.
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+    
+    /**
+     * Set the number of rows transferred into a Table at a time. Larger
+     * batches reduce the number of events fired, smaller batches make
+     * partial results visible sooner and hold the lock for a shorter time.
+     * The default is taken from the <code>data.io.sql.batchSize</code>
+     * configuration setting.
+     * @param size the batch size, at least 1
+     */
+    public void setBatchSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException(
+                    "Batch size must be positive.");
+        }
+        m_batchSize = size;
     }
 
     /**
@@ -88,23 +133,23 @@ public class DatabaseResultSetProcessor {
         long timein = System.currentTimeMillis();
 
         boolean tableIsNew = false;
-        HashSet<Tuple> rowsToRemove = new HashSet<>();
+        BitSet rowsToRemove = null;
 
-        if (t != null) {
-            TableIterator iterator = t.iterator();
-            while (iterator.hasNext()) {
-                Integer row = iterator.nextInt();
-                rowsToRemove.add(t.getTuple(row));
+        if (t != null && remove) {
+            rowsToRemove = new BitSet();
+            for (IntIterator rows = t.rows(); rows.hasNext();) {
+                rowsToRemove.set(rows.nextInt());
             }
         }
 
         try {
             ResultSetMetaData metadata = rset.getMetaData();
             int ncols = metadata.getColumnCount();
+            Schema schema = getSchema(metadata, m_handler);
 
             // create a new table if necessary
             if (t == null) {
-                t = getSchema(metadata, m_handler).instantiate();
+                t = schema.instantiate();
                 tableIsNew = true;
                 if (key != null) {
                     try {
@@ -119,32 +164,35 @@ public class DatabaseResultSetProcessor {
             // set the lock, lock on the table itself if nothing else provided
             lock = (lock == null ? t : lock);
 
-            // process the returned rows
+            // process the returned rows, one batch at a time
+            int batchSize = m_batchSize;
+            Table batch = schema.instantiate(batchSize);
+            int n = 0;
             while (rset.next()) {
-                synchronized (lock) {
-                    // determine the table row index to use
-                    int row = getExistingRow(t, rset, key);
-                    if (row < 0) {
-                        row = t.addRow();
-                    }
-                    rowsToRemove.remove(row);
-                    //process each value in the current row
-                    for (int i = 1; i <= ncols; ++i) {
-                        m_handler.process(t, row, rset, i);
-                    }
+                //process each value in the current row
+                for (int i = 1; i <= ncols; ++i) {
+                    m_handler.process(batch, n, rset, i);
+                }
+                if (++n == batchSize) {
+                    transfer(batch, n, t, key, lock, rowsToRemove);
+                    batch = schema.instantiate(batchSize);
+                    n = 0;
                 }
 
                 // increment row count
                 ++count;
             }
+            if (n > 0) {
+                transfer(batch, n, t, key, lock, rowsToRemove);
+            }
 
             if (!tableIsNew && remove) {
-                // remove all no longer relevant columns
-                Iterator<Tuple> iterator = rowsToRemove.iterator();
-                while (iterator.hasNext()) {
-                    Tuple tuple = iterator.next();
-                    boolean removeRow = t.removeTuple(tuple);
-                    assert removeRow : "maybe some syncronization problems";
+                // remove all rows without a counterpart in the result set
+                synchronized (lock) {
+                    for (int r = rowsToRemove.nextSetBit(0); r >= 0;
+                            r = rowsToRemove.nextSetBit(r + 1)) {
+                        t.removeRow(r);
+                    }
                 }
             }
         } catch (SQLException e) {
@@ -159,6 +207,394 @@ public class DatabaseResultSetProcessor {
         return t;
     }
 
+    /**
+     * Refresh a table from the results of a SQL query, so that it holds
+     * exactly the query results afterwards. Rows are matched by a key
+     * field: matched rows are updated, rows without a match in the table
+     * are added and rows without a match in the results are removed. Only
+     * values that actually changed are written, so unchanged rows and
+     * columns fire no events at all.
+     *
+     * <p>The processor remembers the row of each key from one refresh to
+     * the next, as long as the table is not modified in between.</p>
+     *
+     * @param t the Table to refresh
+     * @param rset the SQL query result set
+     * @param key the key field identifying the rows
+     * @param lock object used for syncronization, the table if null
+     * @return the changes made to the table
+     */
+    public ChangeSet refresh(Table t, ResultSet rset, String key, Object lock)
+            throws DataIOException {
+        if (t == null || key == null) {
+            throw new IllegalArgumentException(
+                    "Refreshing requires a table and a key field.");
+        }
+
+        // clock in
+        int count = 0;
+        long timein = System.currentTimeMillis();
+
+        lock = (lock == null ? t : lock);
+        RefreshState state;
+        synchronized (m_states) {
+            state = m_states.get(t);
+            if (state == null || !key.equals(state.key)) {
+                state = new RefreshState(key);
+                m_states.put(t, state);
+            }
+        }
+
+        Delta delta = new Delta();
+        synchronized (state) {
+            try {
+                ResultSetMetaData metadata = rset.getMetaData();
+                int ncols = metadata.getColumnCount();
+                Schema schema = getSchema(metadata, m_handler);
+                if (schema.getColumnIndex(key) < 0) {
+                    throw new DataIOException(
+                            "Key field not in query results: " + key);
+                }
+
+                // process the returned rows, one batch at a time
+                int batchSize = m_batchSize;
+                Table batch = schema.instantiate(batchSize);
+                int n = 0;
+                while (rset.next()) {
+                    for (int i = 1; i <= ncols; ++i) {
+                        m_handler.process(batch, n, rset, i);
+                    }
+                    if (++n == batchSize) {
+                        refresh(batch, n, t, state, lock, delta);
+                        batch = schema.instantiate(batchSize);
+                        n = 0;
+                    }
+                    ++count;
+                }
+                if (n > 0) {
+                    refresh(batch, n, t, state, lock, delta);
+                }
+            } catch (SQLException e) {
+                throw new DataIOException(e);
+            }
+
+            // remove all rows without a counterpart in the result set
+            synchronized (lock) {
+                validate(t, state);
+                Iterator<Integer> rows = state.rows.values().iterator();
+                while (rows.hasNext()) {
+                    int row = rows.next();
+                    if (!delta.seen.get(row)) {
+                        rows.remove();
+                        t.removeRow(row);
+                        delta.removed.set(row);
+                    }
+                }
+                state.modCount = t.getModificationCount();
+            }
+        }
+
+        ChangeSet changes = new ChangeSet(delta.added, delta.updated,
+                delta.removed, delta.columns.toArray(new String[0]));
+
+        // clock out
+        long time = System.currentTimeMillis() - timein;
+        s_logger.info("Internal refresh processing completed: " + count
+                + " rows, " + changes + ", "
+                + (time / 1000) + "." + (time % 1000) + " seconds.");
+
+        return changes;
+    }
+
+    /**
+     * Apply one batch of a refresh to the target table.
+     */
+    private void refresh(Table batch, int n, Table t, RefreshState state,
+            Object lock, Delta delta) {
+        int ncols = batch.getColumnCount();
+        int kc = batch.getColumnNumber(state.key);
+        int[] tcols = new int[ncols];
+        Class[] types = new Class[ncols];
+        for (int c = 0; c < ncols; ++c) {
+            tcols[c] = t.getColumnNumber(batch.getColumnName(c));
+            types[c] = batch.getColumnType(c);
+        }
+
+        synchronized (lock) {
+            validate(t, state);
+            t.deferEvents();
+            try {
+                for (int b = 0; b < n; ++b) {
+                    Object k = keyOf(batch.get(b, kc));
+                    Integer r = state.rows.get(k);
+                    int row;
+                    if (r == null) {
+                        row = t.addRow();
+                        state.rows.put(k, row);
+                        for (int c = 0; c < ncols; ++c) {
+                            if (tcols[c] >= 0) {
+                                copyCell(batch, b, c, types[c],
+                                        t, row, tcols[c]);
+                            }
+                        }
+                        delta.added.set(row);
+                    } else {
+                        row = r;
+                        // compare the values, writing only changed ones
+                        boolean changed = false;
+                        for (int c = 0; c < ncols; ++c) {
+                            int tc = tcols[c];
+                            if (tc >= 0 && !sameCell(batch, b, c,
+                                    types[c], t, row, tc)) {
+                                copyCell(batch, b, c, types[c], t, row, tc);
+                                delta.columns.add(batch.getColumnName(c));
+                                changed = true;
+                            }
+                        }
+                        if (changed && !delta.added.get(row)) {
+                            delta.updated.set(row);
+                        }
+                    }
+                    delta.seen.set(row);
+                }
+            } finally {
+                t.resumeEvents();
+            }
+            state.modCount = t.getModificationCount();
+        }
+    }
+
+    /**
+     * Make sure the refresh state matches the table, rebuilding the key
+     * map if the table has been modified since the state was last updated.
+     */
+    private static void validate(Table t, RefreshState state) {
+        if (t.getModificationCount() == state.modCount) {
+            return;
+        }
+        state.rows.clear();
+        int kc = t.getColumnNumber(state.key);
+        if (kc >= 0) {
+            for (IntIterator rows = t.rows(); rows.hasNext();) {
+                int row = rows.nextInt();
+                state.rows.put(keyOf(t.get(row, kc)), row);
+            }
+        }
+        state.modCount = t.getModificationCount();
+    }
+
+    /**
+     * Normalize a key value, so that integral keys match regardless of
+     * the width of the column types involved.
+     */
+    private static Object keyOf(Object key) {
+        if (key instanceof Integer || key instanceof Short
+                || key instanceof Byte) {
+            return Long.valueOf(((Number) key).longValue());
+        }
+        return key;
+    }
+
+    /**
+     * Indicates if a value of a staged row equals the value of a table cell.
+     */
+    private static boolean sameCell(Table batch, int b, int c, Class type,
+            Table t, int row, int tc) {
+        if (type == int.class) {
+            return batch.getInt(b, c) == t.getInt(row, tc);
+        } else if (type == long.class) {
+            return batch.getLong(b, c) == t.getLong(row, tc);
+        } else if (type == float.class) {
+            return Float.compare(batch.getFloat(b, c),
+                    t.getFloat(row, tc)) == 0;
+        } else if (type == double.class) {
+            return Double.compare(batch.getDouble(b, c),
+                    t.getDouble(row, tc)) == 0;
+        } else if (type == boolean.class) {
+            return batch.getBoolean(b, c) == t.getBoolean(row, tc);
+        } else {
+            return Objects.equals(batch.get(b, c), t.get(row, tc));
+        }
+    }
+
+    /**
+     * Copy a value of a staged row into a table cell.
+     */
+    private static void copyCell(Table batch, int b, int c, Class type,
+            Table t, int row, int tc) {
+        if (type == int.class) {
+            t.setInt(row, tc, batch.getInt(b, c));
+        } else if (type == long.class) {
+            t.setLong(row, tc, batch.getLong(b, c));
+        } else if (type == float.class) {
+            t.setFloat(row, tc, batch.getFloat(b, c));
+        } else if (type == double.class) {
+            t.setDouble(row, tc, batch.getDouble(b, c));
+        } else if (type == boolean.class) {
+            t.setBoolean(row, tc, batch.getBoolean(b, c));
+        } else {
+            t.set(row, tc, batch.get(b, c));
+        }
+    }
+
+    /**
+     * Key map of a refreshed table. The state is in sync
+     * with the table as long as the modification count of the table
+     * equals the remembered one.
+     */
+    private static final class RefreshState {
+        final String key;
+        final HashMap<Object, Integer> rows = new HashMap<>();
+        int modCount = -1;
+
+        RefreshState(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Changes collected during a refresh.
+     */
+    private static final class Delta {
+        final BitSet seen = new BitSet();
+        final BitSet added = new BitSet();
+        final BitSet updated = new BitSet();
+        final BitSet removed = new BitSet();
+        final LinkedHashSet<String> columns = new LinkedHashSet<>();
+    }
+
+    /**
+     * Copy the first rows of a staging table into the target table. Rows
+     * already represented in the target table, according to the key field,
+     * are updated, all others are added. Events of the target table are
+     * deferred while copying.
+     *
+     * @param batch the staging table holding the values of the batch
+     * @param n the number of staged rows
+     * @param t the target table
+     * @param keyField the key field to identify existing rows, or null
+     * @param lock the object to synchronize on while copying
+     * @param rowsToRemove rows of the target table not yet found in the
+     * results, or null if not tracked
+     */
+    protected void transfer(Table batch, int n, Table t, String keyField,
+            Object lock, BitSet rowsToRemove) {
+        int[] rows = new int[n];
+        synchronized (lock) {
+            t.deferEvents();
+            try {
+                // determine the table row index to use for each staged row,
+                // tracking keys added by this batch, as these are not yet
+                // known to the index of the target table
+                boolean keyed = keyField != null
+                        && batch.getColumnNumber(keyField) >= 0
+                        && t.getColumnType(keyField) != null;
+                HashMap<Object, Integer> added = keyed ? new HashMap<>() : null;
+                for (int b = 0; b < n; ++b) {
+                    int row = -1;
+                    if (keyed) {
+                        Object k = batch.get(b, keyField);
+                        row = getExistingRow(t, batch, b, keyField);
+                        if (row < 0) {
+                            Integer r = added.get(k);
+                            if (r != null) {
+                                row = r;
+                            } else {
+                                row = t.addRow();
+                                added.put(k, row);
+                            }
+                        }
+                    } else {
+                        row = t.addRow();
+                    }
+                    rows[b] = row;
+                    if (rowsToRemove != null) {
+                        rowsToRemove.clear(row);
+                    }
+                }
+
+                // copy the values, one column at a time
+                for (int c = 0; c < batch.getColumnCount(); ++c) {
+                    int tc = t.getColumnNumber(batch.getColumnName(c));
+                    if (tc >= 0) {
+                        copyColumn(batch, c, n, t, tc, rows);
+                    }
+                }
+            } finally {
+                t.resumeEvents();
+            }
+        }
+    }
+
+    /**
+     * Copy the values of a column of the staging table into a column of the
+     * target table.
+     */
+    private static void copyColumn(Table batch, int c, int n, Table t, int tc,
+            int[] rows) {
+        Class type = batch.getColumnType(c);
+        if (type == int.class) {
+            for (int b = 0; b < n; ++b) {
+                t.setInt(rows[b], tc, batch.getInt(b, c));
+            }
+        } else if (type == long.class) {
+            for (int b = 0; b < n; ++b) {
+                t.setLong(rows[b], tc, batch.getLong(b, c));
+            }
+        } else if (type == float.class) {
+            for (int b = 0; b < n; ++b) {
+                t.setFloat(rows[b], tc, batch.getFloat(b, c));
+            }
+        } else if (type == double.class) {
+            for (int b = 0; b < n; ++b) {
+                t.setDouble(rows[b], tc, batch.getDouble(b, c));
+            }
+        } else if (type == boolean.class) {
+            for (int b = 0; b < n; ++b) {
+                t.setBoolean(rows[b], tc, batch.getBoolean(b, c));
+            }
+        } else {
+            for (int b = 0; b < n; ++b) {
+                t.set(rows[b], tc, batch.get(b, c));
+            }
+        }
+    }
+
+    /**
+     * See if a staged database row is already represented in the given
+     * Table.
+     *
+     * @param t the prefux Table to check for an existing row
+     * @param batch the staging table holding the retrieved rows
+     * @param brow the row of the staging table to look up
+     * @param keyField the key field to look up to check for an existing row
+     * @return the index of the existing row, or -1 if no match is found
+     */
+    protected int getExistingRow(Table t, Table batch, int brow,
+            String keyField) {
+        // retrieve the column data type, bail if column is not found
+        Class type = t.getColumnType(keyField);
+        if (type == null) {
+            return -1;
+        }
+
+        // get the index and perform the lookup
+        Index index = t.index(keyField);
+        if (type == int.class) {
+            return index.get(batch.getInt(brow, keyField));
+        } else if (type == long.class) {
+            return index.get(batch.getLong(brow, keyField));
+        } else if (type == float.class) {
+            return index.get(batch.getFloat(brow, keyField));
+        } else if (type == double.class) {
+            return index.get(batch.getDouble(brow, keyField));
+        } else if (!type.isPrimitive()) {
+            return index.get(batch.get(brow, keyField));
+        } else {
+            return -1;
+        }
+    }
+
     /**
      * See if a retrieved database row is already represented in the given
      * Table.
@@ -32,14 +32,16 @@
 package prefux.data.search;
 
 import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.logging.Logger;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopDocs;
 
 import prefux.data.Tuple;
 import prefux.util.StringLib;
@@ -55,6 +57,15 @@ import prefux.util.collections.IntObjectHashMap;
  * used by prefux applications, the Lucene classes must be included on the
  * application classpath.
  * </p> 
+ * 
+ * <p>
+ * Searches collect all matching documents, not just the top ranked ones.
+ * For data that changes while being searched, use a
+ * {@link LuceneSearcher#setNearRealTime(boolean) near-real-time}
+ * searcher, see {@link #KeywordSearchTupleSet(boolean)}. Tuple fields can
+ * then be indexed again to update them, or unindexed, without reopening
+ * the index for every change.
+ * </p>
  *
  * @version 1.0
  * @author <a href="http://jheer.org">jeffrey heer</a>
@@ -73,6 +84,9 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
     
     protected int m_id = 1;
     
+    // the document ID of each indexed tuple field
+    private HashMap<String,HashMap<Tuple,Integer>> m_ids = new HashMap<>();
+    
     /**
      * Creates a new KeywordSearchFocusSet using an in-memory search index.
      */
@@ -80,6 +94,17 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
         m_lucene = new LuceneSearcher();
     }
     
+    /**
+     * Creates a new KeywordSearchFocusSet using an in-memory search index.
+     * @param nearRealTime true to put the index into near-real-time mode,
+     * allowing fields to be updated and unindexed while searching
+     * @see LuceneSearcher#setNearRealTime(boolean)
+     */
+    public KeywordSearchTupleSet(boolean nearRealTime) {
+        m_lucene = new LuceneSearcher();
+        m_lucene.setNearRealTime(nearRealTime);
+    }
+    
     /**
      * Creates a new TextSearchFocusSet with the given LuceneSearcher.
      * @param searcher the {@link LuceneSearcher} to use.
@@ -120,10 +145,11 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
         
         m_lucene.setReadMode(true);
         try {
-            TopDocs hits = m_lucene.search(query);
-            for ( ScoreDoc doc : hits.scoreDocs) {
-                Tuple t = getMatchingTuple(m_lucene.getIndexSearcher().doc(doc.doc));
-                addInternal(t);
+            BitSet ids = m_lucene.searchIds(query);
+            for ( int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id+1) ) {
+                Tuple t = (Tuple)m_map.get(id);
+                if ( t != null )
+                    addInternal(t);
             }
             Tuple[] add = getTupleCount() > 0 ? toArray() : null;
             fireTupleEvent(add, rem);
@@ -148,33 +174,67 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
     }
     
     /**
+     * Indexes the given field of the provided Tuple instance. In
+     * near-real-time mode, indexing a field again replaces the indexed
+     * value.
      * @see prefux.data.search.SearchTupleSet#index(prefux.data.Tuple, java.lang.String)
      */
     public void index(Tuple t, String field) {
         m_lucene.setReadMode(false);
+        HashMap<Tuple,Integer> ids = m_ids.get(field);
+        Integer prev = ( ids == null ? null : ids.get(t) );
         String s;
-        if ( (s=t.getString(field)) == null ) return;
+        if ( (s=t.getString(field)) == null ) {
+            if ( prev != null && m_lucene.isNearRealTime() )
+                unindex(t, field);
+            return;
+        }
         
+        if ( prev != null && m_lucene.isNearRealTime() ) {
+            m_lucene.updateDocument(getTerm(prev), getDocument(prev, s));
+            return;
+        }
         int id = m_id++;
         m_lucene.addDocument(getDocument(id, s));        
         m_map.put(id, t);
+        if ( ids == null ) {
+            ids = new HashMap<>();
+            m_ids.put(field, ids);
+        }
+        ids.put(t, id);
     }
 
     /**
-     * Returns false, as unindexing values is not currently supported.
+     * Returns true in near-real-time mode, false otherwise.
      * @see prefux.data.search.SearchTupleSet#isUnindexSupported()
      */
     public boolean isUnindexSupported() {
-        return false;
+        return m_lucene.isNearRealTime();
     }
     
     /**
-     * This method throws an exception, as unidexing is not supported.
+     * Removes the given field of the provided Tuple instance from the
+     * index. Only supported in near-real-time mode.
      * @see prefux.data.search.SearchTupleSet#unindex(prefux.data.Tuple, java.lang.String)
-     * @throws UnsupportedOperationException
+     * @throws UnsupportedOperationException if the searcher is not in
+     * near-real-time mode
+     */
+    public void unindex(Tuple t, String field) {
+        if ( !m_lucene.isNearRealTime() )
+            throw new UnsupportedOperationException();
+        HashMap<Tuple,Integer> ids = m_ids.get(field);
+        Integer id = ( ids == null ? null : ids.remove(t) );
+        if ( id != null ) {
+            m_lucene.deleteDocuments(getTerm(id));
+            m_map.removeKey(id);
+        }
+    }
+    
+    /**
+     * Returns the term identifying the Lucene Document with the given ID.
      */
-    public void unindex(Tuple t, String attrName) {
-        throw new UnsupportedOperationException();
+    private static Term getTerm(int id) {
+        return new Term(LuceneSearcher.ID, String.valueOf(id));
     }
     
     /**
@@ -187,6 +247,7 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
         Document d = new Document();
         d.add(new StringField(LuceneSearcher.FIELD, text, Store.YES));
         d.add(new StringField(LuceneSearcher.ID, String.valueOf(id),Store.YES));
+        d.add(new NumericDocValuesField(LuceneSearcher.ID, id));
         return d;
     }
     
@@ -211,7 +272,13 @@ public class KeywordSearchTupleSet extends SearchTupleSet {
      * @see prefux.data.tuple.TupleSet#clear()
      */
     public void clear() {
+        boolean nrt = m_lucene.isNearRealTime();
+        if ( nrt )
+            m_lucene.close();
         m_lucene = new LuceneSearcher();
+        m_lucene.setNearRealTime(nrt);
+        m_map.clear();
+        m_ids.clear();
         super.clear();
     }
     
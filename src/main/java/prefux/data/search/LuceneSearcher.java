@@ -32,21 +32,32 @@
 package prefux.data.search;
 
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.HashMap;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TrackingIndexWriter;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Version;
@@ -57,6 +68,14 @@ import org.apache.lucene.util.Version;
  * text, for use within a single application session. The class can, however,
  * be parameterized for any number of other configurations, including accessing
  * persistent search indices.
+ * 
+ * <p>By default, the searcher is switched between a read mode, in which
+ * searches can be issued, and a write mode, in which documents can be
+ * indexed, and every switch closes and reopens the index. For indices
+ * that change while being searched, the searcher can be put into
+ * {@link #setNearRealTime(boolean) near-real-time mode}: a single writer
+ * stays open, changes are buffered by it, and a background thread reopens
+ * the searcher when changes are pending, without a mode switch.</p>
  *  
  * @version 1.0
  * @author <a href="http://jheer.org">jeffrey heer</a>
@@ -68,6 +87,17 @@ public class LuceneSearcher {
     /** Document field used to store the document ID number. */
     public static final String ID = "prefux-id";
     
+    /**
+     * Maximum time in seconds the near-real-time searcher may lag behind
+     * index changes while no search is waiting for them.
+     */
+    public static final double NRT_MAX_STALE = 1.0;
+    /**
+     * Minimum time in seconds between reopens of the near-real-time
+     * searcher while searches are waiting for index changes.
+     */
+    public static final double NRT_MIN_STALE = 0.025;
+    
     private Directory directory;
     private Analyzer analyzer;
     private String[] fields;
@@ -79,6 +109,13 @@ public class LuceneSearcher {
     private boolean m_readOnly = false;
     
     private HashMap<String,Integer> m_hitCountCache;
+    private IndexSearcher m_hitCountSearcher;
+    
+    // near-real-time mode
+    private TrackingIndexWriter m_tracking;
+    private SearcherManager m_manager;
+    private ControlledRealTimeReopenThread<IndexSearcher> m_reopen;
+    private long m_generation = -1; // generation of the last change
         
     /**
      * Create a new LuceneSearcher using an in-memory search index.
@@ -134,12 +171,15 @@ public class LuceneSearcher {
      * Sets if this LuceneSearcher is in read mode or write mode. In read more
      * searches can be issued, in write mode new Documents can be indexed.
      * Read-only LuceneSearcher instances can not be put into write mode.
+     * In near-real-time mode, this method does nothing.
      * @param mode true for read mode, false for write mode.
      * @return true if the mode was successfully set, false otherwise.
      */
     public boolean setReadMode(boolean mode) {
         // return false if this is read-only
         if ( m_readOnly && mode == false ) return false;
+        // reads and writes are both allowed in near-real-time mode
+        if ( isNearRealTime() ) return true;
         // do nothing if already in the mode
         if ( m_readMode == mode ) return true;
         // otherwise switch modes
@@ -183,9 +223,217 @@ public class LuceneSearcher {
         return true;
     }
     
+    /**
+     * Indicates if this LuceneSearcher is in near-real-time mode.
+     * @return true if in near-real-time mode, false otherwise
+     * @see #setNearRealTime(boolean)
+     */
+    public boolean isNearRealTime() {
+        return m_manager != null;
+    }
+    
+    /**
+     * Sets if this LuceneSearcher is in near-real-time mode. In this mode,
+     * documents can be added, updated and deleted while searches are
+     * issued. The changes are buffered by an index writer that stays open,
+     * and a background thread reopens the searcher when changes are
+     * pending, at least every {@link #NRT_MAX_STALE} seconds. Searches
+     * wait until all changes made through this LuceneSearcher are visible.
+     * Leaving near-real-time mode commits all changes, after which the
+     * searcher has to be put into read mode again.
+     * @param nrt true to enter near-real-time mode, false to leave it
+     * @return true if the mode was successfully set, false otherwise.
+     */
+    public boolean setNearRealTime(boolean nrt) {
+        if ( nrt == isNearRealTime() ) return true;
+        if ( nrt ) {
+            if ( m_readOnly ) return false;
+            try {
+                if ( writer != null ) writer.close();
+                if ( reader != null ) reader.close();
+                writer = null;
+                reader = null;
+                searcher = null;
+                
+                IndexWriterConfig cfg = new IndexWriterConfig(Version.LUCENE_4_10_1, analyzer);
+                writer = new IndexWriter(directory, cfg);
+                m_tracking = new TrackingIndexWriter(writer);
+                m_manager = new SearcherManager(writer, true, null);
+            } catch ( IOException e ) {
+                e.printStackTrace();
+                return false;
+            }
+            m_reopen = new ControlledRealTimeReopenThread<>(
+                m_tracking, m_manager, NRT_MAX_STALE, NRT_MIN_STALE);
+            m_reopen.setName("prefux-lucene-reopen");
+            m_reopen.setDaemon(true);
+            m_reopen.start();
+            m_hitCountCache.clear();
+            return true;
+        } else {
+            boolean ok = closeNearRealTime();
+            m_readMode = false;
+            return ok;
+        }
+    }
+    
+    /**
+     * Stops the reopen thread and closes the searcher manager and writer of
+     * the near-real-time mode.
+     */
+    private boolean closeNearRealTime() {
+        m_reopen.close();
+        m_reopen = null;
+        try {
+            m_manager.close();
+            writer.close();
+        } catch ( IOException e ) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            m_manager = null;
+            m_tracking = null;
+            writer = null;
+            m_generation = -1;
+            m_hitCountCache.clear();
+            m_hitCountSearcher = null;
+        }
+        return true;
+    }
+    
+    /**
+     * Closes the index, stopping the background thread of the
+     * near-real-time mode. The LuceneSearcher can not be used afterwards.
+     */
+    public void close() {
+        if ( isNearRealTime() ) {
+            closeNearRealTime();
+            return;
+        }
+        try {
+            if ( writer != null ) writer.close();
+            if ( reader != null ) reader.close();
+        } catch ( IOException e ) {
+            e.printStackTrace();
+        }
+        writer = null;
+        reader = null;
+        searcher = null;
+    }
+    
+    /**
+     * Parses a query over the indexed Document fields.
+     */
+    private Query parse(String query) throws ParseException {
+        if ( fields.length == 1 ) {
+            QueryParser parser = new QueryParser(fields[0], analyzer);
+            return parser.parse(query);
+        } else {
+            MultiFieldQueryParser parser = new MultiFieldQueryParser(fields, analyzer);
+            return parser.parse(query);
+        }
+    }
+    
+    /**
+     * Acquires the searcher to use, waiting in near-real-time mode until
+     * all changes are visible. Must be paired with
+     * {@link #releaseSearcher(IndexSearcher)}.
+     */
+    private IndexSearcher acquireSearcher() throws IOException {
+        if ( !isNearRealTime() ) {
+            if ( !m_readMode )
+                throw new IllegalStateException(
+                    "Searches can only be performed when " +
+                    "the LuceneSearcher is in read mode");
+            return searcher;
+        }
+        if ( m_generation >= 0 ) {
+            try {
+                m_reopen.waitForGeneration(m_generation);
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return m_manager.acquire();
+    }
+    
+    private void releaseSearcher(IndexSearcher s) throws IOException {
+        if ( isNearRealTime() )
+            m_manager.release(s);
+    }
+    
+    /**
+     * Searches the Lucene index using the given query String, passing all
+     * matches to the given collector.
+     * @param query the search query
+     * @param collector the collector receiving the matching documents
+     * @throws ParseException if the query is not parsed successfully
+     * @throws IOException if an input/ouput error occurs
+     * @throws IllegalStateException if the searcher is in write mode
+     */
+    public void search(String query, Collector collector)
+        throws IOException, ParseException
+    {
+        Query q = parse(query);
+        IndexSearcher s = acquireSearcher();
+        try {
+            s.search(q, collector);
+        } finally {
+            releaseSearcher(s);
+        }
+    }
+    
+    /**
+     * Searches the Lucene index using the given query String, returning
+     * the {@link #ID document ID numbers} of all matches. The IDs are read
+     * from numeric doc values of the ID field if present, and from the
+     * stored ID field otherwise.
+     * @param query the search query
+     * @return a bit set holding the IDs of all matching documents
+     * @throws ParseException if the query is not parsed successfully
+     * @throws IOException if an input/ouput error occurs
+     * @throws IllegalStateException if the searcher is in write mode
+     */
+    public BitSet searchIds(String query) throws IOException, ParseException {
+        IdCollector c = new IdCollector();
+        search(query, c);
+        return c.m_ids;
+    }
+    
+    /**
+     * Collects the document ID numbers of matching documents.
+     */
+    private static final class IdCollector extends Collector {
+        final BitSet m_ids = new BitSet();
+        private AtomicReader m_reader;
+        private NumericDocValues m_values;
+        
+        public void setScorer(Scorer scorer) {
+        }
+        public void setNextReader(AtomicReaderContext ctx) throws IOException {
+            m_reader = ctx.reader();
+            m_values = m_reader.getNumericDocValues(ID);
+        }
+        public void collect(int doc) throws IOException {
+            int id = ( m_values == null ? 0 : (int)m_values.get(doc) );
+            if ( id == 0 ) {
+                // no doc value, fall back to the stored field
+                String s = m_reader.document(doc).get(ID);
+                if ( s == null ) return;
+                id = Integer.parseInt(s);
+            }
+            m_ids.set(id);
+        }
+        public boolean acceptsDocsOutOfOrder() {
+            return true;
+        }
+    } // end of inner class IdCollector
+    
     /**
      * Searches the Lucene index using the given query String, returns an object
-     * which provides access to the search results.
+     * which provides access to the top 100 search results. To retrieve all
+     * results, use {@link #searchIds(String)} or
+     * {@link #search(String, Collector)}.
      * @param query the search query
      * @return the search Hits
      * @throws ParseException if the query is not parsed successfully
@@ -193,27 +441,19 @@ public class LuceneSearcher {
      * @throws IllegalStateException if the searcher is in write mode
      */
     public TopDocs search(String query) throws IOException, ParseException {
-        if ( m_readMode ) {
-            Query q;
-            if ( fields.length == 1 ) {
-            	QueryParser parser = new QueryParser(fields[0], analyzer);
-                q = parser.parse(query);
-            } else {
-            	MultiFieldQueryParser parser = new MultiFieldQueryParser(fields, analyzer);
-                q = parser.parse(query);
-            }
-            return searcher.search(q,100);
-        } else {
-            throw new IllegalStateException(
-                    "Searches can only be performed when " +
-                    "the LuceneSearcher is in read mode");
+        Query q = parse(query);
+        IndexSearcher s = acquireSearcher();
+        try {
+            return s.search(q,100);
+        } finally {
+            releaseSearcher(s);
         }
     }
     
     /**
      * Return the result count for the given search query. To allow quick
      * repeated look ups, the hit count is cached (this cache is cleared
-     * whenever a change to the search index occurs).
+     * whenever a change to the search index becomes visible).
      * @param query the search query
      * @return the number of matches to the query
      * @throws ParseException if the query is not parsed successfully
@@ -221,10 +461,23 @@ public class LuceneSearcher {
      * @throws IllegalStateException if the searcher is in write mode
      */
     public int numHits(String query) throws ParseException, IOException {
+        if ( isNearRealTime() ) {
+            // the cache is valid as long as the searcher is not reopened
+            IndexSearcher s = acquireSearcher();
+            try {
+                if ( s != m_hitCountSearcher ) {
+                    m_hitCountCache.clear();
+                    m_hitCountSearcher = s;
+                }
+            } finally {
+                releaseSearcher(s);
+            }
+        }
         Integer count;
         if ( (count=m_hitCountCache.get(query)) == null ) {
-            TopDocs hits = search(query);
-            count = new Integer(hits.totalHits);
+            TotalHitCountCollector c = new TotalHitCountCollector();
+            search(query, c);
+            count = Integer.valueOf(c.getTotalHits());
             m_hitCountCache.put(query, count);
         }
         return count.intValue();
@@ -233,19 +486,70 @@ public class LuceneSearcher {
     /**
      * Add a document to the Lucene search index.
      * @param d the Document to add
-     * @throws IllegalStateException if the searcher is not in write mode
+     * @throws IllegalStateException if the searcher is neither in write
+     * mode nor in near-real-time mode
      */
     public void addDocument(Document d) {
-        if ( !m_readMode ) {
-            try {
+        try {
+            if ( isNearRealTime() ) {
+                m_generation = m_tracking.addDocument(d);
+            } else {
+                checkWriteMode();
                 writer.addDocument(d);
                 m_hitCountCache.clear();
-            } catch (IOException e) {
-                e.printStackTrace();
             }
-        } else {
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Replace the documents containing the given term with a new document.
+     * @param term the term identifying the documents to replace, typically
+     * the {@link #ID} of the document
+     * @param d the new Document
+     * @throws IllegalStateException if the searcher is neither in write
+     * mode nor in near-real-time mode
+     */
+    public void updateDocument(Term term, Document d) {
+        try {
+            if ( isNearRealTime() ) {
+                m_generation = m_tracking.updateDocument(term, d);
+            } else {
+                checkWriteMode();
+                writer.updateDocument(term, d);
+                m_hitCountCache.clear();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Delete the documents containing the given term.
+     * @param term the term identifying the documents to delete, typically
+     * the {@link #ID} of the document
+     * @throws IllegalStateException if the searcher is neither in write
+     * mode nor in near-real-time mode
+     */
+    public void deleteDocuments(Term term) {
+        try {
+            if ( isNearRealTime() ) {
+                m_generation = m_tracking.deleteDocuments(term);
+            } else {
+                checkWriteMode();
+                writer.deleteDocuments(term);
+                m_hitCountCache.clear();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private void checkWriteMode() {
+        if ( m_readMode ) {
             throw new IllegalStateException(
-                    "Documents can not be added to the index unless" +
+                    "Documents can not be changed in the index unless" +
                     "the LuceneSearcher is not in read mode");
         }
     }
@@ -290,7 +594,8 @@ public class LuceneSearcher {
     
     /**
      * Returns the Lucene IndexReader. See Lucene documentation
-     * for more details.
+     * for more details. In near-real-time mode, the reader changes
+     * whenever the index is reopened and null is returned.
      * @return teturns the IndexReader.
      */
     public IndexReader getIndexReader() {
@@ -299,7 +604,8 @@ public class LuceneSearcher {
     
     /**
      * Returns the Lucene IndexSearcher. See Lucene documentation
-     * for more details.
+     * for more details. In near-real-time mode, the searcher changes
+     * whenever the index is reopened and null is returned.
      * @return returns the IndexSearcher.
      */
     public IndexSearcher getIndexSearcher() {
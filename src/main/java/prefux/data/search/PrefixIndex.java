@@ -0,0 +1,342 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import prefux.data.Tuple;
+
+
+/**
+ * A compact index for looking up words by their prefixes. Indexed Tuples
+ * are assigned small integer ids, and each distinct word maps to an
+ * int array holding the ids of the Tuples containing it. Once all words of
+ * a Tuple are removed, its id is released and reused for the next new
+ * Tuple, so that the id space stays as large as the number of indexed
+ * Tuples. For lookups the
+ * words are kept in a sorted array, so that all words sharing a prefix
+ * form one contiguous range of term indices that is found by binary
+ * search. A range found for a prefix also contains the ranges of all
+ * longer prefixes, which allows type-ahead searches to refine the results
+ * of the previous query rather than searching the whole index again.
+ * 
+ * <p>The sorted term array is rebuilt lazily, on the first lookup after
+ * words have been added to or removed from the index. This makes bulk
+ * indexing cheap, but interleaving single updates with lookups costly.</p>
+ *
+ * @see PrefixSearchTupleSet
+ */
+public class PrefixIndex {
+
+    /**
+     * The ids of the Tuples containing a word, in the order they were
+     * indexed. A Tuple containing a word more than once is listed once
+     * per occurrence.
+     */
+    private static final class Postings {
+        int[] ids = new int[2];
+        int size = 0;
+        
+        void add(int id) {
+            if ( size == ids.length )
+                ids = Arrays.copyOf(ids, size + (size>>1) + 1);
+            ids[size++] = id;
+        }
+        
+        boolean remove(int id) {
+            for ( int i=0; i<size; ++i ) {
+                if ( ids[i] == id ) {
+                    System.arraycopy(ids, i+1, ids, i, size-i-1);
+                    --size;
+                    return true;
+                }
+            }
+            return false;
+        }
+    } // end of inner class Postings
+    
+    private static final String[]   EMPTY_TERMS    = new String[0];
+    private static final Postings[] EMPTY_POSTINGS = new Postings[0];
+    
+    private final boolean m_caseSensitive;
+    
+    private HashMap<String,Postings> m_terms = new HashMap<>();
+    private String[]   m_sorted   = EMPTY_TERMS;
+    private Postings[] m_postings = EMPTY_POSTINGS;
+    private boolean    m_dirty    = false;
+    
+    private HashMap<Tuple,Integer> m_ids = new HashMap<>();
+    private Tuple[] m_tuples = new Tuple[16];
+    private int[]   m_refs   = new int[16]; // indexed words per Tuple id
+    private int     m_tupleCount = 0;
+    private int[]   m_free = new int[16];   // released ids
+    private int     m_freeCount = 0;
+    
+    private int m_version = 0;
+    
+    /**
+     * Create a new PrefixIndex with the specified case-sensitivity.
+     * @param caseSensitive true if the index should be case sensitive for
+     * indexed words, false otherwise.
+     */
+    public PrefixIndex(boolean caseSensitive) {
+        m_caseSensitive = caseSensitive;
+    }
+    
+    /**
+     * Indicates if this index takes the case of letters into account.
+     * @return true if the index is case-sensitive, false otherwise
+     */
+    public boolean isCaseSensitive() {
+        return m_caseSensitive;
+    }
+    
+    /**
+     * Returns the form of a word used by this index. For case-insensitive
+     * indices this is the word in lower case.
+     * @param word the word to normalize
+     * @return the normalized word
+     */
+    public String normalize(String word) {
+        if ( m_caseSensitive )
+            return word;
+        // lower case character by character, like the Trie did, and
+        // avoid allocating a new string if nothing changes
+        int len = word.length(), i = 0;
+        for ( ; i<len; ++i ) {
+            char c = word.charAt(i);
+            if ( Character.toLowerCase(c) != c ) break;
+        }
+        if ( i == len )
+            return word;
+        char[] chars = word.toCharArray();
+        for ( ; i<len; ++i )
+            chars[i] = Character.toLowerCase(chars[i]);
+        return new String(chars);
+    }
+    
+    /**
+     * Add a new word to the index, associated with the given Tuple.
+     * @param word the word to add to the index
+     * @param t the Tuple associated with the word
+     */
+    public void addString(String word, Tuple t) {
+        String term = normalize(word);
+        Postings p = m_terms.get(term);
+        if ( p == null ) {
+            p = new Postings();
+            m_terms.put(term, p);
+            m_dirty = true;
+        }
+        int id = assignId(t);
+        p.add(id);
+        ++m_refs[id];
+        ++m_version;
+    }
+    
+    /**
+     * Remove a word/Tuple pair from the index.
+     * @param word the word to remove
+     * @param t the associated Tuple to remove
+     * @return true if the pair was found and removed, false otherwise
+     */
+    public boolean removeString(String word, Tuple t) {
+        String term = normalize(word);
+        Postings p = m_terms.get(term);
+        Integer id = m_ids.get(t);
+        if ( p == null || id == null || !p.remove(id.intValue()) )
+            return false;
+        if ( p.size == 0 ) {
+            m_terms.remove(term);
+            m_dirty = true;
+        }
+        if ( --m_refs[id] == 0 )
+            releaseId(t, id);
+        ++m_version;
+        return true;
+    }
+    
+    /**
+     * Removes all words and Tuples from the index.
+     */
+    public void clear() {
+        m_terms.clear();
+        m_sorted = EMPTY_TERMS;
+        m_postings = EMPTY_POSTINGS;
+        m_dirty = false;
+        m_ids.clear();
+        Arrays.fill(m_tuples, 0, m_tupleCount, null);
+        Arrays.fill(m_refs, 0, m_tupleCount, 0);
+        m_tupleCount = 0;
+        m_freeCount = 0;
+        ++m_version;
+    }
+    
+    /**
+     * Returns the id of an indexed Tuple, assigning a new one if needed.
+     * Released ids are reused before new ones are taken.
+     */
+    private int assignId(Tuple t) {
+        Integer id = m_ids.get(t);
+        if ( id != null )
+            return id.intValue();
+        int i;
+        if ( m_freeCount > 0 ) {
+            i = m_free[--m_freeCount];
+        } else {
+            if ( m_tupleCount == m_tuples.length ) {
+                m_tuples = Arrays.copyOf(m_tuples, 2*m_tupleCount);
+                m_refs = Arrays.copyOf(m_refs, 2*m_tupleCount);
+            }
+            i = m_tupleCount++;
+        }
+        m_tuples[i] = t;
+        m_ids.put(t, i);
+        return i;
+    }
+    
+    /**
+     * Releases the id of a Tuple none of whose words are indexed anymore.
+     */
+    private void releaseId(Tuple t, int id) {
+        m_ids.remove(t);
+        m_tuples[id] = null;
+        if ( m_freeCount == m_free.length )
+            m_free = Arrays.copyOf(m_free, 2*m_freeCount);
+        m_free[m_freeCount++] = id;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Lookup
+    
+    /**
+     * Returns a counter that changes whenever words are added to or
+     * removed from the index. Term ranges found by
+     * {@link #lowerBound(String, int, int)} and
+     * {@link #upperBound(String, int, int)} are only valid as long as the
+     * version is unchanged.
+     */
+    int getVersion() {
+        return m_version;
+    }
+    
+    /**
+     * Returns the number of distinct words in the index, rebuilding the
+     * sorted term array if needed.
+     */
+    int getTermCount() {
+        if ( m_dirty ) {
+            String[] sorted = m_terms.keySet().toArray(new String[m_terms.size()]);
+            Arrays.sort(sorted);
+            Postings[] postings = new Postings[sorted.length];
+            for ( int i=0; i<sorted.length; ++i )
+                postings[i] = m_terms.get(sorted[i]);
+            m_sorted = sorted;
+            m_postings = postings;
+            m_dirty = false;
+        }
+        return m_sorted.length;
+    }
+    
+    /**
+     * Returns the index of the first term in [lo,hi) that is not less than
+     * the given normalized prefix.
+     */
+    int lowerBound(String prefix, int lo, int hi) {
+        String[] terms = m_sorted;
+        while ( lo < hi ) {
+            int mid = (lo + hi) >>> 1;
+            if ( terms[mid].compareTo(prefix) < 0 )
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+    
+    /**
+     * Returns the end of the range of terms starting with the given
+     * normalized prefix, given that the range starts at lo.
+     */
+    int upperBound(String prefix, int lo, int hi) {
+        String[] terms = m_sorted;
+        while ( lo < hi ) {
+            int mid = (lo + hi) >>> 1;
+            if ( terms[mid].startsWith(prefix) )
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+    
+    /**
+     * Returns the Tuple ids of the term with the given index. Only the
+     * first {@link #getPostingsSize(int)} entries are valid.
+     */
+    int[] getPostings(int term) {
+        return m_postings[term].ids;
+    }
+    
+    /**
+     * Returns the number of Tuple ids of the term with the given index.
+     */
+    int getPostingsSize(int term) {
+        return m_postings[term].size;
+    }
+    
+    /**
+     * Returns the Tuple with the given id, or null if the id is not in use.
+     */
+    Tuple getTuple(int id) {
+        return m_tuples[id];
+    }
+    
+    /**
+     * Returns the current id of an indexed Tuple.
+     * @return the id, or -1 if none of the Tuple's words are indexed
+     */
+    int getId(Tuple t) {
+        Integer id = m_ids.get(t);
+        return ( id == null ? -1 : id.intValue() );
+    }
+    
+    /**
+     * Returns an upper bound of the ids returned by
+     * {@link #getPostings(int)}. Ids are reused, so the bound only grows
+     * with the largest number of Tuples indexed at the same time.
+     */
+    int getTupleIdCount() {
+        return m_tupleCount;
+    }
+    
+} // end of class PrefixIndex
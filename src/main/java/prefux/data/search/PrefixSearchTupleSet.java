@@ -30,7 +30,8 @@
  */
 package prefux.data.search;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.StringTokenizer;
 
 import prefux.data.Tuple;
@@ -39,7 +40,7 @@ import prefux.data.Tuple;
 /**
  * <p>
  * SearchTupleSet implementation supporting word prefix searches over indexed
- * Tuple data fields. This class uses a {@link Trie Trie} data structure
+ * Tuple data fields. This class uses a {@link PrefixIndex PrefixIndex}
  * to find search results quickly; however, only prefix matches will be
  * identified as valid search matches. Multi-term search queries will result
  * in the union of the results for the individual query terms. That is, Tuples
@@ -47,6 +48,14 @@ import prefux.data.Tuple;
  * </p>
  * 
  * <p>
+ * Searches are incremental: if a query term extends the corresponding term
+ * of the previous query, as when typing ahead, only the matches of the
+ * previous term are searched again. Listeners are notified of the Tuples
+ * that entered and left the results, rather than of a complete exchange
+ * of the result set.
+ * </p>
+ * 
+ * <p>
  * For more advanced search capabilities, see 
  * {@link KeywordSearchTupleSet} or {@link RegexSearchTupleSet}.
  * </p>
@@ -57,11 +66,25 @@ import prefux.data.Tuple;
  */
 public class PrefixSearchTupleSet extends SearchTupleSet {
     
-    private Trie m_trie;
-    private Trie.TrieNode m_curNode;
+    private PrefixIndex m_index;
     private String m_delim = " \t\n\r";
     private String m_query = "";
     
+    // state of the last search, used to refine the next one
+    private String[] m_terms = new String[0]; // normalized query terms
+    private int[] m_ranges = new int[0];      // term index range per term
+    private int m_version = -1;               // index version of the ranges
+    
+    // index ids of the current results; ids matched by the search with
+    // the current epoch are stamped with it, 0 is never a search epoch.
+    // The index reuses the ids of removed Tuples, so a stamp only counts
+    // for the Tuple it was given to.
+    private int[]   m_hits = new int[16];
+    private int     m_hitCount = 0;
+    private int[]   m_stamps = new int[16];
+    private Tuple[] m_owners = new Tuple[16];
+    private int     m_epoch = 1;
+    
     /**
      * Creates a new KeywordSearchFocusSet that is not case sensitive.
      */
@@ -75,7 +98,7 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
      * sensitive, false otherwise.
      */
     public PrefixSearchTupleSet(boolean caseSensitive) {
-        m_trie = new Trie(caseSensitive);
+        m_index = new PrefixIndex(caseSensitive);
     }
     
     /**
@@ -126,27 +149,112 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
         if ( query.equals(m_query) )
             return;
         
-        Tuple[] rem = clearInternal();    
         m_query = query;
-        StringTokenizer st = new StringTokenizer(m_query, m_delim);
-        if ( !st.hasMoreTokens() )
+        String[] terms = tokenize(query);
+        if ( terms.length == 0 )
             m_query = "";
-        while ( st.hasMoreTokens() )
-            prefixSearch(st.nextToken());
-        Tuple[] add = getTupleCount() > 0 ? toArray() : null;
-        fireTupleEvent(add, rem);
+        
+        // find the term range of each query term, narrowing the range of
+        // the previous query where the new term extends the old one
+        int count = m_index.getTermCount();
+        boolean refine = ( m_index.getVersion() == m_version );
+        int[] ranges = new int[2*terms.length];
+        for ( int i=0; i<terms.length; ++i ) {
+            int lo = 0, hi = count;
+            if ( refine && i < m_terms.length
+                 && terms[i].startsWith(m_terms[i]) )
+            {
+                lo = m_ranges[2*i];
+                hi = m_ranges[2*i+1];
+            }
+            lo = m_index.lowerBound(terms[i], lo, hi);
+            ranges[2*i]   = lo;
+            ranges[2*i+1] = m_index.upperBound(terms[i], lo, hi);
+        }
+        m_terms = terms;
+        m_ranges = ranges;
+        m_version = m_index.getVersion();
+        
+        // stamp the new hits, collecting those that were no hits before
+        int prev = m_epoch, cur = ++m_epoch;
+        int ids = m_index.getTupleIdCount();
+        if ( m_stamps.length < ids ) {
+            int n = Math.max(ids, 2*m_stamps.length);
+            m_stamps = Arrays.copyOf(m_stamps, n);
+            m_owners = Arrays.copyOf(m_owners, n);
+        }
+        int[] stamps = m_stamps;
+        Tuple[] owners = m_owners;
+        int[] oldHits = m_hits;
+        int oldCount = m_hitCount;
+        Tuple[] oldTuples = new Tuple[oldCount];
+        for ( int i=0; i<oldCount; ++i )
+            oldTuples[i] = owners[oldHits[i]];
+        int[] hits = new int[Math.max(16, oldCount)];
+        int hitCount = 0;
+        ArrayList<Tuple> add = new ArrayList<>();
+        for ( int i=0; i<ranges.length; i += 2 ) {
+            for ( int term=ranges[i]; term<ranges[i+1]; ++term ) {
+                int[] postings = m_index.getPostings(term);
+                int size = m_index.getPostingsSize(term);
+                for ( int j=0; j<size; ++j ) {
+                    int id = postings[j];
+                    int stamp = stamps[id];
+                    if ( stamp == cur )
+                        continue;
+                    Tuple t = m_index.getTuple(id);
+                    stamps[id] = cur;
+                    if ( hitCount == hits.length )
+                        hits = Arrays.copyOf(hits, 2*hitCount);
+                    hits[hitCount++] = id;
+                    // a Tuple that was a hit under another id is already
+                    // in the results
+                    if ( (stamp != prev || owners[id] != t)
+                         && addInternal(t) != null )
+                    {
+                        add.add(t);
+                    }
+                    owners[id] = t;
+                }
+            }
+        }
+        m_hits = hits;
+        m_hitCount = hitCount;
+        
+        // old hits that were not stamped again left the results
+        ArrayList<Tuple> rem = new ArrayList<>();
+        for ( int i=0; i<oldCount; ++i ) {
+            Tuple t = oldTuples[i];
+            int id = oldHits[i];
+            if ( stamps[id] == cur && owners[id] == t )
+                continue;
+            // the Tuple may have been indexed again under a new id
+            id = m_index.getId(t);
+            if ( id >= 0 && id < ids && stamps[id] == cur && owners[id] == t )
+                continue;
+            if ( removeInternal(t) )
+                rem.add(t);
+        }
+        if ( add.size() > 0 || rem.size() > 0 ) {
+            fireTupleEvent(add.size() > 0 ? add.toArray(new Tuple[add.size()]) : null,
+                           rem.size() > 0 ? rem.toArray(new Tuple[rem.size()]) : null);
+        }
     }
-
+    
     /**
-     * Issues a prefix search and collects the results
+     * Splits a query into normalized terms at the delimiter characters.
      */
-    private void prefixSearch(String query) {
-        m_curNode = m_trie.find(query);
-        if ( m_curNode != null ) {
-            Iterator iter = trieIterator();
-            while ( iter.hasNext() )
-                addInternal((Tuple)iter.next());
+    private String[] tokenize(String query) {
+        ArrayList<String> terms = new ArrayList<>();
+        int len = query.length();
+        for ( int i=0; i<len; ) {
+            for ( ; i<len && m_delim.indexOf(query.charAt(i)) >= 0; ++i );
+            int start = i;
+            for ( ; i<len && m_delim.indexOf(query.charAt(i)) < 0; ++i );
+            if ( i > start )
+                terms.add(m_index.normalize(query.substring(start, i)));
         }
+        return terms.toArray(new String[terms.size()]);
     }
     
     /**
@@ -164,7 +272,7 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
     }
     
     private void addString(String s, Tuple t) {
-        m_trie.addString(s,t);
+        m_index.addString(s,t);
     }
     
     /**
@@ -193,16 +301,19 @@ public class PrefixSearchTupleSet extends SearchTupleSet {
      * @see prefux.data.tuple.TupleSet#clear()
      */
     public void clear() {
-        m_trie = new Trie(m_trie.isCaseSensitive());
+        m_index.clear();
+        m_terms = new String[0];
+        m_ranges = new int[0];
+        m_version = -1;
+        m_hitCount = 0;
+        Arrays.fill(m_stamps, 0);
+        Arrays.fill(m_owners, null);
+        m_epoch = 1;
         super.clear();
     }
     
     private void removeString(String s, Tuple t) {
-        m_trie.removeString(s,t);
-    }
-    
-    private Iterator trieIterator() {
-        return m_trie.new TrieIterator(m_curNode);
+        m_index.removeString(s,t);
     }
     
 }  // end of class PrefixSearchTupleSet
@@ -30,14 +30,17 @@
  */
 package prefux.data.search;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import prefux.data.Tuple;
-import prefux.data.tuple.DefaultTupleSet;
-import prefux.data.tuple.TupleSet;
 import prefux.util.StringLib;
 
 /**
@@ -49,14 +52,27 @@ import prefux.util.StringLib;
  * refer to the documentation for that class for more about the regular
  * expression syntax.
  * 
+ * <p>The indexed values are kept in a {@link TrigramIndex}. Before matching,
+ * the literal strings that every match of the query must contain are
+ * extracted from the regular expression, and only values containing all
+ * of their trigrams are matched against the full expression. Both steps
+ * run in parallel for large indices. Values are read when a field is
+ * indexed; to pick up a changed value, index the field again.</p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  * @see prefux.data.query.SearchQueryBinding
  */
 public class RegexSearchTupleSet extends SearchTupleSet {
     
+    /** The minimum number of values matched by one parallel task */
+    public static final int PARALLEL_GRAIN = 1024;
+    
     private String m_query = "";
     private boolean m_caseSensitive;
-    private LinkedHashMap m_source = new LinkedHashMap();
+    private TrigramIndex m_index = new TrigramIndex();
+    private LinkedHashMap<String,HashMap<Tuple,Integer>> m_source
+        = new LinkedHashMap<>();
+    private Tuple[] m_tuples = new Tuple[16]; // tuple of each index entry
     
     /**
      * Create a new, case-insensitive regular expression search tuple set.
@@ -104,45 +120,255 @@ public class RegexSearchTupleSet extends SearchTupleSet {
         
         Tuple[] rem = clearInternal();    
         m_query = query;
-        Iterator fields = m_source.keySet().iterator();
-        while ( fields.hasNext() ) {
-            String field = (String)fields.next();
-            TupleSet ts = (TupleSet)m_source.get(field);
-            
-            Iterator tuples = ts.tuples();
-            while ( tuples.hasNext() ) {
-                Tuple t = (Tuple)tuples.next();
-                String text = t.getString(field);
-                if ( !m_caseSensitive )
-                    text = text.toLowerCase();
-                
-                if ( pattern.matcher(text).matches() )
-                    addInternal(t);
-            }
+        
+        // prefilter the index entries by the required literals
+        int[] ids = m_index.candidates(requiredLiterals(query));
+        int count = ( ids == null ? m_index.getIdCount() : ids.length );
+        
+        // match the candidates against the full expression
+        boolean[] match = new boolean[count];
+        MatchTask task = new MatchTask(pattern, ids, match, 0, count);
+        if ( count < PARALLEL_GRAIN )
+            task.compute();
+        else
+            ForkJoinPool.commonPool().invoke(task);
+        
+        for ( int i=0; i<count; ++i ) {
+            if ( match[i] )
+                addInternal(m_tuples[ids == null ? i : ids[i]]);
         }
         Tuple[] add = getTupleCount() > 0 ? toArray() : null;
         fireTupleEvent(add, rem);
     }
+    
+    /**
+     * Matches a range of candidate index entries, splitting it in halves
+     * down to {@link RegexSearchTupleSet#PARALLEL_GRAIN} entries.
+     */
+    private final class MatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final Pattern m_pattern;
+        private final int[] m_ids;
+        private final boolean[] m_match;
+        private final int m_start, m_end;
+        
+        MatchTask(Pattern pattern, int[] ids, boolean[] match,
+                  int start, int end)
+        {
+            m_pattern = pattern;
+            m_ids = ids;
+            m_match = match;
+            m_start = start;
+            m_end = end;
+        }
+        
+        protected void compute() {
+            if ( m_end - m_start > PARALLEL_GRAIN ) {
+                int mid = (m_start + m_end) >>> 1;
+                invokeAll(
+                    new MatchTask(m_pattern, m_ids, m_match, m_start, mid),
+                    new MatchTask(m_pattern, m_ids, m_match, mid, m_end));
+                return;
+            }
+            Matcher m = null;
+            for ( int i=m_start; i<m_end; ++i ) {
+                String text = m_index.getText(m_ids == null ? i : m_ids[i]);
+                if ( text == null )
+                    continue;
+                m = ( m == null ? m_pattern.matcher(text) : m.reset(text) );
+                m_match[i] = m.matches();
+            }
+        }
+    } // end of inner class MatchTask
+    
+    /**
+     * Extracts literal strings of at least three characters that any
+     * string matching the whole regular expression must contain. The
+     * analysis is conservative: groups, character classes and escapes
+     * other than quoted punctuation end a literal, and expressions using
+     * top-level alternation, inline flags or escapes it does not know
+     * yield no literals at all.
+     */
+    static String[] requiredLiterals(String regex) {
+        ArrayList<String> lits = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        boolean inRun = false; // last atom is the last character of run
+        int len = regex.length();
+        for ( int i=0; i<len; ) {
+            char c = regex.charAt(i);
+            switch ( c ) {
+            case '\\':
+                if ( i+1 == len )
+                    return new String[0];
+                char e = regex.charAt(i+1);
+                i += 2;
+                if ( !Character.isLetterOrDigit(e) ) {
+                    run.append(e);
+                    inRun = true;
+                } else if ( "dDsSwWbBAzZGtnrfaehHvVRX".indexOf(e) >= 0 ) {
+                    flush(run, lits);
+                    inRun = false;
+                } else {
+                    return new String[0];
+                }
+                break;
+            case '*':
+            case '?':
+            case '+':
+            case '{':
+                boolean optional = ( c != '+' );
+                if ( c == '{' ) {
+                    int end = regex.indexOf('}', i);
+                    if ( end < 0 )
+                        return new String[0];
+                    optional = regex.startsWith("{0", i)
+                        && !Character.isDigit(regex.charAt(i+2));
+                    i = end + 1;
+                } else {
+                    ++i;
+                }
+                if ( i < len && (regex.charAt(i)=='?' || regex.charAt(i)=='+') )
+                    ++i; // reluctant or possessive quantifier
+                if ( optional && inRun ) {
+                    int n = run.length();
+                    boolean pair = n > 1
+                        && Character.isLowSurrogate(run.charAt(n-1))
+                        && Character.isHighSurrogate(run.charAt(n-2));
+                    run.setLength(n - (pair ? 2 : 1));
+                }
+                flush(run, lits);
+                inRun = false;
+                break;
+            case '[':
+            case '(':
+                if ( c == '(' && regex.startsWith("(?", i) && i+2 < len
+                     && (Character.isLetter(regex.charAt(i+2))
+                         || regex.charAt(i+2) == '-') )
+                    return new String[0]; // inline flags
+                int end = ( c == '[' ? skipClass(regex, i)
+                                     : skipGroup(regex, i) );
+                if ( end < 0 )
+                    return new String[0];
+                i = end;
+                flush(run, lits);
+                inRun = false;
+                break;
+            case '|':
+            case ')':
+                return new String[0];
+            case '.':
+            case '^':
+            case '$':
+                ++i;
+                flush(run, lits);
+                inRun = false;
+                break;
+            default:
+                ++i;
+                run.append(c);
+                inRun = true;
+            }
+        }
+        flush(run, lits);
+        return lits.toArray(new String[lits.size()]);
+    }
+    
+    private static void flush(StringBuilder run, ArrayList<String> lits) {
+        if ( run.length() >= 3 )
+            lits.add(run.toString());
+        run.setLength(0);
+    }
+    
+    /**
+     * Returns the index after the group starting at the given index, or -1
+     * if it is not closed.
+     */
+    private static int skipGroup(String regex, int i) {
+        int depth = 0;
+        for ( int len = regex.length(); i<len; ++i ) {
+            char c = regex.charAt(i);
+            if ( c == '\\' ) {
+                ++i;
+            } else if ( c == '[' ) {
+                i = skipClass(regex, i) - 1;
+                if ( i < 0 ) return -1;
+            } else if ( c == '(' ) {
+                ++depth;
+            } else if ( c == ')' && --depth == 0 ) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the index after the character class starting at the given
+     * index, or -1 if it is not closed.
+     */
+    private static int skipClass(String regex, int i) {
+        int depth = 0;
+        for ( int len = regex.length(); i<len; ++i ) {
+            char c = regex.charAt(i);
+            if ( c == '\\' ) {
+                ++i;
+            } else if ( c == '[' ) {
+                ++depth;
+                // a bracket right after the opening one is a literal
+                if ( i+1 < len && regex.charAt(i+1) == '^' )
+                    ++i;
+                if ( i+1 < len && regex.charAt(i+1) == ']' )
+                    ++i;
+            } else if ( c == ']' && --depth == 0 ) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
 
     /**
      * @see prefux.data.search.SearchTupleSet#index(prefux.data.Tuple, java.lang.String)
      */
     public void index(Tuple t, String field) {
-        TupleSet ts = (TupleSet)m_source.get(field);
-        if ( ts == null ) {
-            ts = new DefaultTupleSet();
-            m_source.put(field, ts);
+        HashMap<Tuple,Integer> entries = m_source.get(field);
+        if ( entries == null ) {
+            entries = new HashMap<>();
+            m_source.put(field, entries);
+        }
+        String text = t.getString(field);
+        if ( text != null && !m_caseSensitive )
+            text = text.toLowerCase();
+        
+        Integer id = entries.get(t);
+        if ( id != null ) {
+            if ( text == null ) {
+                m_index.remove(id);
+                m_tuples[id] = null;
+                entries.remove(t);
+            } else if ( !text.equals(m_index.getText(id)) ) {
+                m_index.set(id, text); // changed value, keep the id
+            }
+            return;
         }
-        ts.addTuple(t);
+        if ( text == null )
+            return;
+        
+        int nid = m_index.add(text);
+        if ( nid >= m_tuples.length )
+            m_tuples = Arrays.copyOf(m_tuples, Math.max(nid+1, 2*m_tuples.length));
+        m_tuples[nid] = t;
+        entries.put(t, nid);
     }
 
     /**
      * @see prefux.data.search.SearchTupleSet#unindex(prefux.data.Tuple, java.lang.String)
      */
     public void unindex(Tuple t, String field) {
-        TupleSet ts = (TupleSet)m_source.get(field);
-        if ( ts != null ) {
-            ts.removeTuple(t);
+        HashMap<Tuple,Integer> entries = m_source.get(field);
+        Integer id = ( entries == null ? null : entries.remove(t) );
+        if ( id != null ) {
+            m_index.remove(id);
+            m_tuples[id] = null;
         }
     }
 
@@ -160,6 +386,8 @@ public class RegexSearchTupleSet extends SearchTupleSet {
      */
     public void clear() {
         m_source.clear();
+        m_index.clear();
+        m_tuples = new Tuple[16];
         super.clear();
     }
 
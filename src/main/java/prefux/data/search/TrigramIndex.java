@@ -0,0 +1,335 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.search;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import prefux.util.collections.LongIntHashMap;
+
+
+/**
+ * An inverted index of the character trigrams of a collection of texts.
+ * Each added text is assigned an integer id, and each trigram maps to the
+ * ascending array of the ids of the texts containing it. Any text that
+ * contains a given string of three or more characters must contain all of
+ * its trigrams, so intersecting the trigram lists of the strings a search
+ * requires quickly narrows the texts that have to be examined.
+ * 
+ * <p>The ids of removed texts are reused by later texts, and a text can be
+ * replaced under its id, so that the id space stays as large as the
+ * number of texts in the index. Trigrams that no longer occur in any text
+ * are dropped, and id arrays shrink as texts are removed. The index may
+ * be searched from multiple threads, but must not be modified during a
+ * search.</p>
+ *
+ * @see RegexSearchTupleSet
+ */
+public class TrigramIndex {
+
+    /** The minimum number of ids checked by one parallel task */
+    public static final int PARALLEL_GRAIN = 4096;
+    
+    private LongIntHashMap m_grams = new LongIntHashMap();
+    private int[][] m_postings = new int[64][];
+    private int[]   m_sizes = new int[64];
+    private int     m_gramCount = 0;
+    private int[]   m_freeSlots = new int[16];
+    private int     m_freeSlotCount = 0;
+    
+    private String[] m_texts = new String[16];
+    private int      m_count = 0;
+    private int[]    m_freeIds = new int[16];
+    private int      m_freeIdCount = 0;
+    
+    /**
+     * Returns the key of the trigram starting at the given position.
+     */
+    private static long gram(String s, int i) {
+        return ((long)s.charAt(i) << 32) | ((long)s.charAt(i+1) << 16)
+             | s.charAt(i+2);
+    }
+    
+    /**
+     * Add a text to the index.
+     * @param text the text to add
+     * @return the id assigned to the text, the id of a previously removed
+     *  text if there is one
+     */
+    public int add(String text) {
+        int id;
+        if ( m_freeIdCount > 0 ) {
+            id = m_freeIds[--m_freeIdCount];
+        } else {
+            if ( m_count == m_texts.length )
+                m_texts = Arrays.copyOf(m_texts, 2*m_count);
+            id = m_count++;
+        }
+        insert(id, text);
+        return id;
+    }
+    
+    /**
+     * Replace the text with the given id, keeping its id.
+     * @param id the id of the text to replace
+     * @param text the new text
+     */
+    public void set(int id, String text) {
+        if ( m_texts[id] == null )
+            throw new IllegalArgumentException("No text with id " + id);
+        delete(id);
+        insert(id, text);
+    }
+    
+    /**
+     * Adds the trigrams of a text under the given id.
+     */
+    private void insert(int id, String text) {
+        m_texts[id] = text;
+        for ( int i=0; i+3<=text.length(); ++i ) {
+            long g = gram(text, i);
+            int slot = m_grams.get(g);
+            if ( slot == LongIntHashMap.NO_VALUE ) {
+                slot = newSlot();
+                m_grams.put(g, slot);
+            }
+            int size = m_sizes[slot];
+            int[] ids = m_postings[slot];
+            // new ids go to the end, reused ids are inserted in order
+            int idx = ( size == 0 || ids[size-1] < id ? size
+                        : Arrays.binarySearch(ids, 0, size, id) );
+            if ( idx < 0 ) {
+                idx = -idx-1;
+            } else if ( idx < size ) {
+                continue; // trigram occurs more than once in the text
+            }
+            if ( size == ids.length )
+                ids = m_postings[slot] = Arrays.copyOf(ids, size + (size>>1) + 1);
+            System.arraycopy(ids, idx, ids, idx+1, size-idx);
+            ids[idx] = id;
+            m_sizes[slot] = size + 1;
+        }
+    }
+    
+    private int newSlot() {
+        int slot;
+        if ( m_freeSlotCount > 0 ) {
+            slot = m_freeSlots[--m_freeSlotCount];
+        } else {
+            if ( m_gramCount == m_postings.length ) {
+                m_postings = Arrays.copyOf(m_postings, 2*m_gramCount);
+                m_sizes = Arrays.copyOf(m_sizes, 2*m_gramCount);
+            }
+            slot = m_gramCount++;
+        }
+        m_postings[slot] = new int[2];
+        return slot;
+    }
+    
+    /**
+     * Remove a text from the index. Its id is reused by later texts.
+     * @param id the id of the text to remove
+     */
+    public void remove(int id) {
+        if ( m_texts[id] == null ) return;
+        delete(id);
+        if ( m_freeIdCount == m_freeIds.length )
+            m_freeIds = Arrays.copyOf(m_freeIds, 2*m_freeIdCount);
+        m_freeIds[m_freeIdCount++] = id;
+    }
+    
+    /**
+     * Removes the trigrams of the text with the given id, dropping
+     * trigrams that no longer occur in any text.
+     */
+    private void delete(int id) {
+        String text = m_texts[id];
+        m_texts[id] = null;
+        for ( int i=0; i+3<=text.length(); ++i ) {
+            long g = gram(text, i);
+            int slot = m_grams.get(g);
+            if ( slot == LongIntHashMap.NO_VALUE )
+                continue; // trigram occurred more than once in the text
+            int size = m_sizes[slot];
+            int[] ids = m_postings[slot];
+            int idx = Arrays.binarySearch(ids, 0, size, id);
+            if ( idx < 0 )
+                continue; // trigram occurs more than once in the text
+            if ( --size == 0 ) {
+                m_grams.remove(g);
+                freeSlot(slot);
+                continue;
+            }
+            System.arraycopy(ids, idx+1, ids, idx, size-idx);
+            m_sizes[slot] = size;
+            if ( size < ids.length/4 )
+                m_postings[slot] = Arrays.copyOf(ids, 2*size);
+        }
+    }
+    
+    private void freeSlot(int slot) {
+        m_postings[slot] = null;
+        m_sizes[slot] = 0;
+        if ( m_freeSlotCount == m_freeSlots.length )
+            m_freeSlots = Arrays.copyOf(m_freeSlots, 2*m_freeSlotCount);
+        m_freeSlots[m_freeSlotCount++] = slot;
+    }
+    
+    /**
+     * Removes all texts from the index.
+     */
+    public void clear() {
+        m_grams.clear();
+        m_postings = new int[64][];
+        m_sizes = new int[64];
+        m_gramCount = 0;
+        m_freeSlotCount = 0;
+        m_texts = new String[16];
+        m_count = 0;
+        m_freeIdCount = 0;
+    }
+    
+    /**
+     * Returns the text with the given id.
+     * @param id the text id
+     * @return the text, or null if the text has been removed
+     */
+    public String getText(int id) {
+        return m_texts[id];
+    }
+    
+    /**
+     * Returns an upper bound of the text ids. Removed ids no longer refer
+     * to a text until they are reused, so the bound only grows with the
+     * largest number of texts held at the same time.
+     * @return the upper bound of the text ids
+     */
+    public int getIdCount() {
+        return m_count;
+    }
+    
+    /**
+     * Returns the ids of the texts that contain all trigrams of the given
+     * strings. Strings shorter than three characters impose no
+     * constraints. Large id lists are intersected in parallel.
+     * @param required the strings all returned texts must contain
+     * @return the ascending array of candidate ids, or null if the strings
+     *  impose no constraints, in which case all texts are candidates
+     */
+    public int[] candidates(String[] required) {
+        // collect the distinct trigram lists, smallest first
+        int[] slots = new int[0];
+        for ( String s : required ) {
+            for ( int i=0; i+3<=s.length(); ++i ) {
+                int slot = m_grams.get(gram(s, i));
+                if ( slot == LongIntHashMap.NO_VALUE || m_sizes[slot] == 0 )
+                    return new int[0];
+                boolean dup = false;
+                for ( int k=0; k<slots.length && !dup; ++k )
+                    dup = ( slots[k] == slot );
+                if ( !dup ) {
+                    slots = Arrays.copyOf(slots, slots.length+1);
+                    slots[slots.length-1] = slot;
+                }
+            }
+        }
+        if ( slots.length == 0 )
+            return null;
+        for ( int k=1; k<slots.length; ++k ) {
+            int slot = slots[k], j = k;
+            for ( ; j>0 && m_sizes[slots[j-1]] > m_sizes[slot]; --j )
+                slots[j] = slots[j-1];
+            slots[j] = slot;
+        }
+        
+        int[] first = m_postings[slots[0]];
+        int size = m_sizes[slots[0]];
+        if ( slots.length == 1 )
+            return Arrays.copyOf(first, size);
+        
+        // keep the ids of the smallest list contained in all others
+        boolean[] keep = new boolean[size];
+        IntersectTask task = new IntersectTask(slots, keep, 0, size);
+        if ( size < PARALLEL_GRAIN )
+            task.compute();
+        else
+            ForkJoinPool.commonPool().invoke(task);
+        
+        int n = 0;
+        for ( int i=0; i<size; ++i )
+            if ( keep[i] ) ++n;
+        int[] ids = new int[n];
+        for ( int i=0, j=0; i<size; ++i )
+            if ( keep[i] ) ids[j++] = first[i];
+        return ids;
+    }
+    
+    /**
+     * Checks a range of the smallest trigram list against all other lists,
+     * splitting it in halves down to {@link TrigramIndex#PARALLEL_GRAIN}
+     * ids.
+     */
+    private final class IntersectTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final int[] m_slots;
+        private final boolean[] m_keep;
+        private final int m_start, m_end;
+        
+        IntersectTask(int[] slots, boolean[] keep, int start, int end) {
+            m_slots = slots;
+            m_keep = keep;
+            m_start = start;
+            m_end = end;
+        }
+        
+        protected void compute() {
+            if ( m_end - m_start > PARALLEL_GRAIN ) {
+                int mid = (m_start + m_end) >>> 1;
+                invokeAll(new IntersectTask(m_slots, m_keep, m_start, mid),
+                          new IntersectTask(m_slots, m_keep, mid, m_end));
+                return;
+            }
+            int[] first = m_postings[m_slots[0]];
+            for ( int i=m_start; i<m_end; ++i ) {
+                int id = first[i];
+                boolean all = true;
+                for ( int k=1; k<m_slots.length && all; ++k ) {
+                    all = Arrays.binarySearch(m_postings[m_slots[k]], 0,
+                              m_sizes[m_slots[k]], id) >= 0;
+                }
+                m_keep[i] = all;
+            }
+        }
+    } // end of inner class IntersectTask
+    
+} // end of class TrigramIndex
@@ -0,0 +1,252 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.util;
+
+import java.util.Arrays;
+
+import prefux.data.Graph;
+import prefux.data.Table;
+import prefux.data.Tree;
+import prefux.util.collections.IntArrayIterator;
+import prefux.util.collections.IntIterator;
+
+/**
+ * <p>Precomputed cluster hierarchy over the nodes of a graph. Every node
+ * forms a cluster together with all of its descendants, so a collapsed
+ * node can stand in for its whole subtree.</p>
+ * 
+ * <p>For {@link Tree} instances the tree structure is used directly. For
+ * other graphs a spanning forest is computed with a breadth first search
+ * over the out-links, starting at all nodes without in-links. Nodes that
+ * are only reachable through cycles become additional roots. This fits
+ * subclass hierarchies of ontologies, which usually have several roots and
+ * classes with more than one parent.</p>
+ * 
+ * <p>The hierarchy is stored in primitive arrays indexed by node row and is
+ * not updated when the graph changes. Create a new instance after
+ * structural changes.</p>
+ */
+public class ClusterHierarchy {
+
+    private final int[] m_parent;
+    private final int[] m_depth;
+    private final int[] m_size;
+    private final int[] m_childStart;
+    private final int[] m_children;
+    private final int[] m_roots;
+    
+    /**
+     * Create a new ClusterHierarchy over the nodes of the given graph.
+     * @param g the graph to compute the hierarchy for
+     */
+    public ClusterHierarchy(Graph g) {
+        Table nodes = g.getNodeTable();
+        int n = nodes.getMaximumRow()+1;
+        m_parent = new int[n];
+        m_depth = new int[n];
+        m_size = new int[n];
+        m_childStart = new int[n+1];
+        Arrays.fill(m_parent, -1);
+        Arrays.fill(m_depth, -1);
+        
+        // breadth first order of all nodes, the queue doubles as the order
+        int[] order = new int[n];
+        int head = 0, tail = 0, nroots = 0;
+        int[] roots = new int[n];
+        
+        if ( g instanceof Tree ) {
+            int root = ((Tree)g).getRootRow();
+            if ( root >= 0 ) {
+                m_depth[root] = 0;
+                order[tail++] = root;
+                roots[nroots++] = root;
+            }
+        } else {
+            for ( IntIterator rows = g.nodeRows(); rows.hasNext(); ) {
+                int r = rows.nextInt();
+                if ( g.isDirected() && g.getInDegree(r)==0 ) {
+                    m_depth[r] = 0;
+                    order[tail++] = r;
+                    roots[nroots++] = r;
+                }
+            }
+        }
+        
+        IntIterator rows = g.nodeRows();
+        while ( true ) {
+            for ( ; head < tail; ++head ) {
+                int p = order[head];
+                IntIterator edges = g.isDirected()
+                    ? g.outEdgeRows(p) : g.edgeRows(p);
+                while ( edges.hasNext() ) {
+                    int c = g.getAdjacentNode(edges.nextInt(), p);
+                    if ( c >= 0 && m_depth[c] < 0 ) {
+                        m_depth[c] = m_depth[p]+1;
+                        m_parent[c] = p;
+                        order[tail++] = c;
+                    }
+                }
+            }
+            // start a new root at the next unreached node, if any
+            int r = -1;
+            while ( rows.hasNext() ) {
+                int next = rows.nextInt();
+                if ( m_depth[next] < 0 ) { r = next; break; }
+            }
+            if ( r < 0 ) break;
+            m_depth[r] = 0;
+            order[tail++] = r;
+            roots[nroots++] = r;
+        }
+        m_roots = new int[nroots];
+        System.arraycopy(roots, 0, m_roots, 0, nroots);
+        
+        // children are stored contiguously per parent in breadth first order
+        for ( int i=0; i<tail; ++i ) {
+            int p = m_parent[order[i]];
+            if ( p >= 0 ) m_childStart[p+1]++;
+        }
+        for ( int i=0; i<n; ++i )
+            m_childStart[i+1] += m_childStart[i];
+        m_children = new int[m_childStart[n]];
+        int[] fill = new int[n];
+        for ( int i=0; i<tail; ++i ) {
+            int c = order[i], p = m_parent[c];
+            if ( p >= 0 ) m_children[m_childStart[p] + fill[p]++] = c;
+        }
+        
+        // subtree sizes, accumulated in reverse breadth first order
+        for ( int i=tail; --i >= 0; ) {
+            int c = order[i];
+            m_size[c] += 1;
+            if ( m_parent[c] >= 0 ) m_size[m_parent[c]] += m_size[c];
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Get the root nodes of the hierarchy.
+     * @return a copy of the array of root node rows
+     */
+    public int[] getRoots() {
+        return m_roots.clone();
+    }
+    
+    /**
+     * Get the number of root nodes of the hierarchy.
+     * @return the number of roots
+     */
+    public int getRootCount() {
+        return m_roots.length;
+    }
+    
+    /**
+     * Get the root node at the given index.
+     * @param idx the index of the root
+     * @return the node row of the root
+     */
+    public int getRoot(int idx) {
+        return m_roots[idx];
+    }
+    
+    /**
+     * Get the parent of a node within the hierarchy.
+     * @param node the node row
+     * @return the parent node row, or -1 for roots and invalid rows
+     */
+    public int getParent(int node) {
+        return ( node < 0 || node >= m_parent.length ? -1 : m_parent[node] );
+    }
+    
+    /**
+     * Get the depth of a node within the hierarchy. Roots have depth 0.
+     * @param node the node row
+     * @return the depth of the node, or -1 for invalid rows
+     */
+    public int getDepth(int node) {
+        return ( node < 0 || node >= m_depth.length ? -1 : m_depth[node] );
+    }
+    
+    /**
+     * Get the size of the cluster rooted at the given node, that is the
+     * number of nodes in its subtree including the node itself.
+     * @param node the node row
+     * @return the cluster size, or 0 for invalid rows
+     */
+    public int getClusterSize(int node) {
+        return ( node < 0 || node >= m_size.length ? 0 : m_size[node] );
+    }
+    
+    /**
+     * Get the number of child clusters of the given node.
+     * @param node the node row
+     * @return the number of children
+     */
+    public int getChildCount(int node) {
+        return m_childStart[node+1] - m_childStart[node];
+    }
+    
+    /**
+     * Get the child at the given index.
+     * @param node the parent node row
+     * @param idx the index of the child
+     * @return the node row of the child
+     */
+    public int getChildRow(int node, int idx) {
+        return m_children[m_childStart[node]+idx];
+    }
+    
+    /**
+     * Get an iterator over the children of the given node.
+     * @param node the parent node row
+     * @return an iterator over the child node rows
+     */
+    public IntIterator childRows(int node) {
+        return new IntArrayIterator(m_children, m_childStart[node],
+                                    getChildCount(node));
+    }
+    
+    /**
+     * Indicates if a node is a (non-strict) ancestor of another node.
+     * @param a the potential ancestor
+     * @param node the node to check
+     * @return true if <code>a</code> lies on the path from
+     * <code>node</code> to its root
+     */
+    public boolean isAncestor(int a, int node) {
+        int da = getDepth(a), dn = getDepth(node);
+        if ( da < 0 || dn < da ) return false;
+        for ( ; dn > da; --dn ) node = m_parent[node];
+        return node == a;
+    }
+    
+} // end of class ClusterHierarchy
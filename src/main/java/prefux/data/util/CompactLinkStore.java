@@ -0,0 +1,439 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import prefux.util.collections.IntIterator;
+
+/**
+ * <p>Compact storage for the adjacency lists of a graph, used by
+ * {@link prefux.data.Graph} instances created with compact links enabled.
+ * Instead of one int array object per node and direction, the links are
+ * kept in a {@link CompressedAdjacency}, which holds all in-links and all
+ * out-links in a single int array each.</p>
+ * 
+ * <p>Links removed from a node are removed from its slot in place. Links
+ * added to a node go to a small overflow array, which only exists for the
+ * nodes that gained links since the last compaction. When the overflow
+ * links and the slot space left by removed links outgrow the links in the
+ * slots, the store is compacted into a new {@link CompressedAdjacency}.
+ * Link order is preserved throughout, as {@link prefux.data.Tree} relies on
+ * it for the child order.</p>
+ */
+public class CompactLinkStore {
+
+    /** Minimum amount of overflow and garbage before compacting */
+    private static final int MIN_GARBAGE = 1024;
+    
+    private final LinkList m_out = new LinkList();
+    private final LinkList m_in  = new LinkList();
+    
+    /**
+     * Create a new, empty CompactLinkStore.
+     * @param nodes the initial node capacity
+     */
+    public CompactLinkStore(int nodes) {
+        int[] offsets = new int[1];
+        setBase(new CompressedAdjacency(offsets, new int[0],
+                                        offsets, new int[0]),
+                Math.max(nodes, 10));
+    }
+    
+    /**
+     * Create a new CompactLinkStore initialized from a CSR snapshot. The
+     * edge arrays of the snapshot are copied, as removed links are taken
+     * out of them in place.
+     * @param links the adjacency lists to start with
+     */
+    public CompactLinkStore(CompressedAdjacency links) {
+        setBase(new CompressedAdjacency(
+                    links.getOutOffsets(), links.getOutEdges().clone(),
+                    links.getInOffsets(),  links.getInEdges().clone()),
+                links.getNodeCount());
+    }
+    
+    /**
+     * Use the given adjacency lists as the slots of the store, dropping
+     * all overflow links.
+     */
+    private void setBase(CompressedAdjacency base, int nodes) {
+        nodes = Math.max(nodes, base.getNodeCount());
+        m_out.init(base.getOutOffsets(), base.getOutEdges(), nodes);
+        m_in.init(base.getInOffsets(), base.getInEdges(), nodes);
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Get the out-degree of a node.
+     * @param node the node row
+     * @return the number of out-links
+     */
+    public int getOutDegree(int node) {
+        return m_out.getDegree(node);
+    }
+    
+    /**
+     * Get the in-degree of a node.
+     * @param node the node row
+     * @return the number of in-links
+     */
+    public int getInDegree(int node) {
+        return m_in.getDegree(node);
+    }
+    
+    /**
+     * Get an out-linking edge row by position.
+     * @param node the node row
+     * @param idx the position in the node's out-link list
+     * @return the edge row
+     */
+    public int getOutLink(int node, int idx) {
+        return m_out.get(node, idx);
+    }
+    
+    /**
+     * Get an in-linking edge row by position.
+     * @param node the node row
+     * @param idx the position in the node's in-link list
+     * @return the edge row
+     */
+    public int getInLink(int node, int idx) {
+        return m_in.get(node, idx);
+    }
+    
+    /**
+     * Get an iterator over the out-linking edge rows of a node.
+     * @param node the node row
+     * @return an iterator over edge rows
+     */
+    public IntIterator outLinks(int node) {
+        return new LinkIterator(m_out, node);
+    }
+    
+    /**
+     * Get an iterator over the in-linking edge rows of a node.
+     * @param node the node row
+     * @return an iterator over edge rows
+     */
+    public IntIterator inLinks(int node) {
+        return new LinkIterator(m_in, node);
+    }
+    
+    /**
+     * Copy the out-linking edge rows of a node into a new array.
+     * @param node the node row
+     * @return an array of length equal to the out-degree
+     */
+    public int[] copyOutLinks(int node) {
+        return m_out.copy(node);
+    }
+    
+    /**
+     * Copy the in-linking edge rows of a node into a new array.
+     * @param node the node row
+     * @return an array of length equal to the in-degree
+     */
+    public int[] copyInLinks(int node) {
+        return m_in.copy(node);
+    }
+    
+    /**
+     * Add a link.
+     * @param s the source node row
+     * @param t the target node row
+     * @param e the edge row
+     */
+    public void addLink(int s, int t, int e) {
+        ensureCapacity(Math.max(s, t)+1);
+        m_out.add(s, e);
+        m_in.add(t, e);
+        checkGarbage();
+    }
+    
+    /**
+     * Remove a link.
+     * @param s the source node row
+     * @param t the target node row
+     * @param e the edge row
+     * @return true if the link was found and removed
+     */
+    public boolean removeLink(int s, int t, int e) {
+        boolean out = m_out.remove(s, e);
+        boolean in  = m_in.remove(t, e);
+        checkGarbage();
+        return out && in;
+    }
+    
+    /**
+     * Make sure the store can hold the given number of node rows.
+     * @param nodes the required node capacity
+     */
+    public void ensureCapacity(int nodes) {
+        m_out.ensureCapacity(nodes);
+        m_in.ensureCapacity(nodes);
+    }
+    
+    /**
+     * Drop all links of a node row, used when the node is removed.
+     * @param node the node row
+     */
+    public void clearNode(int node) {
+        m_out.clear(node);
+        m_in.clear(node);
+        checkGarbage();
+    }
+    
+    /**
+     * Remove all links.
+     */
+    public void clear() {
+        int nodes = m_out.m_len.length;
+        int[] offsets = new int[1];
+        setBase(new CompressedAdjacency(offsets, new int[0],
+                                        offsets, new int[0]), nodes);
+    }
+    
+    /**
+     * Rewrite the store into a tight CSR layout, emptying the overflow
+     * arrays.
+     */
+    public void compact() {
+        int nodes = m_out.m_len.length;
+        setBase(toCompressedAdjacency(nodes), nodes);
+    }
+    
+    /**
+     * Get the number of links added since the last compaction, which are
+     * held in overflow arrays.
+     * @return the number of overflow links
+     */
+    public int getOverflowCount() {
+        return m_out.m_extraCount + m_in.m_extraCount;
+    }
+    
+    /**
+     * Get a CSR snapshot of the current adjacency lists. The snapshot does
+     * not share any arrays with the store.
+     * @param nodes the number of node rows to include
+     * @return the adjacency lists in compressed sparse row form
+     */
+    public CompressedAdjacency toCompressedAdjacency(int nodes) {
+        int[][] out = m_out.toCSR(nodes);
+        int[][] in  = m_in.toCSR(nodes);
+        return new CompressedAdjacency(out[0], out[1], in[0], in[1]);
+    }
+    
+    private void checkGarbage() {
+        int garbage = m_out.getGarbage() + m_in.getGarbage();
+        if ( garbage > MIN_GARBAGE &&
+             garbage > m_out.getSlotLinks() + m_in.getSlotLinks() )
+        {
+            compact();
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * The link lists of one direction: the slots of the CSR arrays of the
+     * last compaction, followed by the overflow array of each node.
+     */
+    private static final class LinkList {
+        
+        // CSR arrays of the last compaction, and the live links per slot
+        int[] m_offsets, m_edges;
+        int m_slotNodes;
+        int[] m_len;
+        int m_removed;
+        
+        // links added since the last compaction
+        int[][] m_extra;
+        int[] m_extraLen;
+        int m_extraCount;
+        
+        void init(int[] offsets, int[] edges, int nodes) {
+            m_offsets = offsets;
+            m_edges = edges;
+            m_slotNodes = offsets.length-1;
+            m_len = new int[nodes];
+            for ( int n=0; n<m_slotNodes; ++n )
+                m_len[n] = offsets[n+1]-offsets[n];
+            m_removed = 0;
+            m_extra = new int[nodes][];
+            m_extraLen = new int[nodes];
+            m_extraCount = 0;
+        }
+        
+        void ensureCapacity(int nodes) {
+            if ( nodes <= m_len.length ) return;
+            int capacity = Math.max(3*m_len.length/2 + 1, nodes);
+            m_len      = Arrays.copyOf(m_len, capacity);
+            m_extra    = Arrays.copyOf(m_extra, capacity);
+            m_extraLen = Arrays.copyOf(m_extraLen, capacity);
+        }
+        
+        int getSlotLinks() {
+            return m_offsets[m_slotNodes] - m_removed;
+        }
+        
+        int getGarbage() {
+            return m_removed + m_extraCount;
+        }
+        
+        int getDegree(int n) {
+            return n < m_len.length ? m_len[n] + m_extraLen[n] : 0;
+        }
+        
+        int get(int n, int idx) {
+            int len = m_len[n];
+            return idx < len ? m_edges[m_offsets[n]+idx]
+                             : m_extra[n][idx-len];
+        }
+        
+        int[] copy(int n) {
+            int[] a = new int[getDegree(n)];
+            if ( a.length == 0 ) return a;
+            int len = m_len[n];
+            if ( len > 0 )
+                System.arraycopy(m_edges, m_offsets[n], a, 0, len);
+            if ( m_extraLen[n] > 0 )
+                System.arraycopy(m_extra[n], 0, a, len, m_extraLen[n]);
+            return a;
+        }
+        
+        void add(int n, int e) {
+            int[] a = m_extra[n];
+            int len = m_extraLen[n];
+            if ( a == null ) {
+                a = m_extra[n] = new int[4];
+            } else if ( len == a.length ) {
+                a = m_extra[n] = Arrays.copyOf(a, 2*len);
+            }
+            a[len] = e;
+            m_extraLen[n] = len+1;
+            m_extraCount++;
+        }
+        
+        boolean remove(int n, int e) {
+            if ( n >= m_len.length ) return false;
+            int len = m_len[n];
+            if ( len > 0 ) {
+                int start = m_offsets[n];
+                for ( int i=0; i<len; ++i ) {
+                    if ( m_edges[start+i] == e ) {
+                        System.arraycopy(m_edges, start+i+1, 
+                                         m_edges, start+i, len-i-1);
+                        m_len[n] = len-1;
+                        m_removed++;
+                        return true;
+                    }
+                }
+            }
+            int[] a = m_extra[n];
+            len = m_extraLen[n];
+            for ( int i=0; i<len; ++i ) {
+                if ( a[i] == e ) {
+                    System.arraycopy(a, i+1, a, i, len-i-1);
+                    if ( (m_extraLen[n] = len-1) == 0 )
+                        m_extra[n] = null;
+                    m_extraCount--;
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        void clear(int n) {
+            if ( n >= m_len.length ) return;
+            m_removed += m_len[n];
+            m_extraCount -= m_extraLen[n];
+            m_len[n] = m_extraLen[n] = 0;
+            m_extra[n] = null;
+        }
+        
+        int[][] toCSR(int nodes) {
+            int[] offsets = new int[nodes+1];
+            for ( int n=0; n<nodes; ++n )
+                offsets[n+1] = offsets[n] + getDegree(n);
+            int[] edges = new int[offsets[nodes]];
+            for ( int n=0; n<nodes && n<m_len.length; ++n ) {
+                int pos = offsets[n], len = m_len[n];
+                if ( len > 0 )
+                    System.arraycopy(m_edges, m_offsets[n], edges, pos, len);
+                if ( m_extraLen[n] > 0 )
+                    System.arraycopy(m_extra[n], 0, edges, pos+len,
+                                     m_extraLen[n]);
+            }
+            return new int[][] { offsets, edges };
+        }
+    }
+    
+    /**
+     * Iterator over the links of a single node, first the slot, then the
+     * overflow array.
+     */
+    private static final class LinkIterator extends IntIterator {
+        private final int[] m_edges, m_extra;
+        private int m_cur, m_end, m_ext, m_extEnd;
+        
+        LinkIterator(LinkList list, int n) {
+            m_edges = list.m_edges;
+            if ( n < list.m_len.length ) {
+                m_cur = list.m_len[n] > 0 ? list.m_offsets[n] : 0;
+                m_end = m_cur + list.m_len[n];
+                m_extra = list.m_extra[n];
+                m_extEnd = list.m_extraLen[n];
+            } else {
+                m_extra = null;
+            }
+        }
+        
+        public boolean hasNext() {
+            return m_cur < m_end || m_ext < m_extEnd;
+        }
+        
+        public int nextInt() {
+            if ( m_cur < m_end )
+                return m_edges[m_cur++];
+            if ( m_ext >= m_extEnd )
+                throw new NoSuchElementException();
+            return m_extra[m_ext++];
+        }
+        
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+} // end of class CompactLinkStore
@@ -0,0 +1,213 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.util;
+
+import java.util.Arrays;
+
+import prefux.data.Graph;
+import prefux.util.collections.IntIterator;
+
+/**
+ * <p>Adjacency structure of a graph stored in compressed sparse row (CSR)
+ * form. For every node row <code>n</code> the out-linking edge rows are
+ * stored in <code>outEdges[outOffsets[n] .. outOffsets[n+1]-1]</code>, the
+ * in-linking edge rows likewise in the in-link arrays. Adjacency lists keep
+ * the order used by the graph they were taken from.</p>
+ * 
+ * <p>Instances are immutable snapshots. They are used to persist and
+ * restore the link structure of a {@link Graph} without re-deriving it
+ * from the edge table, see
+ * {@link Graph#Graph(prefux.data.Table, prefux.data.Table, boolean, String, String, String, CompressedAdjacency)}.</p>
+ */
+public class CompressedAdjacency {
+
+    private final int   m_nodeCount;
+    private final int[] m_outOffsets;
+    private final int[] m_outEdges;
+    private final int[] m_inOffsets;
+    private final int[] m_inEdges;
+    
+    /**
+     * Create a new CompressedAdjacency from existing CSR arrays. The arrays
+     * are used directly and not copied.
+     * @param outOffsets the out-link offsets, one entry per node plus a
+     * trailing entry holding the total number of out-links
+     * @param outEdges the out-linking edge rows
+     * @param inOffsets the in-link offsets, one entry per node plus a
+     * trailing entry holding the total number of in-links
+     * @param inEdges the in-linking edge rows
+     */
+    public CompressedAdjacency(int[] outOffsets, int[] outEdges,
+                               int[] inOffsets, int[] inEdges)
+    {
+        if ( outOffsets.length == 0 || outOffsets.length != inOffsets.length ) {
+            throw new IllegalArgumentException(
+                "Offset arrays must have the same, non-zero length.");
+        }
+        m_nodeCount  = outOffsets.length-1;
+        m_outOffsets = outOffsets;
+        m_outEdges   = outEdges;
+        m_inOffsets  = inOffsets;
+        m_inEdges    = inEdges;
+        if ( outOffsets[m_nodeCount] > outEdges.length ||
+             inOffsets[m_nodeCount] > inEdges.length )
+        {
+            throw new IllegalArgumentException(
+                "Edge arrays are shorter than the offsets indicate.");
+        }
+    }
+    
+    /**
+     * Take a snapshot of the adjacency lists of the given graph. Node rows
+     * are used as indices, so rows that are currently not in use get empty
+     * adjacency lists.
+     * @param g the graph
+     * @return the CSR representation of the graph's link structure
+     */
+    public static CompressedAdjacency fromGraph(Graph g) {
+        int nodes = g.getNodeTable().getMaximumRow()+1;
+        int[] outOffsets = new int[nodes+1];
+        int[] inOffsets  = new int[nodes+1];
+        for ( int n=0; n<nodes; ++n ) {
+            boolean valid = g.getNodeTable().isValidRow(n);
+            outOffsets[n+1] = outOffsets[n] + (valid ? g.getOutDegree(n) : 0);
+            inOffsets[n+1]  = inOffsets[n]  + (valid ? g.getInDegree(n)  : 0);
+        }
+        int[] outEdges = new int[outOffsets[nodes]];
+        int[] inEdges  = new int[inOffsets[nodes]];
+        for ( int n=0; n<nodes; ++n ) {
+            if ( !g.getNodeTable().isValidRow(n) ) continue;
+            int i = outOffsets[n];
+            for ( IntIterator it = g.outEdgeRows(n); it.hasNext(); )
+                outEdges[i++] = it.nextInt();
+            i = inOffsets[n];
+            for ( IntIterator it = g.inEdgeRows(n); it.hasNext(); )
+                inEdges[i++] = it.nextInt();
+        }
+        return new CompressedAdjacency(outOffsets, outEdges,
+                                       inOffsets, inEdges);
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Get the number of node rows covered by this structure.
+     * @return the number of node rows
+     */
+    public int getNodeCount() {
+        return m_nodeCount;
+    }
+    
+    /**
+     * Get the total number of links, which equals the number of edges.
+     * @return the number of links
+     */
+    public int getLinkCount() {
+        return m_outOffsets[m_nodeCount];
+    }
+    
+    /**
+     * Get the out-degree of a node.
+     * @param node the node row
+     * @return the number of edges with the node as source
+     */
+    public int getOutDegree(int node) {
+        return m_outOffsets[node+1] - m_outOffsets[node];
+    }
+    
+    /**
+     * Get the in-degree of a node.
+     * @param node the node row
+     * @return the number of edges with the node as target
+     */
+    public int getInDegree(int node) {
+        return m_inOffsets[node+1] - m_inOffsets[node];
+    }
+    
+    /**
+     * Get a copy of the out-linking edge rows of a node.
+     * @param node the node row
+     * @return a new array of edge rows, or null if the node has no
+     * out-links
+     */
+    public int[] copyOutLinks(int node) {
+        int start = m_outOffsets[node], end = m_outOffsets[node+1];
+        return start==end ? null : Arrays.copyOfRange(m_outEdges, start, end);
+    }
+    
+    /**
+     * Get a copy of the in-linking edge rows of a node.
+     * @param node the node row
+     * @return a new array of edge rows, or null if the node has no
+     * in-links
+     */
+    public int[] copyInLinks(int node) {
+        int start = m_inOffsets[node], end = m_inOffsets[node+1];
+        return start==end ? null : Arrays.copyOfRange(m_inEdges, start, end);
+    }
+    
+    /**
+     * Get the out-link offset array. The array is not copied and must
+     * not be modified.
+     * @return the out-link offsets
+     */
+    public int[] getOutOffsets() {
+        return m_outOffsets;
+    }
+    
+    /**
+     * Get the out-linking edge row array. The array is not copied and must
+     * not be modified.
+     * @return the out-linking edge rows
+     */
+    public int[] getOutEdges() {
+        return m_outEdges;
+    }
+    
+    /**
+     * Get the in-link offset array. The array is not copied and must
+     * not be modified.
+     * @return the in-link offsets
+     */
+    public int[] getInOffsets() {
+        return m_inOffsets;
+    }
+    
+    /**
+     * Get the in-linking edge row array. The array is not copied and must
+     * not be modified.
+     * @return the in-linking edge rows
+     */
+    public int[] getInEdges() {
+        return m_inEdges;
+    }
+    
+} // end of class CompressedAdjacency
@@ -34,6 +34,7 @@ import java.util.Comparator;
 
 import prefux.data.Table;
 import prefux.data.column.Column;
+import prefux.data.column.ExpressionColumn;
 import prefux.data.event.ColumnListener;
 import prefux.data.event.EventConstants;
 import prefux.data.event.TableListener;
@@ -105,6 +106,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#size()
      */
     public int size() {
+        ensureIndex();
         return m_index.size();
     }
     
@@ -115,6 +117,15 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
         return m_colidx;
     }
     
+    /**
+     * Rebuild the index if a range of the column changed since the index
+     * was last updated. Range events do not carry the previous values, so
+     * the affected entries cannot be re-keyed one by one.
+     */
+    private void ensureIndex() {
+        if ( m_reindex ) index();
+    }
+    
     // ------------------------------------------------------------------------
     // Index Update Methods
 
@@ -129,6 +140,10 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
         m_colidx = idx;
         IntIterator rows = m_rows.rows();
         
+        // evaluate derived values in one sweep rather than row by row
+        if ( m_col instanceof ExpressionColumn )
+            ((ExpressionColumn)m_col).materialize();
+        
         if ( m_index instanceof IntIntSortedMap )
         {
             IntIntSortedMap map = (IntIntSortedMap)m_index;
@@ -267,6 +282,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.event.ColumnListener#columnChanged(prefux.data.column.Column, int, int, int)
      */
     public void columnChanged(Column src, int type, int start, int end) {
+        // rebuilt on the next lookup, see ensureIndex()
         m_reindex = true;
     }    
     
@@ -337,6 +353,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#minimum()
      */
     public int minimum() {
+        ensureIndex();
         return m_index.getMinimum();
     }
     
@@ -344,6 +361,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#maximum()
      */
     public int maximum() {
+        ensureIndex();
         return m_index.getMaximum();
     }
     
@@ -351,6 +369,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#median()
      */
     public int median() {
+        ensureIndex();
         return m_index.getMedian();
     }
     
@@ -358,6 +377,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#uniqueCount()
      */
     public int uniqueCount() {
+        ensureIndex();
         return m_index.getUniqueCount();
     }
     
@@ -367,6 +387,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#allRows(int)
      */
     public IntIterator allRows(int type) {
+        ensureIndex();
         boolean ascending = (type & Index.TYPE_ASCENDING) > 0;
         return m_index.valueIterator(ascending);
     }
@@ -375,6 +396,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#rows(java.lang.Object, java.lang.Object, int)
      */
     public IntIterator rows(Object lo, Object hi, int type) {
+        ensureIndex();
         if ( !(m_index instanceof ObjectIntSortedMap) )
             throw new IllegalStateException();
 
@@ -397,6 +419,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#rows(int, int, int)
      */
     public IntIterator rows(int lo, int hi, int type) {
+        ensureIndex();
         if ( !(m_index instanceof IntIntSortedMap) )
             throw new IllegalStateException();
 
@@ -416,6 +439,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#rows(long, long, int)
      */
     public IntIterator rows(long lo, long hi, int type) {
+        ensureIndex();
         if ( !(m_index instanceof LongIntSortedMap) )
             throw new IllegalStateException();
         
@@ -435,6 +459,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#rows(float, float, int)
      */
     public IntIterator rows(float lo, float hi, int type) {
+        ensureIndex();
         if ( !(m_index instanceof FloatIntSortedMap) )
             throw new IllegalStateException();
         
@@ -454,6 +479,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#rows(double, double, int)
      */
     public IntIterator rows(double lo, double hi, int type) {
+        ensureIndex();
         if ( !(m_index instanceof DoubleIntSortedMap) )
             throw new IllegalStateException();
         
@@ -503,6 +529,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#rows(boolean)
      */
     public IntIterator rows(boolean val) {
+        ensureIndex();
         if ( !(m_index instanceof BooleanIntSortedMap) )
             throw new IllegalStateException();
         
@@ -523,6 +550,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#get(double)
      */
     public int get(double x) {
+        ensureIndex();
         DoubleIntSortedMap index = (DoubleIntSortedMap)m_index;
         return index.get(x);
     }
@@ -531,6 +559,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#get(float)
      */
     public int get(float x) {
+        ensureIndex();
         FloatIntSortedMap index = (FloatIntSortedMap)m_index;
         return index.get(x);
     }
@@ -539,6 +568,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#get(int)
      */
     public int get(int x) {
+        ensureIndex();
         IntIntSortedMap index = (IntIntSortedMap)m_index;
         return index.get(x);
     }
@@ -547,6 +577,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#get(long)
      */
     public int get(long x) {
+        ensureIndex();
         LongIntSortedMap index = (LongIntSortedMap)m_index;
         return index.get(x);
     }
@@ -555,6 +586,7 @@ public class TreeIndex implements Index, ColumnListener, TableListener {
      * @see prefux.data.util.Index#get(java.lang.Object)
      */
     public int get(Object x) {
+        ensureIndex();
         ObjectIntSortedMap index = (ObjectIntSortedMap)m_index;
         return index.get(x);
     }
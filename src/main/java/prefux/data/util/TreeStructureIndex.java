@@ -0,0 +1,355 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.data.util;
+
+import java.util.Arrays;
+
+import prefux.data.Tree;
+
+/**
+ * <p>Structural index over a {@link prefux.data.Tree}, answering depth,
+ * ancestor and lowest common ancestor queries without walking parent
+ * pointers. For every node reachable from the root the index keeps the
+ * depth, pre- and post-order numbers and a binary lifting table, where
+ * entry <code>k</code> of a node is its ancestor <code>2^k</code> levels
+ * up.</p>
+ * 
+ * <p>The index is fed by the tree as child edges come and go. Adding a
+ * leaf below an indexed node and removing a leaf are handled in place in
+ * O(log depth); an added leaf only marks the pre/post-order numbering as
+ * stale, as the numbering of the remaining nodes stays valid when a leaf
+ * is removed. Any other structural change, such as re-rooting or moving
+ * a whole subtree, invalidates the index, which is then rebuilt by a
+ * single traversal on the next query.</p>
+ * 
+ * <p>Nodes that are not connected to the root are not indexed, and the
+ * query methods return -1 (or false) for them.</p>
+ */
+public class TreeStructureIndex {
+
+    private final Tree m_tree;
+    
+    private int[]   m_depth = new int[0];
+    private int[]   m_pre   = new int[0];
+    private int[]   m_post  = new int[0];
+    private int[][] m_up    = new int[0][];
+    private int m_maxDepth;
+    private int m_root = -1;
+    
+    private boolean m_valid;
+    private boolean m_orderValid;
+    
+    /**
+     * Create a new TreeStructureIndex for the given tree. The index is
+     * built lazily on the first query.
+     * @param tree the tree to index
+     */
+    public TreeStructureIndex(Tree tree) {
+        m_tree = tree;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Maintenance
+    
+    /**
+     * Invalidate the index, so that it is rebuilt on the next query.
+     */
+    public void invalidate() {
+        m_valid = false;
+        m_orderValid = false;
+    }
+    
+    /**
+     * Notify the index that a child edge was added to the tree. Should be
+     * called after the adjacency lists have been updated.
+     * @param parent the parent node row
+     * @param child the child node row
+     */
+    public void childAdded(int parent, int child) {
+        if ( !m_valid ) return;
+        if ( m_tree.getRootRow() != m_root || !isIndexed(parent)
+             || isIndexed(child) || m_tree.getChildCount(child) > 0 )
+        {
+            invalidate();
+            return;
+        }
+        ensureCapacity(child+1);
+        int d = m_depth[parent] + 1;
+        m_depth[child] = d;
+        if ( d > m_maxDepth ) {
+            m_maxDepth = d;
+            ensureLevels();
+        }
+        m_up[0][child] = parent;
+        for ( int k=1; k<m_up.length; ++k ) {
+            int a = m_up[k-1][child];
+            m_up[k][child] = ( a < 0 ? -1 : m_up[k-1][a] );
+        }
+        m_orderValid = false;
+    }
+    
+    /**
+     * Notify the index that a child edge was removed from the tree.
+     * @param parent the former parent node row
+     * @param child the former child node row
+     */
+    public void childRemoved(int parent, int child) {
+        if ( !m_valid ) return;
+        if ( !isIndexed(child) || m_tree.getChildCount(child) > 0 ) {
+            invalidate();
+            return;
+        }
+        // a removed leaf leaves the numbering of all other nodes intact
+        m_depth[child] = -1;
+        m_pre[child] = m_post[child] = -1;
+        for ( int k=0; k<m_up.length; ++k )
+            m_up[k][child] = -1;
+    }
+    
+    /**
+     * Rebuild the whole index with a traversal from the root.
+     */
+    public void rebuild() {
+        m_root = m_tree.getRootRow();
+        int n = m_tree.getNodeTable().getMaximumRow() + 1;
+        m_depth = new int[n];
+        m_pre   = new int[n];
+        m_post  = new int[n];
+        Arrays.fill(m_depth, -1);
+        Arrays.fill(m_pre, -1);
+        Arrays.fill(m_post, -1);
+        m_up = new int[1][n];
+        Arrays.fill(m_up[0], -1);
+        m_maxDepth = 0;
+        
+        if ( m_root >= 0 && m_root < n ) {
+            // iterative depth-first traversal, children in child order
+            int[] stack = new int[16];
+            int[] next  = new int[16];
+            int top = 0, pre = 0, post = 0;
+            stack[0] = m_root;
+            next[0] = 0;
+            m_depth[m_root] = 0;
+            m_pre[m_root] = pre++;
+            while ( top >= 0 ) {
+                int node = stack[top];
+                int idx = next[top];
+                if ( idx < m_tree.getChildCount(node) ) {
+                    next[top] = idx + 1;
+                    int c = m_tree.getChildRow(node, idx);
+                    if ( c < 0 || c >= n || m_depth[c] >= 0 ) continue;
+                    int d = top + 1;
+                    m_depth[c] = d;
+                    m_pre[c] = pre++;
+                    m_up[0][c] = node;
+                    if ( d > m_maxDepth ) m_maxDepth = d;
+                    if ( ++top == stack.length ) {
+                        stack = Arrays.copyOf(stack, 2*top);
+                        next  = Arrays.copyOf(next, 2*top);
+                    }
+                    stack[top] = c;
+                    next[top] = 0;
+                } else {
+                    m_post[node] = post++;
+                    --top;
+                }
+            }
+        }
+        ensureLevels();
+        m_valid = true;
+        m_orderValid = true;
+    }
+    
+    /**
+     * Rebuild the index if it has been invalidated.
+     */
+    private void validate() {
+        if ( !m_valid || m_tree.getRootRow() != m_root )
+            rebuild();
+    }
+    
+    /**
+     * Rebuild the index if the pre/post-order numbering is stale.
+     */
+    private void validateOrder() {
+        validate();
+        if ( !m_orderValid )
+            rebuild();
+    }
+    
+    private boolean isIndexed(int node) {
+        return node >= 0 && node < m_depth.length && m_depth[node] >= 0;
+    }
+    
+    private void ensureCapacity(int n) {
+        if ( n <= m_depth.length ) return;
+        int cap = Math.max(n, 2*m_depth.length);
+        int old = m_depth.length;
+        m_depth = grow(m_depth, old, cap);
+        m_pre   = grow(m_pre, old, cap);
+        m_post  = grow(m_post, old, cap);
+        for ( int k=0; k<m_up.length; ++k )
+            m_up[k] = grow(m_up[k], old, cap);
+    }
+    
+    private static int[] grow(int[] a, int old, int cap) {
+        int[] b = Arrays.copyOf(a, cap);
+        Arrays.fill(b, old, cap, -1);
+        return b;
+    }
+    
+    /**
+     * Add lifting levels until the table covers the maximum depth.
+     */
+    private void ensureLevels() {
+        int levels = m_up.length;
+        while ( (1L << levels) <= m_maxDepth ) {
+            int[] prev = m_up[levels-1];
+            int[] level = new int[prev.length];
+            for ( int i=0; i<level.length; ++i ) {
+                int a = prev[i];
+                level[i] = ( a < 0 ? -1 : prev[a] );
+            }
+            m_up = Arrays.copyOf(m_up, levels+1);
+            m_up[levels++] = level;
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    // Queries
+    
+    /**
+     * Get the depth of a node below the root.
+     * @param node the node row
+     * @return the depth of the node, 0 for the root, or -1 if the node
+     * is not connected to the root
+     */
+    public int getDepth(int node) {
+        validate();
+        return isIndexed(node) ? m_depth[node] : -1;
+    }
+    
+    /**
+     * Get the pre-order number of a node.
+     * @param node the node row
+     * @return the position of the node in a pre-order traversal from the
+     * root, or -1 if the node is not connected to the root
+     */
+    public int getPreOrder(int node) {
+        validateOrder();
+        return isIndexed(node) ? m_pre[node] : -1;
+    }
+    
+    /**
+     * Get the post-order number of a node.
+     * @param node the node row
+     * @return the position of the node in a post-order traversal from the
+     * root, or -1 if the node is not connected to the root
+     */
+    public int getPostOrder(int node) {
+        validateOrder();
+        return isIndexed(node) ? m_post[node] : -1;
+    }
+    
+    /**
+     * Get the ancestor of a node the given number of levels up.
+     * @param node the node row
+     * @param levels the number of levels to go up, 0 returns the node
+     * @return the ancestor row, or -1 if there is no such ancestor
+     */
+    public int getAncestor(int node, int levels) {
+        validate();
+        if ( !isIndexed(node) || levels < 0 || levels > m_depth[node] )
+            return -1;
+        for ( int k=0; levels != 0; ++k, levels >>>= 1 ) {
+            if ( (levels & 1) != 0 ) node = m_up[k][node];
+        }
+        return node;
+    }
+    
+    /**
+     * Indicates if a node is an ancestor of another. A node counts as its
+     * own ancestor. Runs in constant time while the pre/post-order
+     * numbering is current and in logarithmic time after leaves have been
+     * added.
+     * @param ancestor the candidate ancestor row
+     * @param node the node row
+     * @return true if <code>ancestor</code> lies on the path from the
+     * root to <code>node</code>
+     */
+    public boolean isAncestor(int ancestor, int node) {
+        validate();
+        if ( !isIndexed(ancestor) || !isIndexed(node) )
+            return false;
+        if ( m_orderValid ) {
+            return m_pre[ancestor] <= m_pre[node]
+                && m_post[node] <= m_post[ancestor];
+        }
+        int diff = m_depth[node] - m_depth[ancestor];
+        return diff >= 0 && getAncestor(node, diff) == ancestor;
+    }
+    
+    /**
+     * Get the lowest common ancestor of two nodes.
+     * @param a the first node row
+     * @param b the second node row
+     * @return the deepest node that is an ancestor of both, or -1 if
+     * either node is not connected to the root
+     */
+    public int getLowestCommonAncestor(int a, int b) {
+        validate();
+        if ( !isIndexed(a) || !isIndexed(b) )
+            return -1;
+        if ( m_depth[a] < m_depth[b] ) {
+            int t = a; a = b; b = t;
+        }
+        a = getAncestor(a, m_depth[a] - m_depth[b]);
+        if ( a == b ) return a;
+        for ( int k=m_up.length; --k >= 0; ) {
+            int ua = m_up[k][a], ub = m_up[k][b];
+            if ( ua != ub ) {
+                a = ua;
+                b = ub;
+            }
+        }
+        return m_up[0][a];
+    }
+    
+    /**
+     * Get the maximum depth of the indexed tree.
+     * @return the depth of the deepest node
+     */
+    public int getMaximumDepth() {
+        validate();
+        return m_maxDepth;
+    }
+    
+} // end of class TreeStructureIndex
@@ -30,7 +30,7 @@
  */
 package prefux.render;
 
-import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
 import javafx.scene.Group;
 import javafx.scene.Node;
 import javafx.scene.shape.Line;
@@ -99,7 +99,11 @@ public class ArrowRenderer extends AbstractShapeRenderer implements Renderer {
 		Group group = new Group(line, polygon);
 		
 		if (bind) {
-			Platform.runLater(() -> {
+			// one listener for all end points, so that it can be removed
+			ChangeListener<Number> rotation = (observable, oldValue, newValue) -> {
+				adjustArrowRotation(edge, polygon);
+			};
+			BindingQueue.enqueue(group, () -> {
 				line.startXProperty().bind(edge.getSourceItem().xProperty());
 				line.startYProperty().bind(edge.getSourceItem().yProperty());
 				line.endXProperty().bind(edge.getTargetItem().xProperty());
@@ -108,21 +112,23 @@ public class ArrowRenderer extends AbstractShapeRenderer implements Renderer {
 				polygon.layoutXProperty().bind(line.endXProperty());
 				polygon.layoutYProperty().bind(line.endYProperty());
 				
-				edge.getTargetItem().xProperty().addListener((observable, oldValue, newValue) -> {
-					adjustArrowRotation(edge, polygon);
-				});
+				edge.getTargetItem().xProperty().addListener(rotation);
+				edge.getTargetItem().yProperty().addListener(rotation);
+				edge.getSourceItem().xProperty().addListener(rotation);
+				edge.getSourceItem().yProperty().addListener(rotation);
+			}, () -> {
+				line.startXProperty().unbind();
+				line.startYProperty().unbind();
+				line.endXProperty().unbind();
+				line.endYProperty().unbind();
 				
-				edge.getTargetItem().yProperty().addListener((observable, oldValue, newValue) -> {
-					adjustArrowRotation(edge, polygon);
-				});
+				polygon.layoutXProperty().unbind();
+				polygon.layoutYProperty().unbind();
 				
-				edge.getSourceItem().xProperty().addListener((observable, oldValue, newValue) -> {
-					adjustArrowRotation(edge, polygon);
-				});
-				
-				edge.getSourceItem().yProperty().addListener((observable, oldValue, newValue) -> {
-					adjustArrowRotation(edge, polygon);
-				});
+				edge.getTargetItem().xProperty().removeListener(rotation);
+				edge.getTargetItem().yProperty().removeListener(rotation);
+				edge.getSourceItem().xProperty().removeListener(rotation);
+				edge.getSourceItem().yProperty().removeListener(rotation);
 			});
 		}
 		
@@ -0,0 +1,137 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.render;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.application.Platform;
+import javafx.scene.Node;
+
+/**
+ * Collects the property binding tasks created by the renderers and runs them
+ * on the JavaFX application thread in a single pass.
+ * 
+ * <p>
+ * Rendering a large visualization creates several binding tasks per item.
+ * Instead of posting a separate {@link Platform#runLater(Runnable)} for each
+ * of them, the tasks are queued here and only one drain runnable is scheduled
+ * at a time.
+ * </p>
+ * <p>
+ * A renderer can queue the task that removes its bindings from a node
+ * together with the binding task. The removal is queued with
+ * {@link #release(Node)}, when the node is taken off the display.
+ * </p>
+ */
+public final class BindingQueue {
+
+	private static final ConcurrentLinkedQueue<Runnable> m_tasks = new ConcurrentLinkedQueue<>();
+	private static final AtomicBoolean m_scheduled = new AtomicBoolean(false);
+
+	/*
+	 * Key of the unbind task in the properties of a node
+	 */
+	private static final String UNBIND_KEY = "prefux.unbind";
+
+	private BindingQueue() {
+		// prevent instantiation
+	}
+
+	/**
+	 * Queues a binding task for execution on the JavaFX application thread.
+	 * The task is run together with all other tasks queued before the next
+	 * drain.
+	 * 
+	 * @param task
+	 *            the task to run
+	 */
+	public static void enqueue(Runnable task) {
+		m_tasks.offer(task);
+		if (m_scheduled.compareAndSet(false, true)) {
+			Platform.runLater(BindingQueue::drain);
+		}
+	}
+
+	/**
+	 * Queues a binding task for a node and keeps the task that removes the
+	 * bindings again, until the node is released.
+	 * 
+	 * @param node
+	 *            the node the bindings are set on
+	 * @param bind
+	 *            the task that binds the node
+	 * @param unbind
+	 *            the task that removes the bindings and listeners the bind
+	 *            task added
+	 * @see #release(Node)
+	 */
+	public static void enqueue(Node node, Runnable bind, Runnable unbind) {
+		node.getProperties().put(UNBIND_KEY, unbind);
+		enqueue(bind);
+	}
+
+	/**
+	 * Queues the task that removes the bindings of a node, which were queued
+	 * with {@link #enqueue(Node, Runnable, Runnable)}. The task runs after
+	 * the binding tasks queued before, so bindings that are still pending
+	 * are removed as well. Nothing happens, if the node has no bindings.
+	 * 
+	 * @param node
+	 *            the node to release
+	 */
+	public static void release(Node node) {
+		Object unbind = node.getProperties().remove(UNBIND_KEY);
+		if (unbind != null) {
+			enqueue((Runnable) unbind);
+		}
+	}
+
+	/**
+	 * Returns the number of tasks waiting for the next drain.
+	 * 
+	 * @return the number of pending tasks
+	 */
+	public static int getPendingCount() {
+		return m_tasks.size();
+	}
+
+	private static void drain() {
+		// reset the flag first, so that tasks queued while draining
+		// schedule a new pass instead of being lost
+		m_scheduled.set(false);
+		Runnable task;
+		while ((task = m_tasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+} // end of class BindingQueue
@@ -32,7 +32,6 @@ package prefux.render;
 
 import java.util.ArrayList;
 
-import javafx.application.Platform;
 import javafx.scene.Group;
 import javafx.scene.Parent;
 
@@ -63,9 +62,12 @@ public class CombinedRenderer extends ArrayList<Renderer> implements Renderer {
 				renderer.render(grp, item, false);
 			}
 			if (bind) {
-				Platform.runLater(() -> {
+				BindingQueue.enqueue(grp, () -> {
 					grp.layoutXProperty().bind(item.xProperty());
 					grp.layoutYProperty().bind(item.yProperty());
+				}, () -> {
+					grp.layoutXProperty().unbind();
+					grp.layoutYProperty().unbind();
 				});
 			}
 			FxGraphicsLib.addToParent(g, grp);
@@ -30,7 +30,6 @@
  */
 package prefux.render;
 
-import javafx.application.Platform;
 import javafx.scene.Node;
 import javafx.scene.shape.Line;
 
@@ -75,11 +74,16 @@ public class EdgeRenderer extends AbstractShapeRenderer implements Renderer {
 		EdgeItem edge = (EdgeItem) item;
 		Line line = new Line();
 		if (bind) {
-			Platform.runLater(() -> {
+			BindingQueue.enqueue(line, () -> {
 				line.startXProperty().bind(edge.getSourceItem().xProperty());
 				line.startYProperty().bind(edge.getSourceItem().yProperty());
 				line.endXProperty().bind(edge.getTargetItem().xProperty());
 				line.endYProperty().bind(edge.getTargetItem().yProperty());
+			}, () -> {
+				line.startXProperty().unbind();
+				line.startYProperty().unbind();
+				line.endXProperty().unbind();
+				line.endYProperty().unbind();
 			});
 		}
 		return line;
@@ -30,7 +30,6 @@
  */
 package prefux.render;
 
-import javafx.application.Platform;
 import javafx.scene.Node;
 import javafx.scene.control.Label;
 import javafx.scene.image.Image;
@@ -268,19 +267,25 @@ public class LabelRenderer extends AbstractShapeRenderer {
 	 * @see prefux.render.AbstractShapeRenderer#getRawShape(prefux.visual.VisualItem)
 	 */
 	protected Node getRawShape(VisualItem item, boolean bind) {
-		pane = new StackPane();
+		final Pane node = new StackPane();
+		pane = node;
 		m_text = getText(item);
 		txt = new Label(m_text);
 		img = new ImageView(getImage(item));
-		pane.getChildren().add(img);
-		pane.getChildren().add(txt);
+		node.getChildren().add(img);
+		node.getChildren().add(txt);
 		if (bind) {
-			Platform.runLater(() -> {
-				pane.layoutXProperty().bind(item.xProperty());
-				pane.layoutYProperty().bind(item.yProperty());
+			// use the local reference, the pane field is overwritten by
+			// the next item before the queued binding runs
+			BindingQueue.enqueue(node, () -> {
+				node.layoutXProperty().bind(item.xProperty());
+				node.layoutYProperty().bind(item.yProperty());
+			}, () -> {
+				node.layoutXProperty().unbind();
+				node.layoutYProperty().unbind();
 			});
 		}
-		return pane;
+		return node;
 	}
 
 	/**
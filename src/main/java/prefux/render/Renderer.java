@@ -31,6 +31,7 @@
 package prefux.render;
 
 
+import javafx.scene.Node;
 import javafx.scene.Parent;
 import prefux.data.util.Point2D;
 import prefux.visual.VisualItem;
@@ -85,5 +86,19 @@ public interface Renderer {
      */
     public void addStyle(String style);
     
+    /**
+     * Removes the bindings and listeners the renderer attached to the node
+     * of an item, so that the node does not keep the item alive, nor the
+     * item the node, once it is taken off the display. The default
+     * implementation runs the unbind task queued with
+     * {@link BindingQueue#enqueue(Node, Runnable, Runnable)}.
+     * @param item the visual item whose node is released
+     */
+    public default void release(VisualItem item) {
+        Node node = item.getNode();
+        if (node != null)
+            BindingQueue.release(node);
+    }
+    
 
 } // end of interface Renderer
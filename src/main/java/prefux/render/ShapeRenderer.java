@@ -34,9 +34,8 @@
  */
 package prefux.render;
 
-import javafx.application.Platform;
-import javafx.beans.binding.Bindings;
-import javafx.beans.binding.ObjectBinding;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
 import javafx.scene.Node;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.CycleMethod;
@@ -49,6 +48,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import prefux.util.ColorLib;
+import prefux.util.collections.IntObjectHashMap;
 import prefux.visual.VisualItem;
 
 /**
@@ -100,7 +100,7 @@ public class ShapeRenderer extends AbstractShapeRenderer implements Renderer {
 	/*
 	 * Standard gradient fill function
 	 */
-	private FillPainter standardGradientPainter = (int color) -> {
+	private static final FillPainter standardGradientPainter = (int color) -> {
 		Color col0 = ColorLib.getColor(color);
 		Color col1 = new Color(col0.getRed(), col0
 		        .getGreen(), col0.getBlue(), 0.5);
@@ -115,7 +115,7 @@ public class ShapeRenderer extends AbstractShapeRenderer implements Renderer {
 	/*
 	 * Gradient fill function with sphere effect
 	 */
-	private FillPainter sphereGradientPainter = (int color) -> {
+	private static final FillPainter sphereGradientPainter = (int color) -> {
 		Color col0 = ColorLib.getColor(color);
 		Color col1 = Color.WHITE;
 		RadialGradient grad = new RadialGradient(215,
@@ -127,7 +127,7 @@ public class ShapeRenderer extends AbstractShapeRenderer implements Renderer {
 	/*
 	 * Standard block fill function
 	 */
-	private FillPainter standardColorPainter = (int color) -> {
+	private static final FillPainter standardColorPainter = (int color) -> {
 		return ColorLib.getColor(color);
 	};
 	
@@ -139,6 +139,22 @@ public class ShapeRenderer extends AbstractShapeRenderer implements Renderer {
 			sphereGradientPainter
 	};
 
+	/**
+	 * The maximum number of paints cached per fill mode.
+	 */
+	public static final int MAX_CACHED_PAINTS = 256;
+
+	/*
+	 * Paints of the standard fill modes, indexed by fill mode and color code
+	 */
+	private final IntObjectHashMap[] paintCache = new IntObjectHashMap[] {
+			null,
+			null,
+			new IntObjectHashMap(),
+			new IntObjectHashMap(),
+			new IntObjectHashMap()
+	};
+
 	
 	@Override
 	public String getDefaultStyle() {
@@ -149,37 +165,110 @@ public class ShapeRenderer extends AbstractShapeRenderer implements Renderer {
 	protected Node getRawShape(VisualItem item, boolean bind) {
 		double radius = useItemSize ? item.getSize() * getBaseSize()
 		        : getBaseSize();
-		final Circle circle = new Circle(radius);
+		final ItemCircle circle = new ItemCircle(item, radius);
 		if (bind) {
+			BindingQueue.enqueue(circle, circle::bind, circle::unbind);
+		}
+		return circle;
+	}
 
-			Platform.runLater(() -> {
-				circle.centerXProperty().bind(item.xProperty());
-				circle.centerYProperty().bind(item.yProperty());
-				if (useItemSize) {
+	/**
+	 * Returns the paint for the given color and fill mode. Paints of the
+	 * standard fill modes are shared between the nodes of this renderer,
+	 * custom fill painters are called for each request. The cache of a fill
+	 * mode is cleared, when it holds {@link #MAX_CACHED_PAINTS} paints, so
+	 * that animated colors do not fill it up.
+	 * 
+	 * @param color
+	 *            the color code as defined by {@link ColorLib}
+	 * @param mode
+	 *            the fill mode
+	 * @return the paint to fill the node with
+	 */
+	protected Paint getPaint(int color, int mode) {
+		if (mode == CUSTOM) {
+			return fillPainter[CUSTOM].fill(color);
+		}
+		IntObjectHashMap cache = paintCache[mode];
+		Paint paint = (Paint) cache.get(color);
+		if (paint == null) {
+			if (cache.size() >= MAX_CACHED_PAINTS) {
+				cache.clear();
+			}
+			paint = fillPainter[mode].fill(color);
+			cache.put(color, paint);
+		}
+		return paint;
+	}
 
-					circle.radiusProperty().bind(
-					        Bindings.multiply(getBaseSize(),
-					                item.sizeProperty()));
-				}
+	/**
+	 * Clears the paints cached for the standard fill modes.
+	 */
+	public void clearPaintCache() {
+		for (IntObjectHashMap cache : paintCache) {
+			if (cache != null) {
+				cache.clear();
+			}
+		}
+	}
 
-				if (!(fillMode==NONE)) {
-					final ObjectBinding<Paint> colorBinding = new ObjectBinding<Paint>() {
+	/**
+	 * Circle that keeps its radius and fill in sync with the visual item. The
+	 * circle itself listens to the item properties, so no additional binding
+	 * objects are created per item.
+	 */
+	private final class ItemCircle extends Circle implements
+	        InvalidationListener {
 
-						{
-							bind(item.fillColorProperty());
-						}
+		private final VisualItem item;
 
-						@Override
-						protected Paint computeValue() {
-							return fillPainter[fillMode].fill(item.fillColorProperty().getValue());
-						}
-					};
-					circle.fillProperty().bind(colorBinding);
-				}
+		ItemCircle(VisualItem item, double radius) {
+			super(radius);
+			this.item = item;
+		}
 
-			});
+		/*
+		 * Must be called on the JavaFX application thread.
+		 */
+		void bind() {
+			centerXProperty().bind(item.xProperty());
+			centerYProperty().bind(item.yProperty());
+			if (useItemSize) {
+				item.sizeProperty().addListener(this);
+				updateRadius();
+			}
+			if (fillMode != NONE) {
+				item.fillColorProperty().addListener(this);
+				updateFill();
+			}
+		}
+
+		/*
+		 * Must be called on the JavaFX application thread.
+		 */
+		void unbind() {
+			centerXProperty().unbind();
+			centerYProperty().unbind();
+			item.sizeProperty().removeListener(this);
+			item.fillColorProperty().removeListener(this);
+		}
+
+		@Override
+		public void invalidated(Observable observable) {
+			if (observable == item.sizeProperty()) {
+				updateRadius();
+			} else {
+				updateFill();
+			}
+		}
+
+		private void updateRadius() {
+			setRadius(getBaseSize() * item.sizeProperty().get());
+		}
+
+		private void updateFill() {
+			setFill(getPaint(item.fillColorProperty().get(), fillMode));
 		}
-		return circle;
 	}
 
 	/**
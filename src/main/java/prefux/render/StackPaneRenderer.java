@@ -37,7 +37,6 @@ package prefux.render;
 import java.util.ArrayList;
 import java.util.List;
 
-import javafx.application.Platform;
 import javafx.scene.Parent;
 import javafx.scene.layout.StackPane;
 
@@ -72,9 +71,12 @@ public class StackPaneRenderer extends ArrayList<Renderer> implements Renderer,
 			renderer.render(pane, item, false);
 		}
 		if (bind) {
-			Platform.runLater(()-> {
+			BindingQueue.enqueue(pane, ()-> {
 				pane.layoutXProperty().bind(item.xProperty());
 				pane.layoutYProperty().bind(item.yProperty());
+			}, () -> {
+				pane.layoutXProperty().unbind();
+				pane.layoutYProperty().unbind();
 			});
 		}
 		FxGraphicsLib.addToParent(g, pane);
@@ -44,6 +44,7 @@ import java.util.Map;
 import prefux.data.Table;
 import prefux.data.Tuple;
 import prefux.data.column.ColumnMetadata;
+import prefux.data.tuple.CompositeTupleSet;
 import prefux.data.tuple.TupleSet;
 import prefux.util.collections.DefaultLiteralComparator;
 
@@ -95,6 +96,75 @@ public class DataLib {
 
     // ------------------------------------------------------------------------
     
+    /**
+     * Get a summary of the distribution of a numeric data field, built by
+     * a single pass over the tuples without sorting.
+     * @param tuples an iterator over tuples
+     * @param field the column / data field name
+     * @return a new {@link QuantileSketch} of the field values
+     */
+    public static DistributionSummary distribution(Iterator tuples,
+                                                   String field)
+    {
+        QuantileSketch sketch = new QuantileSketch();
+        while ( tuples.hasNext() )
+            sketch.update(((Tuple)tuples.next()).getDouble(field));
+        return sketch;
+    }
+    
+    /**
+     * Get a summary of the distribution of a numeric data field. For
+     * tables the summary maintained by the column metadata is returned,
+     * and for composite tuple sets the summaries of the contained sets are
+     * merged. The result must not be modified.
+     * @param tuples a TupleSet
+     * @param field the column / data field name
+     * @return a summary of the field value distribution
+     */
+    public static DistributionSummary distribution(TupleSet tuples,
+                                                   String field)
+    {
+        if ( tuples instanceof Table ) {
+            return ((Table)tuples).getMetadata(field).getDistribution();
+        } else if ( tuples instanceof CompositeTupleSet ) {
+            DistributionSummary ds = null;
+            Iterator sets = ((CompositeTupleSet)tuples).sets();
+            try {
+                while ( sets.hasNext() ) {
+                    DistributionSummary part =
+                        distribution((TupleSet)sets.next(), field);
+                    if ( ds == null ) {
+                        ds = part.copy();
+                    } else {
+                        ds.merge(part);
+                    }
+                }
+            } catch ( IllegalArgumentException e ) {
+                // incompatible summaries, fall back to a full pass
+                ds = null;
+            }
+            if ( ds != null ) return ds;
+        }
+        return distribution(tuples.tuples(), field);
+    }
+    
+    /**
+     * Compute approximate n-quantile boundaries of a numeric data field,
+     * in the format of {@link MathLib#quantiles(int, double[])}, from the
+     * field's distribution summary.
+     * @param tuples a TupleSet
+     * @param field the column / data field name
+     * @param n the number of quantiles
+     * @return an n+1 array holding the minimum value followed by the
+     * quantile boundaries
+     * @see #distribution(TupleSet, String)
+     */
+    public static double[] quantiles(TupleSet tuples, String field, int n) {
+        return distribution(tuples, field).getQuantiles(n);
+    }
+    
+    // ------------------------------------------------------------------------
+    
     /**
      * Get a sorted array containing all column values for a given tuple
      * iterator and field.
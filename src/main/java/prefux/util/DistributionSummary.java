@@ -0,0 +1,119 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util;
+
+/**
+ * Summary of a distribution of double values that can be updated one
+ * value at a time, merged with summaries of other partitions of the data
+ * and queried for quantiles in time independent of the number of values.
+ * Implementations trade exactness for bounded memory; see
+ * {@link QuantileSketch} and {@link Histogram}.
+ */
+public interface DistributionSummary {
+
+    /**
+     * Add a value to the summary. NaN values are ignored.
+     * @param value the value to add
+     */
+    public void update(double value);
+    
+    /**
+     * Remove a previously added value from the summary, if supported.
+     * @param value the value to remove
+     * @return true if the value was removed, false if this summary type
+     * cannot forget values
+     */
+    public boolean remove(double value);
+    
+    /**
+     * Merge another summary into this one, as if all of its values had
+     * been added to this summary.
+     * @param other the summary to merge, which must be of the same type
+     * @throws IllegalArgumentException if the summary types are not
+     * compatible
+     */
+    public void merge(DistributionSummary other);
+    
+    /**
+     * Get the number of values in the summary.
+     * @return the number of values
+     */
+    public long getCount();
+    
+    /**
+     * Get the smallest value in the summary.
+     * @return the minimum, or NaN if the summary is empty
+     */
+    public double getMinimum();
+    
+    /**
+     * Get the largest value in the summary.
+     * @return the maximum, or NaN if the summary is empty
+     */
+    public double getMaximum();
+    
+    /**
+     * Get an approximate quantile.
+     * @param p the quantile, between 0 and 1 (0.5 is the median)
+     * @return the approximate quantile value, or NaN if the summary is
+     * empty
+     */
+    public double getQuantile(double p);
+    
+    /**
+     * Compute approximate n-quantile boundaries, in the format used by
+     * {@link MathLib#quantiles(int, double[])}: an n+1 size array holding
+     * the minimum value followed by the n quantile boundaries.
+     * @param n the number of quantiles
+     * @return an n+1 array of the minimum and the quantile boundaries
+     */
+    public double[] getQuantiles(int n);
+    
+    /**
+     * Get the approximate fraction of values less than or equal to the
+     * given value.
+     * @param value the value to rank
+     * @return the approximate rank, as a value between 0 and 1
+     */
+    public double getRank(double value);
+    
+    /**
+     * Remove all values from the summary.
+     */
+    public void clear();
+    
+    /**
+     * Create an independent copy of this summary.
+     * @return a copy of this summary
+     */
+    public DistributionSummary copy();
+    
+} // end of interface DistributionSummary
@@ -0,0 +1,390 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util;
+
+import java.util.Arrays;
+
+/**
+ * <p>Fixed-memory histogram of double values, usable as a
+ * {@link DistributionSummary}. The histogram has a fixed, even number of
+ * equally wide bins. Its range starts out at the first values seen and is
+ * doubled whenever a value falls outside of it, merging neighbouring bins
+ * in pairs, so that memory use never grows. Quantiles are interpolated
+ * linearly within a bin, and so are accurate to about one bin width.
+ * Infinite and NaN values are ignored.</p>
+ * 
+ * <p>Unlike a {@link QuantileSketch}, a histogram can forget values again,
+ * which makes it suitable for data that changes in place. Histograms with
+ * the same number of bins can be merged.</p>
+ */
+public class Histogram implements DistributionSummary {
+
+    /** Default number of bins */
+    public static final int DEFAULT_BINS = 256;
+    
+    private long[] m_bins;
+    private double m_lo;
+    private double m_width;
+    private long m_count;
+    private double m_min = Double.NaN;
+    private double m_max = Double.NaN;
+    private boolean m_exact = true;
+    
+    /**
+     * Create a new Histogram with the default number of bins.
+     */
+    public Histogram() {
+        this(DEFAULT_BINS);
+    }
+    
+    /**
+     * Create a new Histogram with an automatically chosen range.
+     * @param bins the number of bins, a positive even number
+     */
+    public Histogram(int bins) {
+        if ( bins < 2 || (bins & 1) != 0 ) {
+            throw new IllegalArgumentException(
+                "Number of bins must be positive and even: "+bins);
+        }
+        m_bins = new long[bins];
+    }
+    
+    /**
+     * Create a new Histogram covering the given initial range. Values
+     * outside of the range still widen it.
+     * @param bins the number of bins, a positive even number
+     * @param min the lower bound of the initial range
+     * @param max the upper bound of the initial range
+     */
+    public Histogram(int bins, double min, double max) {
+        this(bins);
+        if ( !(max > min) ) {
+            throw new IllegalArgumentException(
+                "Invalid histogram range: "+min+" - "+max);
+        }
+        m_lo = min;
+        m_width = (max-min) / bins;
+    }
+    
+    /**
+     * Create a new Histogram as a copy of another one.
+     * @param h the histogram to copy
+     */
+    public Histogram(Histogram h) {
+        m_bins = h.m_bins.clone();
+        m_lo = h.m_lo;
+        m_width = h.m_width;
+        m_count = h.m_count;
+        m_min = h.m_min;
+        m_max = h.m_max;
+        m_exact = h.m_exact;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Updates
+    
+    /**
+     * @see prefux.util.DistributionSummary#update(double)
+     */
+    public void update(double value) {
+        add(value, 1);
+    }
+    
+    /**
+     * Add a value to the histogram a number of times.
+     */
+    private void add(double value, long n) {
+        if ( Double.isNaN(value) || Double.isInfinite(value) || n <= 0 )
+            return;
+        if ( m_count == 0 ) {
+            m_min = m_max = value;
+        } else {
+            if ( value < m_min ) m_min = value;
+            if ( value > m_max ) m_max = value;
+        }
+        // find the bin first, widening may replace the bin array
+        int b = bin(value);
+        m_bins[b] += n;
+        m_count += n;
+    }
+    
+    /**
+     * Remove a value from the histogram. The minimum and maximum are
+     * approximated by bin boundaries afterwards.
+     * @see prefux.util.DistributionSummary#remove(double)
+     */
+    public boolean remove(double value) {
+        if ( Double.isNaN(value) || Double.isInfinite(value)
+             || m_count == 0 )
+            return true;
+        int b = bin(value);
+        if ( m_bins[b] > 0 ) {
+            --m_bins[b];
+            --m_count;
+            m_exact = false;
+        }
+        return true;
+    }
+    
+    /**
+     * Merge another histogram into this one. Each bin of the other
+     * histogram is added at its center.
+     * @see prefux.util.DistributionSummary#merge(prefux.util.DistributionSummary)
+     */
+    public void merge(DistributionSummary other) {
+        if ( !(other instanceof Histogram)
+             || ((Histogram)other).m_bins.length != m_bins.length )
+        {
+            throw new IllegalArgumentException(
+                "Can only merge with a Histogram of the same size");
+        }
+        Histogram h = (Histogram)other;
+        if ( h.m_count == 0 ) return;
+        if ( m_count == 0 ) {
+            m_bins = h.m_bins.clone();
+            m_lo = h.m_lo;
+            m_width = h.m_width;
+            m_count = h.m_count;
+            m_min = h.m_min;
+            m_max = h.m_max;
+            m_exact = h.m_exact;
+            return;
+        }
+        double min = h.getMinimum(), max = h.getMaximum();
+        boolean exact = m_exact && h.m_exact;
+        if ( h.m_width == 0 ) {
+            add(h.m_lo, h.m_bins[0]);
+        } else {
+            // widen the range first, so the extremes are kept
+            bin(min);
+            bin(max);
+            for ( int i=0; i<h.m_bins.length; ++i ) {
+                if ( h.m_bins[i] == 0 ) continue;
+                double c = h.m_lo + (i+0.5)*h.m_width;
+                add(Math.max(min, Math.min(max, c)), h.m_bins[i]);
+            }
+        }
+        m_min = ( Double.isNaN(m_min) ? min : Math.min(m_min, min) );
+        m_max = ( Double.isNaN(m_max) ? max : Math.max(m_max, max) );
+        m_exact = exact;
+    }
+    
+    /**
+     * Get the bin for a value, widening the range as needed.
+     */
+    private int bin(double value) {
+        int n = m_bins.length;
+        if ( m_width == 0 ) {
+            if ( m_count == 0 || value == m_lo ) {
+                // all values so far are equal, keep them in bin 0
+                m_lo = value;
+                return 0;
+            }
+            // spread the first two distinct values over half the bins
+            double lo = Math.min(value, m_lo);
+            m_width = Math.abs(value - m_lo) * 2 / n;
+            long c = m_bins[0];
+            m_bins[0] = 0;
+            double first = m_lo;
+            m_lo = lo;
+            m_bins[index(first)] = c;
+        }
+        while ( value < m_lo ) {
+            // double the range downwards
+            long[] b = new long[n];
+            for ( int i=0; i<n; ++i )
+                b[n/2 + i/2] += m_bins[i];
+            m_bins = b;
+            m_lo -= n * m_width;
+            m_width *= 2;
+        }
+        while ( value >= m_lo + n*m_width ) {
+            // double the range upwards
+            long[] b = new long[n];
+            for ( int i=0; i<n; ++i )
+                b[i/2] += m_bins[i];
+            m_bins = b;
+            m_width *= 2;
+        }
+        return index(value);
+    }
+    
+    private int index(double value) {
+        int i = (int)((value - m_lo) / m_width);
+        return Math.max(0, Math.min(m_bins.length-1, i));
+    }
+    
+    // ------------------------------------------------------------------------
+    // Queries
+    
+    /**
+     * @see prefux.util.DistributionSummary#getCount()
+     */
+    public long getCount() {
+        return m_count;
+    }
+    
+    /**
+     * @see prefux.util.DistributionSummary#getMinimum()
+     */
+    public double getMinimum() {
+        if ( m_count == 0 ) return Double.NaN;
+        if ( m_exact || m_width == 0 ) return m_min;
+        int i = 0;
+        while ( m_bins[i] == 0 ) ++i;
+        return Math.max(m_min, m_lo + i*m_width);
+    }
+    
+    /**
+     * @see prefux.util.DistributionSummary#getMaximum()
+     */
+    public double getMaximum() {
+        if ( m_count == 0 ) return Double.NaN;
+        if ( m_exact || m_width == 0 ) return m_max;
+        int i = m_bins.length-1;
+        while ( m_bins[i] == 0 ) --i;
+        return Math.min(m_max, m_lo + (i+1)*m_width);
+    }
+    
+    /**
+     * Get the value at a fractional rank, interpolating within the bin.
+     */
+    private double valueAt(double rank) {
+        if ( m_width == 0 ) return m_lo;
+        long cum = 0;
+        for ( int i=0; i<m_bins.length; ++i ) {
+            long c = m_bins[i];
+            if ( c > 0 && cum + c > rank ) {
+                // interpolate over the part of the bin holding values
+                double lo = Math.max(getMinimum(), m_lo + i*m_width);
+                double hi = Math.min(getMaximum(), m_lo + (i+1)*m_width);
+                return lo + (rank-cum+0.5)/c * (hi-lo);
+            }
+            cum += c;
+        }
+        return getMaximum();
+    }
+    
+    /**
+     * @see prefux.util.DistributionSummary#getQuantile(double)
+     */
+    public double getQuantile(double p) {
+        if ( m_count == 0 ) return Double.NaN;
+        if ( p <= 0 ) return getMinimum();
+        if ( p >= 1 ) return getMaximum();
+        return valueAt(p*(m_count-1));
+    }
+    
+    /**
+     * @see prefux.util.DistributionSummary#getQuantiles(int)
+     */
+    public double[] getQuantiles(int n) {
+        double[] qtls = new double[n+1];
+        if ( m_count == 0 ) {
+            Arrays.fill(qtls, Double.NaN);
+            return qtls;
+        }
+        for ( int i=1; i<n; ++i )
+            qtls[i] = valueAt(((m_count-1)*i)/(double)n);
+        qtls[0] = getMinimum();
+        qtls[n] = getMaximum();
+        return qtls;
+    }
+    
+    /**
+     * @see prefux.util.DistributionSummary#getRank(double)
+     */
+    public double getRank(double value) {
+        if ( m_count == 0 ) return Double.NaN;
+        if ( m_width == 0 ) return value >= m_lo ? 1 : 0;
+        double pos = (value - m_lo) / m_width;
+        if ( pos < 0 ) return 0;
+        if ( pos >= m_bins.length ) return 1;
+        int b = (int)pos;
+        long cum = 0;
+        for ( int i=0; i<b; ++i )
+            cum += m_bins[i];
+        return (cum + (pos-b)*m_bins[b]) / m_count;
+    }
+    
+    /**
+     * Get the number of bins.
+     * @return the number of bins
+     */
+    public int getBinCount() {
+        return m_bins.length;
+    }
+    
+    /**
+     * Get the number of values in a bin.
+     * @param bin the bin index
+     * @return the number of values in the bin
+     */
+    public long getBinValue(int bin) {
+        return m_bins[bin];
+    }
+    
+    /**
+     * Get the lower bound of a bin.
+     * @param bin the bin index
+     * @return the smallest value that falls into the bin
+     */
+    public double getBinLowerBound(int bin) {
+        return m_lo + bin*m_width;
+    }
+    
+    /**
+     * Get the width of the bins.
+     * @return the bin width, 0 while all values seen are equal
+     */
+    public double getBinWidth() {
+        return m_width;
+    }
+    
+    /**
+     * @see prefux.util.DistributionSummary#clear()
+     */
+    public void clear() {
+        Arrays.fill(m_bins, 0);
+        m_lo = m_width = 0;
+        m_count = 0;
+        m_min = m_max = Double.NaN;
+        m_exact = true;
+    }
+    
+    /**
+     * @see prefux.util.DistributionSummary#copy()
+     */
+    public DistributionSummary copy() {
+        return new Histogram(this);
+    }
+    
+} // end of class Histogram
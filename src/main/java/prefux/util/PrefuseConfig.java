@@ -55,12 +55,39 @@ import prefux.util.io.IOLib;
  * <li><code>activity.threadPriority</code> - the thread priority of the
  * ActivityManager thread. The value should be between 1 and 10, with 5 being
  * the standard Java default. The default prefux setting is 6.</li>
+ * <li><code>activity.scheduler</code> - the scheduler used to run
+ * activities. "thread" (the default) runs them on the ActivityManager thread
+ * with millisecond timing, "pulse" steps them once per animation frame with
+ * nanosecond timing, see {@link prefux.activity.PulseActivityManager}.</li>
+ * <li><code>activity.frameRate</code> - the number of frames per second
+ * of the pulse scheduler when no JavaFX pulse is available. The default
+ * is 60.</li>
+ * <li><code>activity.workerThreads</code> - the number of worker threads
+ * running the activities of the ActivityManager. The default is 0, which
+ * uses one worker per available processor.</li>
  * <li><code>data.io.worker.threadPriority</code> - the thread priority of
  * asynchronous database worker threads. The default prefux setting is 5
  * (same as the Java thread default).</li>
+ * <li><code>data.io.worker.threads</code> - the number of asynchronous
+ * database worker threads. The default is 0, which uses one worker per
+ * available processor.</li>
+ * <li><code>data.io.sql.fetchSize</code> - the number of rows fetched from
+ * the database at a time. The default is 0, which leaves the choice to the
+ * JDBC driver.</li>
+ * <li><code>data.io.sql.batchSize</code> - the number of query result rows
+ * transferred into a table at a time. The default is 1024.</li>
  * <li><code>data.filter.optimizeThreshold</code> - the minimum number of items
  * that must be contained in a table for optimized query plans to be
  * considered. The default value is 300.</li>
+ * <li><code>data.expression.parallel</code> - if true, expression columns
+ * evaluate large row ranges in parallel when their cache is filled in one
+ * sweep. The default is false.</li>
+ * <li><code>data.graph.compactLinks</code> - if true, graphs created without
+ * an explicit choice keep their adjacency lists in a compact link store
+ * instead of the link table. The default is false.</li>
+ * <li><code>data.tree.structureIndex</code> - if true, trees maintain an
+ * index of node depths and ancestors, making depth and ancestor queries
+ * independent of the tree depth. The default is false.</li>
  * <li><code>util.logdir</code> - the directory in which to write prefux log
  * files. The default is "null" which defaults logging output to standard
  * output.</li> 
@@ -221,12 +248,18 @@ public class PrefuseConfig extends Properties {
     private void setDefaults() {        
         setProperty("size.scale2D", "0.5");
         setProperty("activity.threadPriority", "6");
+        setProperty("activity.scheduler", "thread");
+        setProperty("activity.frameRate", "60");
+        setProperty("activity.workerThreads", "0");
         setProperty("data.delimiter", ".");
         setProperty("data.graph.nodeGroup", "nodes");
         setProperty("data.graph.edgeGroup", "edges");
         setProperty("data.visual.fieldPrefix", "_");
         setProperty("data.io.worker.threadPriority", 
                 String.valueOf(Thread.NORM_PRIORITY));
+        setProperty("data.io.worker.threads", "0");
+        setProperty("data.io.sql.fetchSize", "0");
+        setProperty("data.io.sql.batchSize", "1024");
         
         // prefux will only attempt to optimize filtering operations
         // on tables with more rows than this threshold value
@@ -237,6 +270,9 @@ public class PrefuseConfig extends Properties {
         setProperty("data.graph.targetKey", "target");
         setProperty("data.tree.sourceKey", "parent");
         setProperty("data.tree.targetKey", "child");
+        setProperty("data.graph.compactLinks", "false");
+        setProperty("data.expression.parallel", "false");
+        setProperty("data.tree.structureIndex", "false");
         setProperty("visualization.allItems", "_all_");
         setProperty("visualization.focusItems", "_focus_");
         setProperty("visualization.selectedItems", "_selected_");
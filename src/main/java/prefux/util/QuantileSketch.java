@@ -0,0 +1,423 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util;
+
+import java.util.Arrays;
+
+/**
+ * <p>Streaming summary of a distribution of double values that answers
+ * approximate quantile queries in memory independent of the number of
+ * values seen. The sketch follows the KLL construction: values enter a
+ * buffer at level zero, and whenever a level outgrows its capacity it is
+ * sorted and every other value is promoted to the next level, where each
+ * value stands for twice as many inputs. Level capacities shrink
+ * geometrically towards the lower levels, so that the total size stays
+ * close to the accuracy parameter <code>k</code>.</p>
+ * 
+ * <p>As long as no more than <code>k</code> values have been added, the
+ * sketch is exact and {@link #getQuantiles(int)} returns the same
+ * boundaries as {@link MathLib#quantiles(int, double[])}. Beyond that the
+ * rank error is roughly proportional to <code>1/k</code>. NaN values are
+ * ignored. Sketches with the same accuracy can be merged, for example to
+ * combine summaries of several tables, but values cannot be removed.</p>
+ */
+public class QuantileSketch implements DistributionSummary {
+
+    /** Default accuracy parameter */
+    public static final int DEFAULT_K = 200;
+    
+    private static final double SHRINK = 2.0/3.0;
+    
+    private final int m_k;
+    
+    private double[][] m_levels = new double[1][];
+    private int[] m_sizes = new int[1];
+    private int[] m_caps;
+    private int m_capacity;
+    private long m_count;
+    private double m_min = Double.NaN;
+    private double m_max = Double.NaN;
+    private boolean m_flip;
+    
+    // sorted, weighted view of all retained values, built on demand
+    private double[] m_sorted;
+    private long[]   m_cumulative;
+    
+    /**
+     * Create a new QuantileSketch with the default accuracy.
+     */
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+    
+    /**
+     * Create a new QuantileSketch.
+     * @param k the accuracy parameter, the approximate number of values
+     * retained by the sketch. Larger values trade memory for accuracy.
+     */
+    public QuantileSketch(int k) {
+        if ( k < 8 ) {
+            throw new IllegalArgumentException(
+                "Accuracy parameter must be at least 8: "+k);
+        }
+        m_k = k;
+        m_levels[0] = new double[k];
+        updateCapacities();
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Create a new QuantileSketch as a copy of another one.
+     * @param sketch the sketch to copy
+     */
+    public QuantileSketch(QuantileSketch sketch) {
+        m_k = sketch.m_k;
+        m_levels = new double[sketch.m_levels.length][];
+        for ( int h=0; h<m_levels.length; ++h )
+            m_levels[h] = sketch.m_levels[h].clone();
+        m_sizes = sketch.m_sizes.clone();
+        m_caps = sketch.m_caps;
+        m_capacity = sketch.m_capacity;
+        m_count = sketch.m_count;
+        m_min = sketch.m_min;
+        m_max = sketch.m_max;
+        m_flip = sketch.m_flip;
+    }
+    
+    /**
+     * Add a value to the sketch.
+     * @param value the value to add, NaN values are ignored
+     */
+    public void update(double value) {
+        if ( Double.isNaN(value) ) return;
+        if ( m_count == 0 ) {
+            m_min = m_max = value;
+        } else {
+            if ( value < m_min ) m_min = value;
+            if ( value > m_max ) m_max = value;
+        }
+        ++m_count;
+        m_sorted = null;
+        
+        if ( getRetainedCount() >= m_capacity )
+            compress();
+        reserve(0, 1)[m_sizes[0]++] = value;
+    }
+    
+    /**
+     * Values can not be removed from a sketch.
+     * @return always false
+     * @see prefux.util.DistributionSummary#remove(double)
+     */
+    public boolean remove(double value) {
+        return false;
+    }
+    
+    /**
+     * Merge another QuantileSketch into this one. The retained values of
+     * the other sketch are added to the levels of matching weight, which
+     * are then compacted as needed.
+     * @see prefux.util.DistributionSummary#merge(prefux.util.DistributionSummary)
+     */
+    public void merge(DistributionSummary other) {
+        if ( !(other instanceof QuantileSketch) ) {
+            throw new IllegalArgumentException(
+                "Can only merge with another QuantileSketch");
+        }
+        QuantileSketch q = (QuantileSketch)other;
+        if ( q.m_count == 0 ) return;
+        if ( m_count == 0 ) {
+            m_min = q.m_min;
+            m_max = q.m_max;
+        } else {
+            m_min = Math.min(m_min, q.m_min);
+            m_max = Math.max(m_max, q.m_max);
+        }
+        while ( m_levels.length < q.m_levels.length )
+            addLevel();
+        for ( int h=0; h<q.m_levels.length; ++h )
+            append(h, q.m_levels[h], q.m_sizes[h]);
+        m_count += q.m_count;
+        m_sorted = null;
+        compress();
+    }
+    
+    /**
+     * @see prefux.util.DistributionSummary#copy()
+     */
+    public DistributionSummary copy() {
+        return new QuantileSketch(this);
+    }
+    
+    /**
+     * Get the number of values added to the sketch.
+     * @return the number of values
+     */
+    public long getCount() {
+        return m_count;
+    }
+    
+    /**
+     * Get the smallest value added to the sketch.
+     * @return the minimum value, or NaN if the sketch is empty
+     */
+    public double getMinimum() {
+        return m_min;
+    }
+    
+    /**
+     * Get the largest value added to the sketch.
+     * @return the maximum value, or NaN if the sketch is empty
+     */
+    public double getMaximum() {
+        return m_max;
+    }
+    
+    /**
+     * Get the number of values currently retained by the sketch.
+     * @return the number of retained values
+     */
+    public int getRetainedCount() {
+        int n = 0;
+        for ( int h=0; h<m_sizes.length; ++h )
+            n += m_sizes[h];
+        return n;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Compaction
+    
+    /**
+     * Compute the level capacities for the current number of levels. The
+     * top level holds k values, each level below two thirds of the level
+     * above it.
+     */
+    private void updateCapacities() {
+        int n = m_levels.length;
+        m_caps = new int[n];
+        m_capacity = 0;
+        for ( int h=0; h<n; ++h ) {
+            m_caps[h] = Math.max(2,
+                (int)Math.ceil(m_k * Math.pow(SHRINK, n-1-h)));
+            m_capacity += m_caps[h];
+        }
+    }
+    
+    /**
+     * Compact the lowest level that exceeds its capacity, as often as
+     * needed to bring the sketch back within its total capacity.
+     */
+    private void compress() {
+        while ( getRetainedCount() >= m_capacity ) {
+            int h = 0;
+            while ( m_sizes[h] < m_caps[h] ) ++h;
+            if ( h+1 == m_levels.length )
+                addLevel();
+            compact(h);
+        }
+    }
+    
+    private void addLevel() {
+        int n = m_levels.length;
+        m_levels = Arrays.copyOf(m_levels, n+1);
+        m_sizes = Arrays.copyOf(m_sizes, n+1);
+        updateCapacities();
+        m_levels[n] = new double[m_caps[n]];
+    }
+    
+    /**
+     * Sort a level and promote every other value to the next level.
+     */
+    private void compact(int h) {
+        double[] a = m_levels[h];
+        int n = m_sizes[h];
+        // an odd value out stays behind
+        int keep = n & 1;
+        Arrays.sort(a, 0, n);
+        int offset = ( m_flip ? 1 : 0 );
+        m_flip = !m_flip;
+        
+        int up = (n - keep) / 2;
+        double[] b = reserve(h+1, up);
+        int bn = m_sizes[h+1];
+        for ( int i=keep+offset; i<n; i+=2 )
+            b[bn++] = a[i];
+        m_sizes[h+1] = bn;
+        m_sizes[h] = keep;
+    }
+    
+    /**
+     * Make room for the given number of additional values on a level.
+     */
+    private double[] reserve(int h, int n) {
+        double[] a = m_levels[h];
+        if ( m_sizes[h] + n > a.length ) {
+            a = m_levels[h] = Arrays.copyOf(a,
+                    Math.max(2*a.length, m_sizes[h]+n));
+        }
+        return a;
+    }
+    
+    /**
+     * Append values to a level.
+     */
+    private void append(int h, double[] values, int n) {
+        double[] a = reserve(h, n);
+        System.arraycopy(values, 0, a, m_sizes[h], n);
+        m_sizes[h] += n;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Queries
+    
+    /**
+     * Build the sorted, weighted view of the retained values.
+     */
+    private void prepare() {
+        if ( m_sorted != null ) return;
+        int n = getRetainedCount();
+        double[] v = new double[n];
+        long[] w = new long[n];
+        int i = 0;
+        for ( int h=0; h<m_levels.length; ++h ) {
+            long weight = 1L << h;
+            for ( int j=0; j<m_sizes[h]; ++j, ++i ) {
+                v[i] = m_levels[h][j];
+                w[i] = weight;
+            }
+        }
+        // sort values together with their weights
+        long[] cumulative = new long[n];
+        Integer[] idx = new Integer[n];
+        for ( int j=0; j<n; ++j ) idx[j] = j;
+        Arrays.sort(idx, (a, b) -> Double.compare(v[a], v[b]));
+        double[] sorted = new double[n];
+        long sum = 0;
+        for ( int j=0; j<n; ++j ) {
+            sorted[j] = v[idx[j]];
+            sum += w[idx[j]];
+            cumulative[j] = sum;
+        }
+        m_sorted = sorted;
+        m_cumulative = cumulative;
+    }
+    
+    /**
+     * Get the value at a given rank.
+     * @param rank the zero-based rank, between 0 and count-1
+     * @return the retained value whose weight interval covers the rank.
+     * Compaction preserves the total weight, so ranks and counts agree.
+     */
+    private double valueAt(long rank) {
+        int lo = 0, hi = m_cumulative.length-1;
+        while ( lo < hi ) {
+            int mid = (lo+hi) >>> 1;
+            if ( m_cumulative[mid] > rank ) {
+                hi = mid;
+            } else {
+                lo = mid+1;
+            }
+        }
+        return m_sorted[lo];
+    }
+    
+    /**
+     * Get an approximate quantile of the values added to the sketch.
+     * @param p the quantile, between 0 and 1 (0.5 is the median)
+     * @return the approximate quantile value, or NaN if the sketch is empty
+     */
+    public double getQuantile(double p) {
+        if ( m_count == 0 ) return Double.NaN;
+        if ( p <= 0 ) return m_min;
+        if ( p >= 1 ) return m_max;
+        prepare();
+        return valueAt((long)(p*(m_count-1)));
+    }
+    
+    /**
+     * Compute approximate n-quantile boundaries, in the format used by
+     * {@link MathLib#quantiles(int, double[])}: an n+1 size array holding
+     * the minimum value followed by the n quantile boundaries.
+     * @param n the number of quantiles
+     * @return an n+1 array of the minimum and the quantile boundaries
+     */
+    public double[] getQuantiles(int n) {
+        double[] qtls = new double[n+1];
+        if ( m_count == 0 ) {
+            Arrays.fill(qtls, Double.NaN);
+            return qtls;
+        }
+        prepare();
+        for ( int i=0; i<=n; ++i ) {
+            qtls[i] = valueAt(((m_count-1)*i)/n);
+        }
+        qtls[0] = m_min;
+        qtls[n] = m_max;
+        return qtls;
+    }
+    
+    /**
+     * Get the approximate fraction of values less than or equal to the
+     * given value.
+     * @param value the value to rank
+     * @return the approximate rank, as a value between 0 and 1
+     */
+    public double getRank(double value) {
+        if ( m_count == 0 ) return Double.NaN;
+        prepare();
+        int lo = 0, hi = m_sorted.length;
+        while ( lo < hi ) {
+            int mid = (lo+hi) >>> 1;
+            if ( m_sorted[mid] <= value ) {
+                lo = mid+1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo == 0 ? 0 : m_cumulative[lo-1] /
+            (double)m_cumulative[m_cumulative.length-1];
+    }
+    
+    /**
+     * Remove all values from the sketch.
+     */
+    public void clear() {
+        m_levels = new double[][] { new double[m_k] };
+        m_sizes = new int[1];
+        updateCapacities();
+        m_count = 0;
+        m_min = m_max = Double.NaN;
+        m_sorted = null;
+        m_cumulative = null;
+    }
+    
+} // end of class QuantileSketch
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ *
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks on a pool of worker threads such that tasks submitted under
+ * the same key run one after the other, in the order of submission, while
+ * tasks under different keys may run concurrently. Keys are compared by
+ * identity. The tasks of a key are queued in a lane that occupies at most
+ * one worker at a time; a lane is dropped once it runs out of tasks, so
+ * no reference to the key is kept.
+ *
+ * <p>A task that throws does not stop its lane: the exception is passed to
+ * the uncaught exception handler of the worker thread, and the following
+ * tasks of the key are still run.</p>
+ */
+public class SerialExecutor {
+
+    private final Executor m_workers;
+
+    // task queues of the keys, guarded by the map itself
+    private final Map<Object,Lane> m_lanes = new IdentityHashMap<>();
+
+    /**
+     * Create a new SerialExecutor.
+     * @param workers the executor running the lanes
+     */
+    public SerialExecutor(Executor workers) {
+        m_workers = workers;
+    }
+
+    /**
+     * Run a task after all tasks previously submitted under the same key.
+     * @param key the key ordering the task
+     * @param task the task to run
+     * @throws RejectedExecutionException if the workers do not accept the
+     *  lane of the key
+     */
+    public void execute(Object key, Runnable task) {
+        Lane start = null;
+        synchronized ( m_lanes ) {
+            Lane lane = m_lanes.get(key);
+            if ( lane == null ) {
+                lane = new Lane(key);
+                m_lanes.put(key, lane);
+            }
+            lane.tasks.add(task);
+            if ( !lane.active ) {
+                lane.active = true;
+                start = lane;
+            }
+        }
+        if ( start == null )
+            return;
+        try {
+            m_workers.execute(start);
+        } catch ( RejectedExecutionException e ) {
+            synchronized ( m_lanes ) {
+                m_lanes.remove(key);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the tasks of one key one after the other on a worker.
+     */
+    private final class Lane implements Runnable {
+        final Object key;
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        boolean active;
+
+        Lane(Object key) {
+            this.key = key;
+        }
+
+        public void run() {
+            while ( true ) {
+                Runnable task;
+                synchronized ( m_lanes ) {
+                    task = tasks.poll();
+                    if ( task == null ) {
+                        active = false;
+                        m_lanes.remove(key);
+                        return;
+                    }
+                }
+                try {
+                    task.run();
+                } catch ( RuntimeException | Error e ) {
+                    // keep the lane alive for the following tasks
+                    Thread t = Thread.currentThread();
+                    t.getUncaughtExceptionHandler().uncaughtException(t, e);
+                }
+            }
+        }
+    } // end of inner class Lane
+
+} // end of class SerialExecutor
@@ -105,6 +105,7 @@ public abstract class AbstractTreeMap implements IntSortedMap {
     public void clear() {
         ++modCount;
         size = 0;
+        unique = 0;
         root = NIL;
     }
 
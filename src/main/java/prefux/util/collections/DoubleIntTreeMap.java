@@ -72,6 +72,7 @@ public class DoubleIntTreeMap extends AbstractTreeMap implements DoubleIntSorted
     public void clear() {
         ++modCount;
         size = 0;
+        unique = 0;
         root = NIL;
     }
 
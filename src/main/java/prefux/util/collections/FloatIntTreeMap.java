@@ -72,6 +72,7 @@ public class FloatIntTreeMap extends AbstractTreeMap implements FloatIntSortedMa
     public void clear() {
         ++modCount;
         size = 0;
+        unique = 0;
         root = NIL;
     }
 
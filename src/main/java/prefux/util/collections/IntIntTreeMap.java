@@ -72,6 +72,7 @@ public class IntIntTreeMap extends AbstractTreeMap implements IntIntSortedMap {
     public void clear() {
         ++modCount;
         size = 0;
+        unique = 0;
         root = NIL;
     }
 
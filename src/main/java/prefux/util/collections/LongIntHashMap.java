@@ -0,0 +1,203 @@
+/*  
+ * Copyright (c) 2004-2013 Regents of the University of California.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 3.  Neither the name of the University nor the names of its contributors
+ * may be used to endorse or promote products derived from this software
+ * without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE REGENTS AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * 
+ * Copyright (c) 2014 Martin Stockhammer
+ */
+package prefux.util.collections;
+
+import java.util.Arrays;
+
+/**
+ * Hash map holding (key,value) associations of type <tt>(long-->int)</tt>,
+ * implemented with open addressing and linear probing. Removal shifts
+ * following entries back instead of leaving tombstones, so lookups stay
+ * short under heavy add/remove churn, and no method other than a resize
+ * allocates. Values are expected to be non-negative; -1 is returned for
+ * missing keys.
+ */
+public class LongIntHashMap {
+
+    /** Value returned for keys not contained in the map */
+    public static final int NO_VALUE = -1;
+    
+    private static final int MIN_CAPACITY = 16;
+    
+    private long[]    m_keys;
+    private int[]     m_values;
+    private boolean[] m_used;
+    private int m_size;
+    private int m_mask;
+    
+    /**
+     * Create a new, empty LongIntHashMap.
+     */
+    public LongIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+    
+    /**
+     * Create a new, empty LongIntHashMap.
+     * @param expected the number of entries to make room for
+     */
+    public LongIntHashMap(int expected) {
+        allocate(tableSize(expected));
+    }
+    
+    private static int tableSize(int expected) {
+        int n = MIN_CAPACITY;
+        while ( n < 2L*expected ) n <<= 1;
+        return n;
+    }
+    
+    private void allocate(int n) {
+        m_keys = new long[n];
+        m_values = new int[n];
+        m_used = new boolean[n];
+        m_mask = n-1;
+    }
+    
+    private int slot(long key) {
+        // 64 bit mix (murmur3 finalizer)
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int)key & m_mask;
+    }
+    
+    // ------------------------------------------------------------------------
+    
+    /**
+     * Get the number of entries in the map.
+     * @return the number of entries
+     */
+    public int size() {
+        return m_size;
+    }
+    
+    /**
+     * Get the value for a key.
+     * @param key the key to look up
+     * @return the value, or {@link #NO_VALUE} if the key is not contained
+     */
+    public int get(long key) {
+        for ( int i=slot(key); m_used[i]; i=(i+1)&m_mask ) {
+            if ( m_keys[i] == key ) return m_values[i];
+        }
+        return NO_VALUE;
+    }
+    
+    /**
+     * Indicates if the map contains a key.
+     * @param key the key to look up
+     * @return true if the key is contained
+     */
+    public boolean containsKey(long key) {
+        for ( int i=slot(key); m_used[i]; i=(i+1)&m_mask ) {
+            if ( m_keys[i] == key ) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Associate a value with a key.
+     * @param key the key
+     * @param value the value to store
+     * @return the previous value, or {@link #NO_VALUE} if the key is new
+     */
+    public int put(long key, int value) {
+        int i = slot(key);
+        for ( ; m_used[i]; i=(i+1)&m_mask ) {
+            if ( m_keys[i] == key ) {
+                int prev = m_values[i];
+                m_values[i] = value;
+                return prev;
+            }
+        }
+        m_used[i] = true;
+        m_keys[i] = key;
+        m_values[i] = value;
+        if ( ++m_size > (m_mask+1) / 2 )
+            rehash(2*(m_mask+1));
+        return NO_VALUE;
+    }
+    
+    /**
+     * Remove a key from the map.
+     * @param key the key to remove
+     * @return the removed value, or {@link #NO_VALUE} if the key was not
+     * contained
+     */
+    public int remove(long key) {
+        int i = slot(key);
+        for ( ; m_used[i]; i=(i+1)&m_mask ) {
+            if ( m_keys[i] == key ) break;
+        }
+        if ( !m_used[i] ) return NO_VALUE;
+        int value = m_values[i];
+        
+        // shift back following entries of the probe sequence
+        for ( int j=(i+1)&m_mask; m_used[j]; j=(j+1)&m_mask ) {
+            int home = slot(m_keys[j]);
+            // move entry j to the gap at i if its home does not lie in (i,j]
+            if ( ((j - home) & m_mask) >= ((j - i) & m_mask) ) {
+                m_keys[i] = m_keys[j];
+                m_values[i] = m_values[j];
+                i = j;
+            }
+        }
+        m_used[i] = false;
+        --m_size;
+        return value;
+    }
+    
+    /**
+     * Remove all entries from the map.
+     */
+    public void clear() {
+        Arrays.fill(m_used, false);
+        m_size = 0;
+    }
+    
+    private void rehash(int n) {
+        long[] keys = m_keys;
+        int[] values = m_values;
+        boolean[] used = m_used;
+        allocate(n);
+        for ( int i=0; i<keys.length; ++i ) {
+            if ( !used[i] ) continue;
+            int j = slot(keys[i]);
+            while ( m_used[j] ) j = (j+1)&m_mask;
+            m_used[j] = true;
+            m_keys[j] = keys[i];
+            m_values[j] = values[i];
+        }
+    }
+    
+} // end of class LongIntHashMap
@@ -72,6 +72,7 @@ public class LongIntTreeMap extends AbstractTreeMap implements LongIntSortedMap
     public void clear() {
         ++modCount;
         size = 0;
+        unique = 0;
         root = NIL;
     }
 
@@ -34,16 +34,18 @@
  */
 package prefux.visual;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import prefux.Visualization;
 import prefux.data.Schema;
 import prefux.data.Table;
 import prefux.data.Tuple;
 import prefux.data.event.EventConstants;
-import prefux.data.util.Index;
-import prefux.util.collections.IntIterator;
+import prefux.util.collections.LongIntHashMap;
 import prefux.visual.tuple.TableAggregateItem;
 
 /**
@@ -52,13 +54,36 @@ import prefux.visual.tuple.TableAggregateItem;
  * a mapping between AggregateItems and the VisualItems contained within
  * those aggregates.
  * 
+ * <p>The members of each aggregate are kept in arrays per aggregate row.
+ * For every table the members come from, a primitive hash index maps
+ * (aggregate row, member row) pairs to the member's position in those
+ * arrays, and a list per member row records the aggregates containing it.
+ * Adding, removing and testing membership take constant time and do not
+ * allocate; removal moves the last member into the freed position. Members
+ * that have become invalid are dropped lazily when an aggregate is
+ * iterated or sized. Iterators work on a snapshot of the members, so
+ * aggregates may be changed while they are iterated.</p>
+ * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
 public class AggregateTable extends VisualTable {
 
     /**
-     * Table storing the 1->Many aggregation mappings
+     * Members of each aggregate, indexed by aggregate row
+     */
+    private Members[] m_members = new Members[0];
+    
+    /**
+     * Membership indices, one per member table
+     */
+    private ArrayList<MemberIndex> m_indices = new ArrayList<>();
+    
+    /**
+     * Table that used to store the 1->Many aggregation mappings.
+     * @deprecated aggregate membership is kept in member arrays, this
+     * table stays empty
      */
+    @Deprecated
     protected Table m_aggregated;
     
     /**
@@ -79,8 +104,6 @@ public class AggregateTable extends VisualTable {
     public AggregateTable(Visualization vis, String group, Schema schema) {
         super(vis, group, schema, TableAggregateItem.class);
         m_aggregated = AGGREGATED_SCHEMA.instantiate();
-        m_aggregated.index(AGGREGATE);
-        m_aggregated.index(MEMBER_HASH);
     }
     
     // ------------------------------------------------------------------------
@@ -91,10 +114,10 @@ public class AggregateTable extends VisualTable {
      * @return the aggregate size for the given row
      */
     public int getAggregateSize(int row) {
-        int size = 0;
-        AggregatedIterator ati = new AggregatedIterator(row);
-        for ( ; ati.hasNext(); ++size, ati.next() );
-        return size;
+        Members m = members(row);
+        if ( m == null ) return 0;
+        purge(row, m);
+        return m.size;
     }
     
     /**
@@ -104,14 +127,29 @@ public class AggregateTable extends VisualTable {
      */
     public void addToAggregate(int row, VisualItem member) {
         validRowCheck(row, true);
-        if ( !aggregateContains(row, member) ) {
-            int ar = m_aggregated.addRow();
-            m_aggregated.setInt(ar, AGGREGATE, row);
-            m_aggregated.setInt(ar, MEMBER_HASH, getHashCode(member));
-            m_aggregated.set(ar, MEMBER, member);
-            fireTableEvent(row, row,
-                    EventConstants.ALL_COLUMNS, EventConstants.UPDATE);
+        int mrow = member.getRow();
+        if ( mrow < 0 ) return; // invalid items are never members
+        
+        MemberIndex mi = getMemberIndex(member.getTable(), true);
+        long key = key(row, mrow);
+        int pos = mi.positions.get(key);
+        if ( pos >= 0 ) {
+            Members m = m_members[row];
+            if ( m.items[pos] == member ) return;
+            // the member row was reused by a new item, replace the old one
+            m.items[pos] = member;
+        } else {
+            if ( row >= m_members.length ) {
+                m_members = Arrays.copyOf(m_members,
+                        Math.max(row+1, 3*m_members.length/2+1));
+            }
+            Members m = m_members[row];
+            if ( m == null ) m = m_members[row] = new Members();
+            mi.positions.put(key, m.add(member, mrow, mi.id));
+            mi.addAggregate(mrow, row);
         }
+        fireTableEvent(row, row,
+                EventConstants.ALL_COLUMNS, EventConstants.UPDATE);
     }
     
     /**
@@ -121,9 +159,9 @@ public class AggregateTable extends VisualTable {
      */
     public void removeFromAggregate(int row, VisualItem member) {
         validRowCheck(row, true);
-        int ar = getAggregatedRow(row, member);
-        if ( ar >= 0 ) {
-            m_aggregated.removeRow(ar);
+        int pos = getMemberPosition(row, member);
+        if ( pos >= 0 ) {
+            removeMember(row, m_members[row], pos);
             fireTableEvent(row, row,
                 EventConstants.ALL_COLUMNS, EventConstants.UPDATE);
         }
@@ -144,18 +182,15 @@ public class AggregateTable extends VisualTable {
      * @param update indicates whether or not to fire a table update
      */
     protected void clearAggregateMappings(int row, boolean update) {
-        Index index = m_aggregated.index(AGGREGATE);
-        boolean fire = false;
-        for ( IntIterator rows = index.rows(row); rows.hasNext(); ) {
-            int r = rows.nextInt();
-            // this removal maneuver is ok because we know we are
-            // pulling row values directly from an index
-            // with intervening iterators, remove might throw an exception
-            rows.remove();
-            m_aggregated.removeRow(r);
-            fire = true;
+        Members m = members(row);
+        if ( m == null || m.size == 0 ) return;
+        for ( int i=0; i<m.size; ++i ) {
+            MemberIndex mi = m_indices.get(m.tables[i]);
+            mi.positions.remove(key(row, m.rows[i]));
+            mi.removeAggregate(m.rows[i], row);
         }
-        if ( update && fire ) 
+        m_members[row] = null;
+        if ( update ) 
             fireTableEvent(row, row,
                 EventConstants.ALL_COLUMNS, EventConstants.UPDATE);
     }
@@ -167,33 +202,40 @@ public class AggregateTable extends VisualTable {
      * @return true if the item is in the aggregate, false otherwise
      */
     public boolean aggregateContains(int row, VisualItem member) {
-        return getAggregatedRow(row, member) >= 0;
+        return getMemberPosition(row, member) >= 0;
     }
     
+    /**
+     * Get the position of an item within the member array of the
+     * aggregate at the given row.
+     * @param row the table row of the aggregate
+     * @param member the VisualItem to look up
+     * @return the position of the member in the aggregate, or -1 if the
+     * item is not a member of the aggregate
+     */
+    protected int getMemberPosition(int row, Tuple member) {
+        Members m = members(row);
+        int mrow = member.getRow();
+        if ( m == null || mrow < 0 ) return -1;
+        MemberIndex mi = getMemberIndex(member.getTable(), false);
+        if ( mi == null ) return -1;
+        int pos = mi.positions.get(key(row, mrow));
+        return ( pos >= 0 && m.items[pos] == member ? pos : -1 );
+    }
+
     /**
      * Get the row index to the aggregate mapping table for the given
      * aggregate and contained VisualItem.
      * @param row the table row of the aggregate
      * @param member the VisualItem to look up
-     * @return the row index into the internal aggregate mapping table for the
-     * mapping between the given aggregate row and given VisualItem
+     * @return the position of the member in the aggregate, or -1 if the
+     * item is not a member of the aggregate
+     * @deprecated the mapping table is no longer used, use
+     * {@link #getMemberPosition(int, Tuple)}
      */
+    @Deprecated
     protected int getAggregatedRow(int row, VisualItem member) {
-        Index index = m_aggregated.index(MEMBER_HASH);
-        int hash = getHashCode(member);
-        int ar = index.get(hash);
-        if ( ar < 0 ) {
-            return -1;
-        } else if ( m_aggregated.getInt(ar, AGGREGATE) == row ) {
-            return ar;
-        } else {
-            for ( IntIterator rows = index.rows(hash); rows.hasNext(); ) {
-                ar = rows.nextInt();
-                if ( m_aggregated.getInt(ar, AGGREGATE) == row )
-                    return ar;
-            }
-            return -1;
-        }
+        return getMemberPosition(row, member);
     }
     
     /**
@@ -211,24 +253,22 @@ public class AggregateTable extends VisualTable {
      * @return an iterator over all AggregateItems that contain the input Tuple
      */
     public Iterator<? extends Tuple> getAggregates(Tuple t) {
-        int hash = getHashCode(t);
-        IntIterator iit = m_aggregated.getIndex(MEMBER_HASH).rows(hash);
-        HashSet<Tuple> set = new HashSet<>();
-        while ( iit.hasNext() ) {
-            int r = iit.nextInt();
-            set.add(getTuple(m_aggregated.getInt(r, AGGREGATE)));
+        int mrow = t.getRow();
+        MemberIndex mi = getMemberIndex(t.getTable(), false);
+        if ( mrow < 0 || mi == null || mrow >= mi.counts.length ) {
+            return Collections.<Tuple>emptyIterator();
         }
-        return set.iterator();
+        return new AggregatesIterator(t, mi, mrow);
     }
     
     /**
      * Get a hashcode that uniquely identifies a particular tuple
      * @param t the tuple to compute the hash for
      * @return a unique identifier for the tuple
+     * @deprecated members are no longer looked up by hash code
      */
+    @Deprecated
     protected int getHashCode(Tuple t) {
-        // this works for now because hashCode is not overloaded on
-        // the provided Tuple implementations
         return t.hashCode();
     }
     
@@ -250,6 +290,132 @@ public class AggregateTable extends VisualTable {
         }
     }
     
+    // ------------------------------------------------------------------------
+    // Membership Bookkeeping
+    
+    private static long key(int row, int member) {
+        return ((long)row << 32) | (member & 0xffffffffL);
+    }
+    
+    private Members members(int row) {
+        return ( row >= 0 && row < m_members.length ? m_members[row] : null );
+    }
+    
+    /**
+     * Get the membership index for a member table.
+     */
+    private MemberIndex getMemberIndex(Table table, boolean create) {
+        for ( int i=0; i<m_indices.size(); ++i ) {
+            MemberIndex mi = m_indices.get(i);
+            if ( mi.table == table ) return mi;
+        }
+        if ( !create ) return null;
+        MemberIndex mi = new MemberIndex(table, m_indices.size());
+        m_indices.add(mi);
+        return mi;
+    }
+    
+    /**
+     * Remove the member at the given position of an aggregate.
+     */
+    private void removeMember(int row, Members m, int pos) {
+        MemberIndex mi = m_indices.get(m.tables[pos]);
+        mi.positions.remove(key(row, m.rows[pos]));
+        mi.removeAggregate(m.rows[pos], row);
+        int last = m.size-1;
+        if ( pos != last ) {
+            // move the last member into the gap
+            m.items[pos]  = m.items[last];
+            m.rows[pos]   = m.rows[last];
+            m.tables[pos] = m.tables[last];
+            m_indices.get(m.tables[pos]).positions.put(
+                    key(row, m.rows[pos]), pos);
+        }
+        m.items[last] = null;
+        m.size = last;
+    }
+    
+    /**
+     * Drop members of an aggregate that are no longer valid.
+     */
+    private void purge(int row, Members m) {
+        for ( int i=m.size; --i >= 0; ) {
+            if ( !m.items[i].isValid() )
+                removeMember(row, m, i);
+        }
+    }
+    
+    /**
+     * Member arrays of a single aggregate. The member row and table are
+     * kept along with the item, as invalid items no longer report them.
+     */
+    private static class Members {
+        Tuple[] items  = new Tuple[4];
+        int[]   rows   = new int[4];
+        int[]   tables = new int[4];
+        int     size;
+        
+        int add(Tuple t, int row, int table) {
+            if ( size == items.length ) {
+                int n = 2*size;
+                items  = Arrays.copyOf(items, n);
+                rows   = Arrays.copyOf(rows, n);
+                tables = Arrays.copyOf(tables, n);
+            }
+            items[size] = t;
+            rows[size] = row;
+            tables[size] = table;
+            return size++;
+        }
+    }
+    
+    /**
+     * Membership index for the members coming from a single table.
+     */
+    private static class MemberIndex {
+        final Table table;
+        final int id;
+        /** (aggregate row, member row) to position in the member arrays */
+        final LongIntHashMap positions = new LongIntHashMap();
+        /** aggregate rows containing each member row */
+        int[][] aggregates = new int[0][];
+        int[]   counts = new int[0];
+        
+        MemberIndex(Table table, int id) {
+            this.table = table;
+            this.id = id;
+        }
+        
+        void addAggregate(int member, int agg) {
+            if ( member >= counts.length ) {
+                int n = Math.max(member+1, 3*counts.length/2+1);
+                aggregates = Arrays.copyOf(aggregates, n);
+                counts = Arrays.copyOf(counts, n);
+            }
+            int[] a = aggregates[member];
+            int c = counts[member];
+            if ( a == null ) {
+                a = aggregates[member] = new int[2];
+            } else if ( c == a.length ) {
+                a = aggregates[member] = Arrays.copyOf(a, 2*c);
+            }
+            a[c] = agg;
+            counts[member] = c+1;
+        }
+        
+        void removeAggregate(int member, int agg) {
+            int[] a = aggregates[member];
+            int c = counts[member];
+            for ( int i=0; i<c; ++i ) {
+                if ( a[i] == agg ) {
+                    a[i] = a[c-1];
+                    counts[member] = c-1;
+                    return;
+                }
+            }
+        }
+    }
+    
     // ------------------------------------------------------------------------
     // Table Listener Interception
     
@@ -272,31 +438,39 @@ public class AggregateTable extends VisualTable {
      * Iterator instance that iterates over the items contained in an aggregate.
      */
     protected class AggregatedIterator implements Iterator<Tuple> {
-        private IntIterator m_rows;
+        private int m_row;
+        private Tuple[] m_items;
+        private int m_pos;
         private Tuple m_next = null;
 
         public AggregatedIterator(int row) {
-            Index index = m_aggregated.index(AGGREGATE);
-            m_rows = index.rows(row);
+            m_row = row;
+            Members m = members(row);
+            if ( m == null ) {
+                m_items = new Tuple[0];
+            } else {
+                purge(row, m);
+                m_items = Arrays.copyOf(m.items, m.size);
+            }
             advance();
         }
         public boolean hasNext() {
             return m_next != null;
         }
         public Tuple next() {
+            if ( m_next == null )
+                throw new NoSuchElementException();
             Tuple retval = m_next;
             advance();
             return retval;
         }
         private void advance() {
-            while ( m_rows.hasNext() ) {
-                int ar = m_rows.nextInt();
-                Tuple t = (Tuple)m_aggregated.get(ar, MEMBER);
-                if ( t.isValid() ) {
+            while ( m_pos < m_items.length ) {
+                Tuple t = m_items[m_pos++];
+                // skip members removed or invalidated since the snapshot
+                if ( getMemberPosition(m_row, t) >= 0 ) {
                     m_next = t;
                     return;
-                } else {
-                    m_aggregated.removeRow(ar);
                 }
             }
             m_next = null;
@@ -306,12 +480,64 @@ public class AggregateTable extends VisualTable {
         }
     }
     
+    /**
+     * Iterator over the aggregates containing a tuple. It works on a
+     * snapshot of the aggregate list of the tuple, so that the tuple may
+     * be added to or removed from aggregates while iterating.
+     */
+    private class AggregatesIterator implements Iterator<Tuple> {
+        private final Tuple m_member;
+        private final int[] m_aggregates;
+        private int m_pos;
+        private int m_next = -1;
+        
+        AggregatesIterator(Tuple member, MemberIndex mi, int mrow) {
+            m_member = member;
+            m_aggregates = ( mi.counts[mrow] == 0 ? new int[0]
+                : Arrays.copyOf(mi.aggregates[mrow], mi.counts[mrow]) );
+            advance();
+        }
+        public boolean hasNext() {
+            return m_next >= 0;
+        }
+        public Tuple next() {
+            if ( m_next < 0 )
+                throw new NoSuchElementException();
+            Tuple retval = getTuple(m_next);
+            advance();
+            return retval;
+        }
+        private void advance() {
+            while ( m_pos < m_aggregates.length ) {
+                int agg = m_aggregates[m_pos++];
+                // skip entries left behind by an earlier item at this row,
+                // and aggregates the tuple was removed from since
+                if ( getMemberPosition(agg, m_member) >= 0 ) {
+                    m_next = agg;
+                    return;
+                }
+            }
+            m_next = -1;
+        }
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
     // ------------------------------------------------------------------------
     // Aggregated Table Schema
     
+    /** @deprecated the aggregate mapping table is no longer used */
+    @Deprecated
     protected static final String AGGREGATE = "aggregate";
+    /** @deprecated the aggregate mapping table is no longer used */
+    @Deprecated
     protected static final String MEMBER_HASH = "hash";
+    /** @deprecated the aggregate mapping table is no longer used */
+    @Deprecated
     protected static final String MEMBER = "member";
+    /** @deprecated the aggregate mapping table is no longer used */
+    @Deprecated
     protected static final Schema AGGREGATED_SCHEMA = new Schema();
     static {
         AGGREGATED_SCHEMA.addColumn(AGGREGATE, int.class);
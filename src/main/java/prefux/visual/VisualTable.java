@@ -38,9 +38,16 @@ import prefux.data.CascadedTable;
 import prefux.data.Schema;
 import prefux.data.Table;
 import prefux.data.Tuple;
+import prefux.data.column.AbstractColumn;
+import prefux.data.column.Column;
+import prefux.data.column.DoubleColumn;
+import prefux.data.column.IntColumn;
 import prefux.data.event.EventConstants;
 import prefux.data.expression.Predicate;
 import prefux.data.util.Rectangle2D;
+import prefux.util.ColorLib;
+import prefux.util.PrefuseLib;
+import prefux.visual.expression.VisiblePredicate;
 import prefux.visual.tuple.TableVisualItem;
 
 /**
@@ -59,6 +66,7 @@ public class VisualTable extends CascadedTable implements VisualTupleSet {
 
     private Visualization m_vis;
     private String m_group;
+    private int[] m_interpRows; // row buffer for bulk interpolation
 
 
     // ------------------------------------------------------------------------
@@ -197,8 +205,21 @@ public class VisualTable extends CascadedTable implements VisualTupleSet {
         // table attributes changed, so we invalidate the bounds
         if (type == EventConstants.UPDATE) {
             if (col != VisualItem.IDX_VALIDATED) {
-                for (int r = row0; r <= row1; ++r)
-                    setValidated(r, false);
+                if (row0 == row1) {
+                    setValidated(row0, false);
+                } else {
+                    // invalidate a range of rows as a batch, reported with
+                    // a single event rather than one event per row
+                    AbstractColumn vc = (AbstractColumn) getColumn(
+                            VisualItem.IDX_VALIDATED);
+                    vc.deferEvents();
+                    try {
+                        for (int r = row0; r <= row1; ++r)
+                            setValidated(r, false);
+                    } finally {
+                        vc.resumeEvents();
+                    }
+                }
             } else {
                 // change in validated status
                 for (int r = row0; r <= row1; ++r) {
@@ -280,6 +301,132 @@ public class VisualTable extends CascadedTable implements VisualTupleSet {
         return getItem(addRow());
     }
 
+    // ------------------------------------------------------------------------
+    // Bulk Interpolation
+
+    /**
+     * Linearly interpolate the given fields between their starting and
+     * ending values, e.g. from {@link VisualItem#STARTX} and
+     * {@link VisualItem#ENDX} into {@link VisualItem#X}, for all items
+     * matching the filter. Fields stored in local double columns are
+     * interpolated directly on the column arrays, other fields row by row.
+     * Either way, listeners receive a single update event per changed field.
+     * 
+     * @param fields
+     *            the interpolated fields to process
+     * @param frac
+     *            the interpolation fraction
+     * @param filter
+     *            the predicate selecting the items to process, null for all
+     *            items
+     */
+    public void interpolate(String[] fields, double frac, Predicate filter) {
+        int len = selectRows(filter);
+        if (len == 0)
+            return;
+        int[] rows = m_interpRows;
+        for (String field : fields) {
+            Column c = getLocalColumn(field);
+            Column s = getLocalColumn(PrefuseLib.getStartField(field));
+            Column e = getLocalColumn(PrefuseLib.getEndField(field));
+            if (c instanceof DoubleColumn && s instanceof DoubleColumn
+                    && e instanceof DoubleColumn) {
+                ((DoubleColumn) c).interpolate((DoubleColumn) s,
+                        (DoubleColumn) e, frac, rows, len);
+                continue;
+            }
+            String sf = PrefuseLib.getStartField(field);
+            String ef = PrefuseLib.getEndField(field);
+            deferEvents();
+            try {
+                for (int i = 0; i < len; ++i) {
+                    int r = rows[i];
+                    double sv = getDouble(r, sf);
+                    setDouble(r, field, sv + frac * (getDouble(r, ef) - sv));
+                }
+            } finally {
+                resumeEvents();
+            }
+        }
+    }
+
+    /**
+     * Interpolate the given color fields between their starting and ending
+     * colors, as computed by {@link ColorLib#interp(int, int, double)}, for
+     * all items matching the filter. Fields stored in local int columns are
+     * interpolated directly on the column arrays, other fields row by row.
+     * Either way, listeners receive a single update event per changed field.
+     * 
+     * @param fields
+     *            the interpolated color fields to process
+     * @param frac
+     *            the interpolation fraction
+     * @param filter
+     *            the predicate selecting the items to process, null for all
+     *            items
+     */
+    public void interpolateColors(String[] fields, double frac,
+            Predicate filter) {
+        int len = selectRows(filter);
+        if (len == 0)
+            return;
+        int[] rows = m_interpRows;
+        for (String field : fields) {
+            Column c = getLocalColumn(field);
+            Column s = getLocalColumn(PrefuseLib.getStartField(field));
+            Column e = getLocalColumn(PrefuseLib.getEndField(field));
+            if (c instanceof IntColumn && s instanceof IntColumn
+                    && e instanceof IntColumn) {
+                ((IntColumn) c).interpolateColors((IntColumn) s,
+                        (IntColumn) e, frac, rows, len);
+                continue;
+            }
+            String sf = PrefuseLib.getStartField(field);
+            String ef = PrefuseLib.getEndField(field);
+            deferEvents();
+            try {
+                for (int i = 0; i < len; ++i) {
+                    int r = rows[i];
+                    setInt(r, field, ColorLib.interp(getInt(r, sf),
+                            getInt(r, ef), frac));
+                }
+            } finally {
+                resumeEvents();
+            }
+        }
+    }
+
+    /**
+     * Get a column stored by this table, as opposed to one inherited from
+     * the parent table, whose rows are not the rows of this table.
+     */
+    private Column getLocalColumn(String field) {
+        return hasColumn(field) ? getColumn(field) : null;
+    }
+
+    /**
+     * Collect the valid rows of the items matching the filter, in ascending
+     * order, into the reused row buffer.
+     * 
+     * @return the number of collected rows
+     */
+    private int selectRows(Predicate filter) {
+        int max = getMaximumRow() + 1;
+        int[] rows = m_interpRows;
+        if (rows == null || rows.length < max)
+            rows = m_interpRows = new int[max];
+        boolean visible = (filter == VisiblePredicate.TRUE);
+        int len = 0;
+        for (int r = 0; r < max; ++r) {
+            if (!isValidRow(r))
+                continue;
+            if (filter == null || (visible ? isVisible(r)
+                    : filter.getBoolean(getItem(r))))
+                rows[len++] = r;
+        }
+        return len;
+    }
+
     // ------------------------------------------------------------------------
     // VisualItem Data Access
 
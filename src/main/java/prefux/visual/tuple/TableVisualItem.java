@@ -37,7 +37,6 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import javafx.application.Platform;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleDoubleProperty;
@@ -60,6 +59,7 @@ import prefux.data.event.TableListener;
 import prefux.data.tuple.TableTuple;
 import prefux.data.tuple.TupleSet;
 import prefux.data.util.Rectangle2D;
+import prefux.render.BindingQueue;
 import prefux.render.Renderer;
 import prefux.visual.VisualItem;
 import prefux.visual.VisualTable;
@@ -770,15 +770,18 @@ public class TableVisualItem extends TableTuple<VisualTable> implements
 
 	@Override
 	public void tableChanged(Table t, int start, int end, int col, int type) {
+		// range updates are fired by bulk setters and deferred batches,
+		// see Table#deferEvents()
 		if (!ignoreTableUpdate && type == EventConstants.UPDATE
-		        && (start == m_row) && (start == end)) {
+		        && (start <= m_row) && (m_row <= end)
+		        && col != EventConstants.ALL_COLUMNS) {
 			String colName = getColumnName(col);
 			if (DOUBLE_PROPERTIES.containsKey(colName)) {
-				Platform.runLater(() -> {
+				BindingQueue.enqueue(() -> {
 					DOUBLE_PROPERTIES.get(colName).set(t.getDouble(m_row, col));
 				});
 			} else if (INT_PROPERTIES.containsKey(colName)) {
-				Platform.runLater(() -> {
+				BindingQueue.enqueue(() -> {
 					INT_PROPERTIES.get(colName).set(t.getInt(m_row, col));
 				});
 			}
@@ -0,0 +1,75 @@
+package prefux.action.distortion
+
+import prefux.Visualization
+import prefux.data.Table
+import prefux.data.util.Point2D
+import prefux.data.util.Rectangle2D
+import prefux.visual.VisualItem
+import prefux.visual.VisualTable
+import spock.lang.Specification
+
+class DistortionSpec extends Specification {
+
+    Visualization vis
+    List<VisualItem> items
+    FisheyeDistortion distortion
+
+    def setup() {
+        Random rnd = new Random(11)
+        Table table = new Table()
+        table.addColumn("id", int.class)
+        200.times { table.setInt(table.addRow(), "id", it) }
+        vis = new Visualization()
+        VisualTable vt = (VisualTable)vis.addTable("data", table)
+        items = (0..<200).collect { vt.getItem(it) }
+        items.each {
+            it.setEndX(rnd.nextInt(500))
+            it.setEndY(rnd.nextInt(500))
+            it.setEndSize(1 + rnd.nextInt(3))
+            // start away from the undistorted values
+            it.setX(it.getEndX() + 7)
+            it.setY(it.getEndY() - 3)
+            it.setSize(it.getEndSize() * 2)
+        }
+        distortion = new FisheyeDistortion(4)
+        distortion.setVisualization(vis)
+        distortion.setGroup("data")
+        distortion.setLayoutBounds(new Rectangle2D(0, 0, 500, 500))
+    }
+
+    private static boolean undistorted(VisualItem item) {
+        return item.getX() == item.getEndX() && item.getY() == item.getEndY() &&
+            item.getSize() == item.getEndSize()
+    }
+
+    def "without a focus every visible item is reset to its end values"() {
+        given:
+        items[0].setVisible(false)
+        items[1].setFixed(true)
+
+        when:
+        distortion.setLayoutAnchor(null)
+        distortion.run(0)
+
+        then:
+        items.drop(2).every { undistorted(it) }
+        !undistorted(items[0])
+        !undistorted(items[1])
+    }
+
+    def "clearing the focus resets the items distorted within a lens"() {
+        given:
+        distortion.setLensRadius(100)
+        distortion.setLayoutAnchor(new Point2D(250, 250))
+        distortion.run(0)
+        items.each { it.setX(it.getX() + 1) }
+
+        when:
+        distortion.setLayoutAnchor(null)
+        distortion.run(0)
+
+        then:
+        items.every { undistorted(it) }
+    }
+
+}
@@ -0,0 +1,93 @@
+package prefux.action.filter
+
+import prefux.Visualization
+import prefux.action.GroupAction
+import prefux.data.Graph
+import prefux.data.tuple.TupleSet
+import prefux.visual.EdgeItem
+import prefux.visual.VisualGraph
+import prefux.visual.VisualItem
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class GraphDistanceFilterSpec extends Specification {
+
+    /**
+     * Describe the visibility, degree of interest and expansion state of
+     * all items of the graph.
+     */
+    private static List<String> state(Visualization vis) {
+        List<String> list = []
+        for ( Iterator<VisualItem> it = vis.items("graph"); it.hasNext(); ) {
+            VisualItem item = it.next()
+            list << "${item instanceof EdgeItem ? 'E' : 'N'}${item.getRow()}: " +
+                "visible=${item.isVisible()}/${item.isStartVisible()}/${item.isEndVisible()} " +
+                "doi=${item.getDOI()} expanded=${item.isExpanded()}"
+        }
+        return list
+    }
+
+    @Unroll
+    def "filtered items match a full traversal (seed #seed)"() {
+        given:
+        Random rnd = new Random(seed)
+        Graph g = new Graph(seed % 2 == 0)
+        int n = 50 + rnd.nextInt(250)
+        n.times { g.addNode() }
+        (n + rnd.nextInt(2*n)).times { g.addEdge(rnd.nextInt(n), rnd.nextInt(n)) }
+
+        // the same graph filtered by the reference and the current filter
+        int distance = rnd.nextInt(4)
+        List<Visualization> vis = [new Visualization(), new Visualization()]
+        List<GroupAction> filters = [
+            new FullGraphDistanceFilter("graph", distance),
+            new GraphDistanceFilter("graph", distance)]
+        [0, 1].each {
+            vis[it].add("graph", g)
+            filters[it].setVisualization(vis[it])
+        }
+
+        expect:
+        60.times { step ->
+            long s = rnd.nextLong()
+            int op = rnd.nextInt(10)
+            if ( op == 0 ) {
+                // structural change of the shared graph
+                if ( rnd.nextBoolean() )
+                    g.addNode()
+                else
+                    g.addEdge(rnd.nextInt(g.getNodeCount()), rnd.nextInt(g.getNodeCount()))
+            } else if ( op == 1 ) {
+                distance = rnd.nextInt(4)
+                filters.each { it.setDistance(distance) }
+            }
+            [0, 1].each { k ->
+                Random r = new Random(s)
+                VisualGraph vg = (VisualGraph)vis[k].getGroup("graph")
+                TupleSet focus = vis[k].getGroup(Visualization.FOCUS_ITEMS)
+                if ( op >= 2 && op <= 6 ) {
+                    focus.clear()
+                    (1 + r.nextInt(2)).times {
+                        focus.addTuple(vg.getNode(r.nextInt(g.getNodeCount())))
+                    }
+                } else if ( op == 7 || op == 8 ) {
+                    // visibility changes made outside of the filter
+                    3.times {
+                        VisualItem item = r.nextBoolean()
+                            ? (VisualItem)vg.getNode(r.nextInt(g.getNodeCount()))
+                            : (VisualItem)vg.getEdge(r.nextInt(g.getEdgeCount()))
+                        item.setVisible(!item.isVisible())
+                        if ( r.nextBoolean() )
+                            item.setExpanded(!item.isExpanded())
+                    }
+                }
+                filters[k].run(0)
+            }
+            assert state(vis[0]) == state(vis[1]), "step $step"
+        }
+
+        where:
+        seed << (1..8)
+    }
+
+}
@@ -0,0 +1,100 @@
+package prefux.action.layout.graph
+
+import prefux.Visualization
+import prefux.data.Node
+import prefux.data.Tree
+import prefux.data.util.Point2D
+import prefux.visual.VisualItem
+import prefux.visual.VisualTable
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class NodeLinkTreeLayoutSpec extends Specification {
+
+    private static Tree randomTree(Random rnd, int n, boolean deep) {
+        Tree t = new Tree()
+        List<Node> nodes = [t.addRoot()]
+        n.times {
+            Node p = deep ? nodes[Math.max(0, nodes.size()-1-rnd.nextInt(3))]
+                          : nodes[rnd.nextInt(nodes.size())]
+            nodes << t.addChild(p)
+        }
+        return t
+    }
+
+    /**
+     * Lay out the tree in a new visualization, with item sizes and
+     * collapsed nodes drawn from the given seed.
+     */
+    private static VisualTable layout(Tree t, long seed, TreeLayout l) {
+        Random rnd = new Random(seed)
+        Visualization vis = new Visualization()
+        vis.add("tree", t)
+        VisualTable vt = (VisualTable)vis.getVisualGroup("tree.nodes")
+        for ( Iterator<VisualItem> it = vis.items("tree.nodes"); it.hasNext(); ) {
+            VisualItem item = it.next()
+            vt.setBounds(item.getRow(), 0, 0, 1+rnd.nextInt(30), 1+rnd.nextInt(20))
+            if ( rnd.nextInt(15) == 0 )
+                item.setExpanded(false)
+        }
+        l.setVisualization(vis)
+        l.setLayoutAnchor(new Point2D(10, 20))
+        l.run(0)
+        return vt
+    }
+
+    private static void assertSamePositions(VisualTable a, VisualTable b) {
+        assert a.getRowCount() == b.getRowCount()
+        for ( int row = 0; row < a.getRowCount(); ++row ) {
+            VisualItem x = a.getItem(row), y = b.getItem(row)
+            [[x.getX(), y.getX()], [x.getY(), y.getY()],
+             [x.getEndX(), y.getEndX()], [x.getEndY(), y.getEndY()]].each {
+                assert Double.doubleToLongBits(it[0]) == Double.doubleToLongBits(it[1]),
+                    "row $row: ${it[0]} != ${it[1]}"
+            }
+        }
+    }
+
+    @Unroll
+    def "positions match the recursive layout (seed #seed, orientation #orient)"() {
+        given:
+        Random rnd = new Random(seed)
+        Tree t = randomTree(rnd, 50 + rnd.nextInt(400), seed % 3 == 0)
+        long sizes = rnd.nextLong()
+
+        when:
+        VisualTable expected = layout(t, sizes,
+            new RecursiveNodeLinkTreeLayout("tree", orient, 50, 5, 25))
+        VisualTable actual = layout(t, sizes,
+            new NodeLinkTreeLayout("tree", orient, 50, 5, 25))
+
+        then:
+        assertSamePositions(expected, actual)
+
+        where:
+        seed << (1..12)
+        orient = (int)(seed % 4)
+    }
+
+    def "a deep chain is laid out without exhausting the stack"() {
+        given:
+        Tree t = new Tree()
+        Node p = t.addRoot()
+        20000.times { p = t.addChild(p) }
+
+        when:
+        VisualTable actual = layout(t, 7, new NodeLinkTreeLayout("tree"))
+        VisualTable expected = null
+        // the recursive layout needs a large stack for a chain this deep
+        Thread th = new Thread(null, {
+            expected = layout(t, 7, new RecursiveNodeLinkTreeLayout("tree"))
+        }, "recursive-layout", 1L << 30)
+        th.start()
+        th.join()
+
+        then:
+        expected != null
+        assertSamePositions(expected, actual)
+    }
+
+}
@@ -0,0 +1,143 @@
+package prefux.action.layout.graph
+
+import prefux.Visualization
+import prefux.data.Node
+import prefux.data.Tree
+import prefux.data.util.Point2D
+import prefux.data.util.Rectangle2D
+import prefux.visual.VisualItem
+import prefux.visual.VisualTable
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class TreeLayoutSpec extends Specification {
+
+    private static TreeLayout create(String kind, int orient) {
+        switch ( kind ) {
+        case "nodelink": return new NodeLinkTreeLayout("tree", orient, 50, 5, 25)
+        case "radial":   return new RadialTreeLayout("tree")
+        case "balloon":  return new BalloonTreeLayout("tree")
+        default:         return new SquarifiedTreeMapLayout("tree", 2)
+        }
+    }
+
+    /**
+     * Change a parameter of the layout, the way a client would between
+     * two passes.
+     */
+    private static void configure(TreeLayout l, Random rnd) {
+        switch ( l ) {
+        case NodeLinkTreeLayout:
+            switch ( rnd.nextInt(4) ) {
+            case 0: l.setDepthSpacing(20 + rnd.nextInt(60)); break
+            case 1: l.setRootNodeOffset(rnd.nextInt(100)); break
+            case 2: l.setBreadthSpacing(1 + rnd.nextInt(10)); break
+            default: l.setSubtreeSpacing(5 + rnd.nextInt(40)); break
+            }
+            break
+        case RadialTreeLayout:
+            switch ( rnd.nextInt(3) ) {
+            case 0: l.setRadiusIncrement(20 + rnd.nextInt(80)); break
+            case 1: l.setAutoScale(rnd.nextBoolean()); break
+            default: l.setAngularBounds(rnd.nextDouble(), 1 + 5*rnd.nextDouble()); break
+            }
+            break
+        case BalloonTreeLayout:
+            l.setMinRadius(1 + rnd.nextInt(10))
+            break
+        default:
+            l.setFrameWidth(rnd.nextInt(4))
+        }
+    }
+
+    /**
+     * Apply a random change to an item of the laid out tree.
+     */
+    private static void mutate(VisualTable vt, int row, Random rnd) {
+        VisualItem item = vt.getItem(row)
+        switch ( rnd.nextInt(6) ) {
+        case 0: case 1: item.setExpanded(!item.isExpanded()); break
+        case 2: item.setVisible(!item.isVisible()); break
+        case 3: vt.setBounds(row, 0, 0, 1+rnd.nextInt(30), 1+rnd.nextInt(20)); break
+        case 4: item.setSize(1+rnd.nextInt(5)); break
+        default: item.setX(rnd.nextInt(100)); break
+        }
+    }
+
+    private static void assertSameLayout(VisualTable a, VisualTable b, String at) {
+        for ( int row = 0; row < a.getRowCount(); ++row ) {
+            VisualItem x = a.getItem(row), y = b.getItem(row)
+            double[] p = [x.getX(), x.getY(), x.getStartX(), x.getStartY(),
+                          x.getEndX(), x.getEndY(), x.getBounds().getMinX(),
+                          x.getBounds().getMinY(), x.getBounds().getWidth(),
+                          x.getBounds().getHeight()]
+            double[] q = [y.getX(), y.getY(), y.getStartX(), y.getStartY(),
+                          y.getEndX(), y.getEndY(), y.getBounds().getMinX(),
+                          y.getBounds().getMinY(), y.getBounds().getWidth(),
+                          y.getBounds().getHeight()]
+            for ( int i = 0; i < p.length; ++i ) {
+                assert Double.doubleToLongBits(p[i]) == Double.doubleToLongBits(q[i]),
+                    "$at, row $row, value $i: ${p[i]} != ${q[i]}"
+            }
+        }
+    }
+
+    @Unroll
+    def "incremental #kind passes match complete ones (seed #seed)"() {
+        given:
+        Random rnd = new Random(seed)
+        Tree t = new Tree()
+        List<Node> nodes = [t.addRoot()]
+        int n = 20 + rnd.nextInt(300)
+        n.times { nodes << t.addChild(nodes[rnd.nextInt(nodes.size())]) }
+
+        // the same tree laid out incrementally and completely
+        long init = rnd.nextLong()
+        List<VisualTable> tables = []
+        List<TreeLayout> layouts = []
+        [true, false].each { boolean incremental ->
+            Random r = new Random(init)
+            Visualization vis = new Visualization()
+            vis.add("tree", t)
+            VisualTable vt = (VisualTable)vis.getVisualGroup("tree.nodes")
+            for ( int row = 0; row <= n; ++row ) {
+                vt.setBounds(row, 0, 0, 1+r.nextInt(30), 1+r.nextInt(20))
+                vt.getItem(row).setSize(1+r.nextInt(5))
+                if ( r.nextInt(10) == 0 )
+                    vt.getItem(row).setExpanded(false)
+            }
+            TreeLayout l = create(kind, (int)(seed % 4))
+            l.setVisualization(vis)
+            l.setLayoutAnchor(new Point2D(10, 20))
+            l.setLayoutBounds(new Rectangle2D(0, 0, 800, 600))
+            l.setIncremental(incremental)
+            tables << vt
+            layouts << l
+        }
+
+        expect:
+        25.times { step ->
+            long s = rnd.nextLong()
+            [0, 1].each { k ->
+                Random r = new Random(s)
+                r.nextInt(4).times { mutate(tables[k], r.nextInt(n+1), r) }
+                if ( r.nextInt(4) == 0 )
+                    configure(layouts[k], r)
+                if ( r.nextInt(3) == 0 ) {
+                    // let the items settle at their current positions
+                    for ( int row = 0; row <= n; ++row ) {
+                        VisualItem item = tables[k].getItem(row)
+                        item.setStartX(item.getX())
+                        item.setStartY(item.getY())
+                    }
+                }
+                layouts[k].run(0)
+            }
+            assertSameLayout(tables[0], tables[1], "step $step")
+        }
+
+        where:
+        [kind, seed] << [["nodelink", "radial", "balloon", "treemap"], (1..3)].combinations()
+    }
+
+}
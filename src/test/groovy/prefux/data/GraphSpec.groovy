@@ -0,0 +1,93 @@
+package prefux.data
+
+import prefux.data.column.IntColumn
+import prefux.util.collections.IntIterator
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class GraphSpec extends Specification {
+
+    private static List<Integer> links(IntIterator it) {
+        List<Integer> list = []
+        while ( it.hasNext() ) list << it.nextInt()
+        return list.sort()
+    }
+
+    /** Checks the adjacency lists of a graph against its edge table. */
+    private static void checkLinks(Graph g) {
+        Table nodes = g.getNodeTable(), edges = g.getEdgeTable()
+        Map<Integer,List<Integer>> out = [:].withDefault { [] }
+        Map<Integer,List<Integer>> inn = [:].withDefault { [] }
+        for ( IntIterator rows = edges.rows(); rows.hasNext(); ) {
+            int e = rows.nextInt()
+            int s = edges.getInt(e, "source"), t = edges.getInt(e, "target")
+            if ( nodes.isValidRow(s) && nodes.isValidRow(t) ) {
+                out[s] << e
+                inn[t] << e
+            }
+        }
+        for ( IntIterator rows = nodes.rows(); rows.hasNext(); ) {
+            int n = rows.nextInt()
+            assert links(g.outEdgeRows(n)) == out[n].sort()
+            assert links(g.inEdgeRows(n)) == inn[n].sort()
+            assert g.getOutDegree(n) == out[n].size()
+            assert g.getInDegree(n) == inn[n].size()
+        }
+    }
+
+    @Unroll
+    def "range updates of edge endpoints relink the edges (compact: #compact, seed #seed)"() {
+        given:
+        Random rnd = new Random(seed)
+        Table nodes = new Table()
+        nodes.addRows(40)
+        Table edges = new Table()
+        edges.addColumn("source", int.class)
+        edges.addColumn("target", int.class)
+        Graph g = new Graph(nodes, edges, true, null, "source", "target",
+                            compact)
+        200.times { g.addEdge(rnd.nextInt(40), rnd.nextInt(40)) }
+        IntColumn scol = (IntColumn)edges.getColumn("source")
+
+        expect:
+        300.times {
+            int op = rnd.nextInt(5)
+            int max = edges.getMaximumRow()
+            if ( op == 0 ) {
+                // bulk update of a run of source values
+                int start = rnd.nextInt(max+1)
+                int len = 1 + rnd.nextInt(Math.min(20, max+1-start))
+                int[] v = new int[len]
+                for ( int i=0; i<len; ++i ) v[i] = rnd.nextInt(40)
+                scol.setInts(v, 0, start, len)
+            } else if ( op == 1 ) {
+                // deferred batch of target changes
+                edges.deferEvents()
+                try {
+                    5.times {
+                        int e = rnd.nextInt(max+1)
+                        if ( edges.isValidRow(e) )
+                            edges.setInt(e, "target", rnd.nextInt(40))
+                    }
+                } finally {
+                    edges.resumeEvents()
+                }
+            } else if ( op == 2 ) {
+                int e = rnd.nextInt(max+1)
+                if ( edges.isValidRow(e) )
+                    edges.setInt(e, "source", rnd.nextInt(40))
+            } else if ( op == 3 ) {
+                int e = rnd.nextInt(max+1)
+                if ( edges.isValidRow(e) )
+                    g.removeEdge(e)
+            } else {
+                g.addEdge(rnd.nextInt(40), rnd.nextInt(40))
+            }
+            checkLinks(g)
+        }
+
+        where:
+        compact << [ false, true, false, true ]
+        seed    << [ 1, 1, 2, 2 ]
+    }
+}
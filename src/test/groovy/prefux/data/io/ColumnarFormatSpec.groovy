@@ -0,0 +1,173 @@
+package prefux.data.io
+
+import prefux.data.Graph
+import prefux.data.Table
+import prefux.util.collections.IntIterator
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ColumnarFormatSpec extends Specification {
+
+    private static Table randomTable(Random rnd, int rows) {
+        Table t = new Table()
+        t.addColumn("i", int.class)
+        t.addColumn("l", long.class)
+        t.addColumn("f", float.class)
+        t.addColumn("d", double.class)
+        t.addColumn("b", boolean.class)
+        t.addColumn("date", Date.class)
+        t.addColumn("s", String.class)
+        rows.times {
+            int r = t.addRow()
+            t.setInt(r, "i", rnd.nextInt())
+            t.setLong(r, "l", rnd.nextLong())
+            t.setFloat(r, "f", rnd.nextFloat())
+            t.setDouble(r, "d", rnd.nextGaussian())
+            t.setBoolean(r, "b", rnd.nextBoolean())
+            t.setDate(r, "date", new Date(rnd.nextInt(Integer.MAX_VALUE) * 1000L))
+            // few distinct values and some nulls exercise the dictionary
+            t.setString(r, "s", rnd.nextInt(5) == 0 ? null : "v" + rnd.nextInt(7))
+        }
+        return t
+    }
+
+    private static byte[] write(Table t) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        new ColumnarTableWriter().writeTable(t, out)
+        return out.toByteArray()
+    }
+
+    private static byte[] write(Graph g) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        new ColumnarGraphWriter().writeGraph(g, out)
+        return out.toByteArray()
+    }
+
+    private static List<Integer> rows(IntIterator it) {
+        List<Integer> list = []
+        while ( it.hasNext() )
+            list << it.nextInt()
+        return list
+    }
+
+    private static void assertSameTable(Table a, Table b) {
+        assert a.getColumnCount() == b.getColumnCount()
+        assert a.getRowCount() == b.getRowCount()
+        assert rows(a.rows()) == rows(b.rows())
+        for ( int c = 0; c < a.getColumnCount(); ++c ) {
+            String name = a.getColumnName(c)
+            assert b.getColumnType(name) == a.getColumnType(c)
+            for ( IntIterator it = a.rows(); it.hasNext(); ) {
+                int r = it.nextInt()
+                assert b.get(r, name) == a.get(r, c), "row $r, column $name"
+            }
+        }
+    }
+
+    @Unroll
+    def "tables survive a round trip (seed #seed)"() {
+        given:
+        Random rnd = new Random(seed)
+        Table t = randomTable(rnd, 1 + rnd.nextInt(300))
+        if ( deleted ) {
+            t.getRowCount().intdiv(3).times { t.removeRow(rnd.nextInt(t.getMaximumRow()+1)) }
+        }
+
+        when:
+        Table read = new ColumnarTableReader().readTable(new ByteArrayInputStream(write(t)))
+
+        then:
+        assertSameTable(t, read)
+
+        where:
+        seed << (1..6)
+        deleted = seed % 2 == 0
+    }
+
+    def "derived columns are not stored"() {
+        given:
+        Table t = randomTable(new Random(3), 10)
+        t.addColumn("twice", "i * 2")
+
+        when:
+        Table read = new ColumnarTableReader().readTable(new ByteArrayInputStream(write(t)))
+
+        then:
+        read.getColumnNumber("twice") < 0
+        read.getColumnCount() == t.getColumnCount() - 1
+    }
+
+    @Unroll
+    def "graphs survive a round trip with their links (directed #directed)"() {
+        given:
+        Random rnd = new Random(directed ? 1 : 2)
+        Graph g = new Graph(directed)
+        g.getNodeTable().addColumn("name", String.class)
+        int n = 200
+        n.times { g.getNodeTable().setString(g.addNode().getRow(), "name", "n" + it) }
+        600.times { g.addEdge(rnd.nextInt(n), rnd.nextInt(n)) }
+        // leave holes in both tables
+        50.times { g.removeEdge(rnd.nextInt(g.getEdgeTable().getMaximumRow()+1)) }
+        10.times { g.removeNode(rnd.nextInt(n)) }
+
+        when:
+        Graph read = new ColumnarGraphReader().readGraph(new ByteArrayInputStream(write(g)))
+
+        then:
+        read.isDirected() == directed
+        assertSameTable(g.getNodeTable(), read.getNodeTable())
+        assertSameTable(g.getEdgeTable(), read.getEdgeTable())
+        rows(g.nodeRows()).every { int r ->
+            rows(read.outEdgeRows(r)).sort() == rows(g.outEdgeRows(r)).sort() &&
+            rows(read.inEdgeRows(r)).sort() == rows(g.inEdgeRows(r)).sort()
+        }
+        rows(g.edgeRows()).every { int e ->
+            read.getSourceNode(e) == g.getSourceNode(e) &&
+            read.getTargetNode(e) == g.getTargetNode(e)
+        }
+
+        when: "the read graph is modified"
+        List<Integer> nodes = rows(read.nodeRows())
+        int e = read.addEdge(nodes[0], nodes[1])
+
+        then:
+        read.getSourceNode(e) == nodes[0]
+        read.getTargetNode(e) == nodes[1]
+        rows(read.outEdgeRows(nodes[0])).contains(e)
+        rows(read.inEdgeRows(nodes[1])).contains(e)
+
+        where:
+        directed << [true, false]
+    }
+
+    def "truncated snapshots are reported"() {
+        given:
+        Graph g = new Graph(true)
+        g.getNodeTable().addColumn("name", String.class)
+        20.times { g.getNodeTable().setString(g.addNode().getRow(), "name", "n" + it) }
+        30.times { g.addEdge(it % 20, (it * 7) % 20) }
+        byte[] data = write(g)
+        List<Integer> cuts = (0..<data.length).step(7) as List
+
+        expect:
+        cuts.every { int len ->
+            try {
+                new ColumnarGraphReader().readGraph(
+                    new ByteArrayInputStream(Arrays.copyOf(data, len)))
+                return false
+            } catch ( DataIOException e ) {
+                return true
+            }
+        }
+    }
+
+    def "other data is rejected"() {
+        when:
+        new ColumnarTableReader().readTable(
+            new ByteArrayInputStream("id,name\n1,a\n".getBytes("UTF-8")))
+
+        then:
+        thrown(DataIOException)
+    }
+
+}
@@ -0,0 +1,116 @@
+package prefux.data.io.sql
+
+import java.sql.Connection
+import java.sql.SQLException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import spock.lang.Specification
+
+class ConnectionPoolSpec extends Specification {
+
+    /**
+     * A pool handing out stub connections, keeping the state of each one
+     * created. The stubs are only handed around, never called from here.
+     */
+    private static class StubPool extends ConnectionPool {
+        List<Map> created = []
+
+        StubPool(int size) {
+            super("jdbc:stub", "user", "password", size)
+        }
+
+        protected Connection createConnection() {
+            Map state = [closed: false]
+            created << state
+            return [
+                isClosed: { -> state.closed },
+                close: { -> state.closed = true }
+            ] as Connection
+        }
+    }
+
+    def "released connections are reused"() {
+        given:
+        StubPool pool = new StubPool(2)
+
+        when:
+        Connection c1 = pool.getConnection()
+        pool.releaseConnection(c1)
+        Connection c2 = pool.getConnection()
+
+        then:
+        pool.created.size() == 1
+        pool.getIdleCount() == 0
+    }
+
+    def "closed connections are replaced"() {
+        given:
+        StubPool pool = new StubPool(1)
+        Connection c1 = pool.getConnection()
+        pool.releaseConnection(c1)
+        pool.created[0].closed = true
+
+        when:
+        pool.getConnection()
+
+        then:
+        pool.created.size() == 2
+        pool.getIdleCount() == 0
+    }
+
+    def "requests beyond the pool size wait for a release"() {
+        given:
+        StubPool pool = new StubPool(2)
+        Connection c1 = pool.getConnection()
+        pool.getConnection()
+        CountDownLatch done = new CountDownLatch(1)
+
+        when:
+        Thread.start {
+            pool.getConnection()
+            done.countDown()
+        }
+
+        then:
+        !done.await(100, TimeUnit.MILLISECONDS)
+
+        when:
+        pool.releaseConnection(c1)
+
+        then:
+        done.await(5, TimeUnit.SECONDS)
+        pool.created.size() == 2
+        pool.getIdleCount() == 0
+    }
+
+    def "closing the pool closes idle and released connections"() {
+        given:
+        StubPool pool = new StubPool(2)
+        Connection c1 = pool.getConnection()
+        Connection c2 = pool.getConnection()
+        pool.releaseConnection(c1)
+
+        when:
+        pool.close()
+        pool.releaseConnection(c2)
+
+        then:
+        pool.created*.closed == [true, true]
+        pool.getIdleCount() == 0
+
+        when:
+        pool.getConnection()
+
+        then:
+        thrown(SQLException)
+    }
+
+    def "the pool size must be positive"() {
+        when:
+        new StubPool(0)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
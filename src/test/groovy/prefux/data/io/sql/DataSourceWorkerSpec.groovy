@@ -0,0 +1,104 @@
+package prefux.data.io.sql
+
+import static prefux.data.io.sql.DatabaseResultSetProcessorSpec.results
+
+import java.sql.Connection
+import java.sql.Statement
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import prefux.data.Table
+import spock.lang.Specification
+
+class DataSourceWorkerSpec extends Specification {
+
+    /**
+     * A data source answering each query with the rows mapped to it,
+     * after a random delay.
+     */
+    private static DatabaseDataSource source(Map<String,List<List>> answers) {
+        Random rnd = new Random(42)
+        ConnectionPool pool = new ConnectionPool("jdbc:stub", null, null, 4) {
+            protected Connection createConnection() {
+                Statement stmt = [
+                    setFetchSize: { int n -> },
+                    executeQuery: { String q ->
+                        Thread.sleep(rnd.nextInt(5))
+                        if ( !answers.containsKey(q) )
+                            throw new java.sql.SQLException("No table: " + q)
+                        results(answers[q])
+                    },
+                    close: { -> }
+                ] as Statement
+                return [
+                    createStatement: { -> stmt },
+                    isClosed: { -> false }
+                ] as Connection
+            }
+        }
+        return new DatabaseDataSource(pool, new DefaultSQLDataHandler())
+    }
+
+    private static Table table() {
+        Table t = new Table()
+        t.addColumn("id", long.class)
+        t.addColumn("name", String.class)
+        return t
+    }
+
+    def "jobs of a table run in the order of submission"() {
+        given:
+        int n = 20
+        Map<String,List<List>> answers = [:]
+        n.times { i -> answers["q" + i] = [[1L, "v" + i], [2L + i, "w"]] }
+        DatabaseDataSource ds = source(answers)
+        Table t1 = table(), t2 = table()
+        List<String> order1 = [].asSynchronized(), order2 = [].asSynchronized()
+        CountDownLatch done = new CountDownLatch(2 * n)
+
+        when:
+        n.times { i ->
+            ds.loadData(t1, "q" + i, "id", null, listener(order1, done))
+            ds.refreshData(t2, "q" + i, "id", null, listener(order2, done))
+        }
+
+        then:
+        done.await(30, TimeUnit.SECONDS)
+        order1 == (0..<n).collect { "q" + it }
+        order2 == order1
+        t1.getRowCount() == n + 1
+        t1.getString(t1.index("id").get(1L), "name") == "v" + (n - 1)
+        t2.getRowCount() == 2
+        t2.getString(t2.index("id").get(1L), "name") == "v" + (n - 1)
+    }
+
+    def "a failing job does not stop the jobs after it"() {
+        given:
+        DatabaseDataSource ds = source([ok: [[1L, "a"]]])
+        Table t = table()
+        List<String> order = [].asSynchronized()
+        CountDownLatch done = new CountDownLatch(2)
+
+        when:
+        ds.loadData(t, "ok", "id", null, listener(order, done))
+        ds.loadData(t, "missing", "id", null, listener(order, done))
+        ds.refreshData(t, "ok", "id", null, listener(order, done))
+
+        then:
+        done.await(30, TimeUnit.SECONDS)
+        order == ["ok", "ok"]
+        t.getRowCount() == 1
+    }
+
+    private static DataSourceWorker.Listener listener(List<String> order,
+            CountDownLatch done) {
+        return [
+            preQuery: { DataSourceWorker.Entry e -> },
+            postQuery: { DataSourceWorker.Entry e ->
+                assert !e.refresh || e.getChanges() != null
+                order << e.query
+                done.countDown()
+            }
+        ] as DataSourceWorker.Listener
+    }
+}
@@ -0,0 +1,210 @@
+package prefux.data.io.sql
+
+import java.sql.ResultSet
+import java.sql.ResultSetMetaData
+import java.sql.Types
+
+import prefux.data.Table
+import prefux.data.util.Index
+import spock.lang.Specification
+
+class DatabaseResultSetProcessorSpec extends Specification {
+
+    /**
+     * A result set over (id BIGINT, name VARCHAR) rows.
+     */
+    static ResultSet results(List<List> rows) {
+        ResultSetMetaData md = [
+            getColumnCount: { -> 2 },
+            getColumnName: { int i -> i == 1 ? "id" : "name" },
+            getColumnType: { int i -> i == 1 ? Types.BIGINT : Types.VARCHAR }
+        ] as ResultSetMetaData
+        int pos = -1
+        return [
+            getMetaData: { -> md },
+            next: { -> ++pos < rows.size() },
+            getLong: { int i -> rows[pos][i-1] as long },
+            getString: { int i -> rows[pos][i-1] as String }
+        ] as ResultSet
+    }
+
+    private static Table table() {
+        Table t = new Table()
+        t.addColumn("id", long.class)
+        t.addColumn("name", String.class)
+        return t
+    }
+
+    private static Map<Long,String> contents(Table t) {
+        Map<Long,String> map = [:]
+        t.tuples().each { map[it.getLong("id")] = it.getString("name") }
+        return map
+    }
+
+    def "process creates a keyed table and updates it by key"() {
+        given:
+        DatabaseResultSetProcessor p =
+            new DatabaseResultSetProcessor(new DefaultSQLDataHandler())
+        p.setBatchSize(2)
+
+        when:
+        Table t = p.process(null,
+            results([[1L, "a"], [2L, "b"], [3L, "c"]]), "id", null, false)
+        p.process(t, results([[2L, "B"], [4L, "d"], [1L, "A"]]),
+            "id", null, false)
+
+        then:
+        t.getRowCount() == 4
+        contents(t) == [1L: "A", 2L: "B", 3L: "c", 4L: "d"]
+        t.index("id").get(4L) == 3
+    }
+
+    def "process merges duplicate keys within and across batches"() {
+        given:
+        DatabaseResultSetProcessor p =
+            new DatabaseResultSetProcessor(new DefaultSQLDataHandler())
+        p.setBatchSize(batchSize)
+
+        when:
+        Table t = p.process(null, results(
+            [[1L, "a"], [2L, "b"], [1L, "c"], [2L, "d"], [1L, "e"]]),
+            "id", null, false)
+
+        then:
+        t.getRowCount() == 2
+        contents(t) == [1L: "e", 2L: "d"]
+
+        where:
+        batchSize << [1, 2, 3, 10]
+    }
+
+    def "process removes rows missing from the results"() {
+        given:
+        DatabaseResultSetProcessor p =
+            new DatabaseResultSetProcessor(new DefaultSQLDataHandler())
+        p.setBatchSize(2)
+        Table t = p.process(null,
+            results([[1L, "a"], [2L, "b"], [3L, "c"]]), "id", null, false)
+
+        when:
+        p.process(t, results([[2L, "x"], [4L, "y"], [5L, "z"]]),
+            "id", null, true)
+
+        then:
+        t.getRowCount() == 3
+        contents(t) == [2L: "x", 4L: "y", 5L: "z"]
+        t.index("id").get(1L) < 0
+        t.index("id").get(3L) < 0
+        t.index("id").get(5L) >= 0
+    }
+
+    def "process keeps an index on a value column up to date"() {
+        given:
+        DatabaseResultSetProcessor p =
+            new DatabaseResultSetProcessor(new DefaultSQLDataHandler())
+        p.setBatchSize(2)
+        Table t = table()
+        t.index("id")
+        Index names = t.index("name")
+        p.process(t, results([[1L, "a"], [2L, "b"], [3L, "c"]]),
+            "id", null, false)
+
+        when:
+        p.process(t, results([[1L, "x"], [3L, "y"], [4L, "z"]]),
+            "id", null, true)
+
+        then:
+        ["a", "b", "c"].every { names.get(it) < 0 }
+        t.getLong(names.get("x"), "id") == 1L
+        t.getLong(names.get("y"), "id") == 3L
+        t.getLong(names.get("z"), "id") == 4L
+        names.size() == 3
+    }
+
+    def "refresh writes values whose row hash collides with the old one"() {
+        given:
+        assert "Aa".hashCode() == "BB".hashCode()
+        DatabaseResultSetProcessor p =
+            new DatabaseResultSetProcessor(new DefaultSQLDataHandler())
+        Table t = new Table()
+        t.addColumn("id", long.class)
+        t.addColumn("name", String.class)
+        p.refresh(t, results([[1L, "Aa"], [2L, "x"]]), "id", null)
+
+        when:
+        ChangeSet changes = p.refresh(t, results([[1L, "BB"], [2L, "x"]]), "id", null)
+
+        then:
+        t.getRowCount() == 2
+        t.getString(0, "name") == "BB"
+        t.getString(1, "name") == "x"
+        changes.getUpdatedRows() == [0] as int[]
+        changes.getChangedColumns() == ["name"] as String[]
+    }
+
+    def "refresh adds, updates and removes rows by key"() {
+        given:
+        DatabaseResultSetProcessor p =
+            new DatabaseResultSetProcessor(new DefaultSQLDataHandler())
+        Table t = new Table()
+        t.addColumn("id", long.class)
+        t.addColumn("name", String.class)
+        p.refresh(t, results([[1L, "a"], [2L, "b"], [3L, "c"]]), "id", null)
+
+        when:
+        ChangeSet changes = p.refresh(t,
+            results([[3L, "c"], [2L, "B"], [4L, "d"]]), "id", null)
+
+        then:
+        changes.getAddedRows() == [3] as int[]
+        changes.getUpdatedRows() == [1] as int[]
+        changes.getRemovedRows() == [0] as int[]
+        t.getRowCount() == 3
+        t.getString(1, "name") == "B"
+        t.getString(2, "name") == "c"
+        t.getString(3, "name") == "d"
+    }
+
+    def "refresh merges duplicate keys within and across batches"() {
+        given:
+        DatabaseResultSetProcessor p =
+            new DatabaseResultSetProcessor(new DefaultSQLDataHandler())
+        p.setBatchSize(batchSize)
+        Table t = table()
+
+        when:
+        ChangeSet changes = p.refresh(t, results(
+            [[1L, "a"], [2L, "b"], [1L, "c"], [2L, "d"], [1L, "e"]]),
+            "id", null)
+
+        then:
+        t.getRowCount() == 2
+        contents(t) == [1L: "e", 2L: "d"]
+        changes.getAddedRows() == [0, 1] as int[]
+        changes.getUpdatedRows().length == 0
+
+        where:
+        batchSize << [1, 2, 3, 10]
+    }
+
+    def "refresh keeps an index on a value column up to date"() {
+        given:
+        DatabaseResultSetProcessor p =
+            new DatabaseResultSetProcessor(new DefaultSQLDataHandler())
+        p.setBatchSize(2)
+        Table t = table()
+        Index names = t.index("name")
+        p.refresh(t, results([[1L, "a"], [2L, "b"], [3L, "c"]]), "id", null)
+
+        when:
+        p.refresh(t, results([[1L, "x"], [3L, "c"], [4L, "z"]]), "id", null)
+
+        then:
+        ["a", "b"].every { names.get(it) < 0 }
+        t.getLong(names.get("x"), "id") == 1L
+        t.getLong(names.get("c"), "id") == 3L
+        t.getLong(names.get("z"), "id") == 4L
+        names.size() == 3
+    }
+
+}
@@ -0,0 +1,91 @@
+package prefux.data.search
+
+import prefux.data.Table
+import prefux.data.Tuple
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class PrefixSearchTupleSetSpec extends Specification {
+
+    static final List<String> WORDS = [ "alpha", "alps", "beta", "bet",
+        "gamma", "gam", "delta", "del", "Epsilon", "eps" ]
+
+    private static Set<Tuple> results(PrefixSearchTupleSet set) {
+        Set<Tuple> r = new HashSet<>()
+        for ( Iterator<?> it = set.tuples(); it.hasNext(); )
+            r << (Tuple)it.next()
+        return r
+    }
+
+    private static Set<Tuple> expected(Set<Tuple> indexed, String query) {
+        List<String> terms = query.tokenize().collect { it.toLowerCase() }
+        return indexed.findAll { Tuple t ->
+            t.getString("text").tokenize().any { String w ->
+                terms.any { w.toLowerCase().startsWith(it) }
+            }
+        } as Set
+    }
+
+    @Unroll
+    def "results match a full scan while tuples are indexed and removed (seed #seed)"() {
+        given:
+        Random rnd = new Random(seed)
+        Table table = new Table()
+        table.addColumn("text", String.class)
+        200.times {
+            int row = table.addRow()
+            int n = 1 + rnd.nextInt(3)
+            table.setString(row, "text",
+                (1..n).collect { WORDS[rnd.nextInt(WORDS.size())] }.join(" "))
+        }
+        PrefixSearchTupleSet set = new PrefixSearchTupleSet()
+        Set<Tuple> indexed = new HashSet<>()
+        List<String> queries = [ "a", "al", "alp", "b", "be", "g e",
+            "d", "del", "eps", "ep", "x", "" ]
+
+        expect:
+        300.times {
+            Tuple t = table.getTuple(rnd.nextInt(200))
+            if ( indexed.contains(t) ) {
+                set.unindex(t, "text")
+                indexed.remove(t)
+            } else {
+                set.index(t, "text")
+                indexed.add(t)
+            }
+            // repeating the current query does not search again
+            String q = set.getQuery()
+            while ( q == set.getQuery() )
+                q = queries[rnd.nextInt(queries.size())]
+            set.search(q)
+            assert results(set) == expected(indexed, q)
+        }
+        // ids of removed tuples are reused
+        set.m_index.getTupleIdCount() <= 200
+
+        where:
+        seed << [ 1, 2, 3 ]
+    }
+
+    def "removing and indexing a hit again keeps it in the results"() {
+        given:
+        Table table = new Table()
+        table.addColumn("text", String.class)
+        3.times { table.addRow() }
+        table.setString(0, "text", "apple")
+        table.setString(1, "text", "apricot")
+        table.setString(2, "text", "banana")
+        PrefixSearchTupleSet set = new PrefixSearchTupleSet()
+        (0..2).each { set.index(table.getTuple(it), "text") }
+        set.search("ap")
+
+        when:
+        set.unindex(table.getTuple(0), "text")
+        set.index(table.getTuple(2), "text")
+        set.index(table.getTuple(0), "text")
+        set.search("a")
+
+        then:
+        results(set) == [ table.getTuple(0), table.getTuple(1) ] as Set
+    }
+}
@@ -0,0 +1,88 @@
+package prefux.data.search
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class TrigramIndexSpec extends Specification {
+
+    private static String randomText(Random rnd) {
+        int n = rnd.nextInt(12)
+        StringBuilder sb = new StringBuilder()
+        n.times { sb.append("abcd"[rnd.nextInt(4)]) }
+        return sb.toString()
+    }
+
+    private static Set<Integer> expected(Map<Integer,String> texts, String[] required) {
+        return texts.findAll { id, text ->
+            required.every { String s ->
+                (0..s.length()-3).every { text.contains(s.substring(it, it+3)) }
+            }
+        }.keySet()
+    }
+
+    @Unroll
+    def "candidates match a full scan under adds, updates and removals (seed #seed)"() {
+        given:
+        Random rnd = new Random(seed)
+        TrigramIndex index = new TrigramIndex()
+        Map<Integer,String> texts = [:]
+
+        expect:
+        3000.times {
+            int op = rnd.nextInt(3)
+            if ( op == 0 || texts.isEmpty() ) {
+                String text = randomText(rnd)
+                int id = index.add(text)
+                assert !texts.containsKey(id)
+                texts[id] = text
+            } else {
+                List<Integer> ids = texts.keySet() as List
+                int id = ids[rnd.nextInt(ids.size())]
+                if ( op == 1 ) {
+                    String text = randomText(rnd)
+                    index.set(id, text)
+                    texts[id] = text
+                } else {
+                    index.remove(id)
+                    texts.remove(id)
+                }
+            }
+            String[] required = (1..1+rnd.nextInt(2)).collect {
+                String s = randomText(rnd)
+                s.length() < 3 ? "abc" : s.substring(0, Math.min(5, s.length()))
+            } as String[]
+            int[] c = index.candidates(required)
+            assert (c as List) == (c as List).sort()
+            assert (c as Set) == expected(texts, required)
+        }
+        // removed ids are reused
+        index.getIdCount() == texts.size() + index.m_freeIdCount
+        index.getIdCount() < 3000
+        texts.every { id, text -> index.getText(id) == text }
+
+        where:
+        seed << [ 1, 2, 3 ]
+    }
+
+    def "trigrams of removed texts are dropped"() {
+        given:
+        TrigramIndex index = new TrigramIndex()
+        int a = index.add("abcdef")
+        int b = index.add("xyz")
+
+        when:
+        index.remove(a)
+
+        then:
+        index.candidates([ "abc" ] as String[]).length == 0
+        index.m_grams.size() == 1
+
+        when:
+        int c = index.add("cdefg")
+
+        then:
+        c == a
+        index.candidates([ "def" ] as String[]) == [ c ] as int[]
+        index.candidates([ "xyz" ] as String[]) == [ b ] as int[]
+    }
+}
@@ -0,0 +1,90 @@
+package prefux.data.util
+
+import prefux.data.Table
+import prefux.util.collections.IntIterator
+import spock.lang.Specification
+
+class TreeIndexSpec extends Specification {
+
+    private static List<Integer> list(IntIterator it) {
+        List<Integer> list = []
+        while ( it.hasNext() ) list << it.nextInt()
+        return list
+    }
+
+    private static Table table(int n) {
+        Table t = new Table()
+        t.addColumn("k", int.class)
+        t.addColumn("d", double.class)
+        t.addColumn("s", String.class)
+        t.addRows(n)
+        n.times { r ->
+            t.setInt(r, "k", r)
+            t.setDouble(r, "d", r / 2d)
+            t.setString(r, "s", "v" + r)
+        }
+        return t
+    }
+
+    def "index follows a value written while events are deferred"() {
+        given:
+        Table t = table(10)
+        Index index = t.index("k")
+
+        when:
+        t.deferEvents()
+        t.setInt(5, "k", 50)
+        t.resumeEvents()
+
+        then:
+        index.get(50) == 5
+        index.get(5) < 0
+        index.size() == 10
+        index.maximum() == 5
+        list(index.rows(4, 50, Index.TYPE_AII)) == [4, 6, 7, 8, 9, 5]
+    }
+
+    def "indexes of all types are rebuilt after a deferred batch"() {
+        given:
+        Table t = table(20)
+        Index ki = t.index("k"), di = t.index("d"), si = t.index("s")
+
+        when:
+        t.deferEvents()
+        20.times { r ->
+            t.setInt(r, "k", 100 - r)
+            t.setDouble(r, "d", -r)
+            t.setString(r, "s", "w" + r)
+        }
+        t.resumeEvents()
+
+        then:
+        20.times { r ->
+            assert ki.get(100 - r) == r
+            assert di.get(-r as double) == r
+            assert si.get("w" + r) == r
+            assert si.get("v" + r) < 0
+        }
+        ki.minimum() == 19
+        di.minimum() == 19
+        list(ki.allRows(Index.TYPE_ASCENDING)) == (19..0).toList()
+    }
+
+    def "single updates after a deferred batch are still applied"() {
+        given:
+        Table t = table(10)
+        Index index = t.index("k")
+        t.deferEvents()
+        t.setInt(2, "k", 20)
+        t.resumeEvents()
+
+        when:
+        t.setInt(3, "k", 30)
+
+        then:
+        index.get(20) == 2
+        index.get(30) == 3
+        index.get(3) < 0
+        index.uniqueCount() == 10
+    }
+}
@@ -0,0 +1,102 @@
+package prefux.util.collections
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class LongIntHashMapSpec extends Specification {
+
+    def "missing keys map to NO_VALUE"() {
+        given:
+        LongIntHashMap map = new LongIntHashMap()
+
+        expect:
+        map.get(42L) == LongIntHashMap.NO_VALUE
+        !map.containsKey(42L)
+        map.remove(42L) == LongIntHashMap.NO_VALUE
+        map.size() == 0
+    }
+
+    def "put replaces and returns the previous value"() {
+        given:
+        LongIntHashMap map = new LongIntHashMap()
+
+        expect:
+        map.put(7L, 1) == LongIntHashMap.NO_VALUE
+        map.put(7L, 2) == 1
+        map.get(7L) == 2
+        map.size() == 1
+    }
+
+    def "keys differing only in the high word are distinct"() {
+        given:
+        LongIntHashMap map = new LongIntHashMap()
+        long a = (1L << 32) | 5
+        long b = (2L << 32) | 5
+
+        when:
+        map.put(a, 1)
+        map.put(b, 2)
+        map.put(5L, 3)
+
+        then:
+        map.get(a) == 1
+        map.get(b) == 2
+        map.get(5L) == 3
+        map.remove(b) == 2
+        map.get(a) == 1
+        map.get(5L) == 3
+    }
+
+    def "clear removes all entries"() {
+        given:
+        LongIntHashMap map = new LongIntHashMap()
+        (0..<100).each { map.put(it as long, it) }
+
+        when:
+        map.clear()
+
+        then:
+        map.size() == 0
+        (0..<100).every { map.get(it as long) == LongIntHashMap.NO_VALUE }
+    }
+
+    @Unroll
+    def "random puts and removes agree with a HashMap (seed #seed, #keys keys)"() {
+        given:
+        Random rnd = new Random(seed)
+        LongIntHashMap map = new LongIntHashMap()
+        Map<Long,Integer> ref = new HashMap<>()
+
+        when:
+        // few distinct keys force long probe sequences and many backward
+        // shifts on removal, and the map grows and shrinks repeatedly
+        20000.times {
+            long key = ((rnd.nextInt(keys) as long) << 32) | rnd.nextInt(keys)
+            int op = rnd.nextInt(3)
+            if ( op == 0 ) {
+                Integer prev = ref.remove(key)
+                assert map.remove(key) == (prev == null ? -1 : prev)
+            } else {
+                int value = rnd.nextInt(1000)
+                Integer prev = ref.put(key, value)
+                assert map.put(key, value) == (prev == null ? -1 : prev)
+            }
+        }
+
+        then:
+        map.size() == ref.size()
+        ref.every { k, v -> map.get(k) == v && map.containsKey(k) }
+        (0..<keys).every { hi ->
+            (0..<keys).every { lo ->
+                long key = ((hi as long) << 32) | lo
+                ref.containsKey(key) || map.get(key) == LongIntHashMap.NO_VALUE
+            }
+        }
+
+        where:
+        seed | keys
+        1    | 8
+        2    | 30
+        3    | 100
+    }
+}
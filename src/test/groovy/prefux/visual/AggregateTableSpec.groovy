@@ -0,0 +1,104 @@
+package prefux.visual
+
+import prefux.Visualization
+import prefux.data.Table
+import prefux.data.Tuple
+import spock.lang.Specification
+
+class AggregateTableSpec extends Specification {
+
+    Table table
+    AggregateTable aggr
+    List<VisualItem> items
+
+    def setup() {
+        table = new Table()
+        table.addColumn("id", int.class)
+        10.times { table.setInt(table.addRow(), "id", it) }
+        Visualization vis = new Visualization()
+        VisualTable vt = (VisualTable)vis.addTable("data", table)
+        aggr = vis.addAggregates("aggregates")
+        items = (0..<10).collect { vt.getItem(it) }
+    }
+
+    private List<Tuple> members(AggregateItem a) {
+        List<Tuple> list = []
+        for ( Iterator<? extends Tuple> it = a.items(); it.hasNext(); )
+            list << it.next()
+        return list
+    }
+
+    def "members can be added, found and removed"() {
+        given:
+        AggregateItem a = (AggregateItem)aggr.addItem()
+        items.each { a.addItem(it) }
+
+        when:
+        a.removeItem(items[3])
+        a.addItem(items[0])
+
+        then:
+        a.getAggregateSize() == 9
+        !a.containsItem(items[3])
+        a.containsItem(items[9])
+        members(a) as Set == (items - items[3]) as Set
+    }
+
+    def "removing members while iterating visits every member once"() {
+        given:
+        AggregateItem a = (AggregateItem)aggr.addItem()
+        items.each { a.addItem(it) }
+        List<Tuple> seen = []
+
+        when:
+        for ( Iterator<? extends Tuple> it = a.items(); it.hasNext(); ) {
+            VisualItem item = (VisualItem)it.next()
+            seen << item
+            // remove the current member and one that was not visited yet
+            a.removeItem(item)
+            if ( item == items[2] ) a.removeItem(items[8])
+        }
+
+        then:
+        seen.size() == 9
+        seen as Set == (items - items[8]) as Set
+        a.getAggregateSize() == 0
+    }
+
+    def "removing a member from its aggregates while iterating them"() {
+        given:
+        List<AggregateItem> aggs = (0..<5).collect {
+            AggregateItem a = (AggregateItem)aggr.addItem()
+            a.addItem(items[0])
+            a
+        }
+        List<Tuple> seen = []
+
+        when:
+        for ( Iterator<? extends Tuple> it = aggr.getAggregates(items[0]);
+              it.hasNext(); ) {
+            AggregateItem a = (AggregateItem)it.next()
+            seen << a
+            a.removeItem(items[0])
+            if ( a == aggs[1] ) aggs[3].removeItem(items[0])
+        }
+
+        then:
+        seen.size() == 4
+        seen as Set == (aggs - aggs[3]) as Set
+        !aggr.getAggregates(items[0]).hasNext()
+    }
+
+    def "invalid members are dropped"() {
+        given:
+        AggregateItem a = (AggregateItem)aggr.addItem()
+        items.each { a.addItem(it) }
+
+        when:
+        table.removeRow(4)
+
+        then:
+        a.getAggregateSize() == 9
+        !members(a).contains(items[4])
+    }
+}
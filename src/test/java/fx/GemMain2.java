@@ -17,10 +17,12 @@ import prefux.action.ActionList;
 import prefux.action.RepaintAction;
 import prefux.action.layout.graph.GraphEmbedderLayout2;
 import prefux.controls.GemControl2;
+import prefux.data.Edge;
 import prefux.data.Graph;
 import prefux.data.Node;
-import prefux.data.Table;
 import prefux.data.Tuple;
+import prefux.data.io.DataIOException;
+import prefux.data.io.OntologyGraphReader;
 import prefux.data.util.Point2D;
 import prefux.render.ArrowRenderer;
 import prefux.render.CombinedRenderer;
@@ -30,17 +32,13 @@ import prefux.render.ShapeRenderer;
 import prefux.visual.VisualItem;
 import prefux.visual.VisualTupleSet;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.jena.ontology.OntClass;
-import org.apache.jena.ontology.OntModel;
-import org.apache.jena.ontology.OntModelSpec;
-import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.util.iterator.Filter;
 
 public class GemMain2 extends Application {
 	public static void main(String[] args) {
@@ -56,15 +54,7 @@ public class GemMain2 extends Application {
 	private static final double WIDTH = 1280;
 	private static final double HEIGHT = 720;
 	private static final String GROUP = "graph";
-	
-	// Table containing all the nodes.
-	Table nodeTable = new Table();
-	
-	// Table containing all the edges.
-	Table edgeTable = new Table();
-	
-	// List containing the OntClasses read from the ontology-file.
-	List<OntClass> ontList = new ArrayList<>();
+	private static final String ONTOLOGY_FILE = "oaei2014_FMA_small_overlapping_nci.owl";
 	
 	// Map containing items and their labels.
 	// Used to display the correct labels after zooming.
@@ -79,6 +69,9 @@ public class GemMain2 extends Application {
 	// The number of levels that are shown initially
 	private int level = 5;
 	
+	// The number of collapsed subtrees whose JavaFX nodes are kept
+	private int maxCollapsed = 50;
+	
 	// Variables used for the touch-functionality, zooming and rotating.
 	private double startScale, startRotate;
     private boolean moveInProgress = false;
@@ -105,57 +98,17 @@ public class GemMain2 extends Application {
 		primaryStage.show();
 
 		Graph graph = null;
-		OntModel m = ModelFactory.createOntologyModel(OntModelSpec.OWL_MEM, null);
 		
 		try {
 			
-			// Read a specified ontology-file.
-			m.read("oaei2014_FMA_small_overlapping_nci.owl");
-			
-			// Create an iterator for iterating over the ontology.
-			Iterator<OntClass> it = m.listHierarchyRootClasses().filterDrop(new Filter<OntClass>() {
-				public boolean accept(OntClass o) {
-					return o.isAnon();
-				}
-			});
-
-			// Add a column to nodeTable containing the name.
-			nodeTable.addColumn("name", String.class);
-			
-			// Add two columns to edgeTable containing the source and target for all the edges.
-			edgeTable.addColumn("source", int.class);
-			edgeTable.addColumn("target", int.class);
-			
-			// Add all the ontology-entries to ontList.
-			while(it.hasNext()) {
-				OntClass cls = it.next();
-				showClass(cls, new ArrayList<OntClass>(), 0);
-			}
-			
-			// Add all the entries in ontList to the tables.
-			for(int i = 0; i < ontList.size(); ++i) {
-				
-				OntClass cls = ontList.get(i);
-				int index = nodeTable.addRow();
-				nodeTable.set(index, 0, cls.getLocalName());
-				
-				for(it = cls.listSubClasses(true); it.hasNext();) {
-					
-					OntClass sub = it.next();
-					index = edgeTable.addRow();
-					edgeTable.set(index, 0, i);
-					edgeTable.set(index, 1, ontList.indexOf(sub));
-				}
-			}
-			
-			// Remove ontList to save up some RAM.
-			ontList = null;
+			// Read the class hierarchy of a specified ontology-file.
+			// The graph is cached next to the file for faster restarts.
+			OntologyGraphReader reader = new OntologyGraphReader();
+			reader.setCacheFile(new File(ONTOLOGY_FILE + ".graph"));
+			graph = reader.readGraph(ONTOLOGY_FILE);
 			
-			System.out.println("Total number of nodes: " + nodeTable.getRowCount());
-			System.out.println("Total number of edges: " + edgeTable.getRowCount());
-			
-			// Create a new graph using the two tables.
-			graph = new Graph(nodeTable, edgeTable, true);
+			System.out.println("Total number of nodes: " + graph.getNodeCount());
+			System.out.println("Total number of edges: " + graph.getEdgeCount());
 			
 			// Create the visualization and add the graph.
 			Visualization vis = new Visualization();
@@ -193,16 +146,9 @@ public class GemMain2 extends Application {
 			
 			vis.putAction("layout", layout);
 			
-			// Create the display and add the visualization.
-			FxDisplay display = new FxDisplay(vis);
-			
-			// Add the touch-functionality from GemControl to the display.
-			display.addControlListener(new GemControl2());
-			
-			// Initialize all the nodes to set their colors and visibilities.
-			initializeNodes(vis.getVisualGroup("graph"));
-			
 			// Find all the root nodes and then hide everything below a certain level.
+			// This is done before the display is created, so that only the
+			// visible items get a JavaFX node.
 			List<Node> rootNodes = new ArrayList<>();
 			
 			VisualTupleSet vts = vis.getVisualGroup("graph");
@@ -220,6 +166,16 @@ public class GemMain2 extends Application {
 				hideNodes(n, 0);
 			}
 			
+			// Create the display and add the visualization. The nodes of
+			// hidden items are created once their parent is expanded.
+			FxDisplay display = new FxDisplay(vis, true);
+			
+			// Add the touch-functionality from GemControl to the display.
+			display.addControlListener(new GemControl2(display, maxCollapsed));
+			
+			// Initialize all the rendered nodes to set their colors.
+			initializeNodes(vis.getVisualGroup("graph"));
+			
 			// Add the display to the root-pane.
 			root.getChildren().add(display);
 			
@@ -361,33 +317,8 @@ public class GemMain2 extends Application {
 			
 			/***************** END OF TOUCH-FUNCTIONALITY ****************/
 		}
-		catch(org.apache.jena.shared.WrappedIOException e) {
-			if(e.getCause() instanceof java.io.FileNotFoundException) {
-				System.err.println("A java.io.FileNotFoundException caught: " + e.getCause().getMessage());
-			}
-		}
-	}
-	
-	private void showClass(OntClass cls, List<OntClass> occurs, int depth) {
-		
-		if(!ontList.contains(cls)) {
-			ontList.add(cls);
-		}
-		
-		// Recurse to the next level.
-		if(cls.canAs(OntClass.class) && !occurs.contains(cls)) {
-			
-			for(Iterator<OntClass> i = cls.listSubClasses(true); i.hasNext();) {
-				
-				OntClass sub = i.next();
-				
-				// This expression is added to 'occurs' before recursion.
-				occurs.add(cls);
-				
-				// Recursive method-call
-				showClass(sub, occurs, depth + 1);
-				occurs.remove(cls);
-			}
+		catch(DataIOException e) {
+			System.err.println("Could not read the ontology: " + e.getMessage());
 		}
 	}
 	
@@ -403,6 +334,11 @@ public class GemMain2 extends Application {
 		while(iterator.hasNext()) {
 			
 			VisualItem item = (VisualItem) iterator.next();
+			
+			// Items that are not shown yet have no JavaFX node.
+			if(!(item.getNode() instanceof Group)) {
+				continue;
+			}
 			Group group = (Group) item.getNode();
 			ObservableList<javafx.scene.Node> groupList = group.getChildren();
 			
@@ -413,7 +349,7 @@ public class GemMain2 extends Application {
 				if(groupChild instanceof Circle) {
 					
 					Circle circle = (Circle) groupChild;
-					circle.setFill(FILL_COLOR);
+					circle.setFill(item.isExpanded() ? FILL_COLOR : GemControl2.COLLAPSED_COLOR);
 					circle.setStroke(STROKE_COLOR);
 					circle.setStrokeWidth(STROKE_WIDTH);
 					
@@ -462,24 +398,19 @@ public class GemMain2 extends Application {
 			hideNodes(child, depth + 1);
 			
 			// If the current depth is as far down as we are going.
-			if(depth == level) {
+			if(depth >= level) {
 				
 				// Hide the outgoing edges from this child.
-				List<javafx.scene.Node> lines = GemControl2.getOutLines(child);
-				for(javafx.scene.Node line : lines) {
-					line.setVisible(false);
+				Iterator<? extends Edge> edges = child.outEdges();
+				while(edges.hasNext()) {
+					((VisualItem) edges.next()).setVisible(false);
 				}
+			}
+			
+			if(depth == level) {
 				
-				// If the child has children.
-				Iterator<? extends Node> itChild = child.outNeighbors();
-				if(itChild.hasNext()) {
-					
-					// Indicate that the child is collapsed.
-					Circle circle = GemControl2.getCircle(child);
-					if(circle != null) {
-						circle.setFill(GemControl2.COLLAPSED_COLOR);
-					}
-					
+				// Indicate that the child is collapsed if it has children.
+				if(child.getOutDegree() > 0) {
 					VisualItem item = (VisualItem) child;
 					item.setExpanded(false);
 				}
@@ -491,21 +422,6 @@ public class GemMain2 extends Application {
 				// Set the visibility of everything to false.
 				VisualItem item = (VisualItem) child;
 				item.setVisible(false);
-				
-				Circle circle = GemControl2.getCircle(child);
-				if(circle != null) {
-					circle.setVisible(false);
-				}
-				
-				Label label = GemControl2.getLabel(child);
-				if(label != null) {
-					label.setVisible(false);
-				}
-				
-				List<javafx.scene.Node> lines = GemControl2.getOutLines(child);
-				for(javafx.scene.Node line : lines) {
-					line.setVisible(false);
-				}
 			}
 		}
 	}